@@ -0,0 +1,7 @@
+#!/bin/sh
+
+# Converts a recording to the chunked compressed AER-DAT format, which AEViewer plays like any other .aedat file, e.g.
+# ./chunked-aedat-converter.sh -aechip=eu.seebetter.ini.chips.davis.DAVIS240C -codec=DEFLATE_FAST in.aedat out.aedat
+
+JHOME="$(dirname "$0")"
+java -classpath "${JHOME}/dist/jAER.jar:${JHOME}/jars/*:${JHOME}/jars/javacv/*:${JHOME}/jars/jogl/*:${JHOME}/jars/usb4java/*" -Djava.awt.headless=true net.sf.jaer.eventio.ChunkedAEFileOutputStream "$@"
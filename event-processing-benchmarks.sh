@@ -0,0 +1,7 @@
+#!/bin/sh
+
+# Runs the event processing micro-benchmarks on a synthetic DAVIS stream (or a recording given by -file) and prints ns/event, e.g.
+# ./event-processing-benchmarks.sh -include=Extractor -csv=benchmarks.csv
+
+JHOME="$(dirname "$0")"
+java -classpath "${JHOME}/dist/jAER.jar:${JHOME}/jars/*:${JHOME}/jars/javacv/*:${JHOME}/jars/jogl/*:${JHOME}/jars/usb4java/*" -Djava.awt.headless=true net.sf.jaer.util.benchmark.EventProcessingBenchmarks "$@"
@@ -0,0 +1,7 @@
+#!/bin/sh
+
+# Runs the preferred (or given) filter chain over a recording without AEViewer and reports throughput, e.g.
+# ./filter-chain-batch-processor.sh -aechip=eu.seebetter.ini.chips.davis.DAVIS240C -filters=net.sf.jaer.eventprocessing.filter.BackgroundActivityFilter in.aedat out.aedat
+
+JHOME="$(dirname "$0")"
+java -classpath "${JHOME}/dist/jAER.jar:${JHOME}/jars/*:${JHOME}/jars/javacv/*:${JHOME}/jars/jogl/*:${JHOME}/jars/usb4java/*" -Djava.awt.headless=true net.sf.jaer.eventprocessing.FilterChainBatchProcessor "$@"
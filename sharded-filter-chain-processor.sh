@@ -0,0 +1,7 @@
+#!/bin/sh
+
+# Runs the preferred (or given) filter chain over time shards of a recording in parallel, e.g.
+# ./sharded-filter-chain-processor.sh -aechip=eu.seebetter.ini.chips.davis.DAVIS240C -filters=net.sf.jaer.eventprocessing.filter.BackgroundActivityFilter -threads=8 -warmupus=2000000 in.aedat out.aedat
+
+JHOME="$(dirname "$0")"
+java -classpath "${JHOME}/dist/jAER.jar:${JHOME}/jars/*:${JHOME}/jars/javacv/*:${JHOME}/jars/jogl/*:${JHOME}/jars/usb4java/*" -Djava.awt.headless=true net.sf.jaer.eventprocessing.ShardedFilterChainProcessor "$@"
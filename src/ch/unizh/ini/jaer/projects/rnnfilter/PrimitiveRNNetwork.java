@@ -0,0 +1,311 @@
+/*
+ * PrimitiveRNNetwork.java
+ *
+ * Created on October 18, 2026
+ */
+package ch.unizh.ini.jaer.projects.rnnfilter;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Inference engine for stacks of GRU and dense layers that works on flat float
+ * arrays, used by {@link RNNetwork#output(float[]) } in place of the jblas
+ * FloatMatrix layers.
+ * <p>
+ * All weights are copied into one row-major buffer per layer when the layer is
+ * added, and all activations and gates are preallocated, so that computing a
+ * time step allocates nothing. A GRU layer computes the update gate z, the
+ * reset gate r and the input part of the candidate activation of each unit in
+ * one pass over a contiguous row of weights, and then the candidate and the new
+ * activation of each unit in a second pass.
+ * <p>
+ * Weight matrices are given as <code>float[rows][columns]</code>, rows being
+ * the units of the layer and columns the units of its input, like the
+ * <code>float[][]</code> that the FloatMatrix layers of {@link RNNetwork} are
+ * initialized with.
+ */
+public class PrimitiveRNNetwork {
+
+    /**
+     * The activation functions, computed like the FloatMatrix activations of
+     * {@link RNNetwork}
+     */
+    public enum ActivationType {
+        SIGMOID, HARD_SIGMOID, TANH, RELU, SOFTMAX, SOFTSIGN, LINEAR
+    }
+
+    private final int inputSize;
+    private final List<Layer> layers = new ArrayList<>();
+
+    /**
+     * Constructs a network without layers
+     *
+     * @param inputSize the length of the input vector
+     */
+    public PrimitiveRNNetwork(int inputSize) {
+        this.inputSize = inputSize;
+    }
+
+    /**
+     * Appends a GRU layer
+     *
+     * @param hiddenW multiplies x_t in the expression to calculate candidate activation
+     * @param hiddenU multiplies r_t.h_t-1 in the expression to calculate candidate activation
+     * @param updateW multiplies x_t in the expression to calculate update gate
+     * @param updateU multiplies h_t-1 in the expression to calculate update gate
+     * @param resetW multiplies x_t in the expression to calculate reset gate
+     * @param resetU multiplies h_t-1 in the expression to calculate reset gate
+     * @param hiddenBias bias values of the neurons to calculate the candidate activation
+     * @param updateBias bias values of the neurons to calculate the update gate
+     * @param resetBias bias values of the neurons to calculate the reset gate
+     * @param activation activation function to calculate the candidate activation
+     * @param updateActivation activation function to calculate the update gate
+     * @param resetActivation activation function to calculate the reset gate
+     * @throws IllegalArgumentException if a size does not match the previous layer or the other weights
+     */
+    public void addGRU(float[][] hiddenW, float[][] hiddenU, float[][] updateW, float[][] updateU, float[][] resetW, float[][] resetU,
+            float[] hiddenBias, float[] updateBias, float[] resetBias,
+            ActivationType activation, ActivationType updateActivation, ActivationType resetActivation) {
+        layers.add(new GRULayer(getOutputSize(), hiddenW, hiddenU, updateW, updateU, resetW, resetU, hiddenBias, updateBias, resetBias,
+                activation, updateActivation, resetActivation));
+    }
+
+    /**
+     * Appends a dense layer, which is also used for the output layer
+     *
+     * @param weights the weights
+     * @param biases the biases
+     * @param activation the activation function
+     * @throws IllegalArgumentException if a size does not match the previous layer or the weights
+     */
+    public void addDense(float[][] weights, float[] biases, ActivationType activation) {
+        layers.add(new DenseLayer(getOutputSize(), weights, biases, activation));
+    }
+
+    /**
+     * Computes one time step
+     *
+     * @param input the input vector
+     * @return the activations of the last layer, or the input if there are no
+     * layers. The array is reused by the next call.
+     * @throws IllegalArgumentException if the input is shorter than the input size
+     */
+    public float[] output(float[] input) {
+        if (input.length < inputSize) {
+            throw new IllegalArgumentException("input has length " + input.length + " but network needs " + inputSize);
+        }
+        float[] x = input;
+        for (Layer l : layers) {
+            l.compute(x);
+            x = l.output;
+        }
+        return x;
+    }
+
+    /**
+     * Resets the activations of the recurrent layers to zero
+     */
+    public void reset() {
+        for (Layer l : layers) {
+            l.reset();
+        }
+    }
+
+    /**
+     * @return the length of the input vector
+     */
+    public int getInputSize() {
+        return inputSize;
+    }
+
+    /**
+     * @return the length of the output vector
+     */
+    public int getOutputSize() {
+        return layers.isEmpty() ? inputSize : layers.get(layers.size() - 1).output.length;
+    }
+
+    /**
+     * @return the number of layers, not counting the input
+     */
+    public int getNumLayers() {
+        return layers.size();
+    }
+
+    private abstract static class Layer {
+
+        final float[] output;
+
+        Layer(int size) {
+            output = new float[size];
+        }
+
+        abstract void compute(float[] input);
+
+        void reset() {
+        }
+    }
+
+    private static class DenseLayer extends Layer {
+
+        private final int nIn, nOut;
+        private final float[] weights; // row-major [nOut][nIn]
+        private final float[] biases;
+        private final ActivationType activation;
+
+        DenseLayer(int nIn, float[][] w, float[] b, ActivationType activation) {
+            super(b.length);
+            this.nIn = nIn;
+            this.nOut = b.length;
+            this.weights = flatten(w, nOut, nIn, "W");
+            this.biases = b.clone();
+            this.activation = activation;
+        }
+
+        @Override
+        void compute(float[] x) {
+            for (int i = 0, row = 0; i < nOut; i++, row += nIn) {
+                output[i] = biases[i] + dot(weights, row, x, 0, nIn);
+            }
+            apply(activation, output, nOut);
+        }
+    }
+
+    private static class GRULayer extends Layer {
+
+        private final int nIn, nHidden;
+        private final int rowLength; // of gateWeights, 3*nIn+2*nHidden
+        /**
+         * For each unit a row of its weights from the input to z, r and the
+         * candidate, and from the previous activation to z and r
+         */
+        private final float[] gateWeights;
+        private final float[] candidateU; // row-major [nHidden][nHidden]
+        private final float[] updateBias, resetBias, hiddenBias;
+        private final ActivationType activation, updateActivation, resetActivation;
+        private final float[] update, reset, candidate, resetHidden;
+
+        GRULayer(int nIn, float[][] hiddenW, float[][] hiddenU, float[][] updateW, float[][] updateU, float[][] resetW, float[][] resetU,
+                float[] hiddenBias, float[] updateBias, float[] resetBias,
+                ActivationType activation, ActivationType updateActivation, ActivationType resetActivation) {
+            super(hiddenBias.length);
+            this.nIn = nIn;
+            this.nHidden = hiddenBias.length;
+            this.rowLength = (3 * nIn) + (2 * nHidden);
+            if ((updateBias.length != nHidden) || (resetBias.length != nHidden)) {
+                throw new IllegalArgumentException("GRU biases have different lengths");
+            }
+            final float[] wz = flatten(updateW, nHidden, nIn, "updateW"), wr = flatten(resetW, nHidden, nIn, "resetW"),
+                    wh = flatten(hiddenW, nHidden, nIn, "hiddenW");
+            final float[] uz = flatten(updateU, nHidden, nHidden, "updateU"), ur = flatten(resetU, nHidden, nHidden, "resetU");
+            gateWeights = new float[nHidden * rowLength];
+            for (int i = 0; i < nHidden; i++) {
+                int k = i * rowLength;
+                System.arraycopy(wz, i * nIn, gateWeights, k, nIn);
+                System.arraycopy(wr, i * nIn, gateWeights, k += nIn, nIn);
+                System.arraycopy(wh, i * nIn, gateWeights, k += nIn, nIn);
+                System.arraycopy(uz, i * nHidden, gateWeights, k += nIn, nHidden);
+                System.arraycopy(ur, i * nHidden, gateWeights, k + nHidden, nHidden);
+            }
+            this.candidateU = flatten(hiddenU, nHidden, nHidden, "hiddenU");
+            this.updateBias = updateBias.clone();
+            this.resetBias = resetBias.clone();
+            this.hiddenBias = hiddenBias.clone();
+            this.activation = activation;
+            this.updateActivation = updateActivation;
+            this.resetActivation = resetActivation;
+            update = new float[nHidden];
+            reset = new float[nHidden];
+            candidate = new float[nHidden];
+            resetHidden = new float[nHidden];
+        }
+
+        @Override
+        void compute(float[] x) {
+            final float[] h = output;
+            // pass 1: z, r and W_h*x for each unit from one row of weights
+            for (int i = 0; i < nHidden; i++) {
+                final int k = i * rowLength;
+                update[i] = updateBias[i] + dot(gateWeights, k, x, 0, nIn) + dot(gateWeights, k + (3 * nIn), h, 0, nHidden);
+                reset[i] = resetBias[i] + dot(gateWeights, k + nIn, x, 0, nIn) + dot(gateWeights, k + (3 * nIn) + nHidden, h, 0, nHidden);
+                candidate[i] = hiddenBias[i] + dot(gateWeights, k + (2 * nIn), x, 0, nIn);
+            }
+            apply(updateActivation, update, nHidden);
+            apply(resetActivation, reset, nHidden);
+            for (int i = 0; i < nHidden; i++) {
+                resetHidden[i] = reset[i] * h[i];
+            }
+            // pass 2: candidate and new activation; each unit only reads its own previous activation, so h is updated in place
+            for (int i = 0, row = 0; i < nHidden; i++, row += nHidden) {
+                final float c = activate(activation, candidate[i] + dot(candidateU, row, resetHidden, 0, nHidden));
+                final float z = update[i];
+                h[i] = ((1 - z) * c) + (z * h[i]);
+            }
+        }
+
+        @Override
+        void reset() {
+            Arrays.fill(output, 0);
+        }
+    }
+
+    private static float dot(float[] a, int aOffset, float[] b, int bOffset, int n) {
+        float s = 0;
+        for (int i = 0; i < n; i++) {
+            s += a[aOffset + i] * b[bOffset + i];
+        }
+        return s;
+    }
+
+    private static float[] flatten(float[][] w, int rows, int columns, String name) {
+        if ((w.length != rows) || ((rows > 0) && (w[0].length != columns))) {
+            throw new IllegalArgumentException(String.format("%s is %dx%d, expected %dx%d", name, w.length, w.length > 0 ? w[0].length : 0, rows, columns));
+        }
+        final float[] f = new float[rows * columns];
+        for (int i = 0; i < rows; i++) {
+            if (w[i].length != columns) {
+                throw new IllegalArgumentException(name + " has rows of different lengths");
+            }
+            System.arraycopy(w[i], 0, f, i * columns, columns);
+        }
+        return f;
+    }
+
+    private static float activate(ActivationType type, float x) {
+        switch (type) {
+            case SIGMOID:
+                return 1 / (1 + (float) Math.exp(-x));
+            case HARD_SIGMOID:
+                return Math.max(0, Math.min(1, (x * 0.2f) + 0.5f));
+            case TANH:
+                return (float) Math.tanh(x);
+            case RELU:
+                return x < 0 ? 0 : x;
+            case SOFTSIGN:
+                return x / (1 + Math.abs(x));
+            case LINEAR:
+                return x;
+            default:
+                throw new IllegalArgumentException(type + " is not an elementwise activation");
+        }
+    }
+
+    private static void apply(ActivationType type, float[] a, int n) {
+        if (type == ActivationType.SOFTMAX) {
+            float sum = 0;
+            for (int i = 0; i < n; i++) {
+                a[i] = (float) Math.exp(a[i]);
+                sum += a[i];
+            }
+            for (int i = 0; i < n; i++) {
+                a[i] /= sum;
+            }
+            return;
+        }
+        for (int i = 0; i < n; i++) {
+            a[i] = activate(type, a[i]);
+        }
+    }
+}
@@ -38,6 +38,12 @@ public class RNNetwork {
     InputLayer inputLayer; // the first layer in the above array of layers will be this layer
     OutputLayer outputLayer;// the last layer in the layer array will be this layer
     private String xmlFileName = null;
+    /**
+     * Computes the output on flat arrays instead of the FloatMatrix layers if the network has only GRU and dense layers
+     */
+    private boolean primitiveBackendEnabled = true;
+    private PrimitiveRNNetwork primitiveNetwork = null; // built from the layers on the first output after loading
+    private boolean primitiveNetworkSupported = true;
 
     public RNNetwork() {
         this.initialized = false;
@@ -60,6 +66,21 @@ public class RNNetwork {
      * @return - the activation of the last layer as a DoubleMatrix (jblas)
      */
     public FloatMatrix output(float[] input) {
+        if (this.primitiveBackendEnabled && this.primitiveNetworkSupported) {
+            if (this.primitiveNetwork == null) {
+                this.primitiveNetwork = this.createPrimitiveNetwork();
+                this.primitiveNetworkSupported = this.primitiveNetwork != null;
+            }
+            if (this.primitiveNetwork != null) {
+                float[] out = this.primitiveNetwork.output(input);
+                Layer last = this.layers[this.nLayers-1];
+                if ((last.output == null) || (last.output.length != out.length)) {
+                    last.output = new FloatMatrix(out.length);
+                }
+                System.arraycopy(out, 0, last.output.data, 0, out.length);
+                return last.output;
+            }
+        }
         FloatMatrix tempOutput = new FloatMatrix(input);
         this.layers[0].computeFromInput(tempOutput);
         for(int i=1;i<this.nLayers;i++) {
@@ -239,6 +260,8 @@ public class RNNetwork {
             log.log(Level.INFO, "Succesfully loaded the layer {0}", i);
         }
         this.setXmlFileName(f.toString());
+        this.primitiveNetwork = null;
+        this.primitiveNetworkSupported = true;
         this.initialized = true;
         log.log(Level.INFO, "Succesfully loaded the network");
     }
@@ -1519,6 +1542,97 @@ public class RNNetwork {
         for(int i=0;i<this.nLayers;i++) {
             this.layers[i].resetLayer();
         }
+        if (this.primitiveNetwork != null) {
+            this.primitiveNetwork.reset();
+        }
+    }
+
+    /**
+     * Copies the weights of the layers into a PrimitiveRNNetwork
+     * @return the network, or null if a layer or activation function is not supported by it
+     */
+    private PrimitiveRNNetwork createPrimitiveNetwork() {
+        if ((this.nLayers < 2) || !(this.layers[0] instanceof InputLayer) || (this.layers[0].output == null)) {
+            return null;
+        }
+        PrimitiveRNNetwork net = new PrimitiveRNNetwork(this.layers[0].output.length);
+        for (int i = 1; i < this.nLayers; i++) {
+            Layer l = this.layers[i];
+            if (l instanceof GRU) {
+                GRU gru = (GRU) l;
+                PrimitiveRNNetwork.ActivationType act = primitiveActivation(gru.getActivationFunction());
+                PrimitiveRNNetwork.ActivationType updateAct = primitiveActivation(gru.getUpdateActivation());
+                PrimitiveRNNetwork.ActivationType resetAct = primitiveActivation(gru.getResetActivation());
+                if ((act == null) || (updateAct == null) || (resetAct == null)) {
+                    return unsupported(l);
+                }
+                net.addGRU(gru.hiddenW.toArray2(), gru.hiddenU.toArray2(), gru.updateW.toArray2(), gru.updateU.toArray2(),
+                    gru.resetW.toArray2(), gru.resetU.toArray2(), gru.hiddenBias.toArray(), gru.updateBias.toArray(), gru.resetBias.toArray(),
+                    act, updateAct, resetAct);
+            } else if (l instanceof Dense) {
+                Dense dense = (Dense) l;
+                PrimitiveRNNetwork.ActivationType act = primitiveActivation(dense.getActivationFunction());
+                if (act == null) {
+                    return unsupported(l);
+                }
+                net.addDense(dense.weightMatrix.toArray2(), dense.biases.toArray(), act);
+            } else if (l instanceof OutputLayer) {
+                OutputLayer out = (OutputLayer) l;
+                PrimitiveRNNetwork.ActivationType act = primitiveActivation(out.getActivationFunction());
+                if (act == null) {
+                    return unsupported(l);
+                }
+                net.addDense(out.weightMatrix.toArray2(), out.biases.toArray(), act);
+            } else {
+                return unsupported(l);
+            }
+        }
+        log.log(Level.INFO, "Computing network with primitive backend");
+        return net;
+    }
+
+    private PrimitiveRNNetwork unsupported(Layer l) {
+        log.log(Level.INFO, "Layer {0} of type {1} is not supported by the primitive backend, using FloatMatrix layers", new Object[]{l.index, l.getClass().getSimpleName()});
+        return null;
+    }
+
+    private static PrimitiveRNNetwork.ActivationType primitiveActivation(Activation a) {
+        if (a instanceof Sigmoid) {
+            return PrimitiveRNNetwork.ActivationType.SIGMOID;
+        } else if (a instanceof HardSigmoid) {
+            return PrimitiveRNNetwork.ActivationType.HARD_SIGMOID;
+        } else if (a instanceof Tanh) {
+            return PrimitiveRNNetwork.ActivationType.TANH;
+        } else if (a instanceof Relu) {
+            return PrimitiveRNNetwork.ActivationType.RELU;
+        } else if (a instanceof Softmax) {
+            return PrimitiveRNNetwork.ActivationType.SOFTMAX;
+        } else if (a instanceof Softsign) {
+            return PrimitiveRNNetwork.ActivationType.SOFTSIGN;
+        } else if (a instanceof Linear) {
+            return PrimitiveRNNetwork.ActivationType.LINEAR;
+        }
+        return null;
+    }
+
+    /**
+     * @return true if the output is computed by a PrimitiveRNNetwork when the network has only GRU and dense layers
+     */
+    public boolean isPrimitiveBackendEnabled() {
+        return primitiveBackendEnabled;
+    }
+
+    /**
+     * Selects between the PrimitiveRNNetwork and the FloatMatrix layers for computing the output.
+     * The weights are copied into the PrimitiveRNNetwork at the first output after loading the network or enabling it,
+     * so later changes to the weights of the layers are only taken up after setting it again.
+     * The two backends keep separate recurrent states, so the network should be reset after switching.
+     * @param primitiveBackendEnabled true to use the PrimitiveRNNetwork
+     */
+    public void setPrimitiveBackendEnabled(boolean primitiveBackendEnabled) {
+        this.primitiveBackendEnabled = primitiveBackendEnabled;
+        this.primitiveNetwork = null;
+        this.primitiveNetworkSupported = true;
     }
     
     /**
@@ -0,0 +1,219 @@
+/*
+ * RNNetworkBenchmarks.java
+ *
+ * Created on October 18, 2026
+ */
+package ch.unizh.ini.jaer.projects.rnnfilter;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Pattern;
+
+import ml.options.Options;
+import ml.options.Options.Multiplicity;
+import ml.options.Options.Separator;
+import net.sf.jaer.util.benchmark.Benchmark;
+import net.sf.jaer.util.benchmark.BenchmarkRunner;
+
+import org.jblas.FloatMatrix;
+
+/**
+ * Micro-benchmark of {@link RNNetwork#output(float[]) } with the FloatMatrix
+ * layers against the {@link PrimitiveRNNetwork} backend, on random GRU
+ * networks fed with random binned input frames. The cost is reported per time
+ * step, i.e. per input frame. Before the timing, the largest difference
+ * between the outputs of the two backends is printed.
+ * <p>
+ * Run from the command line:
+ * <pre>
+ * java ch.unizh.ini.jaer.projects.rnnfilter.RNNetworkBenchmarks [-include=regex] [-warmup=5] [-iterations=10] [-iterationms=500]
+ * </pre>
+ */
+public class RNNetworkBenchmarks {
+
+    /**
+     * The networks benchmarked: input size, sizes of the GRU layers, output size
+     */
+    private static final int[][] NETWORKS = {{64, 128, 12}, {64, 256, 256, 12}};
+    private static final int STEPS_PER_RUN = 100, NUM_FRAMES = 64;
+
+    /**
+     * Creates a network of GRU layers with sigmoid gates and tanh activation
+     * and a softmax output layer, with random weights
+     *
+     * @param sizes the input size, the sizes of the GRU layers and the output size
+     * @param seed the seed of the random weights
+     * @return the network
+     */
+    public static RNNetwork createRandomNetwork(int[] sizes, long seed) {
+        final Random r = new Random(seed);
+        final RNNetwork net = new RNNetwork(sizes.length);
+        ((RNNetwork.InputLayer) net.layers[0]).initialize(sizes[0]);
+        for (int i = 1; i < (sizes.length - 1); i++) {
+            final int in = sizes[i - 1], n = sizes[i];
+            final RNNetwork.GRU gru = net.new GRU(i);
+            gru.initialize(random(r, n, in), random(r, n, n), random(r, n, in), random(r, n, n), random(r, n, in), random(r, n, n),
+                    random(r, n), random(r, n), random(r, n), net.new Tanh(), net.new Sigmoid(), net.new Sigmoid());
+            net.layers[i] = gru;
+        }
+        final int last = sizes.length - 1;
+        ((RNNetwork.OutputLayer) net.layers[last]).initialize(random(r, sizes[last], sizes[last - 1]), random(r, sizes[last]));
+        net.initialized = true;
+        return net;
+    }
+
+    private static float[][] random(Random r, int rows, int columns) {
+        final float scale = (float) (1 / Math.sqrt(columns));
+        final float[][] w = new float[rows][columns];
+        for (float[] row : w) {
+            for (int j = 0; j < columns; j++) {
+                row[j] = scale * ((2 * r.nextFloat()) - 1);
+            }
+        }
+        return w;
+    }
+
+    private static float[] random(Random r, int n) {
+        final float[] b = new float[n];
+        for (int i = 0; i < n; i++) {
+            b[i] = 0.1f * ((2 * r.nextFloat()) - 1);
+        }
+        return b;
+    }
+
+    /**
+     * @return input frames like the binned event counts of RNNfilter
+     */
+    private static float[][] createFrames(int inputSize) {
+        final Random r = new Random(1);
+        final float[][] frames = new float[NUM_FRAMES][inputSize];
+        for (float[] f : frames) {
+            for (int i = 0; i < inputSize; i++) {
+                f[i] = r.nextInt(4);
+            }
+        }
+        return frames;
+    }
+
+    private static String describe(int[] sizes) {
+        final StringBuilder sb = new StringBuilder();
+        for (int s : sizes) {
+            sb.append(sb.length() == 0 ? "" : "-").append(s);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Runs both backends on the same frames from a reset state
+     *
+     * @return the largest absolute difference of the outputs
+     */
+    static float maxDifference(int[] sizes, int steps) {
+        final RNNetwork a = createRandomNetwork(sizes, 7), b = createRandomNetwork(sizes, 7);
+        a.setPrimitiveBackendEnabled(false);
+        b.setPrimitiveBackendEnabled(true);
+        final float[][] frames = createFrames(sizes[0]);
+        float max = 0;
+        for (int s = 0; s < steps; s++) {
+            final FloatMatrix oa = a.output(frames[s % NUM_FRAMES]), ob = b.output(frames[s % NUM_FRAMES]);
+            for (int i = 0; i < oa.length; i++) {
+                max = Math.max(max, Math.abs(oa.get(i) - ob.get(i)));
+            }
+        }
+        return max;
+    }
+
+    private static class OutputBenchmark extends Benchmark {
+
+        private final int[] sizes;
+        private final boolean primitive;
+        private RNNetwork net;
+        private float[][] frames;
+        private int step = 0;
+
+        OutputBenchmark(int[] sizes, boolean primitive) {
+            super("RNNetwork.output " + (primitive ? "primitive" : "FloatMatrix") + " [" + describe(sizes) + "]");
+            this.sizes = sizes;
+            this.primitive = primitive;
+        }
+
+        @Override
+        public void setUp() {
+            net = createRandomNetwork(sizes, 7);
+            net.setPrimitiveBackendEnabled(primitive);
+            frames = createFrames(sizes[0]);
+        }
+
+        @Override
+        public long run() {
+            for (int i = 0; i < STEPS_PER_RUN; i++) {
+                final FloatMatrix out = net.output(frames[step++ % NUM_FRAMES]);
+                consume(Float.floatToIntBits(out.get(0)));
+            }
+            return STEPS_PER_RUN;
+        }
+    }
+
+    /**
+     * @return the benchmarks, FloatMatrix and primitive for each network
+     */
+    public static List<Benchmark> getBenchmarks() {
+        final List<Benchmark> list = new ArrayList<>();
+        for (int[] sizes : NETWORKS) {
+            list.add(new OutputBenchmark(sizes, false));
+            list.add(new OutputBenchmark(sizes, true));
+        }
+        return list;
+    }
+
+    public static final String USAGE = "java RNNetworkBenchmarks [-include=regex] [-warmup=5] [-iterations=10] [-iterationms=500]"
+            + "\n"
+            + "Note arguments values are assigned with =, not space";
+
+    public static void main(String[] args) {
+        Options opt = new Options(args, 0, 0);
+        opt.getSet().addOption("include", Separator.EQUALS, Multiplicity.ZERO_OR_ONE);
+        opt.getSet().addOption("warmup", Separator.EQUALS, Multiplicity.ZERO_OR_ONE);
+        opt.getSet().addOption("iterations", Separator.EQUALS, Multiplicity.ZERO_OR_ONE);
+        opt.getSet().addOption("iterationms", Separator.EQUALS, Multiplicity.ZERO_OR_ONE);
+        if ((args.length > 0) && !opt.check(false, false)) {
+            System.out.println(USAGE);
+            System.exit(1);
+        }
+        final BenchmarkRunner runner = new BenchmarkRunner();
+        try {
+            if (opt.getSet().isSet("warmup")) {
+                runner.setWarmupIterations(Integer.parseInt(opt.getSet().getOption("warmup").getResultValue(0)));
+            }
+            if (opt.getSet().isSet("iterations")) {
+                runner.setMeasurementIterations(Integer.parseInt(opt.getSet().getOption("iterations").getResultValue(0)));
+            }
+            if (opt.getSet().isSet("iterationms")) {
+                runner.setIterationTimeMs(Long.parseLong(opt.getSet().getOption("iterationms").getResultValue(0)));
+            }
+        } catch (IllegalArgumentException e) {
+            System.err.println("Bad argument: " + e.toString());
+            System.out.println(USAGE);
+            System.exit(1);
+        }
+
+        for (int[] sizes : NETWORKS) {
+            System.out.println(String.format("network %s: largest difference of FloatMatrix and primitive outputs over %d steps is %g",
+                    describe(sizes), 10 * NUM_FRAMES, maxDifference(sizes, 10 * NUM_FRAMES)));
+        }
+        final Pattern include = Pattern.compile(opt.getSet().isSet("include") ? opt.getSet().getOption("include").getResultValue(0) : "");
+        for (Benchmark b : getBenchmarks()) {
+            if (include.matcher(b.getName()).find()) {
+                System.out.println("running " + b.getName());
+                runner.run(b);
+            }
+        }
+        System.out.println();
+        System.out.println(BenchmarkRunner.getHeader());
+        for (BenchmarkRunner.Result r : runner.getResults()) {
+            System.out.println(r);
+        }
+        System.exit(0);
+    }
+}
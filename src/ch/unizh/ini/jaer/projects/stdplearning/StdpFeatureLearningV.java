@@ -15,9 +15,12 @@ package ch.unizh.ini.jaer.projects.stdplearning;
 import java.awt.Dimension;
 import java.beans.PropertyChangeEvent;
 import java.beans.PropertyChangeListener;
+import java.util.Arrays;
 import java.util.Observable;
 import java.util.Observer;
 import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 import java.util.logging.Level;
 
 import com.jogamp.opengl.GL;
@@ -49,6 +52,10 @@ import com.jogamp.opengl.util.gl2.GLUT;
 
 public class StdpFeatureLearningV extends RectangularClusterTracker implements Observer, FrameAnnotater, PropertyChangeListener {
 
+	// Smallest layer 1 that is integrated in parallel, and number of neurons integrated by each task
+	// Each parallel integration costs about 5us of fork/join overhead, which is the sequential time of about 1000 neurons
+	private static final int PARALLEL_MIN_NEURONS = 1024, PARALLEL_GRAIN_NEURONS = 256;
+
 	// Controls
 	protected int neuronsL1 = getPrefs().getInt("StdpFeatureLearningV.neuronsL1", 100);
 	{
@@ -170,6 +177,11 @@ public class StdpFeatureLearningV extends RectangularClusterTracker implements O
 		setPropertyTooltip("displayCombinedPolarity", "Display Combined Polarities in Neuron Weight Matrix");
 	}
 
+	protected boolean parallelIntegrationEnabled = getPrefs().getBoolean("StdpFeatureLearningV.parallelIntegrationEnabled", false);
+	{
+		setPropertyTooltip("parallelIntegrationEnabled", "Integrates each input spike into layer 1 neurons on all processor cores if there are at least "+PARALLEL_MIN_NEURONS+" neurons");
+	}
+
 	// Input
 	private int xPixels;        // Number of pixels in x direction for input
 	private int yPixels;        // Number of pixels in y direction for input
@@ -186,10 +198,14 @@ public class StdpFeatureLearningV extends RectangularClusterTracker implements O
 	// Neuron
 	private float[][] neuronL1Potential;        // Neuron Potential [cluster][neuronL1]
 	private float[][] neuronL2Potential;        // Neuron Potential [cluster][neuronL2]
-	private float[][][][] synapseWeightsL1;     // Synaptic weights of [neuronL1][polarity][x][y]
+	private int synapsesL1;                     // Number of synapses of each neuronL1, numPolarities*xPixels*yPixels
+	private float[] synapseWeightsL1;           // Synaptic weights of [neuronL1][polarity][x][y], flattened to a block of synapsesL1 per neuron, see synapseL1()
 	private float[][] synapseWeightsL2;         // Synaptic weights of [neuronL2][neuronL1]
 	private float[][][][] synapseWeightMapL2;   // Synaptic weights reconstruction of average activity in [neuronL2][polarity][x][y]
-	private int[][][][] pixelSpikeTiming;       // Last spike time of [cluster][polarity][x][y]
+	private int[][] pixelSpikeTiming;           // Last spike time of [cluster][polarity][x][y], flattened like a block of synapseWeightsL1, see synapse()
+	private float[] integratedL1Potential;      // Potential of [neuronL1] with the current input spike integrated, computed in advance by integrateL1
+	private boolean[] integratedL1;             // Indicates that integratedL1Potential of [neuronL1] is valid and not yet used
+	private ForkJoinPool forkJoinPool = null;   // Created on first parallel integration, see shutdownForkJoinPool()
 	private int[][] neuronL1PreSpikeTiming;     // Last input spike time of [cluster][neuronL1]
 	private int[][] neuronL1PostSpikeTiming;    // Last output fire time of [cluster][neuronL1]
 	private int[][] neuronL2PreSpikeTiming;     // Last input spike time of [cluster][neuronL2]
@@ -236,6 +252,7 @@ public class StdpFeatureLearningV extends RectangularClusterTracker implements O
 	@Override
 	public synchronized void initFilter() {
 		super.initFilter();
+		shutdownForkJoinPool();
 
 		xPixels = 16;
 		yPixels = xPixels;
@@ -250,10 +267,13 @@ public class StdpFeatureLearningV extends RectangularClusterTracker implements O
 
 		neuronL1Potential = new float[numClusters][neuronsL1];
 		neuronL2Potential = new float[numClusters][neuronsL2];
-		synapseWeightsL1 = new float[neuronsL1][numPolarities][xPixels][yPixels];
+		synapsesL1 = numPolarities*xPixels*yPixels;
+		synapseWeightsL1 = new float[neuronsL1*synapsesL1];
 		synapseWeightsL2 = new float[neuronsL2][neuronsL1];
 		synapseWeightMapL2 = new float[neuronsL2][numPolarities][xPixels][yPixels];
-		pixelSpikeTiming = new int[numClusters][numPolarities][xPixels][yPixels];
+		pixelSpikeTiming = new int[numClusters][synapsesL1];
+		integratedL1Potential = new float[neuronsL1];
+		integratedL1 = new boolean[neuronsL1];
 		neuronL1PreSpikeTiming = new int[numClusters][neuronsL1];
 		neuronL2PreSpikeTiming = new int[numClusters][neuronsL2];
 		neuronL1PostSpikeTiming = new int[numClusters][neuronsL1];
@@ -285,6 +305,7 @@ public class StdpFeatureLearningV extends RectangularClusterTracker implements O
 	@Override
 	public synchronized void resetFilter() {
 		super.resetFilter();
+		shutdownForkJoinPool();
 
 		// Reset all cluster neuron variables
 		for (int c=0; c<numClusters; c++) {
@@ -313,7 +334,7 @@ public class StdpFeatureLearningV extends RectangularClusterTracker implements O
 							if (wInit > wMax) {
 								wInit = wMax;
 							}
-							synapseWeightsL1[nL1][p][x][y] = (float) wInit;
+							synapseWeightsL1[synapseL1(nL1, p, x, y)] = (float) wInit;
 						} // END LOOP - All synapses in L1
 					}
 				}
@@ -370,13 +391,22 @@ public class StdpFeatureLearningV extends RectangularClusterTracker implements O
 			neuronL2PostSpikeTiming[c][nL2] = 0;
 		} // END LOOP - NeuronsL2
 
-		for (int p=0; p<numPolarities; p++) {
-			for (int x=0; x<xPixels; x++) {
-				for (int y=0; y<yPixels; y++) {
-					pixelSpikeTiming[c][p][x][y] = 0;
-				}
-			}
-		}
+		Arrays.fill(pixelSpikeTiming[c], 0);
+	} // END METHOD
+
+	/**
+	 * Returns index of synapse from pixel x,y of polarity p within the block of a neuron in synapseWeightsL1,
+	 * which is also the index of the pixel in pixelSpikeTiming
+	 */
+	private int synapse(int p, int x, int y) {
+		return (((p*xPixels) + x)*yPixels) + y;
+	} // END METHOD
+
+	/**
+	 * Returns index of synapse from pixel x,y of polarity p to neuron in synapseWeightsL1
+	 */
+	private int synapseL1(int neuron, int p, int x, int y) {
+		return (neuron*synapsesL1) + synapse(p, x, y);
 	} // END METHOD
 
 	/**
@@ -556,15 +586,22 @@ public class StdpFeatureLearningV extends RectangularClusterTracker implements O
 	 */
 	private void applySTDPL1(int c, int ts, int x, int y, int polarity) {
 		int layer = 0; // Corresponds to Layer 1
+		int synapse = synapse(polarity, x, y);
 		// If Neurons aren't inhibited
 		if (ts >= t0[c][layer]) {
+			// Integrate spike into all neurons at once, they are then checked for firing one after the other
+			if (parallelIntegrationEnabled && (neuronsL1 >= PARALLEL_MIN_NEURONS)) {
+				getForkJoinPool().invoke(new IntegrationTask(c, ts, synapse, 0, neuronsL1));
+			} else {
+				integrateL1(c, ts, synapse, 0, neuronsL1);
+			}
 			// Update all Neuron Integration states
 			for (int nIdx=0; nIdx<neuronsL1; nIdx++) {
 				// Start update from neuron next to the one that fired last
 				int n = (nextNeuronToUpdate[c][layer] + nIdx) % neuronsL1;
 				// Make sure neuron is not in its refractory period
 				if (ts >= (neuronL1PostSpikeTiming[c][n]+tRefracL1)) {
-					boolean potentialAboveThres = updateNeuronL1IntegrationState(c, n, ts, polarity, x, y);
+					boolean potentialAboveThres = updateNeuronL1IntegrationState(c, n, ts, synapse);
 					// Only update synapses if fireInhibitor is disabled
 					// fireInhibitor will only be enabled if fireMaxOnlyOnceOnSpike is on
 					// and a neuron has already fired for the given input spike / event
@@ -599,9 +636,86 @@ public class StdpFeatureLearningV extends RectangularClusterTracker implements O
 		// Make sure fireInhibitor is turned off after all neurons have been updated
 		fireInhibitor[c][layer] = false;
 		// Update pixel spike timing maps
-		pixelSpikeTiming[c][polarity][x][y] = ts;
+		pixelSpikeTiming[c][synapse] = ts;
 	} // END METHOD
 
+	/**
+	 * Integrates input spike into potentials of neurons from to to that are not in their refractory period,
+	 * without changing the neuron state. The potentials are taken by updateNeuronL1IntegrationState.
+	 * Each neuron only depends on its own state, so ranges of neurons can be integrated in parallel.
+	 * @param c Current cluster
+	 * @param ts Current time stamp
+	 * @param synapse Synapse of the input spike, see synapse()
+	 * @param from First neuron
+	 * @param to Neuron after the last one
+	 */
+	private void integrateL1(int c, int ts, int synapse, int from, int to) {
+		final float[] potential = neuronL1Potential[c];
+		final int[] preSpikeTiming = neuronL1PreSpikeTiming[c];
+		final int[] postSpikeTiming = neuronL1PostSpikeTiming[c];
+		// Most neurons integrated the previous spike too, so the leak is only computed again when the interval changes
+		int lastDt = Integer.MIN_VALUE;
+		float leak = 0;
+		for (int n=from; n<to; n++) {
+			if (ts >= (postSpikeTiming[n]+tRefracL1)) {
+				int dt = ts - preSpikeTiming[n];
+				if (dt != lastDt) {
+					double temp = - dt / (double) tauLeakL1;
+					leak = (float) Math.exp(temp);
+					lastDt = dt;
+				}
+				integratedL1Potential[n] = (potential[n] * leak) + synapseWeightsL1[(n*synapsesL1) + synapse];
+				integratedL1[n] = true;
+			} else {
+				integratedL1[n] = false;
+			}
+		} // END LOOP - Neurons
+	} // END METHOD
+
+	/**
+	 * Integrates a range of neurons, splitting it over the fork/join pool
+	 */
+	private class IntegrationTask extends RecursiveAction {
+
+		private final int c, ts, synapse, from, to;
+
+		IntegrationTask(int c, int ts, int synapse, int from, int to) {
+			this.c = c;
+			this.ts = ts;
+			this.synapse = synapse;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if ((to - from) <= PARALLEL_GRAIN_NEURONS) {
+				integrateL1(c, ts, synapse, from, to);
+				return;
+			}
+			int mid = (from + to) >>> 1;
+			invokeAll(new IntegrationTask(c, ts, synapse, from, mid), new IntegrationTask(c, ts, synapse, mid, to));
+		}
+	}
+
+	private synchronized ForkJoinPool getForkJoinPool() {
+		if (forkJoinPool == null) {
+			forkJoinPool = new ForkJoinPool();
+		}
+		return forkJoinPool;
+	}
+
+	/**
+	 * Shuts down the threads of the fork/join pool, if there is one.
+	 * The next parallel integration creates a new pool.
+	 */
+	private synchronized void shutdownForkJoinPool() {
+		if (forkJoinPool != null) {
+			forkJoinPool.shutdown();
+			forkJoinPool = null;
+		}
+	}
+
 	/**
 	 * Applies STDP Learning Rule
 	 * @param e Polarity Events which are considered input spikes into the neurons
@@ -655,16 +769,21 @@ public class StdpFeatureLearningV extends RectangularClusterTracker implements O
 	 * @param group Current neuron group
 	 * @param neuron Current neuron
 	 * @param ts Current time stamp
-	 * @param polarity Current Polarity - On or Off
-	 * @param x X address of pixel / spike
-	 * @param y Y address of pixel / spike
+	 * @param synapse Synapse of the input spike, see synapse()
 	 * @return boolean indicating whether neuron has fired
 	 */
-	private boolean updateNeuronL1IntegrationState(int c, int neuron, int ts, int polarity, int x, int y) {
+	private boolean updateNeuronL1IntegrationState(int c, int neuron, int ts, int synapse) {
 		int layer = 0;
 		// Neuron Update equation
-		double temp = - (ts - neuronL1PreSpikeTiming[c][neuron]) / (double) tauLeakL1;
-		neuronL1Potential[c][neuron] = (neuronL1Potential[c][neuron] * (float) Math.exp(temp)) + synapseWeightsL1[neuron][polarity][x][y];
+		if (integratedL1[neuron]) {
+			// First update for this spike, take potential computed by integrateL1
+			neuronL1Potential[c][neuron] = integratedL1Potential[neuron];
+			integratedL1[neuron] = false;
+		} else {
+			// Neuron is updated again for the same spike after the update order was shifted by a neuron that fired
+			double temp = - (ts - neuronL1PreSpikeTiming[c][neuron]) / (double) tauLeakL1;
+			neuronL1Potential[c][neuron] = (neuronL1Potential[c][neuron] * (float) Math.exp(temp)) + synapseWeightsL1[(neuron*synapsesL1) + synapse];
+		}
 		neuronL1PreSpikeTiming[c][neuron] = ts;
 		// If updated potential is above firing threshold, then fire and reset
 		if (neuronL1Potential[c][neuron] >= fireThres[c][layer]) {
@@ -709,35 +828,31 @@ public class StdpFeatureLearningV extends RectangularClusterTracker implements O
 		// Update synapses for all polarities and pixels depending on STDP Rule
 		// L1
 		if (layer == 0) {
-			for (int p=0; p<numPolarities; p++)
-			{
-				for (int x=0; x<xPixels; x++)
-				{
-					for (int y=0; y<yPixels; y++) {
-						// LTP - Long Term Potentiation
-						if ((ts-pixelSpikeTiming[c][p][x][y])<=tLTPL1) {
-							synapseWeightsL1[neuron][p][x][y] = synapseWeightsL1[neuron][p][x][y] +
-								(alphaPlus * (float) Math.exp((-betaPlus *
-									(synapseWeightsL1[neuron][p][x][y] - wMin)) / (double) (wMax - wMin)));
-							// Cut off at wMax
-							if (synapseWeightsL1[neuron][p][x][y] > wMax)
-							{
-								synapseWeightsL1[neuron][p][x][y] = wMax;
-								// LTD - Long Term Depression
-							}
-						} else {
-							synapseWeightsL1[neuron][p][x][y] = synapseWeightsL1[neuron][p][x][y] -
-								(alphaMinus * (float) Math.exp((-betaMinus *
-									(wMax - synapseWeightsL1[neuron][p][x][y])) / (double) (wMax - wMin)));
-							// Cut off at wMin
-							if (synapseWeightsL1[neuron][p][x][y] < wMin) {
-								synapseWeightsL1[neuron][p][x][y] = wMin;
-							}
-						} // END IF - STDP Rule
-					} // END IF - All synapses
-					// L2
-				}
-			}
+			// One pass over the contiguous block of the neuron and the pixel spike timings of the cluster
+			final float[] w = synapseWeightsL1;
+			final int[] spikeTiming = pixelSpikeTiming[c];
+			final int offset = neuron*synapsesL1;
+			final double wRange = wMax - wMin;
+			for (int i=0; i<synapsesL1; i++) {
+				float wi = w[offset + i];
+				// LTP - Long Term Potentiation
+				if ((ts-spikeTiming[i])<=tLTPL1) {
+					wi = wi + (alphaPlus * (float) Math.exp((-betaPlus * (wi - wMin)) / wRange));
+					// Cut off at wMax
+					if (wi > wMax) {
+						wi = wMax;
+					}
+				} else {
+					// LTD - Long Term Depression
+					wi = wi - (alphaMinus * (float) Math.exp((-betaMinus * (wMax - wi)) / wRange));
+					// Cut off at wMin
+					if (wi < wMin) {
+						wi = wMin;
+					}
+				} // END IF - STDP Rule
+				w[offset + i] = wi;
+			} // END LOOP - All synapses
+		// L2
 		} else if (layer == 1) {
 			for (int nL1=0; nL1<neuronsL1; nL1++) {
 				// LTP - Long Term Potentiation
@@ -796,7 +911,7 @@ public class StdpFeatureLearningV extends RectangularClusterTracker implements O
 						for (int x=0; x<xPixels; x++) {
 							for (int y=0; y<yPixels; y++) {
 								synapseWeightMapL2[nL2][p][x][y] = synapseWeightMapL2[nL2][p][x][y] +
-									(synapseWeightsL1[nL1][p][x][y]*synapseWeightsL2[nL2][nL1]);
+									(synapseWeightsL1[synapseL1(nL1, p, x, y)]*synapseWeightsL2[nL2][nL1]);
 							}
 						}
 					}
@@ -824,24 +939,28 @@ public class StdpFeatureLearningV extends RectangularClusterTracker implements O
 	}
 
 	private void constructClusterMap() {
-		// Clear map
 		for (int c=0; c<numClusters; c++) {
+			// Clear map, or fill it with the 0/0 of the sum below if no neuron fired
+			float clear = numNeuronFire[c] == 0 ? Float.NaN : 0;
 			for (int p=0; p<numPolarities; p++) {
 				for (int x=0; x<xPixels; x++) {
-					for (int y=0; y<yPixels; y++) {
-						clusterWeightMap[c][p][x][y] = 0;
-					}
+					Arrays.fill(clusterWeightMap[c][p][x], clear);
 				}
 			}
-		}
+			if (numNeuronFire[c] == 0) {
+				continue;
+			}
 
-		// Sum all weighted synapse weight matrices
-		for (int c=0; c<numClusters; c++) {
+			// Sum weighted synapse weight matrices of all neurons that fired
 			for (int nL1=0; nL1<neuronsL1; nL1++) {
+				if (neuronFire[c][nL1] == 0) {
+					continue;
+				}
+				int i = nL1*synapsesL1;
 				for (int p=0; p<numPolarities; p++) {
 					for (int x=0; x<xPixels; x++) {
 						for (int y=0; y<yPixels; y++) {
-							clusterWeightMap[c][p][x][y] += (neuronFire[c][nL1]*synapseWeightsL1[nL1][p][x][y])/numNeuronFire[c];
+							clusterWeightMap[c][p][x][y] += (neuronFire[c][nL1]*synapseWeightsL1[i++])/numNeuronFire[c];
 						}
 					}
 				}
@@ -933,8 +1052,8 @@ public class StdpFeatureLearningV extends RectangularClusterTracker implements O
 					for (int x=0; x<xPixels; x++) {
 						for (int y=0; y<yPixels; y++) {
 							// Handle Polarity cases independently, not through a for loop
-							float wOFF = (synapseWeightsL1[n][0][x][y] - wMin) / (wMax - wMin);
-							float wON = (synapseWeightsL1[n][1][x][y] - wMin) / (wMax - wMin);
+							float wOFF = (synapseWeightsL1[synapseL1(n, 0, x, y)] - wMin) / (wMax - wMin);
+							float wON = (synapseWeightsL1[synapseL1(n, 1, x, y)] - wMin) / (wMax - wMin);
 							if (displayCombinedPolarity == true) {
 								gl.glColor3f(wON, 0, wOFF);
 								gl.glRectf(xOffset+x, yOffset+y+yPixels,
@@ -1296,6 +1415,7 @@ public class StdpFeatureLearningV extends RectangularClusterTracker implements O
 	 */
 	@Override
 	public synchronized void cleanup() {
+		shutdownForkJoinPool();
 		if(neuronL1Frame!=null) {
 			neuronL1Frame.dispose();
 		}
@@ -1317,6 +1437,7 @@ public class StdpFeatureLearningV extends RectangularClusterTracker implements O
 		super.setFilterEnabled(yes);
 		if(!isFilterEnabled()) {
 			hideNeuronFrame();
+			shutdownForkJoinPool();
 		}
 	} // END METHOD
 
@@ -1403,7 +1524,7 @@ public class StdpFeatureLearningV extends RectangularClusterTracker implements O
 		for (int p=0; p<numPolarities; p++) {
 			for (int x=0; x<xPixels; x++) {
 				for (int y=0; y<yPixels; y++) {
-					mean += synapseWeightsL1[neuron][p][x][y];
+					mean += synapseWeightsL1[synapseL1(neuron, p, x, y)];
 				}
 			}
 		}
@@ -1422,7 +1543,7 @@ public class StdpFeatureLearningV extends RectangularClusterTracker implements O
 		for (int p=0; p<numPolarities; p++) {
 			for (int x=0; x<xPixels; x++) {
 				for (int y=0; y<yPixels; y++) {
-					var += (mean-synapseWeightsL1[neuron][p][x][y])*(mean-synapseWeightsL1[neuron][p][x][y]);
+					var += (mean-synapseWeightsL1[synapseL1(neuron, p, x, y)])*(mean-synapseWeightsL1[synapseL1(neuron, p, x, y)]);
 				}
 			}
 		}
@@ -1437,12 +1558,12 @@ public class StdpFeatureLearningV extends RectangularClusterTracker implements O
 	 * @return minimum
 	 */
 	public float getNeuronMinWeight(int neuron) {
-		float min = synapseWeightsL1[neuron][0][0][0];
+		float min = synapseWeightsL1[synapseL1(neuron, 0, 0, 0)];
 		for (int p=0; p<numPolarities; p++) {
 			for (int x=0; x<xPixels; x++) {
 				for (int y=0; y<yPixels; y++) {
-					if (min > synapseWeightsL1[neuron][p][x][y]) {
-						min = synapseWeightsL1[neuron][p][x][y];
+					if (min > synapseWeightsL1[synapseL1(neuron, p, x, y)]) {
+						min = synapseWeightsL1[synapseL1(neuron, p, x, y)];
 					}
 				}
 			}
@@ -1457,12 +1578,12 @@ public class StdpFeatureLearningV extends RectangularClusterTracker implements O
 	 * @return maximum
 	 */
 	public float getNeuronMaxWeight(int neuron) {
-		float max = synapseWeightsL1[neuron][0][0][0];
+		float max = synapseWeightsL1[synapseL1(neuron, 0, 0, 0)];
 		for (int p=0; p<numPolarities; p++) {
 			for (int x=0; x<xPixels; x++) {
 				for (int y=0; y<yPixels; y++) {
-					if (max < synapseWeightsL1[neuron][p][x][y]) {
-						max = synapseWeightsL1[neuron][p][x][y];
+					if (max < synapseWeightsL1[synapseL1(neuron, p, x, y)]) {
+						max = synapseWeightsL1[synapseL1(neuron, p, x, y)];
 					}
 				}
 			}
@@ -1856,6 +1977,18 @@ public class StdpFeatureLearningV extends RectangularClusterTracker implements O
 	}
 	// END displayCombinedPolarity
 
+	public boolean isParallelIntegrationEnabled() {
+		return parallelIntegrationEnabled;
+	}
+	synchronized public void setParallelIntegrationEnabled(boolean parallelIntegrationEnabled) {
+		getPrefs().putBoolean("StdpFeatureLearningV.parallelIntegrationEnabled", parallelIntegrationEnabled);
+		this.parallelIntegrationEnabled = parallelIntegrationEnabled;
+		if (!parallelIntegrationEnabled) {
+			shutdownForkJoinPool();
+		}
+	}
+	// END parallelIntegrationEnabled
+
 }
 
 
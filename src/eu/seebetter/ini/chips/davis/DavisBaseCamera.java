@@ -14,7 +14,14 @@ import java.awt.geom.Rectangle2D;
 import java.io.File;
 import java.io.IOException;
 import java.net.URL;
+import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 import java.util.logging.Level;
 
 import javax.swing.AbstractAction;
@@ -43,6 +50,7 @@ import net.sf.jaer.event.ApsDvsEvent;
 import net.sf.jaer.event.ApsDvsEvent.ColorFilter;
 import net.sf.jaer.event.ApsDvsEvent.ReadoutType;
 import net.sf.jaer.event.ApsDvsEventPacket;
+import net.sf.jaer.event.BasicEvent;
 import net.sf.jaer.event.EventPacket;
 import net.sf.jaer.event.OutputEventIterator;
 import net.sf.jaer.event.TypedEvent;
@@ -82,6 +90,42 @@ abstract public class DavisBaseCamera extends DavisChip implements RemoteControl
 
     private int autoshotThresholdEvents = getPrefs().getInt("DavisBaseCamera.autoshotThresholdEvents", 0);
     private boolean showImageHistogram = getPrefs().getBoolean("DavisBaseCamera.showImageHistogram", false);
+    private boolean parallelDecodingEnabled = getPrefs().getBoolean("DavisBaseCamera.parallelDecodingEnabled", false);
+
+    /**
+     * Which kinds of raw events the event extractor turns into events
+     */
+    public enum ExtractionProfile {
+
+        /**
+         * DVS, APS and IMU events, with frame and exposure start and end
+         * events
+         */
+        Full,
+        /**
+         * DVS and IMU events; APS samples are skipped and no frames are
+         * delivered
+         */
+        DvsAndImu,
+        /**
+         * Only DVS events, i.e. polarity events and external input events, in a
+         * tight loop
+         */
+        DvsOnly
+    };
+    private ExtractionProfile extractionProfile = ExtractionProfile.valueOf(getPrefs().get("DavisBaseCamera.extractionProfile",
+            ExtractionProfile.Full.toString()));
+
+    /**
+     * Raw packets with at least this many events are extracted in parallel
+     * when parallel decoding is enabled
+     */
+    protected static final int PARALLEL_DECODING_MIN_EVENTS = 32768;
+    /**
+     * Minimum number of raw events per chunk of parallel decoding
+     */
+    protected static final int PARALLEL_DECODING_MIN_CHUNK_EVENTS = 8192;
+    private static ExecutorService parallelDecodingExecutor = null;
     private float exposureMs;
     protected int exposureDurationUs;
     protected int frameExposureEndTimestampUs; // end of exposureControlRegister (first events of signal read)
@@ -186,6 +230,9 @@ abstract public class DavisBaseCamera extends DavisChip implements RemoteControl
         davisMenu.add(new JMenuItem(new DecreaseFrameRateAction()));
         davisMenu.add(new JSeparator());
         davisMenu.add(new JMenuItem(new ToggleIMU()));
+        davisMenu.add(new JSeparator());
+        davisMenu.add(new JMenuItem(new ToggleParallelDecoding()));
+        davisMenu.add(new JMenuItem(new CycleExtractionProfile()));
         getAeViewer().addMenu(davisMenu);
     }
 
@@ -224,6 +271,72 @@ abstract public class DavisBaseCamera extends DavisChip implements RemoteControl
         }
     }
 
+    /**
+     * Returns whether large raw packets are extracted in parallel.
+     *
+     * @return true if parallel decoding is enabled
+     */
+    public boolean isParallelDecodingEnabled() {
+        return parallelDecodingEnabled;
+    }
+
+    /**
+     * Sets whether raw packets of at least
+     * {@link #PARALLEL_DECODING_MIN_EVENTS} events are extracted by several
+     * threads. The extracted packets are the same as with sequential
+     * extraction.
+     *
+     * @param parallelDecodingEnabled true to enable parallel decoding
+     */
+    public void setParallelDecodingEnabled(final boolean parallelDecodingEnabled) {
+        this.parallelDecodingEnabled = parallelDecodingEnabled;
+        getPrefs().putBoolean("DavisBaseCamera.parallelDecodingEnabled", parallelDecodingEnabled);
+    }
+
+    /**
+     * Returns which kinds of raw events are extracted.
+     *
+     * @return the extraction profile
+     */
+    public ExtractionProfile getExtractionProfile() {
+        return extractionProfile;
+    }
+
+    /**
+     * Sets which kinds of raw events are extracted. The skipped kinds are
+     * still captured if enabled in the camera configuration, but they are
+     * dropped during extraction, which makes extraction faster for pipelines
+     * that do not use them.
+     *
+     * @param extractionProfile the extraction profile
+     */
+    public void setExtractionProfile(final ExtractionProfile extractionProfile) {
+        this.extractionProfile = extractionProfile;
+        getPrefs().put("DavisBaseCamera.extractionProfile", extractionProfile.toString());
+    }
+
+    /**
+     * Returns the pool of daemon threads, one per processor, that is shared by
+     * all cameras for parallel decoding.
+     *
+     * @return the executor
+     */
+    protected static synchronized ExecutorService getParallelDecodingExecutor() {
+        if (parallelDecodingExecutor == null) {
+            parallelDecodingExecutor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), new ThreadFactory() {
+                private int count = 0;
+
+                @Override
+                public Thread newThread(final Runnable r) {
+                    final Thread t = new Thread(r, "DavisParallelDecoder-" + (count++));
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+        }
+        return parallelDecodingExecutor;
+    }
+
     @Override
     public boolean isShowImageHistogram() {
         return showImageHistogram;
@@ -386,6 +499,17 @@ abstract public class DavisBaseCamera extends DavisChip implements RemoteControl
 
         protected int autoshotEventsSinceLastShot = 0; // autoshot counter
 
+        // state of parallel decoding, reused from packet to packet
+        private AEPacketRaw parallelIn;
+        private int parallelSx1;
+        private int[] chunkStarts = new int[0], chunkSpecialCounts = new int[0], chunkOutputStarts = new int[0],
+                chunkPolarityEventCounts = new int[0];
+        private int[] specialIndices = new int[0]; // raw indices of APS and IMU events, by chunk from chunkStarts
+        private int[] specialOutputCounts = new int[0]; // the number of output events of each special event
+        private final ArrayList<ChunkCounter> chunkCounters = new ArrayList<ChunkCounter>();
+        private final ArrayList<ChunkDecoder> chunkDecoders = new ArrayList<ChunkDecoder>();
+        private final PositionedOutputIterator positionedOutputIterator = new PositionedOutputIterator();
+
         public DavisEventExtractor(final DavisBaseCamera chip) {
             super(chip);
         }
@@ -427,153 +551,465 @@ abstract public class DavisBaseCamera extends DavisChip implements RemoteControl
             // The datas array holds the data, which consists of a mixture of AEs and ADC values.
             // Here we extract the datas and leave the timestamps alone.
             // TODO entire rendering / processing approach is not very efficient now
-            for (int i = 0; i < n; i++) { // TODO implement skipBy/subsampling, but without missing the frame start/end
-                // events and still delivering frames
-                final int data = datas[i];
+            final ExtractionProfile profile = getExtractionProfile();
+            final boolean extractAps = profile == ExtractionProfile.Full;
+            if (profile == ExtractionProfile.DvsOnly) {
+                extractDvsOnly(in, sx1);
+            } else if (isParallelDecodingEnabled() && (n >= DavisBaseCamera.PARALLEL_DECODING_MIN_EVENTS) && (incompleteIMUSampleException == null)
+                    && (Runtime.getRuntime().availableProcessors() > 1)) {
+                extractParallel(in, sx1, rollingShutter, extractAps);
+            } else {
+                for (int i = 0; i < n; i++) { // TODO implement skipBy/subsampling, but without missing the frame start/end
+                    // events and still delivering frames
+                    final int data = datas[i];
+
+                    if ((incompleteIMUSampleException != null) || ((DavisChip.ADDRESS_TYPE_IMU & data) == DavisChip.ADDRESS_TYPE_IMU)) {
+                        i = extractImuSample(in, i, outItr);
+                    } // not part of IMU sample follows
+                    else if ((data & DavisChip.ADDRESS_TYPE_MASK) == DavisChip.ADDRESS_TYPE_DVS) {
+                        // DVS event
+                        // imu sample possibly contained here set to null by this method
+                        autoshotEventsSinceLastShot += extractDvsEvent(nextApsDvsEvent(outItr), data, timestamps[i], sx1);
+                    } else if (extractAps && ((data & DavisChip.ADDRESS_TYPE_MASK) == DavisChip.ADDRESS_TYPE_APS)) {
+                        extractApsEvent(data, timestamps[i], rollingShutter, outItr);
+                    }
+                } // loop over raw packet
+            }
 
-                if ((incompleteIMUSampleException != null) || ((DavisChip.ADDRESS_TYPE_IMU & data) == DavisChip.ADDRESS_TYPE_IMU)) {
-                    if (IMUSample.extractSampleTypeCode(data) == 0) { // / only start getting an IMUSample at code 0,
-                        // the first sample type
-                        try {
-                            final IMUSample possibleSample = IMUSample.constructFromAEPacketRaw(in, i, incompleteIMUSampleException);
-                            i += IMUSample.SIZE_EVENTS - 1;
-                            incompleteIMUSampleException = null;
-                            imuSample = possibleSample; // asking for sample from AEChip now gives this value
-                            final ApsDvsEvent imuEvent = new ApsDvsEvent(); // this davis event holds the IMUSample
-                            imuEvent.setTimestamp(imuSample.getTimestampUs());
-                            imuEvent.setImuSample(imuSample);
-                            outItr.writeToNextOutput(imuEvent); // also write the event out to the next output event
-                            // System.out.println("lastImu dt="+(imuSample.timestamp-lastImuTs));
-                            // lastImuTs=imuSample.timestamp;
-                            continue;
-                        } catch (final IMUSample.IncompleteIMUSampleException ex) {
-                            incompleteIMUSampleException = ex;
-                            if ((missedImuSampleCounter++ % DavisEventExtractor.IMU_WARNING_INTERVAL) == 0) {
-                                Chip.log.warning(
-                                        String.format("%s (obtained %d partial samples so far)", ex.toString(), missedImuSampleCounter));
-                            }
-                            break; // break out of loop because this packet only contained part of an IMUSample and
-                            // formed the end of the packet anyhow. Next time we come back here we will complete
-                            // the IMUSample
-                        } catch (final IMUSample.BadIMUDataException ex2) {
-                            if ((badImuDataCounter++ % DavisEventExtractor.IMU_WARNING_INTERVAL) == 0) {
-                                Chip.log.warning(String.format("%s (%d bad samples so far)", ex2.toString(), badImuDataCounter));
-                            }
-                            incompleteIMUSampleException = null;
-                            continue; // continue because there may be other data
-                        }
+            checkAutoshot();
+
+            return out;
+        } // extractPacket
+
+        /**
+         * Takes a snapshot if auto-shot is enabled and enough DVS events have
+         * been extracted since the last one
+         */
+        protected void checkAutoshot() {
+            if ((getAutoshotThresholdEvents() > 0) && (autoshotEventsSinceLastShot > getAutoshotThresholdEvents())) {
+                takeSnapshot();
+                autoshotEventsSinceLastShot = 0;
+            }
+        }
+
+        /**
+         * Returns the number of events allocated by this extractor, which
+         * stops growing once the output packet has reached its working
+         * capacity. IMUSamples are not counted; each one is new, because
+         * consumers may keep it for as long as they like.
+         *
+         * @return the number of events
+         */
+        public long getAllocationCount() {
+            return out == null ? 0 : out.getAllocatedEventCount();
+        }
+
+        /**
+         * Extracts an IMUSample that starts at raw event i, or completes the
+         * IMUSample that was incomplete at the end of the last packet, and
+         * writes an event holding it.
+         *
+         * @param in the raw packet
+         * @param i the index of the raw event
+         * @param outItr the output iterator
+         * @return the index of the last raw event that was consumed, or the
+         * number of raw events if the rest of the packet only holds part of an
+         * IMUSample
+         */
+        protected int extractImuSample(final AEPacketRaw in, int i, final OutputEventIterator outItr) {
+            if (IMUSample.extractSampleTypeCode(in.getAddresses()[i]) == 0) { // / only start getting an IMUSample at code 0,
+                // the first sample type
+                try {
+                    final IMUSample possibleSample = IMUSample.constructFromAEPacketRaw(in, i, incompleteIMUSampleException);
+                    i += IMUSample.SIZE_EVENTS - 1;
+                    incompleteIMUSampleException = null;
+                    imuSample = possibleSample; // asking for sample from AEChip now gives this value
+                    final ApsDvsEvent imuEvent = nextApsDvsEvent(outItr); // this davis event holds the IMUSample
+                    imuEvent.setTimestamp(imuSample.getTimestampUs());
+                    imuEvent.setImuSample(imuSample);
+                    // System.out.println("lastImu dt="+(imuSample.timestamp-lastImuTs));
+                    // lastImuTs=imuSample.timestamp;
+                } catch (final IMUSample.IncompleteIMUSampleException ex) {
+                    incompleteIMUSampleException = ex;
+                    if ((missedImuSampleCounter++ % DavisEventExtractor.IMU_WARNING_INTERVAL) == 0) {
+                        Chip.log.warning(
+                                String.format("%s (obtained %d partial samples so far)", ex.toString(), missedImuSampleCounter));
                     }
+                    return in.getNumEvents(); // stop extracting because this packet only contained part of an IMUSample and
+                    // formed the end of the packet anyhow. Next time we come back here we will complete
+                    // the IMUSample
+                } catch (final IMUSample.BadIMUDataException ex2) {
+                    if ((badImuDataCounter++ % DavisEventExtractor.IMU_WARNING_INTERVAL) == 0) {
+                        Chip.log.warning(String.format("%s (%d bad samples so far)", ex2.toString(), badImuDataCounter));
+                    }
+                    incompleteIMUSampleException = null;
+                    // continue because there may be other data
+                }
+            }
+            return i;
+        }
 
-                } // not part of IMU sample follows
-                else if ((data & DavisChip.ADDRESS_TYPE_MASK) == DavisChip.ADDRESS_TYPE_DVS) {
-                    // DVS event
-                    final ApsDvsEvent e = nextApsDvsEvent(outItr); // imu sample possibly contained here set to null by
-                    // this method
-                    if ((data & DavisChip.EXTERNAL_INPUT_EVENT_ADDR) != 0) { // tobi changed to detect just bit set to transmit rising falling and pulse events
-//                    if ((data & DavisChip.EVENT_TYPE_MASK) == DavisChip.EXTERNAL_INPUT_EVENT_ADDR) {
-                        e.setReadoutType(ReadoutType.DVS);
-                        e.setSpecial(true);
-
-                        e.address = data;
-                        e.timestamp = (timestamps[i]);
-                    } else {
-                        e.setReadoutType(ReadoutType.DVS);
+        /**
+         * Extracts only the DVS events, skipping APS and IMU data, into the
+         * output packet, which is first made large enough for all raw events.
+         *
+         * @param in the raw packet
+         * @param sx1 the chip width minus one
+         */
+        protected void extractDvsOnly(final AEPacketRaw in, final int sx1) {
+            final int n = in.getNumEvents();
+            final int[] datas = in.getAddresses();
+            final int[] timestamps = in.getTimestamps();
+            incompleteIMUSampleException = null; // an IMUSample started before would be completed by wrong data later
+            out.allocate(n);
+            final BasicEvent[] elements = out.elementData;
+            int k = 0, polarityEvents = 0;
+            for (int i = 0; i < n; i++) {
+                final int data = datas[i];
+                if ((data & DavisChip.ADDRESS_TYPE_MASK) == DavisChip.ADDRESS_TYPE_DVS) {
+                    final ApsDvsEvent e = (ApsDvsEvent) elements[k++];
+                    e.reset();
+                    polarityEvents += extractDvsEvent(e, data, timestamps[i], sx1);
+                }
+            }
+            out.setSize(k);
+            autoshotEventsSinceLastShot += polarityEvents;
+        }
 
-                        e.address = data;
-                        e.timestamp = (timestamps[i]);
-                        e.polarity = (data & DavisChip.POLMASK) == DavisChip.POLMASK ? ApsDvsEvent.Polarity.On : ApsDvsEvent.Polarity.Off;
-                        e.type = (byte) ((data & DavisChip.POLMASK) == DavisChip.POLMASK ? 1 : 0);
-                        e.x = (short) (sx1 - ((data & DavisChip.XMASK) >>> DavisChip.XSHIFT));
-                        e.y = (short) ((data & DavisChip.YMASK) >>> DavisChip.YSHIFT);
+        /**
+         * Fills in a DVS event from its raw address.
+         *
+         * @param e the event, which has been reset
+         * @param data the raw address
+         * @param timestamp the timestamp
+         * @param sx1 the chip width minus one
+         * @return 1 if the event is a polarity event, 0 if it is an external
+         * input event
+         */
+        protected int extractDvsEvent(final ApsDvsEvent e, final int data, final int timestamp, final int sx1) {
+            e.setReadoutType(ReadoutType.DVS);
+            if ((data & DavisChip.EXTERNAL_INPUT_EVENT_ADDR) != 0) { // tobi changed to detect just bit set to transmit rising falling and pulse events
+//            if ((data & DavisChip.EVENT_TYPE_MASK) == DavisChip.EXTERNAL_INPUT_EVENT_ADDR) {
+                e.setSpecial(true); // before setting address, which setSpecial changes
+                e.address = data;
+                e.timestamp = timestamp;
+                return 0;
+            }
+            e.address = data;
+            e.timestamp = timestamp;
+            e.polarity = (data & DavisChip.POLMASK) == DavisChip.POLMASK ? ApsDvsEvent.Polarity.On : ApsDvsEvent.Polarity.Off;
+            e.type = (byte) ((data & DavisChip.POLMASK) == DavisChip.POLMASK ? 1 : 0);
+            e.x = (short) (sx1 - ((data & DavisChip.XMASK) >>> DavisChip.XSHIFT));
+            e.y = (short) ((data & DavisChip.YMASK) >>> DavisChip.YSHIFT);
+            return 1; // number DVS events captured here for autoshot triggering
+        }
 
-                        // autoshot triggering
-                        autoshotEventsSinceLastShot++; // number DVS events captured here
+        /**
+         * Extracts an APS event, preceded or followed by the frame and exposure
+         * start and end flag events that it marks.
+         *
+         * @param data the raw address
+         * @param timestamp the timestamp
+         * @param rollingShutter true if the camera uses rolling shutter
+         * @param outItr the output iterator
+         */
+        protected void extractApsEvent(final int data, final int timestamp, final boolean rollingShutter, final OutputEventIterator outItr) {
+            // APS event
+            // We first calculate the positions, so we can put events such as StartOfFrame at their
+            // right place, before the actual APS event denoting (0, 0) for example.
+            final short x = (short) (((data & DavisChip.XMASK) >>> DavisChip.XSHIFT));
+            final short y = (short) ((data & DavisChip.YMASK) >>> DavisChip.YSHIFT);
+
+            final boolean pixFirst = firstFrameAddress(x, y); // First event of frame (addresses get flipped)
+            final boolean pixLast = lastFrameAddress(x, y); // Last event of frame (addresses get flipped)
+
+            ApsDvsEvent.ReadoutType readoutType = ApsDvsEvent.ReadoutType.Null;
+
+            switch ((data & DavisChip.ADC_READCYCLE_MASK) >> DavisChip.ADC_NUMBER_OF_TRAILING_ZEROS) {
+                case 0:
+                    readoutType = ApsDvsEvent.ReadoutType.ResetRead;
+                    break;
+
+                case 1:
+                    readoutType = ApsDvsEvent.ReadoutType.SignalRead;
+                    break;
+
+                case 3:
+                    Chip.log.warning("Event with readout cycle null was sent out!");
+                    break;
+
+                default:
+                    if ((warningCount < 10) || ((warningCount % DavisEventExtractor.WARNING_COUNT_DIVIDER) == 0)) {
+                        Chip.log.warning(
+                                "Event with unknown readout cycle was sent out! You might be reading a file that had the deprecated C readout mode enabled.");
                     }
-                } else if ((data & DavisChip.ADDRESS_TYPE_MASK) == DavisChip.ADDRESS_TYPE_APS) {
-                    // APS event
-                    // We first calculate the positions, so we can put events such as StartOfFrame at their
-                    // right place, before the actual APS event denoting (0, 0) for example.
-                    final int timestamp = timestamps[i];
+                    warningCount++;
+                    break;
+            }
 
-                    final short x = (short) (((data & DavisChip.XMASK) >>> DavisChip.XSHIFT));
-                    final short y = (short) ((data & DavisChip.YMASK) >>> DavisChip.YSHIFT);
+            if (pixFirst && (readoutType == ApsDvsEvent.ReadoutType.ResetRead)) {
+                createApsFlagEvent(outItr, ApsDvsEvent.ReadoutType.SOF, timestamp);
 
-                    final boolean pixFirst = firstFrameAddress(x, y); // First event of frame (addresses get flipped)
-                    final boolean pixLast = lastFrameAddress(x, y); // Last event of frame (addresses get flipped)
+                if (rollingShutter) {
+                    // rolling shutter start of exposure (SOE)
+                    createApsFlagEvent(outItr, ApsDvsEvent.ReadoutType.SOE, timestamp);
+                    frameIntervalUs = timestamp - frameExposureStartTimestampUs;
+                    frameExposureStartTimestampUs = timestamp;
+                }
+            }
 
-                    ApsDvsEvent.ReadoutType readoutType = ApsDvsEvent.ReadoutType.Null;
+            if (pixLast && (readoutType == ApsDvsEvent.ReadoutType.ResetRead) && !rollingShutter) {
+                // global shutter start of exposure (SOE)
+                createApsFlagEvent(outItr, ApsDvsEvent.ReadoutType.SOE, timestamp);
+                frameIntervalUs = timestamp - frameExposureStartTimestampUs;
+                frameExposureStartTimestampUs = timestamp;
+            }
 
-                    switch ((data & DavisChip.ADC_READCYCLE_MASK) >> DavisChip.ADC_NUMBER_OF_TRAILING_ZEROS) {
-                        case 0:
-                            readoutType = ApsDvsEvent.ReadoutType.ResetRead;
-                            break;
+            final ApsDvsEvent e = nextApsDvsEvent(outItr);
+            e.setReadoutType(readoutType);
+            e.setAdcSample(data & DavisChip.ADC_DATA_MASK);
+            e.address = data;
+            e.timestamp = timestamp;
+            e.type = (byte) (2);
+            e.x = x;
+            e.y = y;
+
+            // end of exposure, same for both
+            if (pixFirst && (readoutType == ApsDvsEvent.ReadoutType.SignalRead)) {
+                createApsFlagEvent(outItr, ApsDvsEvent.ReadoutType.EOE, timestamp);
+                frameExposureEndTimestampUs = timestamp;
+                exposureDurationUs = timestamp - frameExposureStartTimestampUs;
+            }
 
-                        case 1:
-                            readoutType = ApsDvsEvent.ReadoutType.SignalRead;
-                            break;
+            if (pixLast && (readoutType == ApsDvsEvent.ReadoutType.SignalRead)) {
+                createApsFlagEvent(outItr, ApsDvsEvent.ReadoutType.EOF, timestamp);
 
-                        case 3:
-                            Chip.log.warning("Event with readout cycle null was sent out!");
-                            break;
+                increaseFrameCount(1);
+            }
+        }
 
-                        default:
-                            if ((warningCount < 10) || ((warningCount % DavisEventExtractor.WARNING_COUNT_DIVIDER) == 0)) {
-                                Chip.log.warning(
-                                        "Event with unknown readout cycle was sent out! You might be reading a file that had the deprecated C readout mode enabled.");
-                            }
-                            warningCount++;
-                            break;
+        /**
+         * Extracts the packet in chunks. The DVS events, which need no state,
+         * are extracted by the threads of
+         * {@link DavisBaseCamera#getParallelDecodingExecutor() } straight into
+         * their places in the output packet. The APS and IMU events, which
+         * change the frame and IMU state, are extracted in order by the calling
+         * thread. Since the special events are found and placed first, chunks
+         * can split the packet anywhere, and the output is the same as that of
+         * the sequential extraction.
+         *
+         * @param in the raw packet
+         * @param sx1 the chip width minus one
+         * @param rollingShutter true if the camera uses rolling shutter
+         * @param extractAps false to skip APS events
+         */
+        protected void extractParallel(final AEPacketRaw in, final int sx1, final boolean rollingShutter, final boolean extractAps) {
+            final int n = in.getNumEvents();
+            final int[] datas = in.getAddresses();
+            final int[] timestamps = in.getTimestamps();
+            final int numChunks = Math.max(1,
+                    Math.min(4 * Runtime.getRuntime().availableProcessors(), n / DavisBaseCamera.PARALLEL_DECODING_MIN_CHUNK_EVENTS));
+            prepareChunks(n, numChunks);
+            parallelIn = in;
+            parallelSx1 = sx1;
+
+            // find the special events of each chunk
+            runChunks(chunkCounters, numChunks);
+
+            // extract the special events in order, leaving room for the DVS events before each of them
+            out.allocate(n);
+            final PositionedOutputIterator pit = positionedOutputIterator;
+            int dvsEventsBefore = 0, specialOutputsBefore = 0, lastConsumed = -1;
+            for (int c = 0; c < numChunks; c++) {
+                final int s = chunkStarts[c];
+                final int ns = chunkSpecialCounts[c];
+                chunkOutputStarts[c] = dvsEventsBefore + specialOutputsBefore;
+                for (int k = 0; k < ns; k++) {
+                    final int i = specialIndices[s + k];
+                    if (i <= lastConsumed) { // part of IMUSample
+                        specialOutputCounts[s + k] = 0;
+                        continue;
+                    }
+                    final int start = dvsEventsBefore + (i - s - k) + specialOutputsBefore;
+                    pit.position = start;
+                    final int data = datas[i];
+                    if ((DavisChip.ADDRESS_TYPE_IMU & data) == DavisChip.ADDRESS_TYPE_IMU) {
+                        lastConsumed = extractImuSample(in, i, pit);
+                    } else if (extractAps) {
+                        extractApsEvent(data, timestamps[i], rollingShutter, pit);
                     }
+                    specialOutputCounts[s + k] = pit.position - start;
+                    specialOutputsBefore += pit.position - start;
+                }
+                dvsEventsBefore += (chunkStarts[c + 1] - s) - ns;
+            }
+            final int size = dvsEventsBefore + specialOutputsBefore;
+            pit.ensureCapacity(size);
+
+            // extract the DVS events into the places that are left
+            runChunks(chunkDecoders, numChunks);
+            out.setSize(size);
+            for (int c = 0; c < numChunks; c++) {
+                autoshotEventsSinceLastShot += chunkPolarityEventCounts[c];
+            }
+            parallelIn = null;
+        }
 
-                    if (pixFirst && (readoutType == ApsDvsEvent.ReadoutType.ResetRead)) {
-                        createApsFlagEvent(outItr, ApsDvsEvent.ReadoutType.SOF, timestamp);
+        private void prepareChunks(final int n, final int numChunks) {
+            if (specialIndices.length < n) {
+                specialIndices = new int[n];
+                specialOutputCounts = new int[n];
+            }
+            if (chunkSpecialCounts.length < numChunks) {
+                chunkStarts = new int[numChunks + 1];
+                chunkSpecialCounts = new int[numChunks];
+                chunkOutputStarts = new int[numChunks];
+                chunkPolarityEventCounts = new int[numChunks];
+            }
+            while (chunkCounters.size() < numChunks) {
+                chunkCounters.add(new ChunkCounter(chunkCounters.size()));
+                chunkDecoders.add(new ChunkDecoder(chunkDecoders.size()));
+            }
+            for (int c = 0; c <= numChunks; c++) {
+                chunkStarts[c] = (int) (((long) n * c) / numChunks);
+            }
+        }
 
-                        if (rollingShutter) {
-                            // rolling shutter start of exposure (SOE)
-                            createApsFlagEvent(outItr, ApsDvsEvent.ReadoutType.SOE, timestamp);
-                            frameIntervalUs = timestamp - frameExposureStartTimestampUs;
-                            frameExposureStartTimestampUs = timestamp;
+        /**
+         * Runs the first numChunks tasks, the first one in the calling thread
+         * and the others in the executor, and waits for all of them. The wait
+         * is not interrupted, because the tasks share the output arrays;
+         * an interrupt is reasserted when all tasks are done.
+         */
+        private void runChunks(final ArrayList<? extends Callable<Void>> tasks, final int numChunks) {
+            final ExecutorService executor = DavisBaseCamera.getParallelDecodingExecutor();
+            final ArrayList<Future<Void>> futures = new ArrayList<Future<Void>>(numChunks);
+            for (int c = 1; c < numChunks; c++) {
+                futures.add(executor.submit(tasks.get(c)));
+            }
+            Throwable failure = null;
+            try {
+                tasks.get(0).call();
+            } catch (final Exception e) {
+                failure = e;
+            }
+            boolean interrupted = false;
+            for (final Future<Void> f : futures) {
+                while (true) {
+                    try {
+                        f.get();
+                        break;
+                    } catch (final InterruptedException e) {
+                        interrupted = true; // keep waiting, the task is still writing to the packet
+                    } catch (final ExecutionException e) {
+                        if (failure == null) {
+                            failure = e.getCause();
                         }
+                        break;
                     }
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+            if (failure != null) {
+                throw new RuntimeException(failure);
+            }
+        }
 
-                    if (pixLast && (readoutType == ApsDvsEvent.ReadoutType.ResetRead) && !rollingShutter) {
-                        // global shutter start of exposure (SOE)
-                        createApsFlagEvent(outItr, ApsDvsEvent.ReadoutType.SOE, timestamp);
-                        frameIntervalUs = timestamp - frameExposureStartTimestampUs;
-                        frameExposureStartTimestampUs = timestamp;
-                    }
+        /**
+         * Collects the raw indices of the special (APS and IMU) events of a
+         * chunk
+         */
+        private final class ChunkCounter implements Callable<Void> {
 
-                    final ApsDvsEvent e = nextApsDvsEvent(outItr);
-                    e.setReadoutType(readoutType);
-                    e.setAdcSample(data & DavisChip.ADC_DATA_MASK);
-                    e.address = data;
-                    e.timestamp = timestamp;
-                    e.type = (byte) (2);
-                    e.x = x;
-                    e.y = y;
+            private final int chunk;
 
-                    // end of exposure, same for both
-                    if (pixFirst && (readoutType == ApsDvsEvent.ReadoutType.SignalRead)) {
-                        createApsFlagEvent(outItr, ApsDvsEvent.ReadoutType.EOE, timestamp);
-                        frameExposureEndTimestampUs = timestamp;
-                        exposureDurationUs = timestamp - frameExposureStartTimestampUs;
+            ChunkCounter(final int chunk) {
+                this.chunk = chunk;
+            }
+
+            @Override
+            public Void call() {
+                final int[] datas = parallelIn.getAddresses();
+                final int s = chunkStarts[chunk], e = chunkStarts[chunk + 1];
+                int k = s;
+                for (int i = s; i < e; i++) {
+                    if ((datas[i] & DavisChip.ADDRESS_TYPE_MASK) != DavisChip.ADDRESS_TYPE_DVS) {
+                        specialIndices[k++] = i;
                     }
+                }
+                chunkSpecialCounts[chunk] = k - s;
+                return null;
+            }
+        }
+
+        /**
+         * Extracts the DVS events of a chunk, skipping the output events of the
+         * special events
+         */
+        private final class ChunkDecoder implements Callable<Void> {
 
-                    if (pixLast && (readoutType == ApsDvsEvent.ReadoutType.SignalRead)) {
-                        createApsFlagEvent(outItr, ApsDvsEvent.ReadoutType.EOF, timestamp);
+            private final int chunk;
+
+            ChunkDecoder(final int chunk) {
+                this.chunk = chunk;
+            }
 
-                        increaseFrameCount(1);
+            @Override
+            public Void call() {
+                final int[] datas = parallelIn.getAddresses();
+                final int[] timestamps = parallelIn.getTimestamps();
+                final BasicEvent[] elements = out.elementData;
+                final int sx1 = parallelSx1;
+                final int s = chunkStarts[chunk], e = chunkStarts[chunk + 1];
+                int pos = chunkOutputStarts[chunk], k = s, polarityEvents = 0;
+                for (int i = s; i < e; i++) {
+                    final int data = datas[i];
+                    if ((data & DavisChip.ADDRESS_TYPE_MASK) == DavisChip.ADDRESS_TYPE_DVS) {
+                        final ApsDvsEvent ev = (ApsDvsEvent) elements[pos++];
+                        ev.reset();
+                        polarityEvents += extractDvsEvent(ev, data, timestamps[i], sx1);
+                    } else {
+                        pos += specialOutputCounts[k++];
                     }
                 }
-            } // loop over raw packet
+                chunkPolarityEventCounts[chunk] = polarityEvents;
+                return null;
+            }
+        }
 
-            if ((getAutoshotThresholdEvents() > 0) && (autoshotEventsSinceLastShot > getAutoshotThresholdEvents())) {
-                takeSnapshot();
-                autoshotEventsSinceLastShot = 0;
+        /**
+         * Writes output events at a settable position of the output packet,
+         * enlarging the packet as needed, without changing its size.
+         */
+        private final class PositionedOutputIterator implements OutputEventIterator {
+
+            int position = 0;
+
+            void ensureCapacity(final int n) {
+                final int capacity = out.elementData.length;
+                if (n > capacity) {
+                    out.setSize(capacity); // so that all present events are retained
+                    out.allocate(Math.max(n, 2 * capacity));
+                }
             }
 
-            return out;
-        } // extractPacket
+            @Override
+            public BasicEvent nextOutput() {
+                ensureCapacity(position + 1);
+                final BasicEvent e = out.elementData[position++];
+                e.setFilteredOut(false);
+                return e;
+            }
+
+            @Override
+            public void writeToNextOutput(final BasicEvent event) {
+                ensureCapacity(position + 1);
+                event.setFilteredOut(false);
+                out.elementData[position++] = event;
+            }
+        }
 
         protected ApsDvsEvent nextApsDvsEvent(final OutputEventIterator outItr) {
             final ApsDvsEvent e = (ApsDvsEvent) outItr.nextOutput();
@@ -732,91 +1168,23 @@ abstract public class DavisBaseCamera extends DavisChip implements RemoteControl
             // The datas array holds the data, which consists of a mixture of AEs and ADC values.
             // Here we extract the datas and leave the timestamps alone.
             // TODO entire rendering / processing approach is not very efficient now
+            final ExtractionProfile profile = getExtractionProfile();
+            if (profile == ExtractionProfile.DvsOnly) {
+                extractDvsOnly(in, sx1);
+                checkAutoshot();
+                return out;
+            }
+            final boolean extractAps = profile == ExtractionProfile.Full;
             for (int i = 0; i < n; i++) { // TODO implement skipBy/subsampling, but without missing the frame start/end
                 // events and still delivering frames
                 final int data = datas[i];
 
                 if ((incompleteIMUSampleException != null) || ((DavisChip.ADDRESS_TYPE_IMU & data) == DavisChip.ADDRESS_TYPE_IMU)) {
-                    if (IMUSample.extractSampleTypeCode(data) == 0) { // / only start getting an IMUSample at code 0,
-                        // the first sample type
-                        try {
-                            final IMUSample possibleSample = IMUSample.constructFromAEPacketRaw(in, i, incompleteIMUSampleException);
-                            i += IMUSample.SIZE_EVENTS - 1;
-                            incompleteIMUSampleException = null;
-                            imuSample = possibleSample; // asking for sample from AEChip now gives this value
-                            final ApsDvsEvent imuEvent = new ApsDvsEvent(); // this davis event holds the IMUSample
-                            imuEvent.setTimestamp(imuSample.getTimestampUs());
-                            imuEvent.setImuSample(imuSample);
-                            outItr.writeToNextOutput(imuEvent); // also write the event out to the next output event
-                            // System.out.println("lastImu dt="+(imuSample.timestamp-lastImuTs));
-                            // lastImuTs=imuSample.timestamp;
-                            continue;
-                        } catch (final IMUSample.IncompleteIMUSampleException ex) {
-                            incompleteIMUSampleException = ex;
-                            if ((missedImuSampleCounter++ % DavisEventExtractor.IMU_WARNING_INTERVAL) == 0) {
-                                Chip.log.warning(
-                                        String.format("%s (obtained %d partial samples so far)", ex.toString(), missedImuSampleCounter));
-                            }
-                            break; // break out of loop because this packet only contained part of an IMUSample and
-                            // formed the end of the packet anyhow. Next time we come back here we will complete
-                            // the IMUSample
-                        } catch (final IMUSample.BadIMUDataException ex2) {
-                            if ((badImuDataCounter++ % DavisEventExtractor.IMU_WARNING_INTERVAL) == 0) {
-                                Chip.log.warning(String.format("%s (%d bad samples so far)", ex2.toString(), badImuDataCounter));
-                            }
-                            incompleteIMUSampleException = null;
-                            continue; // continue because there may be other data
-                        }
-                    }
-
+                    i = extractImuSample(in, i, outItr);
                 } else if ((data & DavisChip.ADDRESS_TYPE_MASK) == DavisChip.ADDRESS_TYPE_DVS) {
                     // DVS event
-                    final ApsDvsEvent e = nextApsDvsEvent(outItr);
-
-                    if ((data & DavisChip.EVENT_TYPE_MASK) == DavisChip.EXTERNAL_INPUT_EVENT_ADDR) {
-                        e.setReadoutType(ReadoutType.DVS);
-                        e.setSpecial(true);
-
-                        e.address = data;
-                        e.timestamp = (timestamps[i]);
-                    } else {
-                        e.setReadoutType(ReadoutType.DVS);
-
-                        e.address = data;
-                        e.timestamp = (timestamps[i]);
-                        e.polarity = (data & DavisChip.POLMASK) == DavisChip.POLMASK ? ApsDvsEvent.Polarity.On : ApsDvsEvent.Polarity.Off;
-                        e.type = (byte) ((data & DavisChip.POLMASK) == DavisChip.POLMASK ? 1 : 0);
-                        e.x = (short) (sx1 - ((data & DavisChip.XMASK) >>> DavisChip.XSHIFT));
-                        e.y = (short) ((data & DavisChip.YMASK) >>> DavisChip.YSHIFT);
-
-                        if (isDVSQuarterOfAPS) {
-                            e.x *= 2;
-                            e.y *= 2;
-                        }
-
-                        // DVS COLOR SUPPORT.
-                        if (isDVSColorFilter) {
-                            if ((e.y % 2) == 0) {
-                                if ((e.x % 2) == 0) {
-                                    // Lower left.
-                                    e.setColorFilter(colorFilterSequence[0]);
-                                } else {
-                                    // Lower right.
-                                    e.setColorFilter(colorFilterSequence[1]);
-                                }
-                            } else if ((e.x % 2) == 0) {
-                                // Upper left.
-                                e.setColorFilter(colorFilterSequence[3]);
-                            } else {
-                                // Upper right.
-                                e.setColorFilter(colorFilterSequence[2]);
-                            }
-                        }
-
-                        // autoshot triggering
-                        autoshotEventsSinceLastShot++; // number DVS events captured here
-                    }
-                } else if ((data & DavisChip.ADDRESS_TYPE_MASK) == DavisChip.ADDRESS_TYPE_APS) {
+                    autoshotEventsSinceLastShot += extractDvsEvent(nextApsDvsEvent(outItr), data, timestamps[i], sx1);
+                } else if (extractAps && ((data & DavisChip.ADDRESS_TYPE_MASK) == DavisChip.ADDRESS_TYPE_APS)) {
                     // APS event
                     // We first calculate the positions, so we can put events such as StartOfFrame at their
                     // right place, before the actual APS event denoting (0, 0) for example.
@@ -956,14 +1324,53 @@ abstract public class DavisBaseCamera extends DavisChip implements RemoteControl
                 }
             }
 
-            if ((getAutoshotThresholdEvents() > 0) && (autoshotEventsSinceLastShot > getAutoshotThresholdEvents())) {
-                takeSnapshot();
-                autoshotEventsSinceLastShot = 0;
-            }
+            checkAutoshot();
 
             return out;
         } // extractPacket
 
+        @Override
+        protected int extractDvsEvent(final ApsDvsEvent e, final int data, final int timestamp, final int sx1) {
+            e.setReadoutType(ReadoutType.DVS);
+            if ((data & DavisChip.EVENT_TYPE_MASK) == DavisChip.EXTERNAL_INPUT_EVENT_ADDR) {
+                e.setSpecial(true);
+                e.address = data;
+                e.timestamp = timestamp;
+                return 0;
+            }
+            e.address = data;
+            e.timestamp = timestamp;
+            e.polarity = (data & DavisChip.POLMASK) == DavisChip.POLMASK ? ApsDvsEvent.Polarity.On : ApsDvsEvent.Polarity.Off;
+            e.type = (byte) ((data & DavisChip.POLMASK) == DavisChip.POLMASK ? 1 : 0);
+            e.x = (short) (sx1 - ((data & DavisChip.XMASK) >>> DavisChip.XSHIFT));
+            e.y = (short) ((data & DavisChip.YMASK) >>> DavisChip.YSHIFT);
+
+            if (isDVSQuarterOfAPS) {
+                e.x *= 2;
+                e.y *= 2;
+            }
+
+            // DVS COLOR SUPPORT.
+            if (isDVSColorFilter) {
+                if ((e.y % 2) == 0) {
+                    if ((e.x % 2) == 0) {
+                        // Lower left.
+                        e.setColorFilter(colorFilterSequence[0]);
+                    } else {
+                        // Lower right.
+                        e.setColorFilter(colorFilterSequence[1]);
+                    }
+                } else if ((e.x % 2) == 0) {
+                    // Upper left.
+                    e.setColorFilter(colorFilterSequence[3]);
+                } else {
+                    // Upper right.
+                    e.setColorFilter(colorFilterSequence[2]);
+                }
+            }
+            return 1; // number DVS events captured here for autoshot triggering
+        }
+
         /**
          * To handle filtered ApsDvsEvents, this method rewrites the fields of
          * the raw address encoding x and y addresses to reflect the event's x
@@ -1623,4 +2030,37 @@ abstract public class DavisBaseCamera extends DavisChip implements RemoteControl
         }
     }
 
+    final public class ToggleParallelDecoding extends DavisMenuAction {
+
+        public ToggleParallelDecoding() {
+            super("Toggle parallel decoding",
+                    "<html>Toggles whether large raw packets are extracted by several threads<p>Useful at high event rates; the extracted events are the same",
+                    "ToggleParallelDecoding");
+        }
+
+        @Override
+        public void actionPerformed(ActionEvent e) {
+            setParallelDecodingEnabled(!isParallelDecodingEnabled());
+            davisDisplayMethod.showStatusChangeText("parallel decoding = " + isParallelDecodingEnabled());
+            putValue(Action.SELECTED_KEY, true);
+        }
+    }
+
+    final public class CycleExtractionProfile extends DavisMenuAction {
+
+        public CycleExtractionProfile() {
+            super("Cycle extraction profile",
+                    "<html>Cycles which events are extracted: all of them, DVS and IMU events, or only DVS events<p>Skipping APS and IMU extraction makes pure DVS processing faster",
+                    "CycleExtractionProfile");
+        }
+
+        @Override
+        public void actionPerformed(ActionEvent e) {
+            final ExtractionProfile[] profiles = ExtractionProfile.values();
+            setExtractionProfile(profiles[(getExtractionProfile().ordinal() + 1) % profiles.length]);
+            davisDisplayMethod.showStatusChangeText("extraction profile = " + getExtractionProfile());
+            putValue(Action.SELECTED_KEY, true);
+        }
+    }
+
 }
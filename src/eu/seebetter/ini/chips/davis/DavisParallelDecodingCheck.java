@@ -0,0 +1,300 @@
+/*
+ * DavisParallelDecodingCheck.java
+ *
+ * Created on October 18, 2026
+ */
+package eu.seebetter.ini.chips.davis;
+
+import java.awt.Point;
+import java.lang.reflect.Constructor;
+import java.util.Random;
+
+import eu.seebetter.ini.chips.DavisChip;
+import eu.seebetter.ini.chips.davis.imu.IMUSample;
+import eu.seebetter.ini.chips.davis.imu.IMUSampleType;
+import net.sf.jaer.aemonitor.AEPacketRaw;
+import net.sf.jaer.event.ApsDvsEvent;
+import net.sf.jaer.event.EventPacket;
+
+/**
+ * Checks that the parallel decoding of {@link DavisBaseCamera} extracts the
+ * same events as the sequential decoding. Two cameras, one with parallel
+ * decoding enabled and one without, extract the same synthetic raw packets of
+ * DVS events, APS frames and IMU samples, in rolling and global shutter mode,
+ * and every field of every extracted event is compared. IMU samples are
+ * placed across the chunk boundaries of the parallel decoding and across
+ * packet boundaries, and some IMU samples are incomplete.
+ * <p>
+ * Parallel decoding needs more than one processor:
+ * <pre>
+ * java -Djava.awt.headless=true eu.seebetter.ini.chips.davis.DavisParallelDecodingCheck [chipclass] [numpackets]
+ * </pre> The exit status is 0 if the packets are equal and 1 if they differ.
+ */
+public class DavisParallelDecodingCheck {
+
+    /**
+     * Default chip class
+     */
+    public static final String DEFAULT_CHIP_CLASS = "eu.seebetter.ini.chips.davis.DAVIS240C";
+    /**
+     * Default number of raw packets per shutter mode
+     */
+    public static final int DEFAULT_NUM_PACKETS = 60;
+    private static final int MAX_REPORTED_DIFFERENCES = 20;
+
+    private final DavisBaseCamera sequential, parallel;
+    private int differences = 0;
+
+    /**
+     * Creates the check for two new instances of a chip class
+     *
+     * @param chipClass the chip class, which must extend DavisBaseCamera
+     * @throws Exception if the chips cannot be constructed
+     */
+    public DavisParallelDecodingCheck(Class<? extends DavisBaseCamera> chipClass) throws Exception {
+        final Constructor<? extends DavisBaseCamera> constructor = chipClass.getConstructor();
+        sequential = constructor.newInstance();
+        parallel = constructor.newInstance();
+    }
+
+    /**
+     * Extracts numPackets raw packets with both chips and compares the
+     * extracted events
+     *
+     * @param globalShutter true for global shutter, false for rolling shutter
+     * @param numPackets the number of raw packets
+     * @param seed the seed of the random stream
+     * @return the number of packets that were large enough for parallel
+     * decoding
+     */
+    public int check(boolean globalShutter, int numPackets, long seed) {
+        sequential.getDavisConfig().setGlobalShutter(globalShutter);
+        parallel.getDavisConfig().setGlobalShutter(globalShutter);
+        sequential.setParallelDecodingEnabled(false);
+        parallel.setParallelDecodingEnabled(true);
+        final RawStream stream = new RawStream(sequential, seed);
+        int largePackets = 0;
+        for (int p = 0; p < numPackets; p++) {
+            final AEPacketRaw raw = stream.nextPacket((p % 7) == 3);
+            final EventPacket<?> seqOut = sequential.getEventExtractor().extractPacket(raw);
+            final int seqSize = seqOut.getSize();
+            final ApsDvsEvent[] seqEvents = new ApsDvsEvent[seqSize]; // copies, the extractors may share event objects
+            for (int i = 0; i < seqSize; i++) {
+                seqEvents[i] = new ApsDvsEvent();
+                seqEvents[i].copyFrom((ApsDvsEvent) seqOut.getEvent(i));
+            }
+            final EventPacket<?> parOut = parallel.getEventExtractor().extractPacket(raw);
+            if (raw.getNumEvents() >= DavisBaseCamera.PARALLEL_DECODING_MIN_EVENTS) {
+                largePackets++;
+            }
+            final String where = (globalShutter ? "global" : "rolling") + " shutter packet " + p;
+            if (parOut.getSize() != seqSize) {
+                report(where + ": sequential size " + seqSize + ", parallel size " + parOut.getSize());
+                continue;
+            }
+            for (int i = 0; i < seqSize; i++) {
+                final String d = difference(seqEvents[i], (ApsDvsEvent) parOut.getEvent(i));
+                if (d != null) {
+                    report(where + " event " + i + ": " + d);
+                }
+            }
+            if (sequential.getFrameCount() != parallel.getFrameCount()) {
+                report(where + ": sequential frame count " + sequential.getFrameCount() + ", parallel frame count " + parallel.getFrameCount());
+            }
+        }
+        return largePackets;
+    }
+
+    /**
+     * @return the number of differences found so far
+     */
+    public int getDifferences() {
+        return differences;
+    }
+
+    private void report(String s) {
+        if (differences < MAX_REPORTED_DIFFERENCES) {
+            System.out.println(s);
+        } else if (differences == MAX_REPORTED_DIFFERENCES) {
+            System.out.println("...");
+        }
+        differences++;
+    }
+
+    /**
+     * @return a description of the first field that differs, or null if the
+     * events are equal
+     */
+    private static String difference(ApsDvsEvent s, ApsDvsEvent p) {
+        if (s.timestamp != p.timestamp) {
+            return "timestamp " + s.timestamp + " != " + p.timestamp;
+        }
+        if (s.address != p.address) {
+            return "address " + s.address + " != " + p.address;
+        }
+        if ((s.x != p.x) || (s.y != p.y)) {
+            return "x,y " + s.x + "," + s.y + " != " + p.x + "," + p.y;
+        }
+        if (s.type != p.type) {
+            return "type " + s.type + " != " + p.type;
+        }
+        if (s.polarity != p.polarity) {
+            return "polarity " + s.polarity + " != " + p.polarity;
+        }
+        if (s.source != p.source) {
+            return "source " + s.source + " != " + p.source;
+        }
+        if (s.isSpecial() != p.isSpecial()) {
+            return "special " + s.isSpecial() + " != " + p.isSpecial();
+        }
+        if (s.isFilteredOut() != p.isFilteredOut()) {
+            return "filteredOut " + s.isFilteredOut() + " != " + p.isFilteredOut();
+        }
+        if (s.getReadoutType() != p.getReadoutType()) {
+            return "readoutType " + s.getReadoutType() + " != " + p.getReadoutType();
+        }
+        if (s.getAdcSample() != p.getAdcSample()) {
+            return "adcSample " + s.getAdcSample() + " != " + p.getAdcSample();
+        }
+        if (s.getColorFilter() != p.getColorFilter()) {
+            return "colorFilter " + s.getColorFilter() + " != " + p.getColorFilter();
+        }
+        final IMUSample si = s.getImuSample(), pi = p.getImuSample();
+        if ((si == null) != (pi == null)) {
+            return "imuSample " + si + " != " + pi;
+        }
+        if (si != null) {
+            if (si.getTimestampUs() != pi.getTimestampUs()) {
+                return "imuSample timestamp " + si.getTimestampUs() + " != " + pi.getTimestampUs();
+            }
+            for (final IMUSampleType t : IMUSampleType.values()) {
+                if (si.getSensorRaw(t) != pi.getSensorRaw(t)) {
+                    return "imuSample " + t.name + " " + si.getSensorRaw(t) + " != " + pi.getSensorRaw(t);
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Synthetic raw DAVIS stream. The APS samples scan the pixel array in
+     * readout order, alternating reset and signal reads, so that the
+     * extractors assemble frames.
+     */
+    private static class RawStream {
+
+        private static final int IMU_DATA_SHIFT = 12, IMU_DATA_MASK = 0x0FFFF000; // data bits of an IMU sample word
+        private static final int APS_READ_CYCLE_SHIFT = 10;
+
+        private final Random r;
+        private final int sx, sy;
+        private final Point first, last;
+        private int ts = 0, apsPixel = 0, apsReadCycle = 0;
+        private int pendingImuWords = 0; // words of an IMU sample that was cut by the end of the last packet
+
+        RawStream(DavisBaseCamera chip, long seed) {
+            r = new Random(seed);
+            sx = chip.getSizeX();
+            sy = chip.getSizeY();
+            first = chip.getApsFirstPixelReadOut();
+            last = chip.getApsLastPixelReadOut();
+        }
+
+        AEPacketRaw nextPacket(boolean small) {
+            final int n = small ? 100 + r.nextInt(2000) : 40000 + r.nextInt(120000);
+            // as in DavisEventExtractor.extractParallel
+            final int numChunks = Math.max(1,
+                    Math.min(4 * Runtime.getRuntime().availableProcessors(), n / DavisBaseCamera.PARALLEL_DECODING_MIN_CHUNK_EVENTS));
+            final AEPacketRaw raw = new AEPacketRaw(n);
+            final int[] a = raw.getAddresses(), t = raw.getTimestamps();
+            int k = 0, chunk = 1;
+            while ((pendingImuWords > 0) && (k < n)) {
+                a[k] = imuWord(IMUSampleType.values().length - pendingImuWords--);
+                t[k++] = ts;
+            }
+            while (k < n) {
+                // start an IMU sample 3 words before the next chunk boundary
+                final int split = chunk < numChunks ? (int) (((long) n * chunk) / numChunks) - 3 : n;
+                ts += r.nextInt(3);
+                final int u = r.nextInt(1000);
+                if ((k == split) || ((u >= 995) && (u < 998) && ((k + IMUSampleType.values().length) < split))) {
+                    for (int c = 0; c < IMUSampleType.values().length; c++) {
+                        a[k] = imuWord(c);
+                        t[k++] = ts;
+                    }
+                    if (k == (split + IMUSampleType.values().length)) {
+                        chunk++;
+                    }
+                } else if ((u >= 998) && ((k + 3) < split)) { // incomplete IMU sample
+                    a[k] = imuWord(3);
+                    a[k + 1] = imuWord(0);
+                    a[k + 2] = imuWord(2);
+                    t[k] = t[k + 1] = t[k + 2] = ts;
+                    k += 3;
+                } else if ((k == (n - 4)) && r.nextBoolean()) { // IMU sample that continues in the next packet
+                    for (int c = 0; c < 4; c++) {
+                        a[k] = imuWord(c);
+                        t[k++] = ts;
+                    }
+                    pendingImuWords = IMUSampleType.values().length - 4;
+                } else if (u < 930) {
+                    int w = (r.nextInt(sy) << DavisChip.YSHIFT) | (r.nextInt(sx) << DavisChip.XSHIFT) | (r.nextInt(2) << DavisChip.POLSHIFT);
+                    if (r.nextInt(5000) == 0) {
+                        w |= DavisChip.EXTERNAL_INPUT_EVENT_ADDR;
+                    }
+                    a[k] = w;
+                    t[k++] = ts;
+                } else {
+                    a[k] = apsWord();
+                    t[k++] = ts;
+                }
+            }
+            raw.setNumEvents(n);
+            return raw;
+        }
+
+        private int imuWord(int code) {
+            return IMUSampleType.values()[code].codeBits | ((r.nextInt(65536) << IMU_DATA_SHIFT) & IMU_DATA_MASK);
+        }
+
+        private int apsWord() {
+            final int dx = last.x > first.x ? 1 : -1, dy = last.y > first.y ? 1 : -1;
+            final int nx = Math.abs(last.x - first.x) + 1;
+            final int x = first.x + (dx * (apsPixel % nx)), y = first.y + (dy * (apsPixel / nx));
+            final int w = DavisChip.ADDRESS_TYPE_APS | (y << DavisChip.YSHIFT) | (x << DavisChip.XSHIFT) | (apsReadCycle << APS_READ_CYCLE_SHIFT)
+                    | r.nextInt(1024);
+            if (++apsPixel >= (sx * sy)) {
+                apsPixel = 0;
+                apsReadCycle ^= 1;
+            }
+            return w;
+        }
+    }
+
+    public static void main(String[] args) {
+        final String chipname = args.length > 0 ? args[0] : DEFAULT_CHIP_CLASS;
+        final int numPackets = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_NUM_PACKETS;
+        if (Runtime.getRuntime().availableProcessors() < 2) {
+            System.err.println("only one processor is available, so packets are never decoded in parallel");
+            System.exit(1);
+        }
+        DavisParallelDecodingCheck check = null;
+        boolean wasParallel = false, wasGlobalShutter = false;
+        try {
+            check = new DavisParallelDecodingCheck(Class.forName(chipname).asSubclass(DavisBaseCamera.class));
+            wasParallel = check.parallel.isParallelDecodingEnabled();
+            wasGlobalShutter = check.parallel.getDavisConfig().isGlobalShutter();
+        } catch (Exception ex) {
+            System.err.println("Could not construct instance of DavisBaseCamera " + chipname + ": " + ex.toString());
+            System.exit(1);
+        }
+        int largePackets = check.check(false, numPackets, 1);
+        largePackets += check.check(true, numPackets, 2);
+        // the settings are preferences, restore them
+        check.parallel.setParallelDecodingEnabled(wasParallel);
+        check.parallel.getDavisConfig().setGlobalShutter(wasGlobalShutter);
+        System.out.println(chipname + ": " + (2 * numPackets) + " packets, " + largePackets + " of them large enough for parallel decoding, "
+                + check.getDifferences() + " differences");
+        System.exit(check.getDifferences() == 0 ? 0 : 1);
+    }
+}
@@ -0,0 +1,272 @@
+/*
+ * DavisPipelinedImuCheck.java
+ *
+ * Created on October 18, 2026
+ */
+package eu.seebetter.ini.chips.davis;
+
+import java.util.ArrayDeque;
+import java.util.Random;
+
+import eu.seebetter.ini.chips.DavisChip;
+import eu.seebetter.ini.chips.davis.imu.IMUSample;
+import eu.seebetter.ini.chips.davis.imu.IMUSampleType;
+import net.sf.jaer.aemonitor.AEPacketRaw;
+import net.sf.jaer.chip.AEChip;
+import net.sf.jaer.event.ApsDvsEvent;
+import net.sf.jaer.event.BasicEvent;
+import net.sf.jaer.event.EventPacket;
+import net.sf.jaer.event.OutputEventIterator;
+import net.sf.jaer.eventprocessing.EventFilter2D;
+import net.sf.jaer.eventprocessing.FilterChain;
+
+/**
+ * Checks that the IMU samples extracted by {@link DavisBaseCamera} reach the
+ * end of a {@link FilterChain.ProcessingMode#PIPELINED} filter chain
+ * unchanged. The chain has several filters, so that more packets are in
+ * flight than the extractor sees before a packet comes out; some filters pass
+ * their input packet on and some return their own output packet. Every IMU
+ * sample of the synthetic raw packets has distinct values, and the values at
+ * the end of the chain are compared with those seen right after extraction.
+ * <pre>
+ * java -Djava.awt.headless=true eu.seebetter.ini.chips.davis.DavisPipelinedImuCheck [chipclass] [numpackets] [numfilters]
+ * </pre> The exit status is 0 if all samples are unchanged and 1 otherwise.
+ */
+public class DavisPipelinedImuCheck {
+
+    /**
+     * Default chip class
+     */
+    public static final String DEFAULT_CHIP_CLASS = "eu.seebetter.ini.chips.davis.DAVIS240C";
+    /**
+     * Default number of raw packets
+     */
+    public static final int DEFAULT_NUM_PACKETS = 200;
+    /**
+     * Default number of filters in the chain
+     */
+    public static final int DEFAULT_NUM_FILTERS = 4;
+    private static final int MAX_REPORTED_DIFFERENCES = 20;
+    private static final int IMU_DATA_SHIFT = 12, IMU_DATA_MASK = 0x0FFFF000; // data bits of an IMU sample word
+
+    private final DavisBaseCamera chip;
+    private final FilterChain chain;
+    private final ArrayDeque<short[][]> expected = new ArrayDeque<short[][]>(); // IMU values of each packet in the pipeline
+    private final Random r = new Random(1);
+    private int ts = 0, sampleValue = 0;
+    private int differences = 0, packetsOut = 0, samplesOut = 0;
+
+    /**
+     * Creates the check for a new instance of a chip class
+     *
+     * @param chipClass the chip class, which must extend DavisBaseCamera
+     * @param numFilters the number of filters in the chain
+     * @throws Exception if the chip cannot be constructed
+     */
+    public DavisPipelinedImuCheck(Class<? extends DavisBaseCamera> chipClass, int numFilters) throws Exception {
+        chip = chipClass.getConstructor().newInstance();
+        chain = new FilterChain(chip);
+        for (int i = 0; i < numFilters; i++) {
+            final EventFilter2D f = (i % 2) == 0 ? new PassingFilter(chip) : new CopyingFilter(chip);
+            f.setFilterEnabled(true);
+            chain.add(f);
+        }
+    }
+
+    /**
+     * Extracts numPackets raw packets, filters them with the pipelined chain
+     * and compares the IMU samples that come out of the chain
+     *
+     * @param numPackets the number of raw packets
+     */
+    public void check(int numPackets) {
+        chain.setProcessingMode(FilterChain.ProcessingMode.PIPELINED);
+        try {
+            for (int p = 0; p < numPackets; p++) {
+                final EventPacket<?> extracted = chip.getEventExtractor().extractPacket(nextPacket());
+                expected.add(imuValues(extracted));
+                compare(chain.filterPacket(extracted));
+            }
+            EventPacket<?> out;
+            while ((out = chain.pollPipelineOutput(true)) != null) {
+                compare(out);
+            }
+            if (!expected.isEmpty()) {
+                report(expected.size() + " packets did not come out of the pipeline");
+            }
+        } finally {
+            chain.stopPipeline();
+        }
+    }
+
+    /**
+     * @return the number of differences found so far
+     */
+    public int getDifferences() {
+        return differences;
+    }
+
+    private void compare(EventPacket<?> out) {
+        if (out.getSize() == 0) { // the pipeline is filling; every input packet holds events
+            return;
+        }
+        final short[][] want = expected.poll();
+        final short[][] got = imuValues(out);
+        final String where = "packet " + packetsOut++;
+        if (want == null) {
+            report(where + ": no packet was expected");
+            return;
+        }
+        if (want.length != got.length) {
+            report(where + ": " + got.length + " IMU samples instead of " + want.length);
+            return;
+        }
+        for (int i = 0; i < want.length; i++) {
+            for (final IMUSampleType t : IMUSampleType.values()) {
+                if (want[i][t.code] != got[i][t.code]) {
+                    report(where + " IMU sample " + i + ": " + t.name + " " + got[i][t.code] + " instead of " + want[i][t.code]);
+                    break;
+                }
+            }
+            samplesOut++;
+        }
+    }
+
+    /**
+     * @return the raw values of each IMU sample in a packet, copied
+     */
+    private static short[][] imuValues(EventPacket<?> packet) {
+        int n = 0;
+        for (int i = 0; i < packet.getSize(); i++) {
+            if (((ApsDvsEvent) packet.getEvent(i)).isImuSample()) {
+                n++;
+            }
+        }
+        final short[][] values = new short[n][IMUSampleType.values().length];
+        int k = 0;
+        for (int i = 0; i < packet.getSize(); i++) {
+            final ApsDvsEvent e = (ApsDvsEvent) packet.getEvent(i);
+            if (e.isImuSample()) {
+                final IMUSample s = e.getImuSample();
+                for (final IMUSampleType t : IMUSampleType.values()) {
+                    values[k][t.code] = s.getSensorRaw(t);
+                }
+                k++;
+            }
+        }
+        return values;
+    }
+
+    private void report(String s) {
+        if (differences < MAX_REPORTED_DIFFERENCES) {
+            System.out.println(s);
+        } else if (differences == MAX_REPORTED_DIFFERENCES) {
+            System.out.println("...");
+        }
+        differences++;
+    }
+
+    /**
+     * @return a raw packet of DVS events and a few complete IMU samples with
+     * distinct values
+     */
+    private AEPacketRaw nextPacket() {
+        final int n = 500 + r.nextInt(1500);
+        final AEPacketRaw raw = new AEPacketRaw(n);
+        final int[] a = raw.getAddresses(), t = raw.getTimestamps();
+        final int sx = chip.getSizeX(), sy = chip.getSizeY();
+        int k = 0;
+        while (k < n) {
+            ts += 1 + r.nextInt(3);
+            if ((r.nextInt(200) == 0) && ((k + IMUSampleType.values().length) <= n)) {
+                for (int c = 0; c < IMUSampleType.values().length; c++) {
+                    a[k] = IMUSampleType.values()[c].codeBits | ((sampleValue++ << IMU_DATA_SHIFT) & IMU_DATA_MASK);
+                    t[k++] = ts;
+                }
+            } else {
+                a[k] = (r.nextInt(sy) << DavisChip.YSHIFT) | (r.nextInt(sx) << DavisChip.XSHIFT) | (r.nextInt(2) << DavisChip.POLSHIFT);
+                t[k++] = ts;
+            }
+        }
+        raw.setNumEvents(n);
+        return raw;
+    }
+
+    /**
+     * Passes its input packet on, taking a little time so that packets pile
+     * up in the pipeline
+     */
+    private static class PassingFilter extends EventFilter2D {
+
+        PassingFilter(AEChip chip) {
+            super(chip);
+        }
+
+        @Override
+        public EventPacket<?> filterPacket(EventPacket<?> in) {
+            try {
+                Thread.sleep(5);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return in;
+        }
+
+        @Override
+        public void resetFilter() {
+        }
+
+        @Override
+        public void initFilter() {
+        }
+    }
+
+    /**
+     * Copies all events to its own output packet
+     */
+    private static class CopyingFilter extends EventFilter2D {
+
+        CopyingFilter(AEChip chip) {
+            super(chip);
+        }
+
+        @Override
+        public EventPacket<?> filterPacket(EventPacket<?> in) {
+            checkOutputPacketEventType(in);
+            final OutputEventIterator outItr = out.outputIterator();
+            for (int i = 0; i < in.getSize(); i++) {
+                outItr.nextOutput().copyFrom((BasicEvent) in.getEvent(i));
+            }
+            return out;
+        }
+
+        @Override
+        public void resetFilter() {
+        }
+
+        @Override
+        public void initFilter() {
+        }
+    }
+
+    public static void main(String[] args) {
+        final String chipname = args.length > 0 ? args[0] : DEFAULT_CHIP_CLASS;
+        final int numPackets = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_NUM_PACKETS;
+        final int numFilters = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_NUM_FILTERS;
+        DavisPipelinedImuCheck check = null;
+        FilterChain.ProcessingMode wasMode = null;
+        try {
+            check = new DavisPipelinedImuCheck(Class.forName(chipname).asSubclass(DavisBaseCamera.class), numFilters);
+            wasMode = check.chain.getProcessingMode();
+        } catch (Exception ex) {
+            System.err.println("Could not construct instance of DavisBaseCamera " + chipname + ": " + ex.toString());
+            System.exit(1);
+        }
+        check.check(numPackets);
+        // the processing mode is a preference, restore it
+        check.chain.setProcessingMode(wasMode);
+        System.out.println(chipname + ": " + numFilters + " pipelined filters, " + check.packetsOut + " packets with " + check.samplesOut
+                + " IMU samples out, " + check.getDifferences() + " differences");
+        System.exit(check.getDifferences() == 0 ? 0 : 1);
+    }
+}
@@ -0,0 +1,449 @@
+/*
+ * CnnInferenceWorkerPool.java
+ *
+ * Created on October 18, 2026
+ */
+package eu.visualize.ini.convnet;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import net.sf.jaer.util.LogLinearHistogram;
+
+/**
+ * Runs a {@link DeepLearnCnnNetwork} on DVS time slices on a pool of worker
+ * threads, so that the event processing thread only has to snapshot each time
+ * slice and never waits for the network.
+ * <p>
+ * Each worker owns a replica of the network loaded from the same XML file,
+ * because a network holds its activations and buffers and can only compute
+ * one frame at a time. Snapshots of the {@link DvsSubsamplerToFrame} are put
+ * on a bounded queue; a worker that wakes up takes all queued frames up to
+ * the batch size and computes them back to back. When the queue is full, the
+ * {@link StaleFramePolicy} decides which frame is dropped.
+ * <p>
+ * The outputs are collected as {@link Result}s that the event processing
+ * thread takes by {@link #pollResults() } and applies to its own network, so
+ * that listeners and annotation see them as if the network had computed them
+ * there. Since several workers finish out of order, results that are older
+ * than one that was already taken are discarded as stale.
+ */
+public class CnnInferenceWorkerPool {
+
+    private static final Logger log = Logger.getLogger("eu.visualize.ini.convnet");
+
+    /**
+     * What to do with a new time slice when the queue of frames waiting for a
+     * worker is full
+     */
+    public enum StaleFramePolicy {
+        /**
+         * Drops the oldest waiting frame to make room for the new one, so the
+         * output follows the input as closely as possible
+         */
+        DropOldest,
+        /**
+         * Drops the new frame
+         */
+        DropNewest,
+        /**
+         * Waits until there is room, which stalls event processing but drops
+         * no frame
+         */
+        Block
+    }
+
+    /**
+     * The output of the network for one time slice
+     */
+    public static class Result {
+
+        private final long sequenceNumber;
+        private final float[] activations;
+        private final int maxActivatedUnit;
+        private final float maxActivation;
+        private final long latencyNs;
+        private final String performanceString;
+
+        Result(long sequenceNumber, float[] activations, int maxActivatedUnit, float maxActivation, long latencyNs, String performanceString) {
+            this.sequenceNumber = sequenceNumber;
+            this.activations = activations;
+            this.maxActivatedUnit = maxActivatedUnit;
+            this.maxActivation = maxActivation;
+            this.latencyNs = latencyNs;
+            this.performanceString = performanceString;
+        }
+
+        /**
+         * @return the number of the time slice, counting from 0 in order of
+         * submission
+         */
+        public long getSequenceNumber() {
+            return sequenceNumber;
+        }
+
+        /**
+         * @return a copy of the output layer activations
+         */
+        public float[] getActivations() {
+            return activations;
+        }
+
+        public int getMaxActivatedUnit() {
+            return maxActivatedUnit;
+        }
+
+        public float getMaxActivation() {
+            return maxActivation;
+        }
+
+        /**
+         * @return the time from submission of the time slice until its output
+         * was computed
+         */
+        public long getLatencyNs() {
+            return latencyNs;
+        }
+
+        /**
+         * @return the {@link DeepLearnCnnNetwork#getPerformanceString() } of
+         * the replica that computed this result
+         */
+        public String getPerformanceString() {
+            return performanceString;
+        }
+
+        /**
+         * Copies the output into the output layer of a network, e.g. the one
+         * that the filter annotates and that listeners observe. Does not fire
+         * {@link DeepLearnCnnNetwork#EVENT_MADE_DECISION}.
+         *
+         * @param net a network with the same output layer size
+         */
+        public void applyTo(DeepLearnCnnNetwork net) {
+            final DeepLearnCnnNetwork.OutputOrInnerProductFullyConnectedLayer out = net.outputLayer;
+            if ((out.activations == null) || (out.activations.length != activations.length)) {
+                out.activations = new float[activations.length];
+            }
+            System.arraycopy(activations, 0, out.activations, 0, activations.length);
+            out.maxActivatedUnit = maxActivatedUnit;
+            out.maxActivation = maxActivation;
+            net.setLastInputTypeProcessedWasApsFrame(false);
+        }
+    }
+
+    /**
+     * A time slice waiting for a worker
+     */
+    private static class Job {
+
+        final long sequenceNumber;
+        final DvsSubsamplerToFrame frame;
+        final long submitTimeNs;
+
+        Job(long sequenceNumber, DvsSubsamplerToFrame frame, long submitTimeNs) {
+            this.sequenceNumber = sequenceNumber;
+            this.frame = frame;
+            this.submitTimeNs = submitTimeNs;
+        }
+    }
+
+    private static final Comparator<Result> SEQUENCE_ORDER = new Comparator<Result>() {
+        @Override
+        public int compare(Result o1, Result o2) {
+            return Long.compare(o1.sequenceNumber, o2.sequenceNumber);
+        }
+    };
+
+    private final DeepLearnCnnNetwork template;
+    private final StaleFramePolicy staleFramePolicy;
+    private final int batchSize;
+    private final ArrayBlockingQueue<Job> queue;
+    private final ConcurrentLinkedQueue<DvsSubsamplerToFrame> freeFrames = new ConcurrentLinkedQueue<>();
+    private final ConcurrentLinkedQueue<Result> completed = new ConcurrentLinkedQueue<>();
+    private final List<Result> resultList = new ArrayList<>();
+    private final Worker[] workers;
+    private volatile boolean running = true;
+    private long nextSequenceNumber = 0, lastPublishedSequenceNumber = -1;
+    private final AtomicLong submittedCount = new AtomicLong(), droppedCount = new AtomicLong(), computedCount = new AtomicLong(), batchCount = new AtomicLong();
+    private long staleCount = 0, publishedCount = 0;
+    private final LogLinearHistogram latencyHistogram = new LogLinearHistogram();
+
+    /**
+     * Loads a replica of the network for each worker and starts the workers.
+     *
+     * @param xmlFile the XML file that the template network was loaded from
+     * @param template the network whose options, e.g. zeroPadding, the
+     * replicas copy before each batch
+     * @param numWorkers the number of worker threads, at least 1
+     * @param queueLength the number of frames that may wait for a worker, at
+     * least 1
+     * @param batchSize the largest number of waiting frames a worker takes at
+     * once, at least 1
+     * @param staleFramePolicy what to do when the queue is full
+     * @throws IOException if the network cannot be loaded
+     */
+    public CnnInferenceWorkerPool(File xmlFile, DeepLearnCnnNetwork template, int numWorkers, int queueLength, int batchSize, StaleFramePolicy staleFramePolicy) throws IOException {
+        this.template = template;
+        this.staleFramePolicy = staleFramePolicy;
+        this.batchSize = Math.max(1, batchSize);
+        queue = new ArrayBlockingQueue<>(Math.max(1, queueLength));
+        workers = new Worker[Math.max(1, numWorkers)];
+        for (int i = 0; i < workers.length; i++) {
+            final DeepLearnCnnNetwork replica = new DeepLearnCnnNetwork();
+            replica.loadFromXMLFile(xmlFile);
+            workers[i] = new Worker(i, replica);
+        }
+        for (Worker w : workers) {
+            w.start();
+        }
+        log.info(String.format("started %d CNN inference workers for %s with queue length %d and batch size %d", workers.length, xmlFile, queue.remainingCapacity(), this.batchSize));
+    }
+
+    private class Worker extends Thread {
+
+        private final DeepLearnCnnNetwork replica;
+        private final ArrayList<Job> batch;
+
+        Worker(int index, DeepLearnCnnNetwork replica) {
+            super("CnnInferenceWorker-" + index);
+            setDaemon(true);
+            this.replica = replica;
+            batch = new ArrayList<>(batchSize);
+        }
+
+        @Override
+        public void run() {
+            while (running) {
+                try {
+                    final Job first = queue.poll(100, TimeUnit.MILLISECONDS);
+                    if (first == null) {
+                        continue;
+                    }
+                    batch.add(first);
+                    queue.drainTo(batch, batchSize - 1);
+                    batchCount.incrementAndGet();
+                    replica.copyOptionsFrom(template);
+                    for (Job job : batch) {
+                        compute(job);
+                    }
+                } catch (InterruptedException e) {
+                    break;
+                } catch (RuntimeException e) {
+                    log.log(Level.WARNING, getName() + " caught exception computing network, dropping its frames", e);
+                } finally {
+                    for (Job job : batch) {
+                        freeFrames.offer(job.frame);
+                    }
+                    batch.clear();
+                }
+            }
+        }
+
+        private void compute(Job job) {
+            final float[] out = replica.processDvsTimeslice(job.frame);
+            final long latencyNs = System.nanoTime() - job.submitTimeNs;
+            final DeepLearnCnnNetwork.OutputOrInnerProductFullyConnectedLayer o = replica.outputLayer;
+            completed.offer(new Result(job.sequenceNumber, out.clone(), o.maxActivatedUnit, o.maxActivation, latencyNs, replica.getPerformanceString()));
+            computedCount.incrementAndGet();
+            synchronized (latencyHistogram) {
+                latencyHistogram.record(latencyNs);
+            }
+        }
+    }
+
+    /**
+     * Snapshots a time slice and queues it for a worker. Must be called from a
+     * single thread, e.g. the event processing thread. The subsampler can be
+     * cleared as soon as this method returns.
+     *
+     * @param subsampler the time slice
+     * @return false if the pool is shut down, or the new frame was dropped
+     * because the queue was full with
+     * {@link StaleFramePolicy#DropNewest}, or the calling thread was
+     * interrupted while blocked
+     */
+    public boolean submit(DvsSubsamplerToFrame subsampler) {
+        if (!running) {
+            return false;
+        }
+        DvsSubsamplerToFrame frame = freeFrames.poll();
+        if ((frame == null) || (frame.getWidth() != subsampler.getWidth()) || (frame.getHeight() != subsampler.getHeight())) {
+            frame = new DvsSubsamplerToFrame(subsampler.getWidth(), subsampler.getHeight(), subsampler.getColorScale());
+        }
+        frame.copyFrom(subsampler);
+        final Job job = new Job(nextSequenceNumber++, frame, System.nanoTime());
+        submittedCount.incrementAndGet();
+        switch (staleFramePolicy) {
+            case Block:
+                try {
+                    queue.put(job);
+                    return true;
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    drop(job);
+                    return false;
+                }
+            case DropNewest:
+                if (queue.offer(job)) {
+                    return true;
+                }
+                drop(job);
+                return false;
+            case DropOldest:
+            default:
+                while (!queue.offer(job)) {
+                    final Job oldest = queue.poll();
+                    if (oldest != null) {
+                        drop(oldest);
+                    }
+                }
+                return true;
+        }
+    }
+
+    private void drop(Job job) {
+        droppedCount.incrementAndGet();
+        freeFrames.offer(job.frame);
+    }
+
+    /**
+     * Takes the results that were computed since the last call, in order of
+     * submission. Results that are older than one that was already taken are
+     * discarded and counted as stale. Must be called from a single thread.
+     *
+     * @return the new results, possibly empty. The list is reused by the next
+     * call.
+     */
+    public List<Result> pollResults() {
+        resultList.clear();
+        Result r;
+        while ((r = completed.poll()) != null) {
+            if (r.sequenceNumber > lastPublishedSequenceNumber) {
+                resultList.add(r);
+            } else {
+                staleCount++;
+            }
+        }
+        if (resultList.size() > 1) {
+            Collections.sort(resultList, SEQUENCE_ORDER);
+        }
+        if (!resultList.isEmpty()) {
+            lastPublishedSequenceNumber = resultList.get(resultList.size() - 1).sequenceNumber;
+            publishedCount += resultList.size();
+        }
+        return resultList;
+    }
+
+    /**
+     * Drops all frames waiting for a worker
+     */
+    public void clear() {
+        Job job;
+        while ((job = queue.poll()) != null) {
+            drop(job);
+        }
+    }
+
+    /**
+     * Stops the workers and waits for them to finish the frames they are
+     * computing, and shuts down the fork/join pools of their replicas.
+     */
+    public void shutdown() {
+        running = false;
+        for (Worker w : workers) {
+            w.interrupt();
+        }
+        for (Worker w : workers) {
+            try {
+                w.join(1000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        for (Worker w : workers) {
+            w.replica.shutdownForkJoinPool();
+        }
+        clear();
+        completed.clear();
+    }
+
+    /**
+     * @return the number of workers
+     */
+    public int getNumWorkers() {
+        return workers.length;
+    }
+
+    /**
+     * @return the number of frames waiting for a worker
+     */
+    public int getQueuedCount() {
+        return queue.size();
+    }
+
+    public long getSubmittedCount() {
+        return submittedCount.get();
+    }
+
+    /**
+     * @return the number of frames dropped because the queue was full
+     */
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    public long getComputedCount() {
+        return computedCount.get();
+    }
+
+    /**
+     * @return the number of results that were discarded by
+     * {@link #pollResults() } because a newer result had already been taken
+     */
+    public long getStaleCount() {
+        return staleCount;
+    }
+
+    /**
+     * @return the number of results returned by {@link #pollResults() }
+     */
+    public long getPublishedCount() {
+        return publishedCount;
+    }
+
+    /**
+     * @return the mean number of frames that a worker computed per wake-up
+     */
+    public float getMeanBatchSize() {
+        final long b = batchCount.get();
+        return b == 0 ? 0 : (float) computedCount.get() / b;
+    }
+
+    /**
+     * @return the latency from submission to result at the given percentile in
+     * ns
+     */
+    public long getLatencyNsAtPercentile(double percentile) {
+        synchronized (latencyHistogram) {
+            return latencyHistogram.getValueAtPercentile(percentile);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d workers: submitted %d, dropped %d, stale %d, published %d, queued %d, batch %.1f, latency p50 %.1fms p99 %.1fms",
+                workers.length, getSubmittedCount(), getDroppedCount(), getStaleCount(), getPublishedCount(), getQueuedCount(), getMeanBatchSize(),
+                getLatencyNsAtPercentile(50) * 1e-6f, getLatencyNsAtPercentile(99) * 1e-6f);
+    }
+}
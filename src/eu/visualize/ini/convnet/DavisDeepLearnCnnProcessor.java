@@ -13,6 +13,7 @@ import java.io.File;
 import com.jogamp.opengl.GL2;
 import com.jogamp.opengl.GLAutoDrawable;
 import java.io.IOException;
+import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import javax.swing.JFileChooser;
@@ -67,6 +68,15 @@ public class DavisDeepLearnCnnProcessor extends EventFilter2D implements Propert
     private boolean softMaxOutput = getBoolean("softMaxOutput", false);
     private boolean zeroPadding = getBoolean("zeroPadding", true);
     private boolean normalizeDVSForZsNullhop = getBoolean("normalizeDVSForZsNullhop", false); // uses DvsSubsamplerToFrame normalizeFrame method to normalize DVS histogram images and in addition it shifts the pixel values to be centered around zero with range -1 to +1
+    private boolean gemmConvolution = getBoolean("gemmConvolution", true);
+    private boolean parallelConvolution = getBoolean("parallelConvolution", false);
+    private boolean asyncInference = getBoolean("asyncInference", false);
+    private int inferenceWorkers = getInt("inferenceWorkers", 2);
+    private int inferenceQueueLength = getInt("inferenceQueueLength", 4);
+    private int inferenceBatchSize = getInt("inferenceBatchSize", 4);
+    private CnnInferenceWorkerPool.StaleFramePolicy staleFramePolicy = CnnInferenceWorkerPool.StaleFramePolicy.valueOf(getString("staleFramePolicy", CnnInferenceWorkerPool.StaleFramePolicy.DropOldest.toString()));
+    private CnnInferenceWorkerPool inferencePool = null; // created lazily when asyncInference is enabled
+    private boolean inferencePoolFailed = false; // set if the pool could not be created, to not retry on every packet
 
     protected int lastProcessedEventTimestamp = 0;
     private String performanceString = null; // holds string representation of processing time
@@ -99,6 +109,13 @@ public class DavisDeepLearnCnnProcessor extends EventFilter2D implements Propert
         setPropertyTooltip(anal, "dvsMinEvents", "minimum number of events to run net on DVS timeslice");
         setPropertyTooltip(anal, "zeroPadding", "CNN uses zero padding; must be set properly according to CNN to run CNN");
         setPropertyTooltip(anal, "normalizeDVSForZsNullhop", "uses DvsSubsamplerToFrame normalizeFrame method to normalize DVS histogram images and in addition it shifts the pixel values to be centered around zero with range -1 to +1\n");
+        setPropertyTooltip(anal, "gemmConvolution", "computes convolutional layers by im2col and blocked matrix multiply with reused buffers, rather than by convolving each kernel separately");
+        setPropertyTooltip(anal, "parallelConvolution", "splits the matrix multiply of convolutional layers over output maps on all cores; only used with gemmConvolution");
+        setPropertyTooltip(anal, "asyncInference", "<html>computes the CNN on DVS time slices on a pool of worker threads that each run a copy of the network, so event processing never waits for the CNN.<br>The outputs are published to listeners when the next packet is processed. APS frames are still processed synchronously.<br>Activations of inner layers are only shown for synchronous processing.");
+        setPropertyTooltip(anal, "inferenceWorkers", "number of worker threads (and network copies) for asyncInference");
+        setPropertyTooltip(anal, "inferenceQueueLength", "number of DVS time slices that may wait for a worker with asyncInference before staleFramePolicy applies");
+        setPropertyTooltip(anal, "inferenceBatchSize", "largest number of waiting DVS time slices that a worker computes back to back each time it wakes up with asyncInference");
+        setPropertyTooltip(anal, "staleFramePolicy", "<html>what to do with a new DVS time slice when the asyncInference queue is full:<br>DropOldest drops the oldest waiting slice, DropNewest drops the new slice, Block waits for a worker (stalls event processing)");
         setPropertyTooltip(anal, "rectifyPolarities", "Rectifies DVS ON and OFF event polarities to ON polarities; discards the sign of the brightness changes, which could improve lighting tolerance");
         setPropertyTooltip(anal, "processingTimeLimitMs", "<html>time limit for processing packet in ms to process OF events (events still accumulate). <br> Set to 0 to disable. <p>Alternative to the system EventPacket timelimiter, which cannot be used here because we still need to accumulate and render the events");
         initFilter();
@@ -122,11 +139,14 @@ public class DavisDeepLearnCnnProcessor extends EventFilter2D implements Propert
         }
         lastApsDvsNetXMLFilename = c.getSelectedFile().toString();
         putString("lastAPSNetXMLFilename", lastApsDvsNetXMLFilename);
+        shutdownInferencePool();
         try {
             apsDvsNet.loadFromXMLFile(c.getSelectedFile());
             apsDvsNet.setSoftMaxOutput(softMaxOutput); // must set manually since net doesn't know option kept here.
             apsDvsNet.setZeroPadding(zeroPadding); // must set manually since net doesn't know option kept here.
             apsDvsNet.setNormalizeDVSForZsNullhop(normalizeDVSForZsNullhop); // must set manually since net doesn't know option kept here.
+            apsDvsNet.setGemmConvolutionEnabled(gemmConvolution);
+            apsDvsNet.setParallelConvolutionEnabled(parallelConvolution);
             dvsSubsampler = new DvsSubsamplerToFrame(apsDvsNet.inputLayer.dimx, apsDvsNet.inputLayer.dimy, getDvsColorScale());
             dvsSubsampler.setRectifyPolarties(rectifyPolarities);
         } catch (Exception ex) {
@@ -205,6 +225,10 @@ public class DavisDeepLearnCnnProcessor extends EventFilter2D implements Propert
             timeLimiter.setEnabled(false);
         }
         if ((apsDvsNet != null)) {
+            final CnnInferenceWorkerPool pool = asyncInference ? getInferencePool() : null;
+            if (pool != null) {
+                publishInferenceResults(pool);
+            }
             final int sizeX = chip.getSizeX();
             final int sizeY = chip.getSizeY();
             for (BasicEvent e : in) {
@@ -223,7 +247,10 @@ public class DavisDeepLearnCnnProcessor extends EventFilter2D implements Propert
                     if (measurePerformance) {
                         startTime = System.nanoTime();
                     }
-                    if (processDVSTimeSlices) {
+                    if (processDVSTimeSlices && pool != null) {
+                        pool.submit(dvsSubsampler); // the output is published by publishInferenceResults
+                        dvsSubsampler.clear();
+                    } else if (processDVSTimeSlices) {
                         apsDvsNet.processDvsTimeslice(dvsSubsampler); // generates PropertyChange EVENT_MADE_DECISION
                         if (dvsSubsampler != null) {
                             dvsSubsampler.clear();
@@ -238,16 +265,70 @@ public class DavisDeepLearnCnnProcessor extends EventFilter2D implements Propert
 
                 }
             }
+            if (pool != null) {
+                publishInferenceResults(pool);
+            }
 
         }
         return in;
     }
 
+    /**
+     * Returns the pool of inference workers, creating it if needed from the
+     * file the net was loaded from.
+     *
+     * @return the pool, or null if it could not be created
+     */
+    private CnnInferenceWorkerPool getInferencePool() {
+        if (inferencePool == null && !inferencePoolFailed) {
+            try {
+                inferencePool = new CnnInferenceWorkerPool(new File(lastApsDvsNetXMLFilename), apsDvsNet, inferenceWorkers, inferenceQueueLength, inferenceBatchSize, staleFramePolicy);
+            } catch (IOException | RuntimeException ex) {
+                log.warning("Couldn't start asynchronous inference workers for " + lastApsDvsNetXMLFilename + ", processing DVS time slices synchronously: got exception " + ex);
+                inferencePoolFailed = true;
+            }
+        }
+        return inferencePool;
+    }
+
+    /**
+     * Copies the newest outputs of the inference workers to apsDvsNet and
+     * informs its listeners, as if apsDvsNet had computed them.
+     */
+    private void publishInferenceResults(CnnInferenceWorkerPool pool) {
+        List<CnnInferenceWorkerPool.Result> results = pool.pollResults();
+        for (CnnInferenceWorkerPool.Result r : results) {
+            r.applyTo(apsDvsNet);
+            apsDvsNet.getSupport().firePropertyChange(DeepLearnCnnNetwork.EVENT_MADE_DECISION, null, apsDvsNet);
+        }
+        if (measurePerformance && !results.isEmpty()) {
+            CnnInferenceWorkerPool.Result r = results.get(results.size() - 1);
+            performanceString = String.format("Frame latency: %.1fms; %s\n%s", 1e-6f * r.getLatencyNs(), pool.toString(), r.getPerformanceString());
+        }
+    }
+
+    /**
+     * Stops the inference workers; they are started again when needed.
+     */
+    private synchronized void shutdownInferencePool() {
+        if (inferencePool != null) {
+            inferencePool.shutdown();
+            inferencePool = null;
+        }
+        inferencePoolFailed = false;
+    }
+
     @Override
     public void resetFilter() {
         if (dvsSubsampler != null) {
             dvsSubsampler.clear();
         }
+        if (inferencePool != null) {
+            inferencePool.clear();
+        }
+        if (apsDvsNet != null) {
+            apsDvsNet.shutdownForkJoinPool();
+        }
     }
 
     @Override
@@ -256,12 +337,18 @@ public class DavisDeepLearnCnnProcessor extends EventFilter2D implements Propert
         if (lastApsDvsNetXMLFilename != null) {
             File f = new File(lastApsDvsNetXMLFilename);
             if (f.exists() && f.isFile()) {
+                shutdownInferencePool(); // its workers copy options from the old net
+                if (apsDvsNet != null) {
+                    apsDvsNet.shutdownForkJoinPool();
+                }
                 try {
                     apsDvsNet = new DeepLearnCnnNetwork();
                     apsDvsNet.loadFromXMLFile(f);
                     apsDvsNet.setSoftMaxOutput(softMaxOutput); // must set manually since net doesn't know option kept here.
                     apsDvsNet.setZeroPadding(zeroPadding); // must set manually since net doesn't know option kept here.
                     apsDvsNet.setNormalizeDVSForZsNullhop(normalizeDVSForZsNullhop); // must set manually since net doesn't know option kept here.
+                    apsDvsNet.setGemmConvolutionEnabled(gemmConvolution);
+                    apsDvsNet.setParallelConvolutionEnabled(parallelConvolution);
                     dvsSubsampler = new DvsSubsamplerToFrame(apsDvsNet.inputLayer.dimx, apsDvsNet.inputLayer.dimy, getDvsColorScale());
                     dvsSubsampler.setRectifyPolarties(rectifyPolarities);
                 } catch (IOException ex) {
@@ -658,6 +745,44 @@ public class DavisDeepLearnCnnProcessor extends EventFilter2D implements Propert
         apsDvsNet.setNormalizeDVSForZsNullhop(normalizeDVSForZsNullhop); // must set manually since net doesn't know option kept here.
     }
 
+    /**
+     * @return the gemmConvolution
+     */
+    public boolean isGemmConvolution() {
+        return gemmConvolution;
+    }
+
+    /**
+     * @param gemmConvolution the gemmConvolution to set
+     */
+    public void setGemmConvolution(boolean gemmConvolution) {
+        this.gemmConvolution = gemmConvolution;
+        putBoolean("gemmConvolution", gemmConvolution);
+        if (apsDvsNet == null) {
+            return;
+        }
+        apsDvsNet.setGemmConvolutionEnabled(gemmConvolution);
+    }
+
+    /**
+     * @return the parallelConvolution
+     */
+    public boolean isParallelConvolution() {
+        return parallelConvolution;
+    }
+
+    /**
+     * @param parallelConvolution the parallelConvolution to set
+     */
+    public void setParallelConvolution(boolean parallelConvolution) {
+        this.parallelConvolution = parallelConvolution;
+        putBoolean("parallelConvolution", parallelConvolution);
+        if (apsDvsNet == null) {
+            return;
+        }
+        apsDvsNet.setParallelConvolutionEnabled(parallelConvolution);
+    }
+
     /**
      * @return the rectifyPolarities
      */
@@ -676,6 +801,97 @@ public class DavisDeepLearnCnnProcessor extends EventFilter2D implements Propert
         }
     }
 
+    /**
+     * @return the asyncInference
+     */
+    public boolean isAsyncInference() {
+        return asyncInference;
+    }
+
+    /**
+     * @param asyncInference the asyncInference to set
+     */
+    public void setAsyncInference(boolean asyncInference) {
+        this.asyncInference = asyncInference;
+        putBoolean("asyncInference", asyncInference);
+        if (!asyncInference) {
+            shutdownInferencePool();
+        }
+    }
+
+    /**
+     * @return the inferenceWorkers
+     */
+    public int getInferenceWorkers() {
+        return inferenceWorkers;
+    }
+
+    /**
+     * @param inferenceWorkers the inferenceWorkers to set
+     */
+    public void setInferenceWorkers(int inferenceWorkers) {
+        if (inferenceWorkers < 1) {
+            inferenceWorkers = 1;
+        }
+        this.inferenceWorkers = inferenceWorkers;
+        putInt("inferenceWorkers", inferenceWorkers);
+        shutdownInferencePool();
+    }
+
+    /**
+     * @return the inferenceQueueLength
+     */
+    public int getInferenceQueueLength() {
+        return inferenceQueueLength;
+    }
+
+    /**
+     * @param inferenceQueueLength the inferenceQueueLength to set
+     */
+    public void setInferenceQueueLength(int inferenceQueueLength) {
+        if (inferenceQueueLength < 1) {
+            inferenceQueueLength = 1;
+        }
+        this.inferenceQueueLength = inferenceQueueLength;
+        putInt("inferenceQueueLength", inferenceQueueLength);
+        shutdownInferencePool();
+    }
+
+    /**
+     * @return the inferenceBatchSize
+     */
+    public int getInferenceBatchSize() {
+        return inferenceBatchSize;
+    }
+
+    /**
+     * @param inferenceBatchSize the inferenceBatchSize to set
+     */
+    public void setInferenceBatchSize(int inferenceBatchSize) {
+        if (inferenceBatchSize < 1) {
+            inferenceBatchSize = 1;
+        }
+        this.inferenceBatchSize = inferenceBatchSize;
+        putInt("inferenceBatchSize", inferenceBatchSize);
+        shutdownInferencePool();
+    }
+
+    /**
+     * @return the staleFramePolicy
+     */
+    public CnnInferenceWorkerPool.StaleFramePolicy getStaleFramePolicy() {
+        return staleFramePolicy;
+    }
+
+    /**
+     * @param staleFramePolicy the staleFramePolicy to set
+     */
+    public void setStaleFramePolicy(CnnInferenceWorkerPool.StaleFramePolicy staleFramePolicy) {
+        this.staleFramePolicy = staleFramePolicy;
+        putString("staleFramePolicy", staleFramePolicy.toString());
+        shutdownInferencePool();
+    }
+
     @Override
     public synchronized void setFilterEnabled(boolean yes) {
         super.setFilterEnabled(yes);
@@ -687,6 +903,10 @@ public class DavisDeepLearnCnnProcessor extends EventFilter2D implements Propert
     @Override
     public synchronized void cleanup() {
         super.cleanup();
+        shutdownInferencePool();
+        if (apsDvsNet != null) {
+            apsDvsNet.shutdownForkJoinPool();
+        }
         if (showActivations && apsDvsNet != null) {
             apsDvsNet.cleanup();
         }
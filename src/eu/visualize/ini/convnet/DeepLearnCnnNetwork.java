@@ -15,6 +15,9 @@ import java.io.File;
 import java.io.IOException;
 import java.util.Arrays;
 import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RecursiveAction;
 
 import javax.swing.BoxLayout;
 import javax.swing.JFrame;
@@ -103,6 +106,9 @@ public class DeepLearnCnnNetwork {
     private boolean softMaxOutput = false;
     private boolean zeroPadding = true;
     private boolean normalizeDVSForZsNullhop = false; // uses DvsSubsamplerToFrame normalizeFrame method to normalize DVS histogram images and in addition it shifts the pixel values to be centered around zero with range -1 to +1
+    private boolean gemmConvolutionEnabled = true; // computes ConvLayer by im2col and matrix multiply rather than by convolving each kernel separately
+    private boolean parallelConvolutionEnabled = false; // splits the ConvLayer matrix multiply over output maps on a fork/join pool
+    private ForkJoinPool forkJoinPool = null; // created on first parallel convolution, shut down by cleanup
     private EngineeringFormat engFmt = new EngineeringFormat();
     /** Height of final output layer histogram as fraction of AEChip display height */
     public static final float HISTOGRAM_HEIGHT_FRACTION = 0.9f;
@@ -177,9 +183,13 @@ public class DeepLearnCnnNetwork {
         operationCounter = 0;
         startProcessingTimeNs = System.nanoTime();
         for (int i = 1; i < nLayers; i++) { // skip input layer, whose activations are computed by reading in frame and downsampling it
+            long t = System.nanoTime();
             layers[i].compute(layers[i - 1]);
+            layers[i].computeTimeNs = System.nanoTime() - t;
         }
+        long t = System.nanoTime();
         outputLayer.compute(layers[nLayers - 1]);
+        outputLayer.computeTimeNs = System.nanoTime() - t;
         if (softMaxOutput) {
             outputLayer.computeSoftMax();
         }
@@ -320,13 +330,29 @@ public class DeepLearnCnnNetwork {
     }
 
     /**
-     * Return a string representaiton of the cost of computing the network
+     * Return a string representaiton of the cost of computing the network,
+     * followed by the time taken by each layer
      *
-     * @return %d operations in %d ns: %s ops/sec
+     * @return %d operations in %d ns: %s ops/sec; layers: 1 conv 1.23ms, ...
      */
     public String getPerformanceString() {
-        return String.format("%s ops in %s s: %s ops/sec",
-                engFmt.format(operationCounter), engFmt.format(processingTimeNs * 1e-9f), engFmt.format(operationCounter / (1e-9f * processingTimeNs)));
+        StringBuilder sb = new StringBuilder(String.format("%s ops in %s s: %s ops/sec",
+                engFmt.format(operationCounter), engFmt.format(processingTimeNs * 1e-9f), engFmt.format(operationCounter / (1e-9f * processingTimeNs))));
+        if (layers != null) {
+            sb.append("; layers:");
+            for (int i = 1; i < nLayers; i++) {
+                appendLayerTime(sb, layers[i]);
+            }
+            if (outputLayer != null) {
+                appendLayerTime(sb, outputLayer);
+            }
+        }
+        return sb.toString();
+    }
+
+    private void appendLayerTime(StringBuilder sb, Layer l) {
+        String type = l instanceof ConvLayer ? "conv" : (l instanceof SubsamplingLayer ? "pool" : "fc");
+        sb.append(String.format(" %d %s %.2fms", l.index, type, l.computeTimeNs * 1e-6f));
     }
 
     private float[] readFloatArray(EasyXMLReader layerReader, String name) {
@@ -359,6 +385,10 @@ public class DeepLearnCnnNetwork {
          * Activations - output of layer
          */
         float[] activations;
+        /**
+         * Time taken by the last compute in ns
+         */
+        long computeTimeNs;
 
         private boolean visible = true;
 
@@ -439,6 +469,90 @@ public class DeepLearnCnnNetwork {
         }
     }
 
+    /**
+     * Rows of the kernel matrix and columns of im2col that are multiplied per
+     * block; a block of im2col is 64x1024 floats, which fits in L2 cache
+     */
+    private static final int GEMM_INNER_BLOCK = 64, GEMM_COLUMN_BLOCK = 1024;
+
+    /**
+     * Computes rows rowStart to rowEnd-1 of c += a*b, where a is rows x inner,
+     * b is inner x cols and c is rows x cols, all stored row by row. The
+     * innermost loop runs along rows of b and c, so that it is vectorized by
+     * the JIT compiler.
+     */
+    private static void gemm(float[] a, float[] b, float[] c, int rowStart, int rowEnd, int inner, int cols) {
+        for (int j0 = 0; j0 < cols; j0 += GEMM_COLUMN_BLOCK) {
+            final int j1 = Math.min(cols, j0 + GEMM_COLUMN_BLOCK);
+            for (int k0 = 0; k0 < inner; k0 += GEMM_INNER_BLOCK) {
+                final int k1 = Math.min(inner, k0 + GEMM_INNER_BLOCK);
+                for (int i = rowStart; i < rowEnd; i++) {
+                    final int ci = i * cols;
+                    for (int k = k0; k < k1; k++) {
+                        final float aik = a[(i * inner) + k];
+                        final int bk = k * cols;
+                        for (int j = j0; j < j1; j++) {
+                            c[ci + j] += aik * b[bk + j];
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Splits {@link #gemm} over ranges of rows, i.e. output maps
+     */
+    private static class GemmTask extends RecursiveAction {
+
+        /**
+         * Multiply-adds below which a task is not split further
+         */
+        private static final int MIN_TASK_MACS = 1 << 16;
+        private final float[] a, b, c;
+        private final int rowStart, rowEnd, inner, cols;
+
+        GemmTask(float[] a, float[] b, float[] c, int rowStart, int rowEnd, int inner, int cols) {
+            this.a = a;
+            this.b = b;
+            this.c = c;
+            this.rowStart = rowStart;
+            this.rowEnd = rowEnd;
+            this.inner = inner;
+            this.cols = cols;
+        }
+
+        @Override
+        protected void compute() {
+            final int n = rowEnd - rowStart;
+            if ((n < 2) || (((long) n * inner * cols) < MIN_TASK_MACS)) {
+                gemm(a, b, c, rowStart, rowEnd, inner, cols);
+                return;
+            }
+            final int mid = rowStart + (n / 2);
+            invokeAll(new GemmTask(a, b, c, rowStart, mid, inner, cols), new GemmTask(a, b, c, mid, rowEnd, inner, cols));
+        }
+    }
+
+    private synchronized ForkJoinPool getForkJoinPool() {
+        if (forkJoinPool == null) {
+            forkJoinPool = new ForkJoinPool();
+        }
+        return forkJoinPool;
+    }
+
+    /**
+     * Shuts down the fork/join pool of parallel convolution, so that its
+     * worker threads end. A new pool is created by the next parallel
+     * convolution.
+     */
+    public synchronized void shutdownForkJoinPool() {
+        if (forkJoinPool != null) {
+            forkJoinPool.shutdown();
+            forkJoinPool = null;
+        }
+    }
+
     /**
      * Represents input to network; computes the sub/down sampled input from
      * image activationsFrame. Order of entries in activations is the same as in
@@ -846,6 +960,17 @@ public class DeepLearnCnnNetwork {
         private ImageDisplay[] activationDisplays = null;
         private ImageDisplay[][] kernelDisplays = null;
         private int warningCountMax = 10;
+        /**
+         * Kernels as nOutputMaps rows of nInputMaps*singleKernelLength weights
+         * in the order of the rows of im2col, built on first use
+         */
+        private float[] weightMatrix = null;
+        private boolean weightMatrixZeroPadding;
+        /**
+         * The input patches, one row per input map and kernel x,y and one
+         * column per output x,y, reused across frames
+         */
+        private float[] im2col = null;
 
         private ActivationFunction activationFunction = ActivationFunction.Undefined; // default is the sigmoid, the only choice in DeepLearnToolbox
 
@@ -968,15 +1093,105 @@ public class DeepLearnCnnNetwork {
                 Arrays.fill(activations, 0);  // clear the output, since results from inputMaps will be accumulated
             }
 
-            for (int inputMap = 0; inputMap < nInputMaps; inputMap++) { // for each inputMap
-                for (int outputMap = 0; outputMap < nOutputMaps; outputMap++) { // for each kernel/outputMap
-                    conv(inputLayer, outputMap, inputMap);
+            if (gemmConvolutionEnabled && (zeroPadding || ((kernelDim % 2) == 1))) {
+                convGemm(inputLayer);
+            } else {
+                for (int inputMap = 0; inputMap < nInputMaps; inputMap++) { // for each inputMap
+                    for (int outputMap = 0; outputMap < nOutputMaps; outputMap++) { // for each kernel/outputMap
+                        conv(inputLayer, outputMap, inputMap);
+                    }
                 }
             }
 
             applyBiasAndNonlinearity();
         }
 
+        /**
+         * Computes the same sums as {@link #conv} for all input and output maps
+         * at once: the input patches are laid out by im2col as a matrix with
+         * one column per output pixel, which is multiplied by the kernel
+         * matrix into the activations. The buffers are reused across frames.
+         */
+        private void convGemm(Layer inputLayer) {
+            final int rows = nInputMaps * singleKernelLength;
+            if ((weightMatrix == null) || (weightMatrixZeroPadding != zeroPadding)) {
+                buildWeightMatrix();
+            }
+            if ((im2col == null) || (im2col.length != (rows * outputMapLength))) {
+                im2col = new float[rows * outputMapLength];
+            }
+            fillIm2col(inputLayer);
+            boolean computed = false;
+            if (parallelConvolutionEnabled && (nOutputMaps > 1)) {
+                try {
+                    getForkJoinPool().invoke(new GemmTask(weightMatrix, im2col, activations, 0, nOutputMaps, rows, outputMapLength));
+                    computed = true;
+                } catch (RejectedExecutionException e) { // pool was shut down by cleanup meanwhile
+                }
+            }
+            if (!computed) {
+                gemm(weightMatrix, im2col, activations, 0, nOutputMaps, rows, outputMapLength);
+            }
+            operationCounter += 2 * nOutputMaps * rows * outputMapLength;
+        }
+
+        private void buildWeightMatrix() {
+            final int rows = nInputMaps * singleKernelLength;
+            final boolean flip = !zeroPadding && !nettype.equals("caffe_net"); // see convsingle
+            weightMatrix = new float[nOutputMaps * rows];
+            for (int outputMap = 0; outputMap < nOutputMaps; outputMap++) {
+                int w = outputMap * rows;
+                for (int inputMap = 0; inputMap < nInputMaps; inputMap++) {
+                    for (int xx = 0; xx < kernelDim; xx++) {
+                        for (int yy = 0; yy < kernelDim; yy++) {
+                            weightMatrix[w++] = flip ? kernels[k(inputMap, outputMap, kernelDim - xx - 1, kernelDim - yy - 1)] : kernels[k(inputMap, outputMap, xx, yy)];
+                        }
+                    }
+                }
+            }
+            weightMatrixZeroPadding = zeroPadding;
+        }
+
+        /**
+         * Fills row (inputMap, xx, yy), column (xo, yo) of im2col with the
+         * input pixel that kernel weight xx,yy multiplies for output pixel
+         * xo,yo, or 0 for the zero padding. Like {@link #conv}, with zero
+         * padding only input pixels up to inputMapDim-2*halfKernelDim in x and
+         * y are used.
+         */
+        private void fillIm2col(Layer inputLayer) {
+            final float[] in = inputLayer.activations;
+            // all layers store maps contiguously by x and then y, except that InputLayer ignores the map and may not be square
+            final boolean contiguous = !(inputLayer instanceof InputLayer) || ((nInputMaps == 1) && (((InputLayer) inputLayer).dimy == inputMapDim));
+            final int offset = zeroPadding ? halfKernelDim : 0, maxIn = zeroPadding ? inputMapDim - (2 * halfKernelDim) : inputMapDim - 1;
+            int row = 0;
+            for (int inputMap = 0; inputMap < nInputMaps; inputMap++) {
+                final int mapStart = inputMap * inputMapLength;
+                for (int xx = 0; xx < kernelDim; xx++) {
+                    for (int yy = 0; yy < kernelDim; yy++) {
+                        int col = row * outputMapLength;
+                        for (int xo = 0; xo < outputMapDim; xo++) {
+                            final int xi = (xo + xx) - offset;
+                            if ((xi < 0) || (xi > maxIn)) {
+                                Arrays.fill(im2col, col, col + outputMapDim, 0);
+                                col += outputMapDim;
+                                continue;
+                            }
+                            for (int yo = 0; yo < outputMapDim; yo++) {
+                                final int yi = (yo + yy) - offset;
+                                if ((yi < 0) || (yi > maxIn)) {
+                                    im2col[col++] = 0;
+                                } else {
+                                    im2col[col++] = contiguous ? in[mapStart + (inputMapDim * xi) + yi] : inputLayer.a(inputMap, xi, yi);
+                                }
+                            }
+                        }
+                        row++;
+                    }
+                }
+            }
+        }
+
         // convolves a given kernel over the inputMap and accumulates output to activations
         private void conv(Layer inputLayer, int outputMap, int inputMap) {
             int startx = halfKernelDim, starty = halfKernelDim, endx = inputMapDim - halfKernelDim, endy = inputMapDim - halfKernelDim;
@@ -1911,10 +2126,12 @@ public class DeepLearnCnnNetwork {
     }
 
     /**
-     * Close extra graphics windows and dispose of them
+     * Close extra graphics windows and dispose of them, and shut down the
+     * fork/join pool of parallel convolution
      *
      */
     synchronized public void cleanup() {
+        shutdownForkJoinPool();
         if (activationsFrame != null) {
             activationsFrame.dispose();
             activationsFrame = null;
@@ -2103,4 +2320,60 @@ public class DeepLearnCnnNetwork {
         this.normalizeDVSForZsNullhop = normalizeDVSForZsNullhop;
     }
 
+    /**
+     * @return the gemmConvolutionEnabled
+     */
+    public boolean isGemmConvolutionEnabled() {
+        return gemmConvolutionEnabled;
+    }
+
+    /**
+     * Selects how convolutional layers are computed. If true (default), the
+     * input patches are laid out by im2col and multiplied by the kernel matrix
+     * using reused buffers, otherwise each kernel is convolved separately over
+     * its input map. Both give the same result up to float rounding.
+     *
+     * @param gemmConvolutionEnabled the gemmConvolutionEnabled to set
+     */
+    public void setGemmConvolutionEnabled(boolean gemmConvolutionEnabled) {
+        this.gemmConvolutionEnabled = gemmConvolutionEnabled;
+    }
+
+    /**
+     * @return the parallelConvolutionEnabled
+     */
+    public boolean isParallelConvolutionEnabled() {
+        return parallelConvolutionEnabled;
+    }
+
+    /**
+     * If true, the matrix multiply of convolutional layers is split over the
+     * output maps on a fork/join pool with a thread per core. Only used with
+     * {@link #setGemmConvolutionEnabled(boolean) }.
+     *
+     * @param parallelConvolutionEnabled the parallelConvolutionEnabled to set
+     */
+    public void setParallelConvolutionEnabled(boolean parallelConvolutionEnabled) {
+        this.parallelConvolutionEnabled = parallelConvolutionEnabled;
+        if (!parallelConvolutionEnabled) {
+            shutdownForkJoinPool();
+        }
+    }
+
+    /**
+     * Copies the processing options that are not stored in the XML file, i.e.
+     * softMaxOutput, zeroPadding, normalizeDVSForZsNullhop and the convolution
+     * options, from another network, e.g. to configure a replica of the same
+     * net that runs on another thread.
+     *
+     * @param other the network to copy the options from
+     */
+    public void copyOptionsFrom(DeepLearnCnnNetwork other) {
+        softMaxOutput = other.softMaxOutput;
+        zeroPadding = other.zeroPadding;
+        normalizeDVSForZsNullhop = other.normalizeDVSForZsNullhop;
+        gemmConvolutionEnabled = other.gemmConvolutionEnabled;
+        setParallelConvolutionEnabled(other.parallelConvolutionEnabled);
+    }
+
 }
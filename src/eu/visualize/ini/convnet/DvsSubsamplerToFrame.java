@@ -72,6 +72,32 @@ public class DvsSubsamplerToFrame {
         cleared = true;
     }
 
+    /**
+     * Copies the accumulated state of another subsampler into this one, e.g.
+     * to snapshot a time slice that is processed on another thread while the
+     * source goes on accumulating events.
+     *
+     * @param src the subsampler to copy from, which must have the same size
+     * @throws IllegalArgumentException if the sizes differ
+     */
+    public void copyFrom(DvsSubsamplerToFrame src) {
+        if ((src.width != width) || (src.height != height)) {
+            throw new IllegalArgumentException("cannot copy " + src.width + "x" + src.height + " subsampler to " + width + "x" + height + " subsampler");
+        }
+        System.arraycopy(src.eventSum, 0, eventSum, 0, nPixels);
+        System.arraycopy(src.pixmap, 0, pixmap, 0, nPixels);
+        colorScale = src.colorScale;
+        colorScaleRecip = src.colorScaleRecip;
+        accumulatedEventCount = src.accumulatedEventCount;
+        mostOffCount = src.mostOffCount;
+        mostOnCount = src.mostOnCount;
+        startTimestamp = src.startTimestamp;
+        cleared = src.cleared;
+        lastIntervalUs = src.lastIntervalUs;
+        sparsity = src.sparsity;
+        rectifyPolarties = src.rectifyPolarties;
+    }
+
 //    /**
 //     * Adds event from a source event location to the new coordinates
 //     *
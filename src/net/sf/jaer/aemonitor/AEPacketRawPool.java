@@ -1,67 +1,291 @@
 package net.sf.jaer.aemonitor;
 
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
 /**
  * Object that holds pool of AEPacketRaw that handles data interchange between capture and other (rendering) threads.
  * While the capture thread (AEReader.processData) captures events into one buffer (an AEPacketRaw) the other thread (AEViewer.run()) can
- * render the events. The only time the monitor on the pool needs to be acquired is when swapping or initializing the buffers, to prevent
- * either referencing unrelated data or having memory change out from under you.
+ * render the events.
+ * <p>
+ * The buffers form a ring of configurable depth that is shared by a single producer (the capture thread) and a single consumer.
+ * The producer fills one buffer and hands it to the consumer when the consumer asks for it in {@link #swap() }, or by itself
+ * when the buffer is nearly full and a free buffer is left, so that a burst of events spills into the next buffer rather than
+ * overrunning. The consumer then takes the waiting buffers one per swap.
+ * <p>
+ * A producer that brackets its writes by {@link #beginWrite() } and {@link #endWrite() } never takes the monitor of the pool,
+ * so it is never blocked by the consumer. Producers that only use {@link #writeBuffer() } must instead hold the monitor
+ * of the pool while they write; swap then gives the classic double buffering whatever the depth.
  */
 public class AEPacketRawPool {
 
+    /** The default number of buffers, which gives double buffering */
+    public static final int DEFAULT_DEPTH = 2;
+    private static final int IDLE = 0, WRITING = 1, CLAIMED = 2; // states of the buffer being filled
+    /** How long swap waits for a producer that is writing to hand over its buffer */
+    private static final long HANDOFF_TIMEOUT_NS = 2000000;
+
     private AEPacketRaw[] buffers;
-//    private AEPacketRaw lastBufferReference;
-    volatile int readBuffer = 0;
-    volatile int writeBuffer = 1;
+    private int depth;
+    private final AEPacketRaw emptyPacket = new AEPacketRaw(); // handed to consumer when there is nothing to read
+    private AEPacketRaw readPacket = emptyPacket;
+    // the n'th published buffer is buffers[n % depth]; the producer fills buffers[published % depth], the consumer holds buffers[(consumed-1) % depth]
+    private volatile long published = 0, consumed = 0;
+    private volatile boolean consumerHolding = false;
+    private volatile boolean handoffRequested = false;
+    private final AtomicInteger writeState = new AtomicInteger(IDLE);
+    private int writeStartEvents = 0, maxEventsPerWrite = 0; // only used by producer
+    private AtomicLongArray slotOverrunCounts;
+    private final AtomicLong overrunCount = new AtomicLong(), ringFullCount = new AtomicLong(), handoffTimeoutCount = new AtomicLong();
     private AEMonitorInterface outer;
 
     public AEPacketRawPool(AEMonitorInterface outer) {
+        this(outer, DEFAULT_DEPTH);
+    }
+
+    /**
+     * @param outer the interface, which supplies the buffer capacity
+     * @param depth the number of buffers, at least 2
+     */
+    public AEPacketRawPool(AEMonitorInterface outer, int depth) {
         super();
         this.outer = outer;
+        this.depth = checkDepth(depth);
+        emptyPacket.ensureCapacity(1);
         allocateMemory();
         reset();
     }
 
-    /** Swaps the read and write buffers so that the buffer that was getting written is now the one that is read from, and the one that was read from is
-     * now the one written to. Thread safe. This method is called by the consumer.
+    private static int checkDepth(int depth) {
+        if (depth < 2) {
+            throw new IllegalArgumentException("need at least 2 buffers, got depth=" + depth);
+        }
+        return depth;
+    }
+
+    /** Makes the buffer that was written since the last swap, or the oldest buffer that the producer handed over, the one
+     * that is read from, and releases the buffer that was read from. Called by the consumer.
+     * If the producer is just writing, waits briefly for it to hand over its buffer; if it does not, {@link #readBuffer() }
+     * is empty.
+     */
+    public final void swap() {
+        final long start = System.nanoTime();
+        boolean requested = false;
+        while (true) {
+            if (published > consumed) {
+                take();
+                return;
+            }
+            if (tryClaimWriteBuffer()) {
+                return;
+            }
+            if (!requested) {
+                // producer is writing; release our buffer and ask producer to publish its buffer at endWrite
+                readPacket = emptyPacket;
+                emptyPacket.clear();
+                consumerHolding = false;
+                handoffRequested = true;
+                requested = true;
+            } else if ((System.nanoTime() - start) > HANDOFF_TIMEOUT_NS) {
+                handoffTimeoutCount.incrementAndGet();
+                return;
+            }
+            Thread.yield();
+        }
+    }
+
+    /** Publishes and takes the buffer being filled if the producer is not writing it */
+    private boolean tryClaimWriteBuffer() {
+        synchronized (this) { // excludes producers that write under the monitor
+            if (!writeState.compareAndSet(IDLE, CLAIMED)) {
+                return false;
+            }
+            try {
+                if (published == consumed) {
+                    publish(); // always room, since we release the buffer we hold
+                }
+                take();
+            } finally {
+                writeState.set(IDLE);
+            }
+            return true;
+        }
+    }
+
+    private void take() {
+        final long c = consumed;
+        readPacket = buffers[(int) (c % depth)];
+        consumerHolding = true;
+        consumed = c + 1;
+    }
+
+    /** Hands over the buffer being filled and clears the next one. Caller must be the producer or have claimed the buffer. */
+    private void publish() {
+        final long p = published;
+        final int slot = (int) (p % depth);
+        if (buffers[slot].overrunOccuredFlag) {
+            slotOverrunCounts.incrementAndGet(slot);
+            overrunCount.incrementAndGet();
+        }
+        final AEPacketRaw next = buffers[(int) ((p + 1) % depth)];
+        next.clear();
+        next.overrunOccuredFlag = false;
+        handoffRequested = false;
+        published = p + 1;
+    }
+
+    /** @return true if the producer has a free buffer to continue in after publishing the one being filled */
+    private boolean hasFreeBuffer() {
+        final long c = consumed;
+        final int inUse = (int) (published + 1 - c) + 1 + (consumerHolding ? 1 : 0); // waiting + next fill + held
+        return inUse <= depth;
+    }
+
+    /** Starts writing by the producer, which must call {@link #endWrite() } when it is done, e.g. after translating one USB transfer.
+     * Does not block, except while the consumer swaps, which takes a few instructions.
+     * @return the buffer to write to; it stays the same until endWrite.
+     */
+    public final AEPacketRaw beginWrite() {
+        while (!writeState.compareAndSet(IDLE, WRITING)) {
+            Thread.yield();
+        }
+        final AEPacketRaw b = buffers[(int) (published % depth)];
+        writeStartEvents = b.getNumEvents();
+        return b;
+    }
+
+    /** Ends writing by the producer. Hands the buffer over to the consumer if the consumer asked for it, or if it is nearly full and
+     * a free buffer is left; otherwise writing continues in the same buffer at the next {@link #beginWrite() }.
      */
-    public final synchronized void swap() {
-//        lastBufferReference = buffers[readBuffer];
-        if (readBuffer == 0) {
-            readBuffer = 1;
-            writeBuffer = 0;
-        } else {
-            readBuffer = 0;
-            writeBuffer = 1;
+    public final void endWrite() {
+        try {
+            final int n = buffers[(int) (published % depth)].getNumEvents();
+            if ((n - writeStartEvents) > maxEventsPerWrite) {
+                maxEventsPerWrite = n - writeStartEvents;
+            }
+            final boolean nearlyFull = (n > 0) && ((outer.getAEBufferSize() - n) < (2 * maxEventsPerWrite));
+            if (handoffRequested || nearlyFull) {
+                if (hasFreeBuffer()) { // a request can be stale if consumer took a buffer published concurrently
+                    publish();
+                } else if (nearlyFull) {
+                    ringFullCount.incrementAndGet();
+                }
+            }
+        } finally {
+            writeState.set(IDLE);
         }
-        writeBuffer().clear();
-        writeBuffer().overrunOccuredFlag = false;
     }
 
     /** @return buffer that consumer reads from. */
-    public final synchronized AEPacketRaw readBuffer() {
-        return buffers[readBuffer];
+    public final AEPacketRaw readBuffer() {
+        return readPacket;
     }
 
     /** @return buffer that acquisition thread writes to. */
-    public final synchronized AEPacketRaw writeBuffer() {
-        return buffers[writeBuffer];
+    public final AEPacketRaw writeBuffer() {
+        return buffers[(int) (published % depth)];
     }
 
-    /** Set the current buffer to be the first one and clear the write buffer */
+    /** Set the current buffer to be the first one and clear all buffers */
     public final synchronized void reset() {
-        readBuffer = 0;
-        writeBuffer = 1;
-        buffers[writeBuffer].clear();
-        // new events go into this buffer which should be empty
-        buffers[readBuffer].clear();
+        claimExclusive();
+        try {
+            for (AEPacketRaw b : buffers) {
+                b.clear();
+                b.overrunOccuredFlag = false;
+            }
+            emptyPacket.clear();
+            readPacket = emptyPacket;
+            consumerHolding = false;
+            handoffRequested = false;
+            consumed = 0;
+            published = 0;
+        } finally {
+            writeState.set(IDLE);
+        }
+    }
+
+    private void claimExclusive() {
+        while (!writeState.compareAndSet(IDLE, CLAIMED)) {
+            Thread.yield();
+        }
     }
 
-    /** allocates AEPacketRaw buffers each with capacity of  */
+    /** allocates AEPacketRaw buffers each with capacity of {@link AEMonitorInterface#getAEBufferSize() } and resets the pool */
     public final void allocateMemory() {
-        buffers = new AEPacketRaw[2];
-        for (int i = 0; i < buffers.length; i++) {
-            buffers[i] = new AEPacketRaw();
-            buffers[i].ensureCapacity(outer.getAEBufferSize());
+        final AEPacketRaw[] newBuffers = new AEPacketRaw[depth];
+        for (int i = 0; i < newBuffers.length; i++) {
+            newBuffers[i] = new AEPacketRaw();
+            newBuffers[i].ensureCapacity(outer.getAEBufferSize());
+        }
+        synchronized (this) {
+            if (buffers == null) {
+                buffers = newBuffers;
+                slotOverrunCounts = new AtomicLongArray(depth);
+                return;
+            }
+            claimExclusive();
+            try {
+                buffers = newBuffers;
+                slotOverrunCounts = new AtomicLongArray(depth);
+            } finally {
+                writeState.set(IDLE);
+            }
+        }
+        reset();
+    }
+
+    /** @return the number of buffers */
+    public int getDepth() {
+        return depth;
+    }
+
+    /** Sets the number of buffers and reallocates them, discarding their events.
+     * @param depth the number of buffers, at least 2. With more than 2, bursts of events that fill a buffer before the consumer
+     * swaps spill over into the next buffer.
+     */
+    public void setDepth(int depth) {
+        if (depth == this.depth) {
+            return;
+        }
+        this.depth = checkDepth(depth);
+        allocateMemory();
+    }
+
+    /** @return the number of handed over buffers that overran, i.e. that have {@link AEPacketRaw#overrunOccuredFlag} set */
+    public long getOverrunCount() {
+        return overrunCount.get();
+    }
+
+    /** @return the number of handed over buffers that overran, by buffer index */
+    public long[] getSlotOverrunCounts() {
+        final AtomicLongArray a = slotOverrunCounts;
+        final long[] counts = new long[a.length()];
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = a.get(i);
         }
+        return counts;
+    }
+
+    /** @return the number of times the producer wanted to continue in a new buffer but all buffers were in use */
+    public long getRingFullCount() {
+        return ringFullCount.get();
+    }
+
+    /** @return the number of swaps that returned an empty buffer because the producer did not hand over its buffer in time */
+    public long getHandoffTimeoutCount() {
+        return handoffTimeoutCount.get();
+    }
+
+    /** @return the number of buffers handed over by the producer but not yet taken by the consumer */
+    public int getWaitingCount() {
+        return (int) (published - consumed);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("AEPacketRawPool depth=%d waiting=%d overruns=%d ringFull=%d handoffTimeouts=%d",
+                depth, getWaitingCount(), getOverrunCount(), getRingFullCount(), getHandoffTimeoutCount());
     }
 }
@@ -29,6 +29,7 @@ import net.sf.jaer.eventio.AEFileInputStream;
 import net.sf.jaer.eventio.AEFileOutputStream;
 import net.sf.jaer.eventprocessing.EventFilter;
 import net.sf.jaer.eventprocessing.FilterChain;
+import net.sf.jaer.eventprocessing.FilterChainMetrics;
 import net.sf.jaer.eventprocessing.FilterFrame;
 import net.sf.jaer.eventprocessing.filter.BackgroundActivityFilter;
 import net.sf.jaer.eventprocessing.filter.Info;
@@ -164,6 +165,17 @@ public class AEChip extends Chip2D {
 
         filterChain = new FilterChain(this);
         filterChain.contructPreferredFilters();
+        addFilterMetricsCommand();
+    }
+
+    /**
+     * Adds the command to query the metrics of this chip's filter chain to the
+     * RemoteControl
+     */
+    private void addFilterMetricsCommand() {
+        if ((getRemoteControl() != null) && (filterChain != null)) {
+            getRemoteControl().addCommandListener(filterChain.getMetrics(), FilterChainMetrics.REMOTE_FILTER_METRICS + " [on|off|reset|csv|json|filename]", FilterChainMetrics.REMOTE_FILTER_METRICS_HELP);
+        }
     }
 
     /**
@@ -354,6 +366,7 @@ public class AEChip extends Chip2D {
 
     public void setFilterChain(FilterChain filterChain) {
         this.filterChain = filterChain;
+        addFilterMetricsCommand();
     }
 
     /**
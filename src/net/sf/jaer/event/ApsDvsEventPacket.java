@@ -123,7 +123,7 @@ public class ApsDvsEventPacket<E extends ApsDvsEvent> extends EventPacket<E> {
 		 */
 		@Override
 		public boolean hasNext() {
-			if (usingTimeout && timeLimitTimer.isTimedOut()) {
+			if (usingTimeout && checkTimedOut()) {
 				return false;
 			}
 
@@ -0,0 +1,547 @@
+/*
+ * ColumnarEventPacket.java
+ *
+ * Created on October 18, 2026
+ */
+package net.sf.jaer.event;
+
+import java.util.Arrays;
+import java.util.logging.Logger;
+
+import eu.seebetter.ini.chips.davis.imu.IMUSample;
+import net.sf.jaer.event.ApsDvsEvent.ColorFilter;
+import net.sf.jaer.event.ApsDvsEvent.ReadoutType;
+import net.sf.jaer.event.PolarityEvent.Polarity;
+
+/**
+ * A packet of events stored as parallel primitive arrays (structure of arrays)
+ * rather than as an array of references to {@link BasicEvent} objects.
+ * <p>
+ * An {@link EventPacket} holds an array of pointers to event objects scattered
+ * over the heap, so that every filter that touches e.g. only timestamps and
+ * addresses must still chase a pointer per event. In this packet each event
+ * field lives in its own contiguous column, i.e. event <code>i</code> is
+ * <code>(timestamps[i], x[i], y[i], types[i], polarities[i], ...)</code>.
+ * Filters that are ported to this representation iterate the columns
+ * directly:
+ * <pre>
+ * final int n = packet.getSize();
+ * final int[] ts = packet.timestamps;
+ * final short[] xs = packet.x, ys = packet.y;
+ * for (int i = 0; i &lt; n; i++) {
+ *     if (packet.isFilteredOut(i)) continue;
+ *     ... use ts[i], xs[i], ys[i]
+ * }
+ * </pre>
+ * <p>
+ * Existing filters keep working through the adapter methods:
+ * {@link #copyFrom(net.sf.jaer.event.EventPacket)} loads the columns from an
+ * object packet and {@link #writeTo(net.sf.jaer.event.EventPacket)} or
+ * {@link #asEventPacket()} materializes the columns as an ordinary
+ * <code>EventPacket</code>. Event index <code>i</code> in the columns always
+ * corresponds to element <code>i</code> of the object packet, including
+ * filteredOut and non-DVS events, so that flags set in one representation can
+ * be transferred to the other with {@link #applyFilteredOutTo(net.sf.jaer.event.EventPacket) }.
+ * <p>
+ * Like EventPacket, this packet is designed to be reused. The columns grow when
+ * needed but never shrink, and they are public so that hot loops can hoist them
+ * into locals. Columns may be replaced by a larger array when the packet grows,
+ * so do not cache them across calls that append events.
+ *
+ * @see net.sf.jaer.eventprocessing.ColumnarEventFilter2D
+ */
+public class ColumnarEventPacket {
+
+    static final Logger log = Logger.getLogger(ColumnarEventPacket.class.getName());
+    /**
+     * Default capacity in events for new packets
+     */
+    public static final int DEFAULT_INITIAL_CAPACITY = 4096;
+    /**
+     * Flag bit in {@link #flags} set when the event is filtered out
+     */
+    public static final byte FLAG_FILTERED_OUT = 1;
+    /**
+     * Flag bit in {@link #flags} set when the event is special
+     */
+    public static final byte FLAG_SPECIAL = 2;
+    private static final ReadoutType[] READOUT_TYPES = ReadoutType.values();
+    private static final ColorFilter[] COLOR_FILTERS = ColorFilter.values();
+
+    /**
+     * Timestamps in us
+     */
+    public int[] timestamps;
+    /**
+     * Raw addresses
+     */
+    public int[] addresses;
+    /**
+     * x addresses
+     */
+    public short[] x;
+    /**
+     * y addresses
+     */
+    public short[] y;
+    /**
+     * The type field of TypedEvent
+     */
+    public byte[] types;
+    /**
+     * Polarity of PolarityEvent, 1 for On and 0 for Off
+     */
+    public byte[] polarities;
+    /**
+     * The ordinal of the ApsDvsEvent ReadoutType
+     */
+    public byte[] readoutTypes;
+    /**
+     * The ordinal of the ApsDvsEvent ColorFilter
+     */
+    public byte[] colorFilters;
+    /**
+     * The ApsDvsEvent ADC sample
+     */
+    public int[] adcSamples;
+    /**
+     * The source byte of BasicEvent
+     */
+    public byte[] sources;
+    /**
+     * Bit flags {@link #FLAG_FILTERED_OUT} and {@link #FLAG_SPECIAL}
+     */
+    public byte[] flags;
+    /**
+     * IMU samples of ApsDvsEvent with ReadoutType.IMU. This column is only
+     * allocated when an IMU sample is stored.
+     */
+    private IMUSample[] imuSamples;
+
+    private int size = 0;
+    private int capacity = 0;
+
+    /**
+     * The modification system time in ns of the packet this one was copied
+     * from.
+     *
+     * @see EventPacket#systemModificationTimeNs
+     */
+    public long systemModificationTimeNs = 0;
+
+    /**
+     * The cached object packet returned by asEventPacket
+     */
+    private EventPacket view = null;
+
+    /**
+     * Constructs a new packet with DEFAULT_INITIAL_CAPACITY
+     */
+    public ColumnarEventPacket() {
+        this(DEFAULT_INITIAL_CAPACITY);
+    }
+
+    /**
+     * Constructs a new packet
+     *
+     * @param capacity initial capacity in events
+     */
+    public ColumnarEventPacket(int capacity) {
+        allocateColumns(Math.max(1, capacity));
+    }
+
+    private void allocateColumns(int n) {
+        timestamps = timestamps == null ? new int[n] : Arrays.copyOf(timestamps, n);
+        addresses = addresses == null ? new int[n] : Arrays.copyOf(addresses, n);
+        x = x == null ? new short[n] : Arrays.copyOf(x, n);
+        y = y == null ? new short[n] : Arrays.copyOf(y, n);
+        types = types == null ? new byte[n] : Arrays.copyOf(types, n);
+        polarities = polarities == null ? new byte[n] : Arrays.copyOf(polarities, n);
+        readoutTypes = readoutTypes == null ? new byte[n] : Arrays.copyOf(readoutTypes, n);
+        colorFilters = colorFilters == null ? new byte[n] : Arrays.copyOf(colorFilters, n);
+        adcSamples = adcSamples == null ? new int[n] : Arrays.copyOf(adcSamples, n);
+        sources = sources == null ? new byte[n] : Arrays.copyOf(sources, n);
+        flags = flags == null ? new byte[n] : Arrays.copyOf(flags, n);
+        if (imuSamples != null) {
+            imuSamples = Arrays.copyOf(imuSamples, n);
+        }
+        capacity = n;
+    }
+
+    /**
+     * Ensures packet has room for n events. Existing events are retained.
+     *
+     * @param n capacity
+     */
+    public void allocate(int n) {
+        if (n <= capacity) {
+            return;
+        }
+        log.info("enlarging capacity of " + this + " to " + n + " events");
+        allocateColumns(n);
+    }
+
+    private void ensureCapacityForAppend() {
+        if (size >= capacity) {
+            allocateColumns(capacity * 2);
+        }
+    }
+
+    /**
+     * Returns the number of events in the packet, including filteredOut
+     * events.
+     *
+     * @return size in events
+     */
+    final public int getSize() {
+        return size;
+    }
+
+    /**
+     * Sets the number of events. The capacity must already be large enough.
+     *
+     * @param n the new size
+     */
+    public void setSize(int n) {
+        if (n > capacity) {
+            throw new ArrayIndexOutOfBoundsException("size " + n + " exceeds capacity " + capacity);
+        }
+        size = n;
+    }
+
+    /**
+     * @return capacity in events
+     */
+    final public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Sets the size to zero.
+     */
+    public void clear() {
+        size = 0;
+    }
+
+    /**
+     * @return true if there are no events
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Appends a DVS-type event, i.e. with ReadoutType.DVS and no ADC sample.
+     *
+     * @param timestamp the timestamp in us
+     * @param address the raw address
+     * @param xx the x address
+     * @param yy the y address
+     * @param polarity 1 for On, 0 for Off
+     * @return the index of the new event
+     */
+    public int appendDvs(int timestamp, int address, short xx, short yy, byte polarity) {
+        ensureCapacityForAppend();
+        final int i = size++;
+        timestamps[i] = timestamp;
+        addresses[i] = address;
+        x[i] = xx;
+        y[i] = yy;
+        types[i] = polarity;
+        polarities[i] = polarity;
+        readoutTypes[i] = (byte) ReadoutType.DVS.ordinal();
+        colorFilters[i] = (byte) ColorFilter.W.ordinal();
+        adcSamples[i] = 0;
+        sources[i] = 0;
+        flags[i] = 0;
+        if (imuSamples != null) {
+            imuSamples[i] = null;
+        }
+        return i;
+    }
+
+    /**
+     * Appends a copy of the fields of an event.
+     *
+     * @param e the event
+     * @return the index of the new event
+     */
+    public int append(BasicEvent e) {
+        ensureCapacityForAppend();
+        final int i = size++;
+        set(i, e);
+        return i;
+    }
+
+    /**
+     * Stores the fields of event e at index i. Fields that e does not have
+     * are set to their default values.
+     *
+     * @param i the index, which must be less than capacity
+     * @param e the event
+     */
+    public void set(int i, BasicEvent e) {
+        timestamps[i] = e.timestamp;
+        addresses[i] = e.address;
+        x[i] = e.x;
+        y[i] = e.y;
+        sources[i] = e.source;
+        flags[i] = (byte) ((e.isFilteredOut() ? FLAG_FILTERED_OUT : 0) | (e.isSpecial() ? FLAG_SPECIAL : 0));
+        if (e instanceof TypedEvent) {
+            types[i] = ((TypedEvent) e).type;
+        } else {
+            types[i] = 0;
+        }
+        if (e instanceof PolarityEvent) {
+            polarities[i] = ((PolarityEvent) e).polarity == Polarity.Off ? (byte) 0 : (byte) 1;
+        } else {
+            polarities[i] = 1;
+        }
+        if (e instanceof ApsDvsEvent) {
+            final ApsDvsEvent a = (ApsDvsEvent) e;
+            readoutTypes[i] = (byte) a.getReadoutType().ordinal();
+            colorFilters[i] = (byte) a.getColorFilter().ordinal();
+            adcSamples[i] = a.getAdcSample();
+            final IMUSample imu = a.getImuSample();
+            if (imu != null && imuSamples == null) {
+                imuSamples = new IMUSample[capacity];
+            }
+            if (imuSamples != null) {
+                imuSamples[i] = imu;
+            }
+        } else {
+            readoutTypes[i] = (byte) ReadoutType.Null.ordinal();
+            colorFilters[i] = (byte) ColorFilter.W.ordinal();
+            adcSamples[i] = 0;
+            if (imuSamples != null) {
+                imuSamples[i] = null;
+            }
+        }
+    }
+
+    /**
+     * Copies the fields stored at index i to event e. Fields that e does not
+     * have are ignored.
+     *
+     * @param i the index
+     * @param e the event to write to
+     */
+    public void get(int i, BasicEvent e) {
+        e.timestamp = timestamps[i];
+        e.x = x[i];
+        e.y = y[i];
+        e.source = sources[i];
+        e.setSpecial((flags[i] & FLAG_SPECIAL) != 0);
+        e.address = addresses[i]; // after setSpecial, which modifies address
+        e.setFilteredOut((flags[i] & FLAG_FILTERED_OUT) != 0);
+        if (e instanceof TypedEvent) {
+            ((TypedEvent) e).type = types[i];
+        }
+        if (e instanceof PolarityEvent) {
+            ((PolarityEvent) e).polarity = polarities[i] == 0 ? Polarity.Off : Polarity.On;
+        }
+        if (e instanceof ApsDvsEvent) {
+            final ApsDvsEvent a = (ApsDvsEvent) e;
+            final IMUSample imu = imuSamples == null ? null : imuSamples[i];
+            a.setImuSample(imu); // sets readout type, overwritten below
+            a.setReadoutType(READOUT_TYPES[readoutTypes[i]]);
+            a.setColorFilter(COLOR_FILTERS[colorFilters[i]]);
+            a.setAdcSample(adcSamples[i]);
+        }
+    }
+
+    /**
+     * Returns true if event i is filtered out.
+     *
+     * @param i the index
+     * @return true if filtered out
+     */
+    final public boolean isFilteredOut(int i) {
+        return (flags[i] & FLAG_FILTERED_OUT) != 0;
+    }
+
+    /**
+     * Sets or clears the filteredOut flag of event i.
+     *
+     * @param i the index
+     * @param yes true to filter out the event
+     */
+    final public void setFilteredOut(int i, boolean yes) {
+        if (yes) {
+            flags[i] |= FLAG_FILTERED_OUT;
+        } else {
+            flags[i] &= ~FLAG_FILTERED_OUT;
+        }
+    }
+
+    /**
+     * Returns true if event i is a DVS event, i.e. it is not an APS sample,
+     * IMU sample or other special readout. Events copied from packets that are
+     * not ApsDvsEvent packets are all DVS events.
+     *
+     * @param i the index
+     * @return true for DVS events
+     */
+    final public boolean isDvsEvent(int i) {
+        final int r = readoutTypes[i];
+        return r == ReadoutType.DVS.ordinal() || r == ReadoutType.Null.ordinal();
+    }
+
+    /**
+     * Returns the ReadoutType of event i
+     *
+     * @param i the index
+     * @return the ReadoutType
+     */
+    final public ReadoutType getReadoutType(int i) {
+        return READOUT_TYPES[readoutTypes[i]];
+    }
+
+    /**
+     * Returns the ColorFilter of event i
+     *
+     * @param i the index
+     * @return the ColorFilter
+     */
+    final public ColorFilter getColorFilter(int i) {
+        return COLOR_FILTERS[colorFilters[i]];
+    }
+
+    /**
+     * Returns the IMUSample of event i, or null if there is none
+     *
+     * @param i the index
+     * @return the sample or null
+     */
+    final public IMUSample getImuSample(int i) {
+        return imuSamples == null ? null : imuSamples[i];
+    }
+
+    /**
+     * Returns the count of events with the filteredOut flag set.
+     *
+     * @return the count
+     */
+    public int getFilteredOutCount() {
+        int n = 0;
+        final byte[] f = flags;
+        for (int i = 0; i < size; i++) {
+            n += f[i] & FLAG_FILTERED_OUT;
+        }
+        return n;
+    }
+
+    /**
+     * Returns first timestamp or 0 if there are no events.
+     *
+     * @return timestamp
+     */
+    public int getFirstTimestamp() {
+        return size == 0 ? 0 : timestamps[0];
+    }
+
+    /**
+     * Returns last timestamp or 0 if there are no events.
+     *
+     * @return timestamp
+     */
+    public int getLastTimestamp() {
+        return size == 0 ? 0 : timestamps[size - 1];
+    }
+
+    /**
+     * Returns duration of packet in microseconds.
+     *
+     * @return 0 if there are less than 2 events, otherwise last timestamp minus
+     * first timestamp.
+     */
+    public int getDurationUs() {
+        if (size < 2) {
+            return 0;
+        }
+        return getLastTimestamp() - getFirstTimestamp();
+    }
+
+    /**
+     * Loads this packet from all the elements of an object packet, including
+     * filteredOut and non-DVS events, so that indices correspond. This
+     * bypasses the packet iterators and hence any time limit.
+     *
+     * @param in the object packet
+     */
+    public void copyFrom(EventPacket<? extends BasicEvent> in) {
+        final int n = in.getSize();
+        allocate(n);
+        final BasicEvent[] data = in.getElementData();
+        for (int i = 0; i < n; i++) {
+            set(i, data[i]);
+        }
+        size = n;
+        systemModificationTimeNs = in.systemModificationTimeNs;
+    }
+
+    /**
+     * Writes all the events in this packet to an object packet, replacing its
+     * contents. The events in <code>out</code> are reused, so no event objects
+     * are constructed unless <code>out</code> must grow.
+     *
+     * @param out the packet to write to
+     * @return out
+     */
+    public <E extends BasicEvent> EventPacket<E> writeTo(EventPacket<E> out) {
+        final OutputEventIterator<E> outItr = out.outputIterator();
+        for (int i = 0; i < size; i++) {
+            get(i, outItr.nextOutput());
+        }
+        out.systemModificationTimeNs = systemModificationTimeNs;
+        return out;
+    }
+
+    /**
+     * Transfers the filteredOut flags of this packet to the corresponding
+     * elements of an object packet. The object packet must have been the
+     * source of {@link #copyFrom(net.sf.jaer.event.EventPacket)} and must not
+     * have been modified since.
+     *
+     * @param in the object packet
+     */
+    public void applyFilteredOutTo(EventPacket<? extends BasicEvent> in) {
+        final int n = Math.min(size, in.getSize());
+        final BasicEvent[] data = in.getElementData();
+        for (int i = 0; i < n; i++) {
+            data[i].setFilteredOut((flags[i] & FLAG_FILTERED_OUT) != 0);
+        }
+    }
+
+    /**
+     * Returns an object packet holding the events of this packet. The
+     * returned packet is owned and reused by this packet; it is rewritten on
+     * each call, so it is only valid until the next call. It is an
+     * ApsDvsEventPacket if there are any APS or IMU readouts, otherwise an
+     * EventPacket of PolarityEvent.
+     *
+     * @return the object packet
+     */
+    public EventPacket<? extends BasicEvent> asEventPacket() {
+        boolean aps = false;
+        for (int i = 0; i < size; i++) {
+            if (!isDvsEvent(i)) {
+                aps = true;
+                break;
+            }
+        }
+        if (aps) {
+            if (view == null || view.getEventClass() != ApsDvsEvent.class) {
+                view = new ApsDvsEventPacket(ApsDvsEvent.class);
+            }
+        } else if (view == null || view.getEventClass() != PolarityEvent.class) {
+            view = new EventPacket(PolarityEvent.class);
+        }
+        return writeTo(view);
+    }
+
+    @Override
+    public String toString() {
+        return "ColumnarEventPacket #" + hashCode() + " with size=" + size + " capacity=" + capacity;
+    }
+}
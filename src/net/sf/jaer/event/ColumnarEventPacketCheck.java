@@ -0,0 +1,162 @@
+/*
+ * ColumnarEventPacketCheck.java
+ *
+ * Created on October 18, 2026
+ */
+package net.sf.jaer.event;
+
+import java.util.Random;
+
+import eu.seebetter.ini.chips.davis.imu.IMUSample;
+import net.sf.jaer.event.ApsDvsEvent.ColorFilter;
+import net.sf.jaer.event.ApsDvsEvent.ReadoutType;
+import net.sf.jaer.event.PolarityEvent.Polarity;
+
+/**
+ * Checks that {@link ColumnarEventPacket} keeps every field of
+ * {@link ApsDvsEvent}s through a round trip. A packet of random DVS, APS and
+ * IMU events, with all color filters and some events filtered out, is copied
+ * into a columnar packet and written back to a new object packet, and every
+ * field of every event is compared.
+ * <pre>
+ * java net.sf.jaer.event.ColumnarEventPacketCheck [numevents]
+ * </pre> The exit status is 0 if the packets are equal and 1 if they differ.
+ */
+public class ColumnarEventPacketCheck {
+
+    /**
+     * Default number of events
+     */
+    public static final int DEFAULT_NUM_EVENTS = 10000;
+    private static final int MAX_REPORTED_DIFFERENCES = 20;
+    private static final ReadoutType[] APS_READOUT_TYPES = {ReadoutType.ResetRead, ReadoutType.SignalRead, ReadoutType.SOF,
+        ReadoutType.EOF, ReadoutType.SOE, ReadoutType.EOE};
+
+    private int differences = 0;
+
+    /**
+     * Round-trips a random packet through a columnar packet and compares the
+     * events
+     *
+     * @param numEvents the number of events
+     * @param seed the seed of the random events
+     */
+    public void check(int numEvents, long seed) {
+        final Random r = new Random(seed);
+        final ApsDvsEventPacket<ApsDvsEvent> in = new ApsDvsEventPacket<ApsDvsEvent>(ApsDvsEvent.class);
+        final OutputEventIterator<ApsDvsEvent> outItr = in.outputIterator();
+        for (int i = 0; i < numEvents; i++) {
+            final ApsDvsEvent e = outItr.nextOutput();
+            e.timestamp = i * 3;
+            e.x = (short) r.nextInt(346);
+            e.y = (short) r.nextInt(260);
+            e.address = r.nextInt();
+            e.source = (byte) r.nextInt(4);
+            final int kind = r.nextInt(10);
+            if (kind == 0) {
+                final short[] buf = new short[7];
+                for (int k = 0; k < buf.length; k++) {
+                    buf[k] = (short) r.nextInt();
+                }
+                e.setImuSample(new IMUSample(e.timestamp, buf));
+            } else if (kind < 5) {
+                e.setReadoutType(APS_READOUT_TYPES[r.nextInt(APS_READOUT_TYPES.length)]);
+                e.setAdcSample(r.nextInt(1024));
+            } else {
+                e.setReadoutType(ReadoutType.DVS);
+                e.type = (byte) r.nextInt(2);
+                e.polarity = e.type == 0 ? Polarity.Off : Polarity.On;
+            }
+            e.setColorFilter(ColorFilter.values()[r.nextInt(ColorFilter.values().length)]);
+            e.setFilteredOut(r.nextInt(7) == 0);
+        }
+
+        final ColumnarEventPacket columnar = new ColumnarEventPacket(16); // small, so that the columns grow
+        columnar.copyFrom(in);
+        for (int i = 0; i < numEvents; i++) {
+            if (columnar.getColorFilter(i) != in.getEvent(i).getColorFilter()) {
+                report("event " + i + ": column colorFilter " + columnar.getColorFilter(i) + " != " + in.getEvent(i).getColorFilter());
+            }
+        }
+        final ApsDvsEventPacket<ApsDvsEvent> back = new ApsDvsEventPacket<ApsDvsEvent>(ApsDvsEvent.class);
+        columnar.writeTo(back);
+        if (back.getSize() != numEvents) {
+            report("size " + back.getSize() + " != " + numEvents);
+            return;
+        }
+        for (int i = 0; i < numEvents; i++) {
+            final String d = difference(in.getEvent(i), back.getEvent(i));
+            if (d != null) {
+                report("event " + i + ": " + d);
+            }
+        }
+    }
+
+    /**
+     * @return the number of differences found so far
+     */
+    public int getDifferences() {
+        return differences;
+    }
+
+    private void report(String s) {
+        if (differences < MAX_REPORTED_DIFFERENCES) {
+            System.out.println(s);
+        } else if (differences == MAX_REPORTED_DIFFERENCES) {
+            System.out.println("...");
+        }
+        differences++;
+    }
+
+    /**
+     * @return a description of the first field that differs, or null if the
+     * events are equal
+     */
+    private static String difference(ApsDvsEvent s, ApsDvsEvent p) {
+        if (s.timestamp != p.timestamp) {
+            return "timestamp " + s.timestamp + " != " + p.timestamp;
+        }
+        if (s.address != p.address) {
+            return "address " + s.address + " != " + p.address;
+        }
+        if ((s.x != p.x) || (s.y != p.y)) {
+            return "x,y " + s.x + "," + s.y + " != " + p.x + "," + p.y;
+        }
+        if (s.type != p.type) {
+            return "type " + s.type + " != " + p.type;
+        }
+        if (s.polarity != p.polarity) {
+            return "polarity " + s.polarity + " != " + p.polarity;
+        }
+        if (s.source != p.source) {
+            return "source " + s.source + " != " + p.source;
+        }
+        if (s.isSpecial() != p.isSpecial()) {
+            return "special " + s.isSpecial() + " != " + p.isSpecial();
+        }
+        if (s.isFilteredOut() != p.isFilteredOut()) {
+            return "filteredOut " + s.isFilteredOut() + " != " + p.isFilteredOut();
+        }
+        if (s.getReadoutType() != p.getReadoutType()) {
+            return "readoutType " + s.getReadoutType() + " != " + p.getReadoutType();
+        }
+        if (s.getAdcSample() != p.getAdcSample()) {
+            return "adcSample " + s.getAdcSample() + " != " + p.getAdcSample();
+        }
+        if (s.getColorFilter() != p.getColorFilter()) {
+            return "colorFilter " + s.getColorFilter() + " != " + p.getColorFilter();
+        }
+        if (s.getImuSample() != p.getImuSample()) {
+            return "imuSample " + s.getImuSample() + " != " + p.getImuSample();
+        }
+        return null;
+    }
+
+    public static void main(String[] args) {
+        final int numEvents = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_NUM_EVENTS;
+        final ColumnarEventPacketCheck check = new ColumnarEventPacketCheck();
+        check.check(numEvents, 1);
+        System.out.println(numEvents + " events, " + check.getDifferences() + " differences");
+        System.exit(check.getDifferences() == 0 ? 0 : 1);
+    }
+}
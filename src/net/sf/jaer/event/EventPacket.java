@@ -98,6 +98,10 @@ public class EventPacket<E extends BasicEvent> implements /* EventPacketInterfac
      */
     protected Constructor<E> eventConstructor = null;
     private E eventPrototype;
+    /**
+     * The number of events constructed to fill this packet
+     */
+    private long allocatedEventCount = 0;
     /**
      * The backing array of element data of type E
      */
@@ -194,6 +198,7 @@ public class EventPacket<E extends BasicEvent> implements /* EventPacketInterfac
                 elementData[i] = e;
                 eventPrototype = e;
             }
+            allocatedEventCount += endIndex - startIndex;
         } catch (final Exception e) {
             EventPacket.log.warning("while filling packet with default events caught " + e);
             e.printStackTrace();
@@ -484,6 +489,8 @@ public class EventPacket<E extends BasicEvent> implements /* EventPacketInterfac
 
         protected int cursor;
         protected boolean usingTimeout;
+        private boolean timedOut;
+        private int timeCheckCountdown;
 
         /**
          * Constructs a new instance of the InItr.
@@ -502,7 +509,7 @@ public class EventPacket<E extends BasicEvent> implements /* EventPacketInterfac
          */
         @Override
         public boolean hasNext() {
-            if (usingTimeout && timeLimitTimer.isTimedOut()) {
+            if (usingTimeout && checkTimedOut()) {
                 return false;
             }
 
@@ -514,6 +521,24 @@ public class EventPacket<E extends BasicEvent> implements /* EventPacketInterfac
             return cursor < size;
         }
 
+        /**
+         * Checks the time limit of the packet on the first call and then
+         * every {@link TimeLimiter#CHECK_INTERVAL_EVENTS} calls, and keeps
+         * returning true once it has timed out.
+         *
+         * @return true if the time limit is exceeded
+         */
+        protected final boolean checkTimedOut() {
+            if (timedOut) {
+                return true;
+            }
+            if (--timeCheckCountdown > 0) {
+                return false;
+            }
+            timeCheckCountdown = TimeLimiter.CHECK_INTERVAL_EVENTS;
+            return timedOut = timeLimitTimer.isTimedOut();
+        }
+
         /**
          * Obtains the next input event.
          *
@@ -532,6 +557,8 @@ public class EventPacket<E extends BasicEvent> implements /* EventPacketInterfac
             usingTimeout = timeLimitTimer.isEnabled(); // timelimiter only used if timeLimitTimer is enabled
             // but flag to
             // check it it only set on packet reset
+            timedOut = false;
+            timeCheckCountdown = 1; // check on first hasNext
             filteredOutCount = 0;
         }
 
@@ -612,8 +639,9 @@ public class EventPacket<E extends BasicEvent> implements /* EventPacketInterfac
     }
 
     /**
-     * Ensures packet has room for n events. The original events are retained
-     * and the new capacity is filled with default events.
+     * Ensures packet has room for n events. The original events, including
+     * those beyond the size of the packet, are retained and only the new
+     * capacity is filled with default events.
      *
      * @param n capacity
      * @see #fillWithDefaultEvents(int, int)
@@ -626,11 +654,12 @@ public class EventPacket<E extends BasicEvent> implements /* EventPacketInterfac
         final int ncapacity = n; // (capacity*3)/2+1;
         Object oldData[] = elementData;
         elementData = (E[]) Array.newInstance(eventClass, ncapacity);
-        System.arraycopy(oldData, 0, elementData, 0, size);
+        final int filled = Math.min(capacity, oldData.length);
+        System.arraycopy(oldData, 0, elementData, 0, filled);
         oldData = null;
-        // capacity still is old capacity and we have already filled it to there with new events, now fill
+        // reuse the events that were already constructed up to the old capacity, now fill
         // in up to new capacity with new events
-        fillWithDefaultEvents(size, ncapacity);
+        fillWithDefaultEvents(filled, ncapacity);
         capacity = ncapacity;
     }
 
@@ -825,6 +854,17 @@ public class EventPacket<E extends BasicEvent> implements /* EventPacketInterfac
         return eventPrototype;
     }
 
+    /**
+     * Returns the number of events that were constructed to fill this packet
+     * since it was made. A packet that is reused and has reached its working
+     * capacity does not construct any more events.
+     *
+     * @return the number of events
+     */
+    public long getAllocatedEventCount() {
+        return allocatedEventCount;
+    }
+
     /**
      * Sets the prototype event of the packet. E the event prototype which is an
      * instance of an event.
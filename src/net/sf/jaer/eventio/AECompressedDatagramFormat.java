@@ -0,0 +1,121 @@
+/*
+ * AECompressedDatagramFormat.java
+ *
+ * Created on October 18, 2026
+ */
+package net.sf.jaer.eventio;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The compact event format used by {@link AEUnicastOutput} and {@link AEUnicastInput} when
+ * {@link AEUnicastSettings#isCompressedProtocolEnabled() } is set.
+ * <p>
+ * Each datagram starts with the optional 4 byte sequence number, as in the normal jAER format,
+ * followed by the header
+ * <ul>
+ * <li>the byte {@link #MAGIC},
+ * <li>one byte holding the address shift, the number of low address bits that are zero in all events of the packet,
+ * <li>the timestamp of the first event as varint.
+ * </ul>
+ * Then each event follows as the varint of its address shifted right by the address shift, and, if timestamps are
+ * enabled, the varint of the zigzag encoded difference of its timestamp to the one of the previous event.
+ * Varints are little endian base 128 with the high bit of each byte set if another byte follows, so the format does
+ * not depend on the byte order. Every datagram can be decoded by itself, so a lost datagram loses only its own events.
+ * <p>
+ * A DVS event with its typically small timestamp difference takes 3 to 5 bytes, instead of the 8 bytes of the normal
+ * format with 4 byte addresses and timestamps.
+ */
+public final class AECompressedDatagramFormat {
+
+    /** The first byte of the header */
+    public static final byte MAGIC = (byte) 0xAC;
+    /** The largest header: magic, shift and 5 byte timestamp varint */
+    public static final int MAX_HEADER_SIZE_BYTES = 7;
+    /** The largest event: 5 byte address varint and 5 byte timestamp varint */
+    public static final int MAX_EVENT_SIZE_BYTES = 10;
+
+    private AECompressedDatagramFormat() {
+    }
+
+    /**
+     * Returns the number of low address bits that are zero in all the addresses, which need not be sent
+     *
+     * @param addresses the addresses
+     * @param n the number of addresses
+     * @return the shift, 0 if all addresses are zero
+     */
+    public static int addressShift(int[] addresses, int n) {
+        int or = 0;
+        for (int i = 0; i < n; i++) {
+            or |= addresses[i];
+        }
+        return or == 0 ? 0 : Integer.numberOfTrailingZeros(or);
+    }
+
+    /**
+     * Writes the header of a datagram
+     *
+     * @param buf the buffer
+     * @param shift the address shift
+     * @param timestamp the timestamp of the first event
+     */
+    public static void putHeader(ByteBuffer buf, int shift, int timestamp) {
+        buf.put(MAGIC);
+        buf.put((byte) shift);
+        putVarint(buf, timestamp);
+    }
+
+    /**
+     * Writes an int as unsigned varint of 1 to 5 bytes
+     *
+     * @param buf the buffer
+     * @param value the value, treated as unsigned
+     */
+    public static void putVarint(ByteBuffer buf, int value) {
+        while ((value & ~0x7f) != 0) {
+            buf.put((byte) ((value & 0x7f) | 0x80));
+            value >>>= 7;
+        }
+        buf.put((byte) value);
+    }
+
+    /**
+     * Reads an unsigned varint
+     *
+     * @param buf the buffer
+     * @return the value
+     * @throws java.nio.BufferUnderflowException if the varint is truncated
+     */
+    public static int getVarint(ByteBuffer buf) {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            final int b = buf.get();
+            value |= (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) {
+                break;
+            }
+        }
+        return value;
+    }
+
+    /**
+     * Maps a signed value to an unsigned one so that values of small magnitude get short varints
+     *
+     * @param value the signed value
+     * @return the zigzag encoded value
+     */
+    public static int zigzag(int value) {
+        return (value << 1) ^ (value >> 31);
+    }
+
+    /**
+     * Inverse of {@link #zigzag(int) }
+     *
+     * @param value the zigzag encoded value
+     * @return the signed value
+     */
+    public static int unzigzag(int value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+}
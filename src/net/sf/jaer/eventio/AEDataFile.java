@@ -27,9 +27,16 @@ public interface AEDataFile {
     /** file extension for data files, including ".", e.g. ".aedat" */
     public static final String DATA_FILE_EXTENSION = ".aedat";  // changed from .dat Apr 2010
     public static final String OLD_DATA_FILE_EXTENSION=".dat";
+    /** file extension for HDF5 data files, including '.', ".hdf5"; ".h5" is also accepted for reading.
+     * @see Hdf5FileOutputWriter */
+    public static final String HDF5_DATA_FILE_EXTENSION = ".hdf5";
+    public static final String SHORT_HDF5_DATA_FILE_EXTENSION = ".h5";
     /** file extension for index files that contain information about a set of related data files, ".adidx", including '.'. */
     public static final String INDEX_FILE_EXTENSION = ".aeidx"; // changed from .dat Apr 2010
     public static final String OLD_INDEX_FILE_EXTENSION = ".index"; // changed from .dat Apr 2010
+    /** file extension appended to a data file name for its sidecar timestamp index, ".tsidx", including '.'.
+     * @see AEFileTimestampIndex */
+    public static final String TIMESTAMP_INDEX_FILE_EXTENSION = ".tsidx";
     /** Used to mark end of header block after 15.11.2016. Next line starts binary data. */
     public static final String END_OF_HEADER_STRING="End Of ASCII Header";
 
@@ -41,6 +48,9 @@ public interface AEDataFile {
     public static final String DATA_FILE_FORMAT_HEADER = "!AER-DAT";
     /** The most recent format version number string */
     public static final String DATA_FILE_VERSION_NUMBER = "2.0";
+    /** The format header of chunked compressed data files, whose first line reads e.g. "#!AER-DAT-CHUNKED1.0".
+     * @see ChunkedAEFileOutputStream */
+    public static final String CHUNKED_DATA_FILE_FORMAT_HEADER = "!AER-DAT-CHUNKED";
     /** Format used for log file names */
     public static DateFormat DATE_FORMAT = new SimpleDateFormat("yyyy-MM-dd'T'HH-mm-ssZ"); //e.g. Tmpdiff128-   2007-04-04T11-32-21-0700    -0 ants molting swarming.dat
     /** end of line (EOL) ending (the "windows type") used in data files */
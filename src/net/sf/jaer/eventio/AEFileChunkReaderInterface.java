@@ -0,0 +1,74 @@
+/*
+ * AEFileChunkReaderInterface.java
+ *
+ * Created on October 18, 2026
+ */
+package net.sf.jaer.eventio;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Reads the events of a data file that is not a plain AER-DAT file in chunks
+ * of AER-DAT-2.0 events, i.e. int32 address and int32 timestamp per event,
+ * big-endian. {@link AEFileInputStream} reads these chunks in place of the
+ * memory-mapped chunks of an AER-DAT-2.0 file, so that positioning, marks and
+ * playback work the same for all formats.
+ *
+ * @see ChunkedAEFileReader
+ * @see Hdf5AedatFileInputReader
+ */
+public interface AEFileChunkReaderInterface {
+
+    /**
+     * @return the number of chunks
+     */
+    public int getNumChunks();
+
+    /**
+     * @return the number of events in the file
+     */
+    public long getNumEvents();
+
+    /**
+     * @param chunk the chunk number
+     * @return the number of the first event of the chunk
+     */
+    public long getChunkStartEvent(int chunk);
+
+    /**
+     * @param event the event number
+     * @return the number of the chunk that contains the event, or the last
+     * chunk if event is past the end
+     */
+    public int getChunkNumber(long event);
+
+    /**
+     * @return true if the timestamps of the chunks never decrease, i.e.
+     * findChunkStartEvent can be used
+     */
+    public boolean isMonotonic();
+
+    /**
+     * Finds where to start scanning for a timestamp
+     *
+     * @param timestamp the timestamp
+     * @return the first event of the first chunk that ends at or after
+     * timestamp
+     */
+    public long findChunkStartEvent(int timestamp);
+
+    /**
+     * Returns the events of a chunk
+     *
+     * @param chunk the chunk number
+     * @return a buffer of AER-DAT-2.0 events positioned at the first event
+     * @throws IOException if the chunk does not exist or cannot be read
+     */
+    public ByteBuffer getChunk(int chunk) throws IOException;
+
+    /**
+     * Releases the resources of the reader
+     */
+    public void close();
+}
@@ -20,7 +20,6 @@ import java.io.InputStreamReader;
 import java.nio.BufferUnderflowException;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
-import java.nio.MappedByteBuffer;
 import java.nio.channels.ClosedByInterruptException;
 import java.nio.channels.ClosedChannelException;
 import java.nio.channels.FileChannel;
@@ -171,9 +170,10 @@ public class AEFileInputStream extends DataInputStream implements AEFileInputStr
     private AEPacketRaw packet = new AEPacketRaw(MAX_BUFFER_SIZE_EVENTS);
     private EventRaw tmpEvent = new EventRaw();
     /**
-     * The memory-mapped byte buffer pointing to the file.
+     * The memory-mapped byte buffer pointing to the file, or the decompressed
+     * events of the current chunk of a chunked file.
      */
-    private MappedByteBuffer byteBuffer = null;
+    private ByteBuffer byteBuffer = null;
     /**
      * absolute position in file in events, points to next event number, 0 based
      * (1 means 2nd event)
@@ -201,7 +201,11 @@ public class AEFileInputStream extends DataInputStream implements AEFileInputStr
     // private Jaer3FileInputStream jaer3fileinputstream = null; // if non-null, then we have a jaer 3 file
     // jaer3 parse
     private Jaer3BufferParser jaer3BufferParser = null; // if non-null, then we have a jaer 3 file
+    private AEFileTimestampIndex timestampIndex = null; // built on first time-based seek
     private boolean jaer3EnableFlg = false; // jaer3 parse enable flag
+    private boolean chunkedEnableFlg = false; // set by parseFileFormatVersion for chunked compressed files
+    private File hdf5File = null; // set by the constructor for HDF5 files, which are read by Hdf5AedatFileInputReader
+    private AEFileChunkReaderInterface chunkReader = null; // if non-null, chunks are read by it, e.g. decompressed, instead of memory-mapped
 
     private static AEChip LAST_CHIP = null; // It's a static value, so it will always store the last AEFileInputStream's chip
     private static EventExtractor2D LAST_EVENT_EXTRACTOR = null; // This value saves the last chip's extractor, it's always associated with the last chip
@@ -226,6 +230,9 @@ public class AEFileInputStream extends DataInputStream implements AEFileInputStr
         }
 
         this.chip.setEventExtractor(LAST_EVENT_EXTRACTOR); // Restore the extractor, because jaer3BufferParser might change it.
+        if (Hdf5AedatFileInputReader.isHdf5File(f)) {
+            hdf5File = f;
+        }
         init(new FileInputStream(f));
 
         setFile(f);
@@ -361,7 +368,7 @@ public class AEFileInputStream extends DataInputStream implements AEFileInputStr
         int lastTs = mostRecentTimestamp;
         int lastBufferPosition = 0;
 
-        ByteBuffer tmpEventBuffer = ByteBuffer.allocate(16); // TODO why allocate every time?
+        ByteBuffer tmpEventBuffer; // jAER 3.0 event returned by jaer3BufferParser
 
         // if(jaer3fileinputstream!=null){
         // return jaer3fileinputstream.readEventForwards();
@@ -485,7 +492,6 @@ public class AEFileInputStream extends DataInputStream implements AEFileInputStr
         } catch (BufferUnderflowException e) {
             try {
                 mapNextChunk();
-                return readEventForwards(maxTimestamp);
             } catch (IOException eof) {
                 byteBuffer = null;
                 System.gc(); // all the byteBuffers have referred to mapped files and use up all memory, now free them
@@ -493,6 +499,11 @@ public class AEFileInputStream extends DataInputStream implements AEFileInputStr
                 getSupport().firePropertyChange(AEInputStream.EVENT_EOF, null, position());
                 throw new EOFException("reached end of file");
             }
+            try {
+                return readEventForwards(maxTimestamp);
+            } finally {
+                ts = mostRecentTimestamp; // keep the timestamp read from the next chunk
+            }
         } catch (NullPointerException npe) {
             rewind();
             return readEventForwards(maxTimestamp);
@@ -501,6 +512,76 @@ public class AEFileInputStream extends DataInputStream implements AEFileInputStr
         }
     }
 
+    /**
+     * Decodes AER-DAT 1.x/2.x events straight from the memory-mapped byte
+     * buffer into packet arrays, bypassing readEventForwards and its
+     * per-event bookkeeping. AEDAT-3.x events are decoded a packet at a time
+     * by {@link Jaer3BufferParser#decodeEvents}. Decoding stops at the end of
+     * the mapped chunk, at the OUT mark, after an event at or later than endTimestamp, and before
+     * any event that needs the special handling of readEventForwards, i.e. zero
+     * timestamps, events later than endTimestamp, and wrapped or non-monotonic
+     * timestamps. The caller then reads the next event with
+     * readEventForwards.
+     *
+     * @param addr the addresses to fill
+     * @param ts the timestamps to fill
+     * @param etypes the event types to fill
+     * @param pixelData the pixel data to fill
+     * @param i the index of the first event to fill
+     * @param maxEvents fill up to this index
+     * @param endTimestamp the latest timestamp to read
+     * @return the index after the last event filled
+     */
+    private int decodeMappedEvents(int[] addr, int[] ts, EventType[] etypes, int[] pixelData, int i, int maxEvents, int endTimestamp) throws IOException {
+        if ((byteBuffer == null) || (timestampResetBitmask != 0)) {
+            return i;
+        }
+        if (jaer3EnableFlg) {
+            if ((jaer3BufferParser == null) || (position == markOut)) {
+                return i;
+            }
+            if ((markOut > position) && ((markOut - position) < (maxEvents - i))) {
+                maxEvents = i + (int) (markOut - position);
+            }
+            final int n = jaer3BufferParser.decodeEvents(addr, ts, etypes, pixelData, i, maxEvents, mostRecentTimestamp, endTimestamp,
+                    timestampOffset);
+            if (n > i) {
+                position += n - i;
+                mostRecentTimestamp = ts[n - 1];
+            }
+            return n;
+        }
+        final ByteBuffer buf = byteBuffer;
+        final boolean intAddress = addressType == Integer.TYPE;
+        final int size = eventSizeBytes;
+        final int tsOffsetBytes = size - (Integer.SIZE / 8); // timestamp follows address
+        final int lastStart = buf.limit() - size;
+        int bufPos = buf.position();
+        long pos = position;
+        int last = mostRecentTimestamp;
+        while ((i < maxEvents) && (bufPos <= lastStart) && (pos != markOut)) {
+            final int t = buf.getInt(bufPos + tsOffsetBytes) - timestampOffset;
+            if ((t == 0) || (t > endTimestamp) || (t < last)) { // wrapped time is also t<last
+                break;
+            }
+            addr[i] = intAddress ? buf.getInt(bufPos) : (buf.getShort(bufPos) & 0xffff);
+            ts[i] = t;
+            etypes[i] = EventType.PolarityEvent;
+            pixelData[i] = 0;
+            i++;
+            bufPos += size;
+            pos++;
+            last = t;
+            if (t >= endTimestamp) {
+                break;
+            }
+        }
+        buf.position(bufPos);
+        position = pos;
+        mostRecentTimestamp = last;
+        return i;
+    }
+
     /**
      * Reads the next event backwards and leaves the position and byte buffer
      * pointing to event one earlier than the one we just read. I.e., we back
@@ -536,7 +617,8 @@ public class AEFileInputStream extends DataInputStream implements AEFileInputStr
             int newChunkNumber = getChunkNumber(newPos);
             if (newChunkNumber != chunkNumber) {
                 mapPreviousChunk(); // will throw EOFException when reaches start of file
-                newBufPos = (eventSizeBytes * newPos) % chunkSizeBytes;
+                position = newPos + 1; // mapPreviousChunk set position to start of chunk
+                newBufPos = (newPos - positionFromChunk(chunkNumber)) * eventSizeBytes;
 
                 byteBuffer.position((int) newBufPos); // put the buffer pointer at the end of the buffer
             }
@@ -603,12 +685,22 @@ public class AEFileInputStream extends DataInputStream implements AEFileInputStr
         int count = 0;
         try {
             if (n > 0) {
-                for (int i = 0; i < n; i++) {
-                    ev = readEventForwards();  // TODO since repeat is always true in existing code, then can never get null event right now TODO; fix this 
+                while (count < n) {
+                    count = decodeMappedEvents(addr, ts, packet.getEventtypes(), packet.getPixelDataArray(), count, n, Integer.MAX_VALUE);
+                    if (count > 0) {
+                        currentStartTimestamp = ts[count - 1];
+                    }
+                    if (count >= n) {
+                        break;
+                    }
+                    ev = readEventForwards();
+                    if (ev == null) { // mark out reached and repeat is false
+                        break;
+                    }
+                    addr[count] = ev.address;
+                    ts[count] = ev.timestamp;
+                    currentStartTimestamp = ts[count];
                     count++;
-                    addr[i] = ev.address; // could get null pointer exception here if repeat was false
-                    ts[i] = ev.timestamp;
-                    currentStartTimestamp = ts[i];
                 }
             } else { // backwards
                 n = -n;
@@ -707,6 +799,10 @@ public class AEFileInputStream extends DataInputStream implements AEFileInputStr
             if (dt > 0) { // read forwards
                 if (!bigWrap) { // normal situation
                     do {
+                        i = decodeMappedEvents(addr, ts, etypes, pixelDataArray, i, addr.length, endTimestamp);
+                        if ((mostRecentTimestamp >= endTimestamp) || (i >= addr.length) || (mostRecentTimestamp < startTimestamp)) {
+                            break;
+                        }
                         ae = readEventForwards(endTimestamp);
                         if (ae == null) {
                             break;
@@ -849,6 +945,8 @@ public class AEFileInputStream extends DataInputStream implements AEFileInputStr
     public long size() {
         if (jaer3EnableFlg) {
             return jaer3BufferParser.size();
+        } else if (chunkReader != null) {
+            return chunkReader.getNumEvents();
         } else {
             return (fileSize - headerOffset) / eventSizeBytes;
         }
@@ -868,7 +966,7 @@ public class AEFileInputStream extends DataInputStream implements AEFileInputStr
                 mapChunk(newChunkNumber);
 
             }
-            byteBuffer.position((int) ((event * eventSizeBytes) % chunkSizeBytes));
+            byteBuffer.position((int) ((event - positionFromChunk(chunkNumber)) * eventSizeBytes));
 
             position = event;
         } catch (ClosedByInterruptException e3) {
@@ -921,6 +1019,77 @@ public class AEFileInputStream extends DataInputStream implements AEFileInputStr
         }
     }
 
+    /**
+     * Returns the timestamp index of the file, loading it from its sidecar
+     * file or building it on first call.
+     *
+     * @return the index, or null for jAER 3.0 files, chunked files, which
+     * have their own chunk index, or if the file cannot be read
+     * @see AEFileTimestampIndex
+     */
+    synchronized public AEFileTimestampIndex getTimestampIndex() {
+        if ((timestampIndex == null) && !jaer3EnableFlg && (chunkReader == null) && (file != null)) {
+            try {
+                timestampIndex = AEFileTimestampIndex.loadOrBuild(file, fileChannel, headerOffset, eventSizeBytes);
+            } catch (IOException e) {
+                log.warning("could not build timestamp index for " + file + ": " + e.toString());
+            }
+        }
+        return timestampIndex;
+    }
+
+    /**
+     * Positions the stream at the first event with timestamp at or after
+     * timestamp, so that the next packet read starts at this time. Uses the
+     * timestamp index if the file has monotonic timestamps, so the cost is a
+     * binary search plus a scan of at most one index interval. Chunked files
+     * use their chunk index in the same way. Otherwise the stream is rewound
+     * and scanned forwards.
+     * <p>
+     * Fires a property change AEInputStream.EVENT_REPOSITIONED.
+     *
+     * @param timestamp the timestamp to seek to
+     * @throws IOException if the file cannot be read
+     */
+    synchronized public void positionAtTimestamp(int timestamp) throws IOException {
+        final long oldPosition = position();
+        final AEFileTimestampIndex index = timestampResetBitmask == 0 ? getTimestampIndex() : null;
+        long pos;
+        if ((chunkReader != null) && (timestampResetBitmask == 0) && chunkReader.isMonotonic()) {
+            pos = Math.max(markIn, chunkReader.findChunkStartEvent(timestamp + timestampOffset));
+        } else if ((index != null) && index.isMonotonic()) {
+            pos = index.findScanStartPosition(timestamp + timestampOffset);
+        } else {
+            pos = markIn;
+        }
+        final long end = Math.min(size(), markOut);
+        position(pos);
+        mostRecentTimestamp = Integer.MIN_VALUE; // so that the scan does not throw NonMonotonicTimeException on first event
+        final int tsOffsetBytes = eventSizeBytes - (Integer.SIZE / 8); // timestamp follows address
+        while (pos < end) { // scan forwards
+            if (!jaer3EnableFlg && (byteBuffer.remaining() >= eventSizeBytes)) {
+                final int ts = byteBuffer.getInt(byteBuffer.position() + tsOffsetBytes) - timestampOffset;
+                if (ts >= timestamp) {
+                    break;
+                }
+                byteBuffer.position(byteBuffer.position() + eventSizeBytes);
+                position = ++pos;
+            } else { // reads past the end of the chunk or jAER 3.0 events
+                try {
+                    if (readEventForwards(timestamp - 1) == null) {
+                        break; // the event at or after timestamp was pushed back
+                    }
+                } catch (NonMonotonicTimeException e) {
+                    // just skip over it
+                }
+                pos = position;
+            }
+        }
+        mostRecentTimestamp = timestamp;
+        currentStartTimestamp = timestamp;
+        getSupport().firePropertyChange(AEInputStream.EVENT_REPOSITIONED, oldPosition, position());
+    }
+
     /**
      * AEFileInputStream has PropertyChangeSupport. This support fires events on
      * certain events such as "rewind".
@@ -971,6 +1140,24 @@ public class AEFileInputStream extends DataInputStream implements AEFileInputStr
         return markIn;
     }
 
+    /**
+     * Sets the marked OUT position to an event, e.g. to size() so that the
+     * last event of the file is read, which clearMarks leaves out. Does
+     * nothing if the event is not after markIn or after the end of the file.
+     *
+     * @param event the event number
+     * @return the markOut position.
+     */
+    synchronized public long setMarkOut(long event) {
+        if ((event <= markIn) || (event > size())) {
+            return markOut;
+        }
+        long old = markOut;
+        markOut = event;
+        getSupport().firePropertyChange(AEInputStream.EVENT_MARK_OUT_SET, old, markOut);
+        return markOut;
+    }
+
     /**
      * clear any marked position
      */
@@ -1021,6 +1208,9 @@ public class AEFileInputStream extends DataInputStream implements AEFileInputStr
 
     @Override
     public void close() throws IOException {
+        if (chunkReader != null) {
+            chunkReader.close();
+        }
         super.close();
         fileChannel.close();
         System.gc();
@@ -1103,7 +1293,7 @@ public class AEFileInputStream extends DataInputStream implements AEFileInputStr
     /**
      * @return the byteBuffer
      */
-    public MappedByteBuffer getByteBuffer() {
+    public ByteBuffer getByteBuffer() {
         return byteBuffer;
     }
 
@@ -1242,12 +1432,18 @@ public class AEFileInputStream extends DataInputStream implements AEFileInputStr
      * position<CHUNK32_SIZE_BYTES returns 0
      */
     private int getChunkNumber(long position) {
+        if (chunkReader != null) {
+            return chunkReader.getChunkNumber(position);
+        }
         int chunk;
         chunk = (int) ((position * eventSizeBytes) / chunkSizeBytes);
         return chunk;
     }
 
     private long positionFromChunk(int chunkNumber) {
+        if (chunkReader != null) {
+            return chunkReader.getChunkStartEvent(chunkNumber);
+        }
         long pos = chunkNumber * (chunkSizeBytes / eventSizeBytes);
         return pos;
     }
@@ -1261,9 +1457,11 @@ public class AEFileInputStream extends DataInputStream implements AEFileInputStr
             // if we try now to map a chunk past the last one then throw an EOF
             throw new EOFException("end of file; tried to map chunkNumber=" + chunkNumber + " but file only has numChunks=" + numChunks);
         }
-        long start = getChunkStartPosition(chunkNumber);
-        if ((start >= fileSize) || (start < 0)) {
-            chunkNumber = 0; // overflow will wrap<0
+        if (chunkReader == null) {
+            long start = getChunkStartPosition(chunkNumber);
+            if ((start >= fileSize) || (start < 0)) {
+                chunkNumber = 0; // overflow will wrap<0
+            }
         }
         mapChunk(chunkNumber);
     }
@@ -1276,9 +1474,11 @@ public class AEFileInputStream extends DataInputStream implements AEFileInputStr
         if (chunkNumber < 0) {
             chunkNumber = 0;
         }
-        long start = getChunkStartPosition(chunkNumber);
-        if ((start >= fileSize) || (start < 0)) {
-            chunkNumber = 0; // overflow will wrap<0
+        if (chunkReader == null) {
+            long start = getChunkStartPosition(chunkNumber);
+            if ((start >= fileSize) || (start < 0)) {
+                chunkNumber = 0; // overflow will wrap<0
+            }
         }
         mapChunk(chunkNumber);
     }
@@ -1293,6 +1493,11 @@ public class AEFileInputStream extends DataInputStream implements AEFileInputStr
      */
     private void mapChunk(int chunkNumber) throws IOException {
         this.chunkNumber = chunkNumber;
+        if (chunkReader != null) {
+            byteBuffer = chunkReader.getChunk(chunkNumber);
+            this.position = positionFromChunk(chunkNumber);
+            return;
+        }
         long start = getChunkStartPosition(chunkNumber);
         if (start >= fileSize) {
             throw new EOFException("start of chunk=" + start + " but file has fileSize=" + fileSize);
@@ -1414,7 +1619,13 @@ public class AEFileInputStream extends DataInputStream implements AEFileInputStr
      */
     protected void parseFileFormatVersion(String s) {
         float version = 1f;
-        if (s.startsWith(AEDataFile.DATA_FILE_FORMAT_HEADER)) { // # stripped off by readHeaderLine
+        if (s.startsWith(AEDataFile.CHUNKED_DATA_FILE_FORMAT_HEADER)) { // #!AER-DAT-CHUNKED1.0, decompressed to AER-DAT-2.0 events
+            addressType = Integer.TYPE;
+            eventSizeBytes = (Integer.SIZE / 8) + (Integer.SIZE / 8);
+            jaer3EnableFlg = false;
+            chunkedEnableFlg = true;
+            log.info("File format " + s);
+        } else if (s.startsWith(AEDataFile.DATA_FILE_FORMAT_HEADER)) { // # stripped off by readHeaderLine
             try {
                 version = Float.parseFloat(s.substring(AEDataFile.DATA_FILE_FORMAT_HEADER.length()));
             } catch (NumberFormatException numberFormatException) {
@@ -1462,9 +1673,23 @@ public class AEFileInputStream extends DataInputStream implements AEFileInputStr
     void setupChunks() throws IOException {
         fileChannel = fileInputStream.getChannel();
         fileSize = fileChannel.size();
+        if (hdf5File != null) { // HDF5 files have no text header, the header lines are stored as an attribute
+            final Hdf5AedatFileInputReader hdf5Reader = new Hdf5AedatFileInputReader(hdf5File);
+            header.clear();
+            header.addAll(hdf5Reader.getHeader());
+            addressType = Integer.TYPE;
+            eventSizeBytes = (Integer.SIZE / 8) + (Integer.SIZE / 8);
+            chunkReader = hdf5Reader;
+        }
         chunkSizeBytes = eventSizeBytes * CHUNK_SIZE_EVENTS;
         numChunks = (int) ((fileSize / chunkSizeBytes) + 1); // used to limit chunkNumber to prevent overflow of
         // position and for EOF
+        if (chunkedEnableFlg) {
+            chunkReader = new ChunkedAEFileReader(fileChannel, headerOffset);
+        }
+        if (chunkReader != null) {
+            numChunks = chunkReader.getNumChunks();
+        }
         log.info("fileSize=" + fileSize + " chunkSizeBytes=" + chunkSizeBytes + " numChunks=" + numChunks);
         mapChunk(0);
     }
@@ -30,14 +30,24 @@ import net.sf.jaer.chip.AEChip;
  *
  * @author tobi
  */
-public class AEFileOutputStream extends AEOutputStream implements AEDataFile {
+public class AEFileOutputStream extends AEOutputStream implements AEDataFile, AEPacketRawWriterInterface {
 
     // tobi changed to 8k buffer (from 400k) because this has measurably better performance than super large buffer
     /**
      * buffer size for this output stream
      */
     private static final int BUFFER_EVENTS = 8192;
+    /**
+     * buffer size for large writes to the file, when the stream is written by
+     * a separate thread like AsyncAEPacketWriter and latency does not matter
+     */
+    public static final int LARGE_BUFFER_EVENTS = 1 << 17; // 1MB
     private static final int SIZE_EVENT = (Integer.SIZE / 8) * 2;
+    /**
+     * Buffer writes except the last end at multiples of this file position,
+     * so that full file system blocks are written
+     */
+    private static final int WRITE_ALIGNMENT_BYTES = 4096;
 
     private FileChannel channel = null;
     private ByteBuffer byteBuf = null;
@@ -58,12 +68,49 @@ public class AEFileOutputStream extends AEOutputStream implements AEDataFile {
      * @throws java.io.IOException thrown when write to file failed
      */
     public AEFileOutputStream(final OutputStream os, final AEChip chip, String dataFileVersionNum) throws IOException {
+        this(os, chip, dataFileVersionNum, BUFFER_EVENTS);
+    }
+
+    /**
+     * Creates a new instance of AEOutputStream with a given buffer size and
+     * writes the header.
+     *
+     * @param os an output stream, e.g. from
+     * <code>new BufferedOutputStream(new FileOutputStream(File f)</code>.
+     * @param chip (optionally) provide the chip used and write out additional
+     * header info
+     * @param dataFileVersionNum provide the AEDAT file data format string, e.g. "2.0", "3.0", or "3.1".
+     * @param bufferEvents the number of events buffered for writing to a
+     * FileOutputStream, e.g. LARGE_BUFFER_EVENTS
+     * @throws java.io.IOException thrown when write to file failed
+     */
+    public AEFileOutputStream(final OutputStream os, final AEChip chip, String dataFileVersionNum, int bufferEvents) throws IOException {
+        this(os, chip, AEDataFile.DATA_FILE_FORMAT_HEADER + dataFileVersionNum,
+                " Data format is int32 address, int32 timestamp (8 bytes total), repeated for each event", bufferEvents);
+        dataFileVersionNumber = dataFileVersionNum;
+    }
+
+    /**
+     * Creates a new instance of AEOutputStream and writes the header with a
+     * given format line, for subclasses that write another data format.
+     *
+     * @param os an output stream
+     * @param chip (optionally) provide the chip used and write out additional
+     * header info
+     * @param formatHeaderLine the first header line without the comment char,
+     * e.g. "!AER-DAT2.0"
+     * @param dataFormatDescription the header line that describes the data
+     * format
+     * @param bufferEvents the number of events buffered for writing to a
+     * FileOutputStream
+     * @throws java.io.IOException thrown when write to file failed
+     */
+    protected AEFileOutputStream(final OutputStream os, final AEChip chip, String formatHeaderLine, String dataFormatDescription, int bufferEvents) throws IOException {
         super(os);
         try {
-            dataFileVersionNumber = dataFileVersionNum;
-            writeHeaderLine(AEDataFile.DATA_FILE_FORMAT_HEADER + dataFileVersionNumber);
+            writeHeaderLine(formatHeaderLine);
             writeHeaderLine(" This is a raw AE data file - do not edit");
-            writeHeaderLine(" Data format is int32 address, int32 timestamp (8 bytes total), repeated for each event");
+            writeHeaderLine(dataFormatDescription);
             writeHeaderLine(" Timestamps tick: " + AEConstants.TICK_DEFAULT_US + " us");
             writeHeaderLine(" Creation date: " + new Date());
             writeHeaderLine(" Creation time: System.currentTimeMillis() " + System.currentTimeMillis());
@@ -87,8 +134,9 @@ public class AEFileOutputStream extends AEOutputStream implements AEDataFile {
 
             if (os instanceof FileOutputStream) {
                 channel = ((FileOutputStream) os).getChannel();
-                AEOutputStream.log.info("using ByteBuffer with " + AEFileOutputStream.BUFFER_EVENTS + " events to buffer disk writes");
-                byteBuf = ByteBuffer.allocateDirect(AEFileOutputStream.BUFFER_EVENTS * AEFileOutputStream.SIZE_EVENT);
+                bufferEvents = Math.max(bufferEvents, 2 * (WRITE_ALIGNMENT_BYTES / SIZE_EVENT)); // room for an event after an aligned write
+                AEOutputStream.log.info("using ByteBuffer with " + bufferEvents + " events to buffer disk writes");
+                byteBuf = ByteBuffer.allocateDirect(bufferEvents * AEFileOutputStream.SIZE_EVENT);
             }
         } catch (final BackingStoreException ex) {
             Logger.getLogger(AEFileOutputStream.class.getName()).log(Level.SEVERE, null, ex);
@@ -203,9 +251,7 @@ public class AEFileOutputStream extends AEOutputStream implements AEDataFile {
                 eventCounter++;
 
                 if (byteBuf.remaining() < AEFileOutputStream.SIZE_EVENT) {
-                    byteBuf.rewind();
-                    channel.write(byteBuf);
-                    byteBuf.clear();
+                    writeBuffer(false);
                 }
             }
 
@@ -214,12 +260,32 @@ public class AEFileOutputStream extends AEOutputStream implements AEDataFile {
 
     }
 
+    /**
+     * Writes the buffer to the channel. Unless all is true, the write ends at
+     * a multiple of WRITE_ALIGNMENT_BYTES and the rest is kept in the buffer.
+     *
+     * @param all true to write the whole buffer
+     */
+    private void writeBuffer(boolean all) throws IOException {
+        byteBuf.flip();
+        final int limit = byteBuf.limit();
+        if (!all) {
+            final int tail = (int) ((channel.position() + limit) % WRITE_ALIGNMENT_BYTES);
+            if (tail < limit) {
+                byteBuf.limit(limit - tail);
+            }
+        }
+        while (byteBuf.hasRemaining()) { // a single write may not write all of the buffer
+            channel.write(byteBuf);
+        }
+        byteBuf.limit(limit);
+        byteBuf.compact();
+    }
+
     @Override
     public void close() throws IOException {
         // Flush last buffer to file, to avoid loosing small amounts of data.
-        byteBuf.flip();
-        channel.write(byteBuf);
-        byteBuf.clear();
+        writeBuffer(true);
 
         channel.close();
         byteBuf = null;
@@ -0,0 +1,231 @@
+/*
+ * AEFileTimestampIndex.java
+ *
+ * Created on October 18, 2026
+ */
+package net.sf.jaer.eventio;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.logging.Logger;
+
+/**
+ * A sparse timestamp to event position index of an AER-DAT 1.x/2.x data
+ * file. The timestamp of every {@link #getIntervalEvents()}'th event is
+ * stored, so that the position of the first event at or after a given
+ * timestamp is found by a binary search followed by a short scan of at most
+ * one interval, rather than by reading the file from the start.
+ * <p>
+ * The index is persisted next to the data file in a sidecar file with
+ * extension {@link AEDataFile#TIMESTAMP_INDEX_FILE_EXTENSION}. The sidecar
+ * records the size and modification time of the data file and is rebuilt if
+ * either changes.
+ * <p>
+ * Binary search requires monotonic timestamps. If the file has time wraps or
+ * other non-monotonic timestamps, the index is still built but
+ * {@link #isMonotonic()} returns false and callers should fall back to
+ * scanning.
+ *
+ * @see AEFileInputStream#positionAtTimestamp(int)
+ */
+public class AEFileTimestampIndex {
+
+    private static final Logger log = Logger.getLogger("net.sf.jaer.eventio");
+    private static final String MAGIC = "#!AER-TSIDX1.0";
+    /**
+     * Default number of events between index entries
+     */
+    public static final int DEFAULT_INTERVAL_EVENTS = 1 << 12;
+
+    private final int intervalEvents;
+    private long numEvents;
+    private boolean monotonic = true;
+    private int[] timestamps = new int[0];
+    private int numEntries = 0;
+
+    private AEFileTimestampIndex(int intervalEvents) {
+        this.intervalEvents = intervalEvents;
+    }
+
+    /**
+     * Returns the sidecar index file for a data file
+     *
+     * @param dataFile the data file
+     * @return the index file
+     */
+    public static File getIndexFile(File dataFile) {
+        return new File(dataFile.getPath() + AEDataFile.TIMESTAMP_INDEX_FILE_EXTENSION);
+    }
+
+    /**
+     * Loads the index from its sidecar file if that is up to date, otherwise
+     * builds it by scanning the data file and tries to save it.
+     *
+     * @param dataFile the data file
+     * @param channel an open channel of the data file
+     * @param headerOffset the offset of the first event in bytes
+     * @param eventSizeBytes the size of events, 6 or 8 bytes
+     * @return the index
+     * @throws IOException if the data file cannot be read
+     */
+    public static AEFileTimestampIndex loadOrBuild(File dataFile, FileChannel channel, long headerOffset, int eventSizeBytes) throws IOException {
+        final File indexFile = getIndexFile(dataFile);
+        if (indexFile.isFile()) {
+            try {
+                final AEFileTimestampIndex index = load(indexFile, dataFile);
+                if (index != null) {
+                    return index;
+                }
+            } catch (IOException e) {
+                log.warning("could not read timestamp index " + indexFile + ", rebuilding it: " + e.toString());
+            }
+        }
+        final AEFileTimestampIndex index = build(channel, headerOffset, eventSizeBytes, DEFAULT_INTERVAL_EVENTS);
+        try {
+            index.save(indexFile, dataFile);
+        } catch (IOException e) {
+            log.info("could not save timestamp index to " + indexFile + ", keeping it in memory: " + e.toString());
+        }
+        return index;
+    }
+
+    /**
+     * Builds the index by scanning the timestamps of the data file through
+     * memory-mapped windows.
+     *
+     * @param channel an open channel of the data file
+     * @param headerOffset the offset of the first event in bytes
+     * @param eventSizeBytes the size of events, 6 or 8 bytes
+     * @param intervalEvents the number of events between index entries
+     * @return the new index
+     * @throws IOException if the data file cannot be read
+     */
+    public static AEFileTimestampIndex build(FileChannel channel, long headerOffset, int eventSizeBytes, int intervalEvents) throws IOException {
+        final long start = System.nanoTime();
+        final AEFileTimestampIndex index = new AEFileTimestampIndex(intervalEvents);
+        final long fileSize = channel.size();
+        index.numEvents = (fileSize - headerOffset) / eventSizeBytes;
+        index.timestamps = new int[(int) ((index.numEvents + intervalEvents - 1) / intervalEvents)];
+        final int tsOffsetBytes = eventSizeBytes - (Integer.SIZE / 8); // timestamp follows address
+        final long windowEvents = (Integer.MAX_VALUE / eventSizeBytes / intervalEvents) * (long) intervalEvents; // whole intervals per window
+        int last = Integer.MIN_VALUE;
+        for (long first = 0; first < index.numEvents; first += windowEvents) {
+            final long n = Math.min(windowEvents, index.numEvents - first);
+            final MappedByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, headerOffset + (first * eventSizeBytes), n * eventSizeBytes);
+            for (long k = 0; k < n; k++) {
+                final int ts = buf.getInt((int) (k * eventSizeBytes) + tsOffsetBytes);
+                if (ts < last) {
+                    index.monotonic = false;
+                }
+                last = ts;
+                if (((first + k) % intervalEvents) == 0) {
+                    index.timestamps[index.numEntries++] = ts;
+                }
+            }
+        }
+        log.info(String.format("built timestamp index of %d entries for %d events in %.1f ms; monotonic=%s", index.numEntries, index.numEvents,
+                1e-6f * (System.nanoTime() - start), index.monotonic));
+        return index;
+    }
+
+    private static AEFileTimestampIndex load(File indexFile, File dataFile) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)))) {
+            if (!MAGIC.equals(in.readUTF())) {
+                throw new IOException("not a timestamp index file");
+            }
+            final long dataFileLength = in.readLong();
+            final long dataFileModified = in.readLong();
+            if ((dataFileLength != dataFile.length()) || (dataFileModified != dataFile.lastModified())) {
+                log.info("timestamp index " + indexFile + " is out of date, rebuilding it");
+                return null;
+            }
+            final AEFileTimestampIndex index = new AEFileTimestampIndex(in.readInt());
+            index.numEvents = in.readLong();
+            index.monotonic = in.readBoolean();
+            index.numEntries = in.readInt();
+            index.timestamps = new int[index.numEntries];
+            for (int i = 0; i < index.numEntries; i++) {
+                index.timestamps[i] = in.readInt();
+            }
+            log.info("loaded timestamp index " + indexFile + " with " + index.numEntries + " entries");
+            return index;
+        }
+    }
+
+    private void save(File indexFile, File dataFile) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(indexFile)))) {
+            out.writeUTF(MAGIC);
+            out.writeLong(dataFile.length());
+            out.writeLong(dataFile.lastModified());
+            out.writeInt(intervalEvents);
+            out.writeLong(numEvents);
+            out.writeBoolean(monotonic);
+            out.writeInt(numEntries);
+            for (int i = 0; i < numEntries; i++) {
+                out.writeInt(timestamps[i]);
+            }
+        }
+        log.info("saved timestamp index to " + indexFile);
+    }
+
+    /**
+     * Returns the position of the indexed event at or before the last event
+     * with a timestamp earlier than <code>timestamp</code>. Scanning forwards
+     * from this position for at most {@link #getIntervalEvents()} events finds
+     * the first event at or after <code>timestamp</code>.
+     *
+     * @param timestamp the timestamp to search for
+     * @return the event position to start scanning from
+     */
+    public long findScanStartPosition(int timestamp) {
+        int k = Arrays.binarySearch(timestamps, 0, numEntries, timestamp);
+        if (k < 0) {
+            k = -k - 2; // last entry before insertion point
+        } else {
+            while ((k > 0) && (timestamps[k - 1] == timestamp)) {
+                k--; // several entries with the same timestamp
+            }
+            k--; // earlier events in the previous interval may have the same timestamp
+        }
+        if (k < 0) {
+            return 0;
+        }
+        return (long) k * intervalEvents;
+    }
+
+    /**
+     * @return the number of events between index entries
+     */
+    public int getIntervalEvents() {
+        return intervalEvents;
+    }
+
+    /**
+     * @return the number of events in the data file when the index was built
+     */
+    public long getNumEvents() {
+        return numEvents;
+    }
+
+    /**
+     * @return true if all timestamps in the data file are monotonic, so that
+     * the index can be searched
+     */
+    public boolean isMonotonic() {
+        return monotonic;
+    }
+
+    @Override
+    public String toString() {
+        return "AEFileTimestampIndex with " + numEntries + " entries every " + intervalEvents + " events, monotonic=" + monotonic;
+    }
+}
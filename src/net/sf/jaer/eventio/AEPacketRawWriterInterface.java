@@ -0,0 +1,33 @@
+/*
+ * AEPacketRawWriterInterface.java
+ *
+ * Created on October 18, 2026
+ */
+package net.sf.jaer.eventio;
+
+import java.io.IOException;
+
+import net.sf.jaer.aemonitor.AEPacketRaw;
+
+/**
+ * A destination of raw event packets, e.g. a data file that is being logged to.
+ *
+ * @see AsyncAEPacketWriter
+ */
+public interface AEPacketRawWriterInterface {
+
+    /**
+     * Writes the events of a packet
+     *
+     * @param ae the packet
+     * @throws IOException if the events cannot be written
+     */
+    public void writePacket(AEPacketRaw ae) throws IOException;
+
+    /**
+     * Writes what is still buffered and closes the destination
+     *
+     * @throws IOException if the destination cannot be written or closed
+     */
+    public void close() throws IOException;
+}
@@ -14,22 +14,37 @@ package net.sf.jaer.eventio;
 import java.beans.PropertyChangeSupport;
 import java.io.IOException;
 import java.net.InetSocketAddress;
-import java.net.ServerSocket;
-import java.net.Socket;
-import java.net.SocketException;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.logging.Logger;
 import java.util.prefs.Preferences;
+import net.sf.jaer.aemonitor.AEPacketRaw;
 
 /**
- * Following is target functionality (right now this class only opens a single socket to most recent client connecting to it
-and events are only streamed to this one socket): This server socket allows a source host to listen for connections from other hosts and open AESockets to them to allow
-streaming AE data to them, so as a server, we stream events to the clients.
-These stream socket connections transmit data reliably.
+This server socket allows a source host to listen for connections from other hosts and stream AE data to them,
+so as a server, we stream events to the clients. These stream socket connections transmit data reliably.
 <p>
-Multile clients can recieve events from a single server through the use of java.nio channels and selectors.
+Multiple clients receive events from a single server through the use of java.nio channels and a selector.
+Each packet written by {@link #writePacket(net.sf.jaer.aemonitor.AEPacketRaw) } is encoded into the send queue of each
+connected {@link Client} and the queues are drained by this Thread as the clients' sockets become writable, so writePacket
+never blocks on the network. Each client has a bounded send queue of {@link #getMaxQueuedPackets() } packets;
+when a slow client's queue is full, the {@link SlowClientPolicy} decides what happens, so that the slowest client never stalls acquisition.
+Each client can also be sent only every n'th packet, see {@link Client#setSubsampleFactor(int) }.
+<p>
+The events are sent in the format of {@link AESocket#writePacket(net.sf.jaer.aemonitor.AEPacketRaw) }, i.e. as int32 timestamp
+and int32 address pairs, with the timestamps relative to the first event sent to each client.
 <p>
-The AESocket's are manufactured when a client connects to the AEViewer. The AESocket's are built with options that are
-set using the AEServerSocketOptionsDialog.
 This AEServerSocket is a Thread and it must be started after construction to allow incoming connections.
 <p>
  * AEServerSocket has PropertyChangeSupport; see the {@link #getSupport() } method for change event information.
@@ -40,17 +55,30 @@ public class AEServerSocket extends Thread {
     static Preferences prefs = Preferences.userNodeForPackage(AEServerSocket.class);
     static Logger log = Logger.getLogger("AEServerSocket");
     private PropertyChangeSupport support = new PropertyChangeSupport(this);
-    public static final int DEFAULT_BUFFERED_STREAM_SIZE_BYTES = 8192;
     public static final int DEFAULT_SEND_BUFFER_SIZE_BYTES = 8192;
     public static final int DEFAULT_RECIEVE_BUFFER_SIZE_BYTES = 8192;
-    private ServerSocket serverSocket;
-    private AESocket socket = null;
-    private int bufferedStreamSize = prefs.getInt("AEServerSocket.bufferedStreamSize", DEFAULT_BUFFERED_STREAM_SIZE_BYTES);
+    public static final int DEFAULT_MAX_QUEUED_PACKETS = 16;
+
+    /** What to do with a packet for a client whose send queue is full */
+    public enum SlowClientPolicy {
+
+        /** Discard the oldest queued packet that is not partly sent, so the client gets the most recent data */
+        DropOldest,
+        /** Discard the new packet, so the client gets contiguous runs of old data */
+        DropNewest,
+        /** Close the connection to the client */
+        Disconnect
+    };
+    private ServerSocketChannel serverChannel;
+    private Selector selector;
+    private final CopyOnWriteArrayList<Client> clients = new CopyOnWriteArrayList<Client>();
     private int sendBufferSize = prefs.getInt("AEServerSocket.sendBufferSize", DEFAULT_SEND_BUFFER_SIZE_BYTES);
     private int port = prefs.getInt("AEServerSocket.port", AENetworkInterfaceConstants.STREAM_PORT);
     private int receiveBufferSize = prefs.getInt("AEServerSocket.receiveBufferSize", DEFAULT_RECIEVE_BUFFER_SIZE_BYTES);
     private boolean flushPackets = prefs.getBoolean("AESocket.flushPackets", true);
-    private boolean useBufferedStreams = prefs.getBoolean("AEServerSocket.useBufferedStreams", true);
+    private int maxQueuedPackets = prefs.getInt("AEServerSocket.maxQueuedPackets", DEFAULT_MAX_QUEUED_PACKETS);
+    private SlowClientPolicy slowClientPolicy = SlowClientPolicy.valueOf(prefs.get("AEServerSocket.slowClientPolicy", SlowClientPolicy.DropOldest.toString()));
+    private int subsampleFactor = prefs.getInt("AEServerSocket.subsampleFactor", 1);
     private Thread T = null;
 
     /** Creates a new instance of AEServerSocket. This Thread must be started to serve connections.
@@ -58,76 +86,323 @@ public class AEServerSocket extends Thread {
      */
     public AEServerSocket() throws java.io.IOException {
         T = this;
-        serverSocket = new ServerSocket();
-        serverSocket.setReceiveBufferSize(receiveBufferSize);
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.socket().setReceiveBufferSize(receiveBufferSize);
+        serverChannel.configureBlocking(false);
+        selector = Selector.open();
         /*}catch(java.net.BindException be){
         log.warning("server socket already bound to port (probably from another AEViewer)");
          */
         setName("AEServerSocket port=" + port);
+        setDaemon(true);
     }
 
     public String toString() {
-        return "AEServerSocket on port=" + port;
+        return "AEServerSocket on port=" + port + " with " + clients.size() + " clients";
     }
 
-    /** Accepts incoming connections and manufactures AESocket's for them. Currently only a single
-     * client is supported.
+    /** Accepts incoming connections and sends the queued packets to the clients as their sockets become writable.
      */
     public void run() {
-        if (serverSocket == null) {
+        if (serverChannel == null) {
             return; // port was already bound
         }
-        while (!isInterrupted()) {
-            try {
-                if (!serverSocket.isBound()) {
-                    try {
-                        serverSocket.bind(new InetSocketAddress(port)); // FIXME TODO, if we have a port here that is already in use, then we can't use the ServerSocket options dialog to change it!!
-                        log.info("bound " + this);
-                    } catch (IOException ioe) {
-                        log.warning("couldn't bind AEServerSocket to port " + port + " : " + ioe+ "; this run() will break. A new AEServerSocket should be contructed.");
-                        break;
-                    }
+        try {
+            serverChannel.socket().bind(new InetSocketAddress(port)); // FIXME TODO, if we have a port here that is already in use, then we can't use the ServerSocket options dialog to change it!!
+            serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+            log.info("bound " + this);
+        } catch (IOException ioe) {
+            log.warning("couldn't bind AEServerSocket to port " + port + " : " + ioe + "; this run() will break. A new AEServerSocket should be contructed.");
+            return;
+        }
+        try {
+            while (!isInterrupted() && serverChannel.isOpen()) {
+                selector.select();
+                for (Client c : clients) {
+                    c.updateInterest();
                 }
-                Socket newSocket = serverSocket.accept(); // makes a new socket to the connecting client
-                if (socket != null) {
-                    log.info("closing existing stream TCP output socket " + socket + " to accept a new connection"); // TODO multiple clients should be possible
-                    try {
-                        socket.close();
-                    } catch (IOException ioe) {
-                        log.warning("while closing old socket caught " + ioe.getMessage());
+                Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+                while (it.hasNext()) {
+                    SelectionKey key = it.next();
+                    it.remove();
+                    if (!key.isValid()) {
+                        continue;
+                    }
+                    if (key.isAcceptable()) {
+                        try {
+                            accept();
+                        } catch (IOException e) {
+                            log.warning("while accepting a client caught " + e.toString());
+                        }
+                    } else if (key.isWritable()) {
+                        ((Client) key.attachment()).send();
                     }
                 }
-                newSocket.setSendBufferSize(sendBufferSize);
-                if (newSocket.getSendBufferSize() != getSendBufferSize()) {
-                    log.warning("accepted connection and asked for sendBufferSize=" + getSendBufferSize() + " but only got sendBufferSize=" + newSocket.getSendBufferSize());
+            }
+        } catch (ClosedSelectorException e) {
+            log.info("selector closed, server thread ending");
+        } catch (IOException e) {
+            if (!isInterrupted()) {
+                log.warning(e.toString() + ": AEServerSocket on port " + port + " may already be bound by another viewer");
+            }
+        } finally {
+            closeClients();
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel = serverChannel.accept();
+        if (channel == null) {
+            return;
+        }
+        channel.configureBlocking(false);
+        channel.socket().setSendBufferSize(sendBufferSize);
+        if (channel.socket().getSendBufferSize() != getSendBufferSize()) {
+            log.warning("accepted connection and asked for sendBufferSize=" + getSendBufferSize() + " but only got sendBufferSize=" + channel.socket().getSendBufferSize());
+        }
+        channel.socket().setTcpNoDelay(isFlushPackets()); // don't aggregate packets if they should be flushed
+        Client client = new Client(channel);
+        client.key = channel.register(selector, 0, client);
+        clients.add(client);
+        log.info("accepted incoming stream TCP socket request to send events to " + client);
+        getSupport().firePropertyChange("clientconnected", null, client);
+    }
+
+    /** Queues a packet for sending to all connected clients. Returns without blocking;
+     * clients whose send queues are full are handled according to the {@link #getSlowClientPolicy() }.
+     * Does nothing if the packet is null or empty.
+     *
+     * @param packet the packet, which is not referenced after the call returns
+     */
+    public void writePacket(AEPacketRaw packet) {
+        if (packet == null || packet.getNumEvents() == 0 || clients.isEmpty()) {
+            return;
+        }
+        boolean wakeup = false;
+        for (Client c : clients) {
+            wakeup |= c.offer(packet);
+        }
+        if (wakeup) {
+            selector.wakeup();
+        }
+    }
+
+    /** @return true if at least one client is connected */
+    public boolean hasClients() {
+        return !clients.isEmpty();
+    }
+
+    /** @return the connected clients */
+    public List<Client> getClients() {
+        return new ArrayList<Client>(clients);
+    }
+
+    private void closeClients() {
+        for (Client c : clients) {
+            c.close();
+        }
+    }
+
+    /** A client connected to the server, with its own send queue */
+    public class Client {
+
+        private final SocketChannel channel;
+        private final SocketAddress address;
+        private SelectionKey key;
+        private final ArrayDeque<ByteBuffer> queue = new ArrayDeque<ByteBuffer>();
+        private final ArrayDeque<ByteBuffer> freeBuffers = new ArrayDeque<ByteBuffer>();
+        private ByteBuffer sending = null; // head of queue while the server thread writes it
+        private final ByteOrder byteOrder = AESocket.prefs.getBoolean("AESocket.swapBytesEnabled", false) ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN;
+        private volatile boolean writeInterest = false;
+        private volatile int subsampleFactor = AEServerSocket.this.subsampleFactor;
+        private int packetCounter = 0;
+        private int t0 = 0;
+        private boolean t0Set = false;
+        private volatile long packetsQueued = 0, packetsSent = 0, packetsDropped = 0, packetsSkipped = 0, bytesSent = 0;
+
+        Client(SocketChannel channel) {
+            this.channel = channel;
+            this.address = channel.socket().getRemoteSocketAddress();
+        }
+
+        /** Encodes the packet into the queue. Called by the writer.
+         * @return true if the selector must be woken up to send the packet
+         */
+        private synchronized boolean offer(AEPacketRaw packet) {
+            if (!channel.isOpen()) {
+                return false;
+            }
+            if ((packetCounter++ % subsampleFactor) != 0) {
+                packetsSkipped++;
+                return false;
+            }
+            if (queue.size() >= maxQueuedPackets) {
+                switch (slowClientPolicy) {
+                    case DropOldest:
+                        ByteBuffer head = queue.pollFirst();
+                        if (head == sending && !queue.isEmpty()) { // head is being sent, drop the one after it
+                            freeBuffers.add(queue.pollFirst());
+                            queue.addFirst(head);
+                        } else if (head == sending) {
+                            queue.addFirst(head); // only the packet being sent is queued, so skip the new one
+                            packetsDropped++;
+                            return false;
+                        } else {
+                            freeBuffers.add(head);
+                        }
+                        packetsDropped++;
+                        break;
+                    case DropNewest:
+                        packetsDropped++;
+                        return false;
+                    case Disconnect:
+                        log.warning("send queue of " + this + " is full, closing it");
+                        close();
+                        return false;
                 }
-                AESocket aeSocket = new AESocket(newSocket);
-                aeSocket.setFlushPackets(isFlushPackets());
-                aeSocket.setUseBufferedStreams(isUseBufferedStreams());
-                AESocket oldSocket = aeSocket;
-                synchronized (this) {
-                    setSocket(aeSocket);
+            }
+            queue.add(encode(packet));
+            packetsQueued++;
+            if (!writeInterest) {
+                writeInterest = true;
+                return true;
+            }
+            return false;
+        }
+
+        private ByteBuffer encode(AEPacketRaw packet) {
+            final int n = packet.getNumEvents();
+            final int size = n * AENetworkInterfaceConstants.EVENT_SIZE_BYTES;
+            ByteBuffer b = freeBuffers.pollFirst();
+            if (b == null || b.capacity() < size) {
+                b = ByteBuffer.allocateDirect(Math.max(size, DEFAULT_SEND_BUFFER_SIZE_BYTES));
+            }
+            b.clear();
+            b.order(byteOrder);
+            final int[] a = packet.getAddresses();
+            final int[] ts = packet.getTimestamps();
+            final boolean isi = AESocket.isiEnabled;
+            if (!t0Set) {
+                t0 = ts[0];
+                t0Set = true;
+            }
+            for (int i = 0; i < n; i++) {
+                b.putInt(ts[i] - t0);
+                b.putInt(a[i]);
+                if (isi) {
+                    t0 = ts[i];
                 }
-                log.info("accepted incoming stream TCP socket request to send events on socket " + newSocket);
-                getSupport().firePropertyChange("clientconnected", oldSocket, aeSocket);
-            }catch(SocketException se){
-                log.info("socket closed gracefully? caught "+ se.toString());
-                break;
-            } catch (IOException e) {
-                if (!isInterrupted()) {
-                    log.warning(e.toString() + ": AEServerSocket on port " + port + " may already be bound by another viewer");
+            }
+            b.flip();
+            return b;
+        }
+
+        /** Sets or clears OP_WRITE according to whether packets are queued. Called by the server thread. */
+        private void updateInterest() {
+            if (writeInterest && key != null && key.isValid() && (key.interestOps() & SelectionKey.OP_WRITE) == 0) {
+                key.interestOps(SelectionKey.OP_WRITE);
+            }
+        }
+
+        /** Writes as much of the queue as the socket takes. Called by the server thread. */
+        private void send() {
+            try {
+                while (true) {
+                    ByteBuffer b;
+                    synchronized (this) {
+                        b = queue.peekFirst();
+                        if (b == null) {
+                            writeInterest = false;
+                            key.interestOps(0);
+                            return;
+                        }
+                        sending = b;
+                    }
+                    int n = channel.write(b); // the writer never removes the buffer being sent, so no lock needed
+                    bytesSent += n;
+                    if (b.hasRemaining()) {
+                        return; // socket buffer is full, wait until it is writable again
+                    }
+                    synchronized (this) {
+                        queue.pollFirst();
+                        sending = null;
+                        freeBuffers.add(b);
+                        packetsSent++;
+                    }
                 }
-                break;
+            } catch (IOException e) {
+                log.info("sending to " + this + " failed, closing it: " + e.toString());
+                close();
             }
         }
-    }
 
-    synchronized public AESocket getAESocket() {
-        return socket;
-    }
+        /** Closes the connection and removes the client from the server */
+        public void close() {
+            clients.remove(this);
+            if (key != null) {
+                key.cancel();
+            }
+            try {
+                channel.close();
+            } catch (IOException e) {
+                log.warning("while closing " + this + " caught " + e.getMessage());
+            }
+            synchronized (this) {
+                queue.clear();
+                freeBuffers.clear();
+                sending = null;
+            }
+        }
+
+        /**
+         * @return the every how many'th packet is sent to this client
+         */
+        public int getSubsampleFactor() {
+            return subsampleFactor;
+        }
+
+        /**
+         * @param subsampleFactor send only every subsampleFactor'th packet to this client, 1 to send all packets
+         */
+        public void setSubsampleFactor(int subsampleFactor) {
+            this.subsampleFactor = Math.max(1, subsampleFactor);
+        }
+
+        /** @return the number of packets waiting to be sent */
+        public synchronized int getQueuedPacketCount() {
+            return queue.size();
+        }
+
+        /** @return the number of packets dropped because the send queue was full */
+        public long getPacketsDropped() {
+            return packetsDropped;
+        }
+
+        /** @return the number of packets skipped by subsampling */
+        public long getPacketsSkipped() {
+            return packetsSkipped;
+        }
+
+        /** @return the number of packets completely sent */
+        public long getPacketsSent() {
+            return packetsSent;
+        }
+
+        /** @return the number of bytes sent */
+        public long getBytesSent() {
+            return bytesSent;
+        }
 
-    public void setSocket(AESocket socket) {
-        this.socket = socket;
+        /** @return the remote address of the client */
+        public SocketAddress getAddress() {
+            return address;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("AEServerSocket.Client %s queued=%d sent=%d dropped=%d skipped=%d subsample=%d",
+                    address, packetsQueued, packetsSent, packetsDropped, packetsSkipped, subsampleFactor);
+        }
     }
 
     /** Tests class by constructing a socket and starting the thread */
@@ -141,11 +416,6 @@ public class AEServerSocket extends Thread {
         }
     }
 
-    public void setBufferedStreamSize(int bufferedStreamSize) {
-        this.bufferedStreamSize = bufferedStreamSize;
-        prefs.putInt("AEServerSocket.bufferedStreamSize", bufferedStreamSize);
-    }
-
     public void setSendBufferSize(int sendBufferSize) {
         this.sendBufferSize = sendBufferSize;
         prefs.putInt("AEServerSocket.sendBufferSize", sendBufferSize);
@@ -160,10 +430,6 @@ public class AEServerSocket extends Thread {
         return sendBufferSize;
     }
 
-    public int getBufferedStreamSize() {
-        return bufferedStreamSize;
-    }
-
     public int getReceiveBufferSize() {
         return receiveBufferSize;
     }
@@ -177,6 +443,7 @@ public class AEServerSocket extends Thread {
         return port;
     }
 
+    /** @return true if packets are sent as soon as they are queued, i.e. TCP_NODELAY is set on client sockets */
     public boolean isFlushPackets() {
         return flushPackets;
     }
@@ -186,42 +453,70 @@ public class AEServerSocket extends Thread {
         prefs.putBoolean("AESocket.flushPackets", flushPackets);
     }
 
-    /** shuts down the server socket thread and closes the server socket */
+    /** shuts down the server socket thread, closes the server socket and disconnects all clients */
     public void close() throws IOException {
         log.info("closing AEServerSocket thread");
-//        T.interrupt();
-//        try {
-//            T.join(50,0); // wait some ms for server thread to die
-//        } catch (InterruptedException ex) {
-//            log.info("interrupted during thread shutdown");
-//        }
-        serverSocket.close();
+        serverChannel.close();
+        selector.wakeup();
         try {
             T.join(1000);
         } catch (InterruptedException ex) {
             log.info("join after server socket close was interrupted");
         }
+        closeClients();
+        selector.close();
         log.info("closed server socket");
     }
 
     /**
-     * @return the useBufferedStreams
+     * @return the maximum number of packets queued for each client
+     */
+    public int getMaxQueuedPackets() {
+        return maxQueuedPackets;
+    }
+
+    /**
+     * @param maxQueuedPackets the maximum number of packets queued for each client before the slow client policy applies
+     */
+    public void setMaxQueuedPackets(int maxQueuedPackets) {
+        this.maxQueuedPackets = Math.max(1, maxQueuedPackets);
+        prefs.putInt("AEServerSocket.maxQueuedPackets", this.maxQueuedPackets);
+    }
+
+    /**
+     * @return the policy for clients whose send queue is full
+     */
+    public SlowClientPolicy getSlowClientPolicy() {
+        return slowClientPolicy;
+    }
+
+    /**
+     * @param slowClientPolicy the policy for clients whose send queue is full
+     */
+    public void setSlowClientPolicy(SlowClientPolicy slowClientPolicy) {
+        this.slowClientPolicy = slowClientPolicy;
+        prefs.put("AEServerSocket.slowClientPolicy", slowClientPolicy.toString());
+    }
+
+    /**
+     * @return the subsample factor that newly connected clients start with
      */
-    public boolean isUseBufferedStreams() {
-        return useBufferedStreams;
+    public int getSubsampleFactor() {
+        return subsampleFactor;
     }
 
     /**
-     * @param useBufferedStreams the useBufferedStreams to set
+     * @param subsampleFactor the subsample factor that newly connected clients start with, 1 to send all packets
      */
-    public void setUseBufferedStreams(boolean useBufferedStreams) {
-        this.useBufferedStreams = useBufferedStreams;
+    public void setSubsampleFactor(int subsampleFactor) {
+        this.subsampleFactor = Math.max(1, subsampleFactor);
+        prefs.putInt("AEServerSocket.subsampleFactor", this.subsampleFactor);
     }
 
     /**
      * PropertyChange events are fired as follows:
      * <ul>
-     * <li> "clientconnected" - when a client has connected to us.
+     * <li> "clientconnected" - when a client has connected to us. The new value is the {@link Client}.
      * </ul>
 
      * @return the support.
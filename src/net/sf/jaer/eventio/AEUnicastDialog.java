@@ -60,6 +60,7 @@ public class AEUnicastDialog extends javax.swing.JDialog {
         useLocalTimestampsEnabledCheckBox.setSelected(unicastInterface.isLocalTimestampEnabled());
         spinProtRB.setSelected(unicastInterface.isSpinnakerProtocolEnabled());
         secProtRB.setSelected(unicastInterface.isSecDvsProtocolEnabled());
+        compProtRB.setSelected(unicastInterface.isCompressedProtocolEnabled());
         KeyStroke escape = KeyStroke.getKeyStroke(KeyEvent.VK_ESCAPE, 0, false);
         Action escapeAction = new AbstractAction() {
             public void actionPerformed(ActionEvent e) {
@@ -103,6 +104,7 @@ public class AEUnicastDialog extends javax.swing.JDialog {
         unicastInterface.setCAERDisplayEnabled(caerDispRB.isSelected());
         unicastInterface.setSpinnakerProtocolEnabled(spinProtRB.isSelected());
         unicastInterface.setSecDvsProtocolEnabled(secProtRB.isSelected());
+        unicastInterface.setCompressedProtocolEnabled(compProtRB.isSelected());
         unicastInterface.setSwapBytesEnabled(swapBytesCheckBox.isSelected());
         unicastInterface.set4ByteAddrTimestampEnabled(use4ByteAddrTsCheckBox.isSelected());
         unicastInterface.setTimestampsEnabled(includeTimestampsCheckBox.isSelected());
@@ -159,6 +161,7 @@ public class AEUnicastDialog extends javax.swing.JDialog {
         secProtRB = new javax.swing.JRadioButton();
         caerDispRB = new javax.swing.JRadioButton();
         jaerProtRB = new javax.swing.JRadioButton();
+        compProtRB = new javax.swing.JRadioButton();
 
         setDefaultCloseOperation(javax.swing.WindowConstants.DISPOSE_ON_CLOSE);
         setTitle("AEUnicastDialog");
@@ -297,6 +300,15 @@ public class AEUnicastDialog extends javax.swing.JDialog {
             }
         });
 
+        protGroup.add(compProtRB);
+        compProtRB.setText("compressedProtocolEnabled (jAER to jAER)");
+        compProtRB.setToolTipText("Sends and parses varint packed addresses and delta encoded timestamps, about half the bytes per event; sender and receiver must both enable it");
+        compProtRB.addActionListener(new java.awt.event.ActionListener() {
+            public void actionPerformed(java.awt.event.ActionEvent evt) {
+                compProtRBActionPerformed(evt);
+            }
+        });
+
         javax.swing.GroupLayout jPanel1Layout = new javax.swing.GroupLayout(jPanel1);
         jPanel1.setLayout(jPanel1Layout);
         jPanel1Layout.setHorizontalGroup(
@@ -307,7 +319,8 @@ public class AEUnicastDialog extends javax.swing.JDialog {
                     .addComponent(spinProtRB)
                     .addComponent(secProtRB)
                     .addComponent(caerDispRB)
-                    .addComponent(jaerProtRB))
+                    .addComponent(jaerProtRB)
+                    .addComponent(compProtRB))
                 .addContainerGap(144, Short.MAX_VALUE))
         );
         jPanel1Layout.setVerticalGroup(
@@ -321,6 +334,8 @@ public class AEUnicastDialog extends javax.swing.JDialog {
                 .addComponent(secProtRB)
                 .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.UNRELATED)
                 .addComponent(caerDispRB)
+                .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.UNRELATED)
+                .addComponent(compProtRB)
                 .addContainerGap())
         );
 
@@ -499,8 +514,13 @@ private void applyButtonActionPerformed (java.awt.event.ActionEvent evt) {//GEN-
         unicastInterface.setCAERDisplayEnabled(caerDispRB.isSelected());  
         unicastInterface.setSpinnakerProtocolEnabled(false);
         unicastInterface.setSecDvsProtocolEnabled(false);
+        unicastInterface.setCompressedProtocolEnabled(false);
     }//GEN-LAST:event_caerDispRBActionPerformed
 
+    private void compProtRBActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_compProtRBActionPerformed
+        unicastInterface.setCompressedProtocolEnabled(compProtRB.isSelected());
+    }//GEN-LAST:event_compProtRBActionPerformed
+
     private void doClose(int retStatus) {
         returnStatus = retStatus;
         setVisible(false);
@@ -510,6 +530,7 @@ private void applyButtonActionPerformed (java.awt.event.ActionEvent evt) {//GEN-
     private javax.swing.JCheckBox addressFirstEnabledCheckBox;
     private javax.swing.JButton applyButton;
     private javax.swing.JTextField bufferSizeTextBox;
+    private javax.swing.JRadioButton compProtRB;
     private javax.swing.JRadioButton caerDispRB;
     private javax.swing.JButton cancelButton;
     private javax.swing.JTextField hostnameTextField;
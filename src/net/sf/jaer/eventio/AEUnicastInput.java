@@ -12,20 +12,22 @@ import java.io.IOException;
 import java.net.DatagramSocket;
 import java.net.InetSocketAddress;
 import java.net.SocketAddress;
-import java.net.SocketTimeoutException;
 import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.MappedByteBuffer;
+import java.nio.channels.ClosedSelectorException;
 import java.nio.channels.DatagramChannel;
-import java.util.concurrent.ArrayBlockingQueue;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Arrays;
 import java.util.concurrent.Semaphore;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.prefs.Preferences;
 
 import net.sf.jaer.aemonitor.AENetworkRawPacket;
-import net.sf.jaer.aemonitor.AEPacket;
 import net.sf.jaer.aemonitor.AEPacketRaw;
 import net.sf.jaer.aemonitor.EventRaw;
 import net.sf.jaer.aemonitor.EventRaw.EventType;
@@ -58,6 +60,12 @@ import net.sf.jaer.eventio.Jaer3BufferParser.Jaer3EventExtractor;
  * <p>
  * The datagram socket is not connected to the receiver, i.e., connect() is not
  * called on the socket.
+ * <p>
+ * The receiver thread waits until datagrams are pending and then drains all of
+ * them without blocking into one large direct buffer, a batch, so that it keeps
+ * up with high rates. Each call to readPacket takes the batch filled since the
+ * last call and decodes all of its datagrams into one packet. Gaps in the
+ * datagram sequence numbers are counted as lost datagrams.
  *
  * @see #setAddressFirstEnabled
  * @see #setSequenceNumberEnabled
@@ -66,7 +74,18 @@ import net.sf.jaer.eventio.Jaer3BufferParser.Jaer3EventExtractor;
  */
 public class AEUnicastInput implements AEUnicastSettings, PropertyChangeListener {
 
-    private int NBUFFERS = 100; // should match somehow the expected number of datagrams that come in a burst before the readPacket() method is called.
+    /**
+     * Number of datagrams of the maximum size that fit in one batch
+     */
+    private static final int BATCH_CAPACITY_DATAGRAMS = 128;
+    /**
+     * Requested size of the socket receive buffer, which holds datagrams
+     * while the receiver thread waits for a free batch. The OS may limit it.
+     */
+    private static final int RECEIVE_BUFFER_SIZE_BYTES = 16 << 20;
+    private static final int LOSS_WARNING_INTERVAL = 100;
+    private static final long RATE_UPDATE_INTERVAL_NS = 1000000000L;
+    private static final long PAUSED_SLEEP_MS = 10;
 
     // TODO If the remote host sends 16 bit timestamps, then a local unwrapping is done to extend the time range
     private static Preferences prefs = Preferences.userNodeForPackage(AEUnicastInput.class);
@@ -76,7 +95,8 @@ public class AEUnicastInput implements AEUnicastSettings, PropertyChangeListener
     private boolean sequenceNumberEnabled = prefs.getBoolean("AEUnicastInput.sequenceNumberEnabled", true);
     private boolean cAERStreamEnabled = prefs.getBoolean("AEUnicastInput.cAERDisplayEnabled", true);
     private boolean addressFirstEnabled = prefs.getBoolean("AEUnicastInput.addressFirstEnabled", true);
-    private ArrayBlockingQueue<ByteBuffer> filledBufferQueue = new ArrayBlockingQueue(NBUFFERS), availableBufferQueue = new ArrayBlockingQueue(NBUFFERS);
+    private final Object batchLock = new Object();
+    private DatagramBatch fillingBatch = null, readingBatch = null; // guarded by batchLock
     private AENetworkRawPacket packet = new AENetworkRawPacket();
     private static final Logger log = Logger.getLogger("AESocketStream");
     private int bufferSize = prefs.getInt("AEUnicastInput.bufferSize", AENetworkInterfaceConstants.DATAGRAM_BUFFER_SIZE_BYTES);
@@ -86,8 +106,10 @@ public class AEUnicastInput implements AEUnicastSettings, PropertyChangeListener
     private boolean localTimestampsEnabled = prefs.getBoolean("AEUnicastOutput.localTimestampsEnabled", false);
     private boolean spinnakerProtocolEnabled = prefs.getBoolean("AEUnicastInput.spinnakerProtocolEnabled", false);
     private boolean secDvsProtocolEnabled = prefs.getBoolean("AEUnicastInput.secDvsProtocolEnabled", false);
+    private boolean compressedProtocolEnabled = prefs.getBoolean("AEUnicastInput.compressedProtocolEnabled", false);
     boolean stopme = false;
     private DatagramChannel channel;
+    private volatile Selector selector;
     private int datagramCounter = 0;
     private int datagramSequenceNumber = 0;
     private EventRaw eventRaw = new EventRaw();
@@ -105,6 +127,12 @@ public class AEUnicastInput implements AEUnicastSettings, PropertyChangeListener
     private Jaer3BufferParser j3Parser;
     private int secGen2TimestampMSB = 0;
     private int secGen2TimestampLSB = 0;
+    // receive statistics
+    private long malformedDatagramCount = 0; // only used by the thread that reads packets
+    private volatile long receivedDatagramCount = 0, receivedByteCount = 0, lostDatagramCount = 0, sequenceGapCount = 0, batchFullCount = 0;
+    private volatile float receiveRateBytesPerSecond = 0, receiveRateDatagramsPerSecond = 0, eventRatePerSecond = 0;
+    private long rateStartNs = 0, rateStartBytes = 0, rateStartDatagrams = 0; // used by reader thread
+    private long eventRateStartNs = 0, eventRateEvents = 0; // used by readPacket
 
     /**
      * Constructs an instance of AEUnicastInput and binds it to the default
@@ -134,18 +162,88 @@ public class AEUnicastInput implements AEUnicastSettings, PropertyChangeListener
     }
 
     private void allocateBufffers() {
-        availableBufferQueue.clear();
-        for (int i = 0; i < NBUFFERS; i++) {
-            ByteBuffer buffer = ByteBuffer.allocateDirect(bufferSize);
-            buffer.order(swapBytesEnabled || spinnakerProtocolEnabled || secDvsProtocolEnabled ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN); //spinnaker always uses little endian
-            availableBufferQueue.add(buffer);
+        final ByteOrder order = swapBytesEnabled || spinnakerProtocolEnabled || secDvsProtocolEnabled ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN; //spinnaker always uses little endian
+        synchronized (batchLock) {
+            fillingBatch = new DatagramBatch(BATCH_CAPACITY_DATAGRAMS * bufferSize, order);
+            readingBatch = new DatagramBatch(BATCH_CAPACITY_DATAGRAMS * bufferSize, order);
         }
-        filledBufferQueue.clear();
     }
 
     private void freeBuffers() {
-        availableBufferQueue.clear();
-        filledBufferQueue.clear(); // allow GC to collect these references
+        synchronized (batchLock) {
+            fillingBatch = null; // allow GC to collect these references
+            readingBatch = null;
+            batchLock.notifyAll();
+        }
+    }
+
+    /**
+     * Datagrams received back to back into one direct buffer, with the
+     * position, length and source of each
+     */
+    private static class DatagramBatch {
+
+        final ByteBuffer data;
+        int[] offsets = new int[BATCH_CAPACITY_DATAGRAMS], lengths = new int[BATCH_CAPACITY_DATAGRAMS];
+        SocketAddress[] clients = new SocketAddress[BATCH_CAPACITY_DATAGRAMS];
+        int count = 0;
+
+        DatagramBatch(int capacity, ByteOrder order) {
+            data = ByteBuffer.allocateDirect(capacity);
+            data.order(order);
+        }
+
+        /**
+         * @return true if a datagram of maxSize bytes might not fit any more
+         */
+        boolean isFull(int maxSize) {
+            return (data.capacity() - data.position()) < maxSize;
+        }
+
+        /**
+         * Receives a pending datagram, without blocking if the channel is in
+         * non-blocking mode.
+         *
+         * @return the source, or null if no datagram was pending
+         */
+        SocketAddress receive(DatagramChannel channel, int maxSize) throws IOException {
+            final int start = data.position();
+            data.limit(start + maxSize);
+            final SocketAddress client;
+            try {
+                client = channel.receive(data); // a longer datagram is truncated, as before
+            } finally {
+                data.limit(data.capacity());
+            }
+            if (client == null) {
+                return null;
+            }
+            if (count == offsets.length) {
+                offsets = Arrays.copyOf(offsets, 2 * count);
+                lengths = Arrays.copyOf(lengths, 2 * count);
+                clients = Arrays.copyOf(clients, 2 * count);
+            }
+            offsets[count] = start;
+            lengths[count] = data.position() - start;
+            clients[count] = client;
+            count++;
+            return client;
+        }
+
+        /**
+         * Limits data to datagram i
+         */
+        void select(int i) {
+            data.limit(data.capacity());
+            data.position(offsets[i]);
+            data.limit(offsets[i] + lengths[i]);
+        }
+
+        void clear() {
+            data.clear();
+            Arrays.fill(clients, 0, count, null);
+            count = 0;
+        }
     }
 
     private int eventSize() {
@@ -163,102 +261,180 @@ public class AEUnicastInput implements AEUnicastSettings, PropertyChangeListener
     }
 
     /**
-     * Returns the latest buffer of events. If a timeout occurs occurs a null
-     * packet is returned.
+     * Returns the events of all datagrams received since the last call.
      *
-     * @return the events collected since the last call to readPacket(), or null
-     * on a timeout or interrupt.
+     * @return the events collected since the last call to readPacket(). The
+     * packet is reused by the next call.
      */
-    int nTmp = 0;
-    int nEventCapacity = 0;
-
     public AENetworkRawPacket readPacket() {
         packet.clear();
-        readingThread.maxSizeExceeded = false;
-        try {
-            returnearly:
-            while (filledBufferQueue.peek() != null) {
-                ByteBuffer buffer = filledBufferQueue.take();
-                // buffer.clear();
-                extractEvents(buffer, packet);
-                buffer.clear();
-                availableBufferQueue.put(buffer);
-                if (packet.getNumEvents() >= 10000) {
-                    break returnearly; // Set a threshold to avoid the big dealy caused by accumulating too many events in the packet.
-                }
+        final DatagramBatch batch;
+        synchronized (batchLock) {
+            if (fillingBatch == null) {
+                return packet; // closed
             }
-            return packet;
-        } catch (InterruptedException e) {
-            log.info("Interrupted exchange of buffers in AEUnicastInput: " + e.toString());
-            return null;
+            batch = fillingBatch;
+            fillingBatch = readingBatch;
+            fillingBatch.clear();
+            readingBatch = batch;
+            batchLock.notifyAll(); // the receiver may wait for a batch with room
         }
+        extractBatch(batch, packet);
+        updateEventRate(packet.getNumEvents());
+        return packet;
     }
 
-    private void checkSequenceNumber(ByteBuffer buffer) {
-        if (sequenceNumberEnabled) {
-            datagramSequenceNumber = buffer.getInt(); // swab(buffer.getInt());
-//                log.info("recieved packet with sequence number "+packetSequenceNumber);
-            if (datagramSequenceNumber != datagramCounter) {
-                log.warning(String.format("Dropped %d packets. (Incoming packet sequence number (%d) doesn't match expected packetCounter (%d), resetting packetCounter)", datagramSequenceNumber - datagramCounter, datagramSequenceNumber, datagramCounter));
-                datagramCounter = datagramSequenceNumber;
+    /**
+     * Extracts the events of all datagrams in a batch into the packet
+     */
+    private void extractBatch(DatagramBatch batch, AENetworkRawPacket packet) {
+        // these formats are parsed from the start of the datagram, so they get their own view of it
+        final boolean ownBuffer = spinnakerProtocolEnabled || secDvsProtocolEnabled || cAERStreamEnabled;
+        final int seqNumLength = sequenceNumberEnabled && !spinnakerProtocolEnabled && !secDvsProtocolEnabled ? Integer.SIZE / 8 : 0;
+        SocketAddress lastClient = null;
+        for (int i = 0; i < batch.count; i++) {
+            final SocketAddress client = batch.clients[i];
+            if ((client instanceof InetSocketAddress) && !client.equals(lastClient)) {
+                packet.addClientAddress((InetSocketAddress) client, packet.getNumEvents());
+                lastClient = client;
+            }
+            if (batch.lengths[i] < seqNumLength) {
+                continue;
             }
-            datagramCounter++;
+            batch.select(i);
+            ByteBuffer buffer = batch.data;
+            if (ownBuffer) {
+                buffer = buffer.slice();
+                buffer.order(batch.data.order());
+            }
+            buffer.position(buffer.position() + seqNumLength); // sequence number was checked on receipt
+            extractEvents(buffer, packet);
+        }
+    }
+
+    private void checkSequenceNumber(int sequenceNumber) {
+        datagramSequenceNumber = sequenceNumber;
+        if (datagramSequenceNumber != datagramCounter) {
+            countSequenceGap(datagramSequenceNumber, datagramCounter);
+            datagramCounter = datagramSequenceNumber;
+        }
+        datagramCounter++;
+    }
+
+    /**
+     * Counts a gap in the datagram sequence numbers and logs some of them
+     */
+    private void countSequenceGap(int sequenceNumber, int expected) {
+        final int dropped = sequenceNumber - expected;
+        if (dropped > 0) {
+            lostDatagramCount += dropped;
+        }
+        if ((sequenceGapCount++ % LOSS_WARNING_INTERVAL) == 0) {
+            log.warning(String.format("Dropped %d packets. (Incoming packet sequence number (%d) doesn't match expected packetCounter (%d), resetting packetCounter; %d lost in %d gaps so far)", dropped, sequenceNumber, expected, lostDatagramCount, sequenceGapCount));
         }
     }
 
     /**
-     * Receives a buffer from the UDP socket. Data is stored in internal buffer.
+     * Receives all pending datagrams into the batch being filled, without
+     * blocking, except to wait for readPacket to make room.
      *
-     * @param packet used to set number of events to 0 if there is an error and
-     * to store the source host(s) information.
-     * @return client if successful, null if there is an IOException.
+     * @throws IOException if the channel is closed
+     * @throws InterruptedException if interrupted waiting for room
      */
-    private SocketAddress receiveDatagramAndPutToExchanger(AENetworkRawPacket packet) {
-        SocketAddress client = null;
-        try {
-            ByteBuffer buffer = availableBufferQueue.take(); // buffer must be cleared by readPacket
-//            ByteBuffer buffer = ByteBuffer.allocateDirect(bufferSize);
-//            buffer.order(swapBytesEnabled ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN);
-
-            client = channel.receive(buffer); // fill buffer with data from datagram, blocks here until packet received
-            if (!printedHost) {
-                printedHost = true;
-                log.info("received first packet from " + client + " of length " + buffer.position() + " bytes"); // , connecting channel
-                // do not connect so that multiple clients can send us data on the same port
-                //                channel.connect(client); // TODO connect the channel to avoid security check overhead. TODO check if handles reconnects correctly.
+    private void receiveDatagrams() throws IOException, InterruptedException {
+        final boolean checkSequence = sequenceNumberEnabled && !spinnakerProtocolEnabled && !secDvsProtocolEnabled;
+        synchronized (batchLock) {
+            while (!stopme && (fillingBatch != null)) {
+                final DatagramBatch batch = fillingBatch;
+                if (batch.isFull(bufferSize)) {
+                    batchFullCount++;
+                    batchLock.wait(); // meanwhile datagrams queue up in the socket receive buffer
+                    continue;
+                }
+                final int start = batch.data.position();
+                final SocketAddress client = batch.receive(channel, bufferSize);
+                if (client == null) {
+                    return; // drained
+                }
+                final int length = batch.data.position() - start;
+                if (!printedHost) {
+                    printedHost = true;
+                    log.info("received first packet from " + client + " of length " + length + " bytes"); // , connecting channel
+                    // do not connect so that multiple clients can send us data on the same port
+                }
+                receivedDatagramCount++;
+                receivedByteCount += length;
+                if (checkSequence && (length >= (Integer.SIZE / 8))) {
+                    checkSequenceNumber(batch.data.getInt(start));
+                }
             }
-            if (client instanceof InetSocketAddress) {
-                packet.addClientAddress((InetSocketAddress) client, packet.getNumEvents());
-            } else if (client == null) {
-                paused = true;
-                log.warning("Device not connected or wrong configured. Datagrams have to be sent to port: " + port + " .Input stream paused.");
-            } else {
-                log.warning("unknown type of client address - should be InetSocketAddress: " + client);
+        }
+    }
+
+    private void updateReceiveRates() {
+        final long now = System.nanoTime();
+        if (rateStartNs == 0) {
+            rateStartNs = now;
+        } else if ((now - rateStartNs) >= RATE_UPDATE_INTERVAL_NS) {
+            final float dt = (now - rateStartNs) * 1e-9f;
+            receiveRateBytesPerSecond = (receivedByteCount - rateStartBytes) / dt;
+            receiveRateDatagramsPerSecond = (receivedDatagramCount - rateStartDatagrams) / dt;
+            rateStartNs = now;
+            rateStartBytes = receivedByteCount;
+            rateStartDatagrams = receivedDatagramCount;
+        }
+    }
+
+    private void updateEventRate(int numEvents) {
+        final long now = System.nanoTime();
+        eventRateEvents += numEvents;
+        if (eventRateStartNs == 0) {
+            eventRateStartNs = now;
+            eventRateEvents = 0;
+        } else if ((now - eventRateStartNs) >= RATE_UPDATE_INTERVAL_NS) {
+            eventRatePerSecond = eventRateEvents / ((now - eventRateStartNs) * 1e-9f);
+            eventRateStartNs = now;
+            eventRateEvents = 0;
+        }
+    }
+
+    /**
+     * Extracts the events of a datagram in the format of
+     * {@link AECompressedDatagramFormat}. A malformed datagram is dropped from
+     * the point where it goes wrong.
+     */
+    private void extractCompressedEvents(ByteBuffer buffer, AENetworkRawPacket packet) {
+        if ((buffer.remaining() < 2) || (buffer.get() != AECompressedDatagramFormat.MAGIC)) {
+            if ((malformedDatagramCount++ % LOSS_WARNING_INTERVAL) == 0) {
+                log.warning("datagram is not in the compressed format, check that the sender uses the compressed protocol (" + malformedDatagramCount + " malformed datagrams so far)");
+            }
+            return;
+        }
+        final int shift = buffer.get();
+        final boolean remoteTimestamps = timestampsEnabled && !localTimestampsEnabled;
+        final int localTs = (int) (((System.nanoTime() / 1000) << 32) >> 32);
+        final int startingIndex = packet.getNumEvents();
+        packet.ensureCapacity(startingIndex + buffer.remaining()); // every event takes at least one byte
+        final int[] addresses = packet.getAddresses();
+        final int[] timestamps = packet.getTimestamps();
+        int n = startingIndex;
+        try {
+            int t = AECompressedDatagramFormat.getVarint(buffer);
+            while (buffer.hasRemaining()) {
+                final int address = AECompressedDatagramFormat.getVarint(buffer) << shift;
+                if (timestampsEnabled) {
+                    t += AECompressedDatagramFormat.unzigzag(AECompressedDatagramFormat.getVarint(buffer));
+                }
+                addresses[n] = address;
+                timestamps[n] = !remoteTimestamps ? localTs : (timestampMultiplier == 1 ? t : (int) (timestampMultiplier * t));
+                n++;
             }
-            buffer.flip();
-            if (!spinnakerProtocolEnabled && !secDvsProtocolEnabled) {
-                checkSequenceNumber(buffer);
+        } catch (BufferUnderflowException e) {
+            if ((malformedDatagramCount++ % LOSS_WARNING_INTERVAL) == 0) {
+                log.warning("truncated compressed datagram, dropped its last event (" + malformedDatagramCount + " malformed datagrams so far)");
             }
-//            if(exchanger.size()>10){
-//                log.info("filled queue of datagrams has "+exchanger.size()+" buffers");
-//            }
-            filledBufferQueue.put(buffer); // blocks here until readPacket clears the packet
-        } catch (InterruptedException ie) {
-            log.warning(ie.toString());
-            return null;
-        } catch (SocketTimeoutException to) {
-            // just didn't fill the buffer in time, ignore
-            log.warning(to.toString());
-            return null;
-        } catch (IOException e) {
-            log.warning(e.toString());
-            packet.clear();
-            return null;
-        } catch (IllegalArgumentException eArg) {
-            log.warning(eArg.toString());
-            return null;
         }
-        return client;
+        packet.setNumEvents(n);
     }
 
     private int maybeSwapByteOrder(int value) {
@@ -360,7 +536,7 @@ public class AEUnicastInput implements AEUnicastSettings, PropertyChangeListener
                 datagramSequenceNumber = packetNumber; // swab(buffer.getInt());
                 //                log.info("recieved packet with sequence number "+packetSequenceNumber);
                 if (datagramSequenceNumber != datagramCounter) {
-                    log.warning(String.format("Dropped %d packets. (Incoming packet sequence number (%d) doesn't match expected packetCounter (%d), resetting packetCounter)", datagramSequenceNumber - datagramCounter, datagramSequenceNumber, datagramCounter));
+                    countSequenceGap(datagramSequenceNumber, datagramCounter);
                     datagramCounter = datagramSequenceNumber;
                 }
                 if (datagramCounter < 255) {
@@ -530,12 +706,14 @@ public class AEUnicastInput implements AEUnicastSettings, PropertyChangeListener
             packet.setNumEvents(startingIndex + eventcounter);
             
         }
+        else if (compressedProtocolEnabled) {
+            extractCompressedEvents(buffer, packet);
+        }
         else { // normal jAER/cAER packet
             // extract the ae data and add events to the packet we are presently filling
-            int seqNumLength = sequenceNumberEnabled ? Integer.SIZE / 8 : 0;
             int eventSize = eventSize();
             //log.info("event size " + eventSize);
-            int nEventsInPacket = (buffer.limit() - seqNumLength - (cAERStreamEnabled ? 28 : 0)) / eventSize;    // 28 is the byte numbers of cAER Header
+            int nEventsInPacket = (buffer.remaining() - (cAERStreamEnabled ? 28 : 0)) / eventSize;    // 28 is the byte numbers of cAER Header; sequence number is already read
             //log.info("nr of events " + nEventsInPacket);
             //deprecated ... int ts = !timestampsEnabled || localTimestampsEnabled ? (int)( System.nanoTime() / 1000 ) : 0; // if no timestamps coming, add system clock for all.
             int ts = !timestampsEnabled || localTimestampsEnabled ? (int) (((System.nanoTime() / 1000) << 32) >> 32) : 0; // if no timestamps coming, add system clock for all.
@@ -707,6 +885,9 @@ public class AEUnicastInput implements AEUnicastSettings, PropertyChangeListener
                 stopme = true;
                 channel.close();
                 datagramSocket.close();
+                if (selector != null) {
+                    selector.wakeup();
+                }
             } catch (IOException ex) {
                 log.warning("on closing DatagramChannel caught " + ex);
             }
@@ -725,6 +906,9 @@ public class AEUnicastInput implements AEUnicastSettings, PropertyChangeListener
     private void cleanup() {
         try {
             datagramSocket.close();
+            if (selector != null) {
+                selector.close();
+            }
             /* The extractor might be changed in the AEUnicastInput, so we should restore it back. 
              * This operation must be after the datagramSocket.close() to make sure there're no packets
              * on the network now.
@@ -749,6 +933,7 @@ public class AEUnicastInput implements AEUnicastSettings, PropertyChangeListener
             channel = DatagramChannel.open();
             datagramSocket = channel.socket();
             datagramSocket.setReuseAddress(true);
+            datagramSocket.setReceiveBufferSize(RECEIVE_BUFFER_SIZE_BYTES); // before binding, for buffers larger than 64k
             // disable timeout so that receive just waits for data forever (until interrupted)
 //            datagramSocket.setSoTimeout(TIMEOUT_MS);
 //            if (datagramSocket.getSoTimeout() != TIMEOUT_MS) {
@@ -756,8 +941,13 @@ public class AEUnicastInput implements AEUnicastSettings, PropertyChangeListener
 //            }
             SocketAddress address = new InetSocketAddress(getPort());
             datagramSocket.bind(address);
-            log.info("bound " + this);
-            datagramSocket.setSoTimeout(0); // infinite timeout
+            log.info("bound " + this + " with receive buffer of " + datagramSocket.getReceiveBufferSize() + " bytes");
+            channel.configureBlocking(false); // the Reader waits on the selector and then drains all pending datagrams
+            if (selector != null) {
+                selector.close();
+            }
+            selector = Selector.open();
+            channel.register(selector, SelectionKey.OP_READ);
             return true;
         } catch (IOException e) {
             log.warning("caught " + e + ", datagramSocket will be constructed later");
@@ -970,7 +1160,10 @@ public class AEUnicastInput implements AEUnicastSettings, PropertyChangeListener
     @Override
     public void setPaused(boolean yes) {
         paused = yes;
-        readingThread.interrupt();
+        final Selector s = selector;
+        if (s != null) {
+            s.wakeup(); // interrupting the Reader would close the channel
+        }
         // following deadlocks with exchanger
 //        if ( yes ){
 //            try{
@@ -1006,6 +1199,10 @@ public class AEUnicastInput implements AEUnicastSettings, PropertyChangeListener
     public void setSpinnakerProtocolEnabled(boolean yes) {
         spinnakerProtocolEnabled = yes;
         secDvsProtocolEnabled=false;
+        if (yes) {
+            compressedProtocolEnabled = false;
+            prefs.putBoolean("AEUnicastInput.compressedProtocolEnabled", false);
+        }
         prefs.putBoolean("AEUnicastInput.secDvsProtocolEnabled", yes);
     }
 
@@ -1022,13 +1219,94 @@ public class AEUnicastInput implements AEUnicastSettings, PropertyChangeListener
     public void setSecDvsProtocolEnabled(boolean secDvsProtocolEnabled) {
         this.secDvsProtocolEnabled = secDvsProtocolEnabled;
         spinnakerProtocolEnabled=false;
+        if (secDvsProtocolEnabled) {
+            compressedProtocolEnabled = false;
+            prefs.putBoolean("AEUnicastInput.compressedProtocolEnabled", false);
+        }
         setPort(SEC_DVS_STREAMER_PORT);
         prefs.putBoolean("AEUnicastInput.secDvsProtocolEnabled",secDvsProtocolEnabled);
     }
 
-    private class Reader extends Thread {
+    @Override
+    public boolean isCompressedProtocolEnabled() {
+        return compressedProtocolEnabled;
+    }
+
+    @Override
+    public void setCompressedProtocolEnabled(boolean yes) {
+        compressedProtocolEnabled = yes;
+        if (yes) {
+            spinnakerProtocolEnabled = false;
+            secDvsProtocolEnabled = false;
+        }
+        prefs.putBoolean("AEUnicastInput.compressedProtocolEnabled", yes);
+    }
+
+    /**
+     * @return the number of datagrams received since the input was made
+     */
+    public long getReceivedDatagramCount() {
+        return receivedDatagramCount;
+    }
 
-        volatile boolean maxSizeExceeded = false;
+    /**
+     * @return the number of bytes received since the input was made
+     */
+    public long getReceivedByteCount() {
+        return receivedByteCount;
+    }
+
+    /**
+     * Returns the number of datagrams that were lost, as counted from gaps in
+     * their sequence numbers. Only counted if sequence numbers are enabled.
+     *
+     * @return the number of lost datagrams
+     */
+    public long getLostDatagramCount() {
+        return lostDatagramCount;
+    }
+
+    /**
+     * @return the number of times the sequence number of a datagram was not
+     * the expected one, including datagrams that came out of order
+     */
+    public long getSequenceGapCount() {
+        return sequenceGapCount;
+    }
+
+    /**
+     * @return the number of times the receiver had to wait for readPacket to
+     * take the batch of datagrams because it was full
+     */
+    public long getBatchFullCount() {
+        return batchFullCount;
+    }
+
+    /**
+     * @return the receive rate in bytes per second, averaged over about a
+     * second
+     */
+    public float getReceiveRateBytesPerSecond() {
+        return receiveRateBytesPerSecond;
+    }
+
+    /**
+     * @return the receive rate in datagrams per second, averaged over about a
+     * second
+     */
+    public float getReceiveRateDatagramsPerSecond() {
+        return receiveRateDatagramsPerSecond;
+    }
+
+    /**
+     * @return the rate of events returned by readPacket in events per
+     * second, averaged over about a second
+     */
+    public float getEventRatePerSecond() {
+        return eventRatePerSecond;
+    }
+
+    private class Reader extends Thread {
 
         /**
          * Bumps priority and names thread
@@ -1039,9 +1317,10 @@ public class AEUnicastInput implements AEUnicastSettings, PropertyChangeListener
         }
 
         /**
-         * This run method loops forever, filling the current filling buffer so
-         * that readPacket can return data that may be processed while the other
-         * buffer is being filled.
+         * This run method loops forever, waiting for datagrams and receiving
+         * all pending ones into the batch being filled, so that readPacket can
+         * return data that may be processed while the other batch is being
+         * filled.
          */
         @Override
         public void run() {
@@ -1055,19 +1334,26 @@ public class AEUnicastInput implements AEUnicastSettings, PropertyChangeListener
                     }
                     continue;
                 }
-                if (packet.getNumEvents() >= AEPacket.MAX_PACKET_SIZE_EVENTS) {
-                    if (!maxSizeExceeded) {
-                        log.warning("packet " + packet + " has more than " + AEPacket.MAX_PACKET_SIZE_EVENTS + " disabling filling until packet is read");
-                        maxSizeExceeded = true;
+                if (paused) { // if paused, don't overrun memory
+                    try {
+                        Thread.sleep(PAUSED_SLEEP_MS);
+                    } catch (InterruptedException e) {
+                        log.info(e.toString());
                     }
+                    continue;
                 }
-                // recieve datagrams and put them to exchanger
-                if (!maxSizeExceeded && !paused) { // if paused, don't overrun memory
-                    try {
-                        receiveDatagramAndPutToExchanger(packet); // also save source hosts to packet
-                    } catch (NullPointerException e) {
+                try {
+                    selector.select(RATE_UPDATE_INTERVAL_NS / 1000000); // setPaused and close wake us up
+                    selector.selectedKeys().clear();
+                    receiveDatagrams(); // also save source hosts to batch
+                    updateReceiveRates();
+                } catch (ClosedSelectorException e) {
+                    break;
+                } catch (InterruptedException e) {
+                    log.info(e.toString());
+                } catch (IOException e) {
+                    if (!stopme) {
                         log.warning(e.toString());
-                        break;
                     }
                 }
             }
@@ -68,6 +68,7 @@ public class AEUnicastOutput implements AEUnicastSettings {
     private boolean timestampsEnabled = prefs.getBoolean("AEUnicastOutput.timestampsEnabled", true);
     private boolean localTimestampsEnabled = prefs.getBoolean("AEUnicastOutput.localTimestampsEnabled", false);
     private boolean spinnakerProtocolEnabled = prefs.getBoolean("AEUnicastOutput.spinnakerProtocolEnabled", false);
+    private boolean compressedProtocolEnabled = prefs.getBoolean("AEUnicastOutput.compressedProtocolEnabled", false);
 
 //    /** Creates a new instance, binding any available local port (since we will be just sending from here)
 //     * and using the last host and port.
@@ -205,7 +206,7 @@ public class AEUnicastOutput implements AEUnicastSettings {
                             if (!localTimestampsEnabled) {
                                 t = ts[i];
                             } else {
-                                t = (int) System.nanoTime() / 1000;
+                                t = (int) (System.nanoTime() / 1000);
                             }
                         }
                         //send ADDRs and Ts
@@ -224,6 +225,8 @@ public class AEUnicastOutput implements AEUnicastSettings {
                     }
                     sendPacket();
                 }
+            } else if (compressedProtocolEnabled) {
+                writeCompressedEvents(addr, ts, nEvents);
             } else {
                 // write the sequence number for this DatagramPacket to the buf for this ByteArrayOutputStream
                 maybeWriteSequenceNumber(currentBuf);
@@ -236,7 +239,7 @@ public class AEUnicastOutput implements AEUnicastSettings {
                         if (!localTimestampsEnabled) {
                             t = ts[i];
                         } else {
-                            t = (int) System.nanoTime() / 1000;
+                            t = (int) (System.nanoTime() / 1000);
                         }
                     }
                     if (addressFirstEnabled) {
@@ -277,6 +280,43 @@ public class AEUnicastOutput implements AEUnicastSettings {
         sendPacket();
     }
 
+    /**
+     * Writes the events in the format of {@link AECompressedDatagramFormat},
+     * sending a datagram whenever the next event might not fit
+     */
+    private void writeCompressedEvents(int[] addr, int[] ts, int nEvents) throws IOException {
+        final int shift = AECompressedDatagramFormat.addressShift(addr, nEvents);
+        int i = 0;
+        while (i < nEvents) {
+            maybeWriteSequenceNumber(currentBuf);
+            int prevTs = outputTimestamp(ts[i]);
+            AECompressedDatagramFormat.putHeader(currentBuf, shift, prevTs);
+            while ((i < nEvents) && (currentBuf.remaining() >= AECompressedDatagramFormat.MAX_EVENT_SIZE_BYTES)) {
+                AECompressedDatagramFormat.putVarint(currentBuf, addr[i] >>> shift);
+                if (timestampsEnabled) {
+                    final int t = outputTimestamp(ts[i]);
+                    AECompressedDatagramFormat.putVarint(currentBuf, AECompressedDatagramFormat.zigzag(t - prevTs));
+                    prevTs = t;
+                }
+                i++;
+            }
+            sendPacket();
+        }
+    }
+
+    /**
+     * Returns the timestamp to send for an event timestamp
+     */
+    private int outputTimestamp(int t) {
+        if (!timestampsEnabled) {
+            return 0;
+        }
+        if (localTimestampsEnabled) {
+            t = (int) (System.nanoTime() / 1000);
+        }
+        return timestampMultiplierReciprocal == 1 ? t : (int) (timestampMultiplierReciprocal * t);
+    }
+
     synchronized private void allocateBuffers() {
         initialEmptyBuffer = ByteBuffer.allocateDirect(getBufferSize()); // the buffer to start capturing into
         initialFullBuffer = ByteBuffer.allocateDirect(getBufferSize());// the buffer to render/process first
@@ -421,6 +461,9 @@ public class AEUnicastOutput implements AEUnicastSettings {
     public void setSpinnakerProtocolEnabled(boolean yes) {
         spinnakerProtocolEnabled = yes;
         prefs.putBoolean("AEUnicastOutput.spinnakerProtocolEnabled", yes);
+        if (yes && compressedProtocolEnabled) {
+            setCompressedProtocolEnabled(false);
+        }
     }
 
     @Override
@@ -433,6 +476,20 @@ public class AEUnicastOutput implements AEUnicastSettings {
         return false;
     }
 
+    @Override
+    public boolean isCompressedProtocolEnabled() {
+        return compressedProtocolEnabled;
+    }
+
+    @Override
+    public void setCompressedProtocolEnabled(boolean yes) {
+        compressedProtocolEnabled = yes;
+        prefs.putBoolean("AEUnicastOutput.compressedProtocolEnabled", yes);
+        if (yes && spinnakerProtocolEnabled) {
+            setSpinnakerProtocolEnabled(false);
+        }
+    }
+
     class Consumer implements Runnable {
 
         private final Exchanger<ByteBuffer> exchanger;
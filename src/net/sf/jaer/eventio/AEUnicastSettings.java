@@ -291,4 +291,20 @@ public interface AEUnicastSettings {
      */
     public boolean isSecDvsProtocolEnabled();
 
+    /**
+     * Sets the compact protocol enabled, which sends varint packed addresses
+     * and delta encoded timestamps, as described in
+     * {@link AECompressedDatagramFormat}.
+     *
+     * @param yes true
+     */
+    public void setCompressedProtocolEnabled(boolean yes);
+
+    /**
+     * Is the compact protocol enabled
+     *
+     * @return true if enabled
+     */
+    public boolean isCompressedProtocolEnabled();
+
 }
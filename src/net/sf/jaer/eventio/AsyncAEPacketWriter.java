@@ -0,0 +1,281 @@
+/*
+ * AsyncAEPacketWriter.java
+ *
+ * Created on October 18, 2026
+ */
+package net.sf.jaer.eventio;
+
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+import net.sf.jaer.aemonitor.AEPacketRaw;
+
+/**
+ * Writes raw packets to an AEFileOutputStream or another
+ * AEPacketRawWriterInterface from a writer thread, so that the thread that
+ * acquires and renders the events does not wait for the disk.
+ * <p>
+ * writePacket copies the addresses and timestamps of the packet into a packet
+ * taken from a pool of recycled packets and puts the copy on a bounded queue,
+ * from which the writer thread writes it to the stream. If the queue is full,
+ * because the disk is slower than the event rate, writePacket waits up to
+ * maxWaitMs for room (back-pressure) and then drops the packet. Waits and
+ * drops are counted and reported by toString. close writes all queued packets
+ * before closing the stream.
+ * <p>
+ * writePacket must be called from only one thread at a time.
+ */
+public class AsyncAEPacketWriter {
+
+    private static final Logger log = Logger.getLogger("net.sf.jaer.eventio");
+    /**
+     * Default number of packets that can be queued
+     */
+    public static final int DEFAULT_QUEUE_LENGTH = 64;
+    /**
+     * Default time writePacket waits for room in the queue before dropping the
+     * packet
+     */
+    public static final long DEFAULT_MAX_WAIT_MS = 1000;
+
+    private final AEPacketRawWriterInterface out;
+    private final BlockingQueue<AEPacketRaw> queue, free;
+    private final AEPacketRaw endOfQueue = new AEPacketRaw(0); // put on the queue by close to end the writer thread
+    private final Thread writerThread;
+    private long maxWaitMs = DEFAULT_MAX_WAIT_MS;
+    private volatile IOException writeException = null;
+    private volatile boolean closed = false;
+
+    // statistics, each only changed by either the calling thread or the writer thread
+    private volatile long packetsQueued = 0, eventsQueued = 0, packetsDropped = 0, eventsDropped = 0, waits = 0, waitNs = 0;
+    private volatile long packetsWritten = 0, eventsWritten = 0, writeNs = 0;
+    private volatile int maxQueueLength = 0;
+
+    /**
+     * Creates the writer and starts its thread
+     *
+     * @param out the stream to write to. It is only used by the writer thread
+     * until close.
+     * @param queueLength the number of packets that can be queued
+     */
+    public AsyncAEPacketWriter(AEPacketRawWriterInterface out, int queueLength) {
+        this.out = out;
+        queue = new ArrayBlockingQueue<AEPacketRaw>(queueLength);
+        free = new ArrayBlockingQueue<AEPacketRaw>(queueLength + 2); // +2 for the packets held by both threads
+        writerThread = new Thread(new Writer(), "AsyncAEPacketWriter");
+        writerThread.setDaemon(true);
+        writerThread.start();
+    }
+
+    /**
+     * Creates the writer with DEFAULT_QUEUE_LENGTH and starts its thread
+     *
+     * @param out the stream to write to
+     */
+    public AsyncAEPacketWriter(AEPacketRawWriterInterface out) {
+        this(out, DEFAULT_QUEUE_LENGTH);
+    }
+
+    /**
+     * Queues a copy of the addresses and timestamps of a packet for writing. A
+     * null or empty packet returns immediately.
+     *
+     * @param ae the packet, which can be reused by the caller as soon as this
+     * method returns
+     * @return true if the packet was queued, false if it was dropped because
+     * the queue stayed full for maxWaitMs
+     * @throws IOException if the writer thread failed to write an earlier
+     * packet, or the writer was closed
+     */
+    public boolean writePacket(AEPacketRaw ae) throws IOException {
+        if (writeException != null) {
+            throw new IOException("writing an earlier packet failed: " + writeException.toString(), writeException);
+        }
+        if (closed) {
+            throw new IOException("writer is closed");
+        }
+        if ((ae == null) || (ae.getNumEvents() == 0)) {
+            return true;
+        }
+        final int n = ae.getNumEvents();
+        AEPacketRaw copy = free.poll();
+        if (copy == null) {
+            copy = new AEPacketRaw(n);
+        }
+        copy.ensureCapacity(n);
+        System.arraycopy(ae.getAddresses(), 0, copy.getAddresses(), 0, n);
+        System.arraycopy(ae.getTimestamps(), 0, copy.getTimestamps(), 0, n);
+        copy.setNumEvents(n);
+
+        boolean queued = queue.offer(copy);
+        if (!queued) {
+            waits++;
+            final long start = System.nanoTime();
+            try {
+                queued = queue.offer(copy, maxWaitMs, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            waitNs += System.nanoTime() - start;
+        }
+        if (!queued) {
+            if (packetsDropped == 0) {
+                log.warning("disk writes cannot keep up, dropped packet of " + n + " events after waiting " + maxWaitMs + "ms; " + toString());
+            }
+            packetsDropped++;
+            eventsDropped += n;
+            free.offer(copy);
+            return false;
+        }
+        packetsQueued++;
+        eventsQueued += n;
+        final int l = queue.size();
+        if (l > maxQueueLength) {
+            maxQueueLength = l;
+        }
+        return true;
+    }
+
+    /**
+     * Writes the queued packets, ends the writer thread and closes the stream.
+     * Does nothing if already closed.
+     *
+     * @throws IOException if writing a packet or closing the stream failed
+     */
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        boolean interrupted = false;
+        while (true) {
+            try {
+                queue.put(endOfQueue);
+                writerThread.join();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true; // finish writing anyhow, otherwise the end of the recording is lost
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        out.close();
+        log.info("closed after writing queued packets: " + toString());
+        if (writeException != null) {
+            throw new IOException("writing a packet failed: " + writeException.toString(), writeException);
+        }
+    }
+
+    /**
+     * @return true if close was called
+     */
+    public boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * @return the time writePacket waits for room in the queue before
+     * dropping the packet
+     */
+    public long getMaxWaitMs() {
+        return maxWaitMs;
+    }
+
+    /**
+     * @param maxWaitMs the time writePacket waits for room in the queue before
+     * dropping the packet; 0 drops packets when the queue is full without
+     * waiting
+     */
+    public void setMaxWaitMs(long maxWaitMs) {
+        this.maxWaitMs = maxWaitMs;
+    }
+
+    /**
+     * @return the number of packets that are queued and not yet written
+     */
+    public int getQueueLength() {
+        return queue.size();
+    }
+
+    /**
+     * @return the largest number of queued packets seen by writePacket
+     */
+    public int getMaxQueueLength() {
+        return maxQueueLength;
+    }
+
+    /**
+     * @return the number of events written to the stream
+     */
+    public long getEventsWritten() {
+        return eventsWritten;
+    }
+
+    /**
+     * @return the number of packets dropped because the queue was full
+     */
+    public long getPacketsDropped() {
+        return packetsDropped;
+    }
+
+    /**
+     * @return the number of events of the dropped packets
+     */
+    public long getEventsDropped() {
+        return eventsDropped;
+    }
+
+    /**
+     * @return the number of times writePacket waited for room in the queue
+     */
+    public long getWaits() {
+        return waits;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("AsyncAEPacketWriter: queued %d packets with %d events, wrote %d packets with %d events in %.1fms,"
+                + " waited %d times for %.1fms for room in queue (max queue length %d), dropped %d packets with %d events",
+                packetsQueued, eventsQueued, packetsWritten, eventsWritten, writeNs * 1e-6f, waits, waitNs * 1e-6f, maxQueueLength,
+                packetsDropped, eventsDropped);
+    }
+
+    /**
+     * Takes packets from the queue and writes them until it takes endOfQueue.
+     * After a write fails, the following packets are only recycled.
+     */
+    private class Writer implements Runnable {
+
+        @Override
+        public void run() {
+            while (true) {
+                final AEPacketRaw p;
+                try {
+                    p = queue.take();
+                } catch (InterruptedException e) {
+                    continue; // only close ends the writer, so that no queued packet is lost
+                }
+                if (p == endOfQueue) {
+                    break;
+                }
+                if (writeException == null) {
+                    try {
+                        final long start = System.nanoTime();
+                        out.writePacket(p);
+                        writeNs += System.nanoTime() - start;
+                        packetsWritten++;
+                        eventsWritten += p.getNumEvents();
+                    } catch (IOException e) {
+                        log.warning("writing packet failed, dropping following packets: " + e.toString());
+                        writeException = e;
+                    }
+                }
+                free.offer(p);
+            }
+        }
+    }
+}
@@ -0,0 +1,388 @@
+/*
+ * ChunkedAEFileOutputStream.java
+ *
+ * Created on October 18, 2026
+ */
+package net.sf.jaer.eventio;
+
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.Constructor;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.zip.Deflater;
+
+import ml.options.Options;
+import ml.options.Options.Multiplicity;
+import ml.options.Options.Separator;
+import net.sf.jaer.aemonitor.AEPacketRaw;
+import net.sf.jaer.chip.AEChip;
+import net.sf.jaer.util.EngineeringFormat;
+
+/**
+ * Writes events in the chunked compressed AER-DAT format, which is read by
+ * {@link AEFileInputStream} like an AER-DAT-2.0 file. Events are collected in
+ * chunks of at most chunkDurationUs (and at most MAX_CHUNK_EVENTS events), and
+ * each chunk is written compressed, so that recordings take 3-5 times less
+ * space and a chunk can be decompressed without the others.
+ * <p>
+ * The file starts with the usual text header, whose first line is
+ * "#!AER-DAT-CHUNKED1.0". After the header each chunk is written as
+ * <ul>
+ * <li>the chunk header of int32 number of events, int32 encoded length, int32
+ * stored length, int32 first timestamp and int32 last timestamp,
+ * <li>the stored bytes, which are the encoded bytes compressed by the codec.
+ * The encoded bytes are the timestamps of the chunk followed by its addresses,
+ * each as the zigzag varint of the difference to the previous one in the chunk
+ * (the first to 0).
+ * </ul>
+ * close writes the chunk index, one entry of int64 file position of the chunk
+ * header followed by the 5 ints of the chunk header per chunk, and the trailer
+ * of int64 file position of the index, int32 number of chunks, int32 codec id
+ * and int32 TRAILER_MAGIC. All numbers are big endian. The chunk headers let
+ * {@link ChunkedAEFileReader} rebuild the index of a file that was not closed.
+ * <p>
+ * Existing recordings are converted from the command line with
+ * <pre>
+ * java net.sf.jaer.eventio.ChunkedAEFileOutputStream [-aechip=chipclassname] [-codec=DEFLATE_FAST] [-chunkus=100000] in.aedat out.aedat
+ * </pre>
+ */
+public class ChunkedAEFileOutputStream extends AEFileOutputStream {
+
+    /**
+     * The compression of the chunks. There is no LZ4 or similar fast codec in
+     * the jars, so the fast codec is Deflate at its fastest level.
+     */
+    public enum Codec {
+
+        /**
+         * Chunks are only delta encoded
+         */
+        NONE(0, Deflater.NO_COMPRESSION),
+        /**
+         * Deflate with Deflater.BEST_SPEED, the default
+         */
+        DEFLATE_FAST(1, Deflater.BEST_SPEED),
+        /**
+         * Deflate with Deflater.DEFAULT_COMPRESSION, which takes about twice as
+         * long to write for slightly smaller files
+         */
+        DEFLATE(2, Deflater.DEFAULT_COMPRESSION);
+
+        final int id;
+        final int level;
+
+        Codec(int id, int level) {
+            this.id = id;
+            this.level = level;
+        }
+
+        static Codec fromId(int id) throws IOException {
+            for (Codec c : values()) {
+                if (c.id == id) {
+                    return c;
+                }
+            }
+            throw new IOException("unknown codec id " + id);
+        }
+    }
+
+    /**
+     * The format version written after CHUNKED_DATA_FILE_FORMAT_HEADER
+     */
+    public static final String FORMAT_VERSION = "1.0";
+    /**
+     * Default maximum duration of a chunk in timestamp ticks (us)
+     */
+    public static final int DEFAULT_CHUNK_DURATION_US = 100000;
+    /**
+     * Maximum number of events in a chunk, which limits the memory used at
+     * high event rates
+     */
+    public static final int MAX_CHUNK_EVENTS = 1 << 20;
+    static final int CHUNK_HEADER_BYTES = 5 * (Integer.SIZE / 8);
+    static final int INDEX_ENTRY_BYTES = (Long.SIZE / 8) + CHUNK_HEADER_BYTES;
+    static final int TRAILER_BYTES = (Long.SIZE / 8) + (3 * (Integer.SIZE / 8));
+    static final int TRAILER_MAGIC = 0x41454358; // "AECX"
+
+    private final Codec codec;
+    private final int chunkDurationUs;
+    private final Deflater deflater;
+    private int[] chunkAddr = new int[1 << 14], chunkTs = new int[1 << 14];
+    private int chunkEvents = 0;
+    private byte[] encoded = new byte[0], stored = new byte[0];
+    private final byte[] chunkHeader = new byte[CHUNK_HEADER_BYTES];
+    private final ByteArrayOutputStream indexBytes = new ByteArrayOutputStream();
+    private final DataOutputStream index = new DataOutputStream(indexBytes);
+    private long filePosition;
+    private int numChunks = 0;
+    private long numEvents = 0, numStoredBytes = 0;
+    private boolean closed = false;
+
+    /**
+     * Creates the stream and writes the header.
+     *
+     * @param os the output stream, a FileOutputStream
+     * @param chip the chip, which can write additional header info
+     * @param codec the compression of the chunks
+     * @param chunkDurationUs the maximum duration of a chunk in timestamp
+     * ticks
+     * @throws IOException if the header cannot be written
+     */
+    public ChunkedAEFileOutputStream(OutputStream os, AEChip chip, Codec codec, int chunkDurationUs) throws IOException {
+        super(os, chip, AEDataFile.CHUNKED_DATA_FILE_FORMAT_HEADER + FORMAT_VERSION, " Data format is chunks of up to " + chunkDurationUs
+                + " timestamp ticks of delta-encoded int32 address, int32 timestamp events compressed with " + codec + ", followed by a chunk index", 0);
+        if (chunkDurationUs <= 0) {
+            throw new IllegalArgumentException("chunkDurationUs=" + chunkDurationUs + " must be positive");
+        }
+        this.codec = codec;
+        this.chunkDurationUs = chunkDurationUs;
+        deflater = codec == Codec.NONE ? null : new Deflater(codec.level);
+        filePosition = size(); // the header
+        wrotePacket = true; // header is complete
+    }
+
+    /**
+     * Creates the stream with DEFLATE_FAST and DEFAULT_CHUNK_DURATION_US and
+     * writes the header.
+     *
+     * @param os the output stream, a FileOutputStream
+     * @param chip the chip, which can write additional header info
+     * @throws IOException if the header cannot be written
+     */
+    public ChunkedAEFileOutputStream(OutputStream os, AEChip chip) throws IOException {
+        this(os, chip, Codec.DEFLATE_FAST, DEFAULT_CHUNK_DURATION_US);
+    }
+
+    /**
+     * Adds the events of the packet to the current chunk, writing the chunk
+     * when the next event is later than chunkDurationUs after its first event
+     * or earlier than its first event, or when it is full. A null or empty
+     * packet returns immediately.
+     *
+     * @param ae a raw address-event packet
+     */
+    @Override
+    public void writePacket(final AEPacketRaw ae) throws IOException {
+        if (closed) {
+            throw new IOException("stream is closed");
+        }
+        if (ae == null) {
+            return;
+        }
+        final int n = ae.getNumEvents();
+        final int[] addr = ae.getAddresses();
+        final int[] ts = ae.getTimestamps();
+        for (int i = 0; i < n; i++) {
+            final int t = ts[i];
+            if (chunkEvents > 0) {
+                final int dt = t - chunkTs[0]; // wraps correctly over the 32 bit timestamp wrap
+                if ((dt >= chunkDurationUs) || (dt < 0) || (chunkEvents == MAX_CHUNK_EVENTS)) {
+                    writeChunk();
+                }
+            }
+            if (chunkEvents == chunkTs.length) {
+                final int l = Math.min(2 * chunkEvents, MAX_CHUNK_EVENTS);
+                chunkAddr = Arrays.copyOf(chunkAddr, l);
+                chunkTs = Arrays.copyOf(chunkTs, l);
+            }
+            chunkAddr[chunkEvents] = addr[i];
+            chunkTs[chunkEvents] = t;
+            chunkEvents++;
+        }
+    }
+
+    private void writeChunk() throws IOException {
+        final int n = chunkEvents;
+        if (encoded.length < (10 * n)) { // 5 bytes per varint at most
+            encoded = new byte[10 * n];
+        }
+        int p = 0, prev = 0;
+        for (int i = 0; i < n; i++) {
+            p = putVarint(encoded, p, chunkTs[i] - prev);
+            prev = chunkTs[i];
+        }
+        prev = 0;
+        for (int i = 0; i < n; i++) {
+            p = putVarint(encoded, p, chunkAddr[i] - prev);
+            prev = chunkAddr[i];
+        }
+        final int encodedLength = p;
+        final byte[] data;
+        final int storedLength;
+        if (deflater == null) {
+            data = encoded;
+            storedLength = encodedLength;
+        } else {
+            deflater.reset();
+            deflater.setInput(encoded, 0, encodedLength);
+            deflater.finish();
+            if (stored.length < (encodedLength + 64)) {
+                stored = new byte[encodedLength + (encodedLength >> 3) + 64];
+            }
+            int l = 0;
+            while (!deflater.finished()) {
+                if (l == stored.length) {
+                    stored = Arrays.copyOf(stored, 2 * stored.length);
+                }
+                l += deflater.deflate(stored, l, stored.length - l);
+            }
+            data = stored;
+            storedLength = l;
+        }
+        final int firstTs = chunkTs[0], lastTs = chunkTs[n - 1];
+        ByteBuffer.wrap(chunkHeader).putInt(n).putInt(encodedLength).putInt(storedLength).putInt(firstTs).putInt(lastTs);
+        write(chunkHeader, 0, chunkHeader.length);
+        write(data, 0, storedLength);
+
+        index.writeLong(filePosition);
+        index.write(chunkHeader, 0, chunkHeader.length);
+        filePosition += CHUNK_HEADER_BYTES + storedLength;
+        numChunks++;
+        numEvents += n;
+        numStoredBytes += storedLength;
+        chunkEvents = 0;
+    }
+
+    /**
+     * Writes zigzag varint, i.e. small positive and negative numbers in few
+     * bytes
+     */
+    private static int putVarint(byte[] b, int p, int v) {
+        v = (v << 1) ^ (v >> 31);
+        while ((v & ~0x7F) != 0) {
+            b[p++] = (byte) ((v & 0x7F) | 0x80);
+            v >>>= 7;
+        }
+        b[p++] = (byte) v;
+        return p;
+    }
+
+    /**
+     * Writes the last chunk, the chunk index and the trailer and closes the
+     * stream.
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            if (chunkEvents > 0) {
+                writeChunk();
+            }
+            final ByteBuffer trailer = ByteBuffer.allocate(TRAILER_BYTES);
+            trailer.putLong(filePosition).putInt(numChunks).putInt(codec.id).putInt(TRAILER_MAGIC);
+            indexBytes.writeTo(this);
+            write(trailer.array(), 0, TRAILER_BYTES);
+        } finally {
+            if (deflater != null) {
+                deflater.end();
+            }
+            super.close();
+        }
+        log.info(toString());
+    }
+
+    /**
+     * @return the number of events written
+     */
+    public long getNumEvents() {
+        return numEvents + chunkEvents;
+    }
+
+    /**
+     * @return the number of chunks written
+     */
+    public int getNumChunks() {
+        return numChunks;
+    }
+
+    @Override
+    public String toString() {
+        final EngineeringFormat fmt = new EngineeringFormat();
+        return "ChunkedAEFileOutputStream with " + codec + ": wrote " + fmt.format(numEvents) + " events in " + numChunks + " chunks of "
+                + fmt.format(numStoredBytes) + "B, " + String.format("%.2f", numEvents == 0 ? 0 : (float) numStoredBytes / numEvents)
+                + " bytes/event compared with " + AEFileInputStream.EVENT32_SIZE + " for AER-DAT-2.0";
+    }
+
+    public static final String USAGE = "java ChunkedAEFileOutputStream [-aechip=aechipclassname] [-codec=NONE|DEFLATE_FAST|DEFLATE] [-chunkus=100000] input.aedat output.aedat"
+            + "\n"
+            + "Converts a recording to the chunked compressed format. Note arguments values are assigned with =, not space";
+
+    private static volatile boolean endOfFile = false;
+
+    public static void main(String[] args) {
+        Options opt = new Options(args, 2, 2);
+        opt.getSet().addOption("aechip", Separator.EQUALS, Multiplicity.ZERO_OR_ONE);
+        opt.getSet().addOption("codec", Separator.EQUALS, Multiplicity.ZERO_OR_ONE);
+        opt.getSet().addOption("chunkus", Separator.EQUALS, Multiplicity.ZERO_OR_ONE);
+        if (!opt.check()) {
+            System.out.println(USAGE);
+            System.exit(1);
+        }
+        final String chipname = opt.getSet().isSet("aechip") ? opt.getSet().getOption("aechip").getResultValue(0)
+                : "ch.unizh.ini.jaer.chip.retina.DVS128";
+        Codec codec = Codec.DEFLATE_FAST;
+        int chunkUs = DEFAULT_CHUNK_DURATION_US;
+        AEChip chip = null;
+        try {
+            if (opt.getSet().isSet("codec")) {
+                codec = Codec.valueOf(opt.getSet().getOption("codec").getResultValue(0));
+            }
+            if (opt.getSet().isSet("chunkus")) {
+                chunkUs = Integer.parseInt(opt.getSet().getOption("chunkus").getResultValue(0));
+            }
+            Class chipClass = Class.forName(chipname);
+            Constructor<AEChip> constructor = chipClass.getConstructor();
+            chip = constructor.newInstance((java.lang.Object[]) null);
+        } catch (Exception ex) {
+            System.err.println("Bad argument: " + ex.toString());
+            System.out.println(USAGE);
+            System.exit(1);
+        }
+
+        final File in = new File(opt.getSet().getData().get(0)), out = new File(opt.getSet().getData().get(1));
+        try {
+            final long startNs = System.nanoTime();
+            final AEFileInputStream ais = new AEFileInputStream(in, chip);
+            ais.setNonMonotonicTimeExceptionsChecked(false);
+            ais.setRepeat(false);
+            ais.setMarkOut(ais.size()); // convert the last event too, clearMarks puts the OUT mark on it
+            ais.getSupport().addPropertyChangeListener(AEInputStream.EVENT_EOF, new PropertyChangeListener() {
+                @Override
+                public void propertyChange(PropertyChangeEvent evt) {
+                    endOfFile = true;
+                }
+            });
+            final ChunkedAEFileOutputStream cos = new ChunkedAEFileOutputStream(new FileOutputStream(out), chip, codec, chunkUs);
+            try {
+                while (!endOfFile && (ais.position() < ais.size())) {
+                    try {
+                        cos.writePacket(ais.readPacketByNumber((int) Math.min(1 << 16, ais.size() - ais.position())));
+                    } catch (EOFException e) {
+                        break;
+                    }
+                }
+            } finally {
+                cos.close();
+                ais.close();
+            }
+            System.out.println(String.format("converted %s (%d bytes) to %s (%d bytes, %.1f times smaller) in %.1f s", in, in.length(), out,
+                    out.length(), (float) in.length() / out.length(), (System.nanoTime() - startNs) * 1e-9f));
+            System.out.println(cos);
+        } catch (IOException ex) {
+            System.err.println("Couldn't convert " + in + ": " + ex.toString());
+            System.exit(1);
+        }
+        System.exit(0);
+    }
+}
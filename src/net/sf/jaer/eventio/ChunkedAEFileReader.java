@@ -0,0 +1,408 @@
+/*
+ * ChunkedAEFileReader.java
+ *
+ * Created on October 18, 2026
+ */
+package net.sf.jaer.eventio;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.logging.Logger;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Reads the chunk index of a file written by {@link ChunkedAEFileOutputStream}
+ * and decompresses its chunks into buffers of AER-DAT-2.0 events, i.e. int32
+ * address and int32 timestamp per event. {@link AEFileInputStream} reads these
+ * buffers in place of the memory-mapped chunks of an AER-DAT-2.0 file.
+ * <p>
+ * When a chunk is requested, the next readAheadChunks chunks in the reading
+ * direction are decompressed in parallel by a pool of daemon threads, so that
+ * playback does not wait for decompression. The index is read from the end of
+ * the file, or rebuilt from the chunk headers if the file was not closed.
+ */
+public class ChunkedAEFileReader implements AEFileChunkReaderInterface {
+
+    private static final Logger log = Logger.getLogger("net.sf.jaer.eventio");
+
+    private final FileChannel channel;
+    private final ChunkedAEFileOutputStream.Codec codec;
+    private final int numChunks;
+    private final long[] chunkOffset; // file position of the chunk header
+    private final int[] chunkEvents, encodedLength, storedLength, firstTimestamp, lastTimestamp;
+    private final long[] chunkStartEvent; // number of the first event of the chunk; one more entry with the total
+    private final boolean monotonic;
+    private int readAheadChunks = 2 * Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+    private final ExecutorService executor;
+    private final LinkedHashMap<Integer, Future<ByteBuffer>> chunks = new LinkedHashMap<>();
+    private int lastChunk = -1;
+
+    /**
+     * Reads the index
+     *
+     * @param channel the channel of the file, which is read with positional
+     * reads only
+     * @param dataOffset the file position of the first chunk, i.e. the length
+     * of the header
+     * @throws IOException if the file cannot be read or is not a chunked file
+     */
+    public ChunkedAEFileReader(FileChannel channel, long dataOffset) throws IOException {
+        this.channel = channel;
+        final long fileSize = channel.size();
+        ByteBuffer index = null;
+        int n = 0, codecId = -1;
+        if ((fileSize - dataOffset) >= ChunkedAEFileOutputStream.TRAILER_BYTES) {
+            final ByteBuffer trailer = read(fileSize - ChunkedAEFileOutputStream.TRAILER_BYTES, ChunkedAEFileOutputStream.TRAILER_BYTES);
+            final long indexOffset = trailer.getLong();
+            n = trailer.getInt();
+            codecId = trailer.getInt();
+            final long indexLength = (long) n * ChunkedAEFileOutputStream.INDEX_ENTRY_BYTES;
+            if ((trailer.getInt() == ChunkedAEFileOutputStream.TRAILER_MAGIC) && (n >= 0) && (indexOffset >= dataOffset)
+                    && ((indexOffset + indexLength + ChunkedAEFileOutputStream.TRAILER_BYTES) == fileSize)) {
+                index = read(indexOffset, (int) indexLength);
+            }
+        }
+        if (index == null) {
+            log.warning("no chunk index at end of file, file was probably not closed; rebuilding index from chunk headers");
+            index = scanChunkHeaders(dataOffset, fileSize);
+            n = index.remaining() / ChunkedAEFileOutputStream.INDEX_ENTRY_BYTES;
+            codecId = guessCodec(index, n);
+        }
+        codec = ChunkedAEFileOutputStream.Codec.fromId(codecId);
+        numChunks = n;
+        chunkOffset = new long[n];
+        chunkEvents = new int[n];
+        encodedLength = new int[n];
+        storedLength = new int[n];
+        firstTimestamp = new int[n];
+        lastTimestamp = new int[n];
+        chunkStartEvent = new long[n + 1];
+        boolean mono = true;
+        for (int i = 0; i < n; i++) {
+            chunkOffset[i] = index.getLong();
+            chunkEvents[i] = index.getInt();
+            encodedLength[i] = index.getInt();
+            storedLength[i] = index.getInt();
+            firstTimestamp[i] = index.getInt();
+            lastTimestamp[i] = index.getInt();
+            chunkStartEvent[i + 1] = chunkStartEvent[i] + chunkEvents[i];
+            if ((firstTimestamp[i] > lastTimestamp[i]) || ((i > 0) && (firstTimestamp[i] < lastTimestamp[i - 1]))) {
+                mono = false;
+            }
+        }
+        monotonic = mono;
+        executor = Executors.newFixedThreadPool(Math.max(1, Runtime.getRuntime().availableProcessors() - 1), new ThreadFactory() {
+            int count = 0;
+
+            @Override
+            public Thread newThread(Runnable r) {
+                final Thread t = new Thread(r, "ChunkedAEFileReader-" + (count++));
+                t.setDaemon(true);
+                return t;
+            }
+        });
+        log.info("chunked file with " + codec + " has " + numChunks + " chunks with " + getNumEvents() + " events");
+    }
+
+    private ByteBuffer read(long position, int length) throws IOException {
+        final ByteBuffer b = ByteBuffer.allocate(length);
+        while (b.hasRemaining()) {
+            if (channel.read(b, position + b.position()) < 0) {
+                throw new EOFException("end of file at " + (position + b.position()) + " reading " + length + " bytes at " + position);
+            }
+        }
+        b.flip();
+        return b;
+    }
+
+    /**
+     * @return the index entries of the complete chunks found by following the
+     * chunk headers
+     */
+    private ByteBuffer scanChunkHeaders(long dataOffset, long fileSize) throws IOException {
+        ByteBuffer index = ByteBuffer.allocate(1024 * ChunkedAEFileOutputStream.INDEX_ENTRY_BYTES);
+        long pos = dataOffset;
+        while ((pos + ChunkedAEFileOutputStream.CHUNK_HEADER_BYTES) <= fileSize) {
+            final ByteBuffer h = read(pos, ChunkedAEFileOutputStream.CHUNK_HEADER_BYTES);
+            final int n = h.getInt(0), encoded = h.getInt(4), stored = h.getInt(8);
+            if ((n <= 0) || (n > ChunkedAEFileOutputStream.MAX_CHUNK_EVENTS) || (encoded < (2 * n)) || (encoded > (10 * n)) || (stored < 0)
+                    || ((pos + ChunkedAEFileOutputStream.CHUNK_HEADER_BYTES + stored) > fileSize)) {
+                break; // truncated chunk or start of index
+            }
+            if (index.remaining() < ChunkedAEFileOutputStream.INDEX_ENTRY_BYTES) {
+                final ByteBuffer b = ByteBuffer.allocate(2 * index.capacity());
+                index.flip();
+                index = b.put(index);
+            }
+            index.putLong(pos).put(h);
+            pos += ChunkedAEFileOutputStream.CHUNK_HEADER_BYTES + stored;
+        }
+        index.flip();
+        return index;
+    }
+
+    /**
+     * The codec is only stored in the trailer, so for a file that was not
+     * closed it is NONE if the stored lengths equal the encoded lengths
+     */
+    private static int guessCodec(ByteBuffer index, int n) {
+        for (int i = 0; i < n; i++) {
+            final int p = i * ChunkedAEFileOutputStream.INDEX_ENTRY_BYTES;
+            if (index.getInt(p + 12) != index.getInt(p + 16)) {
+                return ChunkedAEFileOutputStream.Codec.DEFLATE.id; // both deflate codecs inflate the same way
+            }
+        }
+        return ChunkedAEFileOutputStream.Codec.NONE.id;
+    }
+
+    /**
+     * @return the number of chunks
+     */
+    @Override
+    public int getNumChunks() {
+        return numChunks;
+    }
+
+    /**
+     * @return the number of events in the file
+     */
+    @Override
+    public long getNumEvents() {
+        return chunkStartEvent[numChunks];
+    }
+
+    /**
+     * @param chunk the chunk number
+     * @return the number of the first event of the chunk
+     */
+    @Override
+    public long getChunkStartEvent(int chunk) {
+        return chunkStartEvent[chunk];
+    }
+
+    /**
+     * @param chunk the chunk number
+     * @return the file position of the chunk header
+     */
+    public long getChunkFilePosition(int chunk) {
+        return chunkOffset[chunk];
+    }
+
+    /**
+     * @param event the event number
+     * @return the number of the chunk that contains the event, or the last
+     * chunk if event is past the end
+     */
+    @Override
+    public int getChunkNumber(long event) {
+        if (numChunks == 0) {
+            return 0;
+        }
+        int i = Arrays.binarySearch(chunkStartEvent, 0, numChunks, event);
+        if (i < 0) {
+            i = -i - 2; // the chunk that starts before event
+        }
+        return Math.max(0, Math.min(i, numChunks - 1));
+    }
+
+    /**
+     * @return the first timestamp of the file
+     */
+    public int getFirstTimestamp() {
+        return numChunks == 0 ? 0 : firstTimestamp[0];
+    }
+
+    /**
+     * @return the last timestamp of the file
+     */
+    public int getLastTimestamp() {
+        return numChunks == 0 ? 0 : lastTimestamp[numChunks - 1];
+    }
+
+    /**
+     * @return true if the timestamps of the chunk index never decrease, i.e.
+     * findChunkStartEvent can be used
+     */
+    @Override
+    public boolean isMonotonic() {
+        return monotonic;
+    }
+
+    /**
+     * Finds where to start scanning for a timestamp, using the timestamps of
+     * the chunk index
+     *
+     * @param timestamp the timestamp
+     * @return the first event of the first chunk that ends at or after
+     * timestamp
+     */
+    @Override
+    public long findChunkStartEvent(int timestamp) {
+        int lo = 0, hi = numChunks - 1;
+        while (lo < hi) {
+            final int mid = (lo + hi) >>> 1;
+            if (lastTimestamp[mid] < timestamp) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return chunkStartEvent[lo];
+    }
+
+    /**
+     * @return the number of chunks decompressed ahead of the one read
+     */
+    public int getReadAheadChunks() {
+        return readAheadChunks;
+    }
+
+    /**
+     * @param readAheadChunks the number of chunks decompressed ahead of the one
+     * read, 0 to decompress only the chunk read
+     */
+    public void setReadAheadChunks(int readAheadChunks) {
+        this.readAheadChunks = Math.max(0, readAheadChunks);
+    }
+
+    /**
+     * Returns the events of a chunk, waiting for its decompression if it was
+     * not decompressed ahead, and starts decompressing the next chunks in the
+     * direction from the previously requested chunk to this one.
+     *
+     * @param chunk the chunk number
+     * @return a buffer of AER-DAT-2.0 events positioned at the first event
+     * @throws IOException if the chunk cannot be read or decompressed
+     */
+    @Override
+    public synchronized ByteBuffer getChunk(final int chunk) throws IOException {
+        if ((chunk < 0) || (chunk >= numChunks)) {
+            throw new EOFException("chunk " + chunk + " does not exist, file has " + numChunks + " chunks");
+        }
+        final int step = chunk < lastChunk ? -1 : 1;
+        lastChunk = chunk;
+        // drop the chunks that are not this one or ahead of it
+        final Iterator<Map.Entry<Integer, Future<ByteBuffer>>> it = chunks.entrySet().iterator();
+        while (it.hasNext()) {
+            final Map.Entry<Integer, Future<ByteBuffer>> e = it.next();
+            final int ahead = (e.getKey() - chunk) * step;
+            if ((ahead < 0) || (ahead > readAheadChunks)) {
+                e.getValue().cancel(false);
+                it.remove();
+            }
+        }
+        Future<ByteBuffer> f = submit(chunk);
+        for (int i = 1; i <= readAheadChunks; i++) {
+            final int c = chunk + (i * step);
+            if ((c < 0) || (c >= numChunks)) {
+                break;
+            }
+            submit(c);
+        }
+        try {
+            return f.get().duplicate();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ClosedByInterruptException();
+        } catch (ExecutionException e) {
+            chunks.remove(chunk); // so that the next request tries again
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException("decompressing chunk " + chunk + ": " + e.getCause(), e.getCause());
+        }
+    }
+
+    private Future<ByteBuffer> submit(final int chunk) {
+        Future<ByteBuffer> f = chunks.get(chunk);
+        if (f == null) {
+            f = executor.submit(new Callable<ByteBuffer>() {
+                @Override
+                public ByteBuffer call() throws IOException {
+                    return decompress(chunk);
+                }
+            });
+            chunks.put(chunk, f);
+        }
+        return f;
+    }
+
+    /**
+     * Reads, decompresses and decodes a chunk
+     */
+    private ByteBuffer decompress(int chunk) throws IOException {
+        final int n = chunkEvents[chunk];
+        final ByteBuffer stored = read(chunkOffset[chunk] + ChunkedAEFileOutputStream.CHUNK_HEADER_BYTES, storedLength[chunk]);
+        final byte[] encoded;
+        if (codec == ChunkedAEFileOutputStream.Codec.NONE) {
+            encoded = stored.array();
+        } else {
+            encoded = new byte[encodedLength[chunk]];
+            final Inflater inflater = new Inflater();
+            try {
+                inflater.setInput(stored.array(), 0, storedLength[chunk]);
+                int l = 0;
+                while (l < encoded.length) {
+                    final int k = inflater.inflate(encoded, l, encoded.length - l);
+                    if ((k == 0) && (inflater.finished() || inflater.needsInput() || inflater.needsDictionary())) {
+                        throw new IOException("chunk " + chunk + " decompressed to " + l + " bytes but should have " + encoded.length);
+                    }
+                    l += k;
+                }
+            } catch (DataFormatException e) {
+                throw new IOException("corrupt chunk " + chunk + ": " + e.toString(), e);
+            } finally {
+                inflater.end();
+            }
+        }
+        final int[] ts = new int[n];
+        int p = 0, prev = 0;
+        for (int i = 0; i < n; i++) { // inline zigzag varint decoding
+            int v = 0, shift = 0, b;
+            do {
+                b = encoded[p++];
+                v |= (b & 0x7F) << shift;
+                shift += 7;
+            } while (b < 0);
+            prev += (v >>> 1) ^ -(v & 1);
+            ts[i] = prev;
+        }
+        final ByteBuffer events = ByteBuffer.allocate(n * AEFileInputStream.EVENT32_SIZE);
+        prev = 0;
+        for (int i = 0, q = 0; i < n; i++, q += AEFileInputStream.EVENT32_SIZE) {
+            int v = 0, shift = 0, b;
+            do {
+                b = encoded[p++];
+                v |= (b & 0x7F) << shift;
+                shift += 7;
+            } while (b < 0);
+            prev += (v >>> 1) ^ -(v & 1);
+            events.putInt(q, prev);
+            events.putInt(q + 4, ts[i]);
+        }
+        return events;
+    }
+
+    /**
+     * Stops the decompression threads. Does not close the channel.
+     */
+    @Override
+    public synchronized void close() {
+        executor.shutdownNow();
+        chunks.clear();
+    }
+}
@@ -1,64 +1,290 @@
-/*
- * To change this license header, choose License Headers in Project Properties.
- * To change this template file, choose Tools | Templates
- * and open the template in the editor.
- */
-package net.sf.jaer.eventio;
-
-import ch.systemsx.cisd.hdf5.HDF5DataClass;
-import ch.systemsx.cisd.hdf5.HDF5DataSetInformation;
-import ch.systemsx.cisd.hdf5.HDF5DataTypeInformation;
-import ch.systemsx.cisd.hdf5.HDF5FactoryProvider;
-import ch.systemsx.cisd.hdf5.IHDF5Reader;
-import java.io.File;
-import java.io.IOException;
-import java.nio.ByteBuffer;
-import java.nio.ByteOrder;
-import java.nio.DoubleBuffer;
-import java.nio.FloatBuffer;
-import java.nio.LongBuffer;
-import java.nio.ShortBuffer;
-import java.util.BitSet;
-import java.util.logging.Logger;
-import net.sf.jaer.chip.AEChip;
-
-/**
- * Reads HDF5 AER data files
- * 
- * @author Tobi Delbruck
- */
-public class Hdf5AedatFileInputReader  {
-    protected static Logger log=Logger.getLogger("Hdf5AedatFileInputReader");
-    
-    private IHDF5Reader reader=null;
-    public Hdf5AedatFileInputReader(File f, AEChip chip) throws IOException  {
-        reader = HDF5FactoryProvider.get().openForReading(f);
-        HDF5DataSetInformation info = reader.getDataSetInformation("/dvs/data");
-        HDF5DataClass dataClass = info.getTypeInformation().getDataClass();
-        HDF5DataTypeInformation typeInfo = info.getTypeInformation();
-        int[] chunckSize = info.tryGetChunkSizes();
-        byte[] dvs_data = reader.opaque().readArray("/dvs/data");
-        ByteBuffer buffer = ByteBuffer.allocate(dvs_data.length);   
-        buffer.put(dvs_data, 0, dvs_data.length);
-        buffer.order(ByteOrder.LITTLE_ENDIAN);
-        buffer.flip();//need flip 
-        buffer.rewind();
-        LongBuffer lb = ((ByteBuffer) buffer.rewind()).asLongBuffer();
-        long[] dvs = new long[lb.remaining()];
-        lb.get(dvs);
-        reader.close();
-    }
-    
-    public static void main(String[] args){
-        try {
-            Hdf5AedatFileInputReader r=new Hdf5AedatFileInputReader(new File("rec1498945830.hdf5"),null);
-            
-        } catch (IOException ex) {
-            log.warning("caught "+ex.toString());
-        }
-        
-    }
-    
-    
-    
-}
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package net.sf.jaer.eventio;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedByInterruptException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+import ch.systemsx.cisd.hdf5.HDF5FactoryProvider;
+import ch.systemsx.cisd.hdf5.IHDF5Reader;
+import ncsa.hdf.hdf5lib.exceptions.HDF5Exception;
+
+/**
+ * Reads HDF5 AER data files written by {@link Hdf5FileOutputWriter}. Each
+ * block of the timestamp and address datasets is read with one hyperslab read
+ * per dataset and returned as a chunk of AER-DAT-2.0 events, so that
+ * {@link AEFileInputStream}, and hence AEPlayer, plays HDF5 files like AER-DAT
+ * files.
+ * <p>
+ * When a chunk is requested, the next chunk in the reading direction is read
+ * by a daemon thread, so that playback does not wait for the file.
+ *
+ * @author Tobi Delbruck
+ */
+public class Hdf5AedatFileInputReader implements AEFileChunkReaderInterface {
+
+    protected static Logger log = Logger.getLogger("net.sf.jaer.eventio");
+    /**
+     * The first bytes of an HDF5 file that has no user block
+     */
+    private static final byte[] HDF5_SIGNATURE = {(byte) 0x89, 'H', 'D', 'F', '\r', '\n', 0x1a, '\n'};
+
+    private final IHDF5Reader reader;
+    private final long numEvents;
+    private final int blockEvents, numChunks;
+    private final int[] blockFirstTimestamp, blockLastTimestamp; // null if the file has no block timestamps
+    private final boolean monotonic;
+    private final List<String> header;
+    private final ExecutorService executor;
+    private Future<ByteBuffer> aheadChunk = null; // the chunk being read ahead
+    private int aheadChunkNumber = -1, lastChunk = -1;
+
+    /**
+     * Opens the file and reads its block timestamps
+     *
+     * @param f the file
+     * @throws IOException if the file cannot be opened or has no event
+     * datasets
+     */
+    public Hdf5AedatFileInputReader(File f) throws IOException {
+        try {
+            reader = HDF5FactoryProvider.get().openForReading(f);
+        } catch (HDF5Exception e) {
+            throw new IOException("cannot open HDF5 file " + f + ": " + e.toString(), e);
+        }
+        try {
+            if (!reader.object().exists(Hdf5FileOutputWriter.TIMESTAMP_DATASET) || !reader.object().exists(Hdf5FileOutputWriter.ADDRESS_DATASET)) {
+                throw new IOException("HDF5 file " + f + " has no datasets " + Hdf5FileOutputWriter.TIMESTAMP_DATASET + " and "
+                        + Hdf5FileOutputWriter.ADDRESS_DATASET + ", it was not written by jAER");
+            }
+            numEvents = Math.min(reader.object().getDataSetInformation(Hdf5FileOutputWriter.TIMESTAMP_DATASET).getNumberOfElements(),
+                    reader.object().getDataSetInformation(Hdf5FileOutputWriter.ADDRESS_DATASET).getNumberOfElements());
+            if (reader.object().hasAttribute(Hdf5FileOutputWriter.EVENTS_GROUP, Hdf5FileOutputWriter.BLOCK_EVENTS_ATTRIBUTE)) {
+                blockEvents = reader.int32().getAttr(Hdf5FileOutputWriter.EVENTS_GROUP, Hdf5FileOutputWriter.BLOCK_EVENTS_ATTRIBUTE);
+            } else {
+                blockEvents = Hdf5FileOutputWriter.BLOCK_EVENTS;
+            }
+            numChunks = (int) ((numEvents + blockEvents - 1) / blockEvents);
+            if (reader.object().exists(Hdf5FileOutputWriter.BLOCK_FIRST_TIMESTAMP_DATASET)
+                    && reader.object().exists(Hdf5FileOutputWriter.BLOCK_LAST_TIMESTAMP_DATASET)) {
+                blockFirstTimestamp = reader.int32().readArray(Hdf5FileOutputWriter.BLOCK_FIRST_TIMESTAMP_DATASET);
+                blockLastTimestamp = reader.int32().readArray(Hdf5FileOutputWriter.BLOCK_LAST_TIMESTAMP_DATASET);
+            } else {
+                blockFirstTimestamp = null;
+                blockLastTimestamp = null;
+            }
+            boolean mono = (blockFirstTimestamp != null) && (blockFirstTimestamp.length == numChunks) && (blockLastTimestamp.length == numChunks);
+            for (int i = 0; mono && (i < numChunks); i++) {
+                if ((blockFirstTimestamp[i] > blockLastTimestamp[i]) || ((i > 0) && (blockFirstTimestamp[i] < blockLastTimestamp[i - 1]))) {
+                    mono = false;
+                }
+            }
+            monotonic = mono;
+            if (reader.object().hasAttribute("/", Hdf5FileOutputWriter.HEADER_ATTRIBUTE)) {
+                header = Collections.unmodifiableList(Arrays.asList(reader.string().getArrayAttr("/", Hdf5FileOutputWriter.HEADER_ATTRIBUTE)));
+            } else {
+                header = Collections.unmodifiableList(new ArrayList<String>());
+            }
+        } catch (IOException e) {
+            reader.close();
+            throw e;
+        } catch (HDF5Exception e) {
+            reader.close();
+            throw new IOException("cannot read HDF5 file " + f + ": " + e.toString(), e);
+        }
+        executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                final Thread t = new Thread(r, "Hdf5AedatFileInputReader");
+                t.setDaemon(true);
+                return t;
+            }
+        });
+        log.info("HDF5 file " + f + " has " + numEvents + " events in " + numChunks + " chunks of " + blockEvents + " events");
+    }
+
+    /**
+     * Checks for the HDF5 signature at the start of a file
+     *
+     * @param f the file
+     * @return true if f starts with the HDF5 signature
+     */
+    public static boolean isHdf5File(File f) {
+        final byte[] b = new byte[HDF5_SIGNATURE.length];
+        try (FileInputStream in = new FileInputStream(f)) {
+            int n = 0, r;
+            while ((n < b.length) && ((r = in.read(b, n, b.length - n)) > 0)) {
+                n += r;
+            }
+            return (n == b.length) && Arrays.equals(b, HDF5_SIGNATURE);
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * @return the header lines stored by Hdf5FileOutputWriter, without
+     * comment char
+     */
+    public List<String> getHeader() {
+        return header;
+    }
+
+    @Override
+    public int getNumChunks() {
+        return numChunks;
+    }
+
+    @Override
+    public long getNumEvents() {
+        return numEvents;
+    }
+
+    @Override
+    public long getChunkStartEvent(int chunk) {
+        return Math.min(numEvents, (long) chunk * blockEvents);
+    }
+
+    @Override
+    public int getChunkNumber(long event) {
+        if (numChunks == 0) {
+            return 0;
+        }
+        return (int) Math.max(0, Math.min(event / blockEvents, numChunks - 1));
+    }
+
+    @Override
+    public boolean isMonotonic() {
+        return monotonic;
+    }
+
+    @Override
+    public long findChunkStartEvent(int timestamp) {
+        if (!monotonic) {
+            return 0;
+        }
+        int lo = 0, hi = numChunks - 1;
+        while (lo < hi) {
+            final int mid = (lo + hi) >>> 1;
+            if (blockLastTimestamp[mid] < timestamp) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return getChunkStartEvent(lo);
+    }
+
+    /**
+     * Returns the events of a chunk, waiting for them to be read if the chunk
+     * was not read ahead, and starts reading the next chunk in the direction
+     * from the previously requested chunk to this one.
+     *
+     * @param chunk the chunk number
+     * @return a buffer of AER-DAT-2.0 events positioned at the first event
+     * @throws IOException if the chunk cannot be read
+     */
+    @Override
+    public synchronized ByteBuffer getChunk(final int chunk) throws IOException {
+        if ((chunk < 0) || (chunk >= numChunks)) {
+            throw new EOFException("chunk " + chunk + " does not exist, file has " + numChunks + " chunks");
+        }
+        final int step = chunk < lastChunk ? -1 : 1;
+        lastChunk = chunk;
+        Future<ByteBuffer> f;
+        if ((aheadChunk != null) && (aheadChunkNumber == chunk)) {
+            f = aheadChunk;
+        } else {
+            if (aheadChunk != null) {
+                aheadChunk.cancel(false);
+            }
+            f = submit(chunk);
+        }
+        aheadChunk = null;
+        final int next = chunk + step;
+        if ((next >= 0) && (next < numChunks)) {
+            aheadChunkNumber = next;
+            aheadChunk = submit(next);
+        }
+        try {
+            return f.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ClosedByInterruptException();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException("reading chunk " + chunk + ": " + e.getCause(), e.getCause());
+        }
+    }
+
+    private Future<ByteBuffer> submit(final int chunk) {
+        return executor.submit(new Callable<ByteBuffer>() {
+            @Override
+            public ByteBuffer call() throws IOException {
+                return read(chunk);
+            }
+        });
+    }
+
+    /**
+     * Reads a block of timestamps and addresses and packs them into
+     * AER-DAT-2.0 events
+     */
+    private ByteBuffer read(int chunk) throws IOException {
+        final long start = getChunkStartEvent(chunk);
+        final int n = (int) (getChunkStartEvent(chunk + 1) - start);
+        final int[] timestamps, addresses;
+        try {
+            timestamps = reader.int32().readArrayBlockWithOffset(Hdf5FileOutputWriter.TIMESTAMP_DATASET, n, start);
+            addresses = reader.int32().readArrayBlockWithOffset(Hdf5FileOutputWriter.ADDRESS_DATASET, n, start);
+        } catch (HDF5Exception e) {
+            throw new IOException("reading events " + start + " to " + (start + n) + ": " + e.toString(), e);
+        }
+        final ByteBuffer events = ByteBuffer.allocate(n * 8);
+        for (int i = 0; i < n; i++) {
+            events.putInt(addresses[i]);
+            events.putInt(timestamps[i]);
+        }
+        events.flip();
+        return events;
+    }
+
+    /**
+     * Stops the read-ahead thread and closes the file
+     */
+    @Override
+    public synchronized void close() {
+        if (aheadChunk != null) {
+            aheadChunk.cancel(false);
+            aheadChunk = null;
+        }
+        executor.shutdown();
+        try {
+            executor.awaitTermination(10, TimeUnit.SECONDS); // the file must not be closed during a read
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        reader.close();
+    }
+}
@@ -1,212 +1,474 @@
-/*
- * To change this license header, choose License Headers in Project Properties.
- * To change this template file, choose Tools | Templates
- * and open the template in the editor.
- */
-package net.sf.jaer.eventio;
-
-import ch.systemsx.cisd.hdf5.hdf5lib.HDF5Constants;
-import ncsa.hdf.hdf5lib.H5;
-
-/**
- *
- * @author minliu
- */
-public class Hdf5FileOutputWriter {
-    private static String fname  = "rec1498945830.hdf5";
-    private static String dsname  = "dvs";
-    private static long[] dims2D = { 20, 20 };
-
-    public static void main(String args[]) throws Exception {
-        int file_id = -1;
-        int dataset_id = -1;
-
-        // create the file and add groups and dataset into the file
-        createFile();
-
-        // Open file using the default properties.
-        try {
-            file_id = H5.H5Fopen(fname, HDF5Constants.H5F_ACC_RDWR, HDF5Constants.H5P_DEFAULT);
-        }
-        catch (Exception e) {
-            e.printStackTrace();
-        }
-
-        // Open dataset using the default properties.
-        try {
-            if (file_id >= 0)
-                dataset_id = H5.H5Dopen(file_id, dsname, HDF5Constants.H5P_DEFAULT);
-        }
-        catch (Exception e) {
-            e.printStackTrace();
-        }
-
-        // Allocate array of pointers to two-dimensional arrays (the
-        // elements of the dataset.
-        int[][] dataRead = new int[(int) dims2D[0]][(int) (dims2D[1])];
-
-        try {
-            if (dataset_id >= 0)
-                H5.H5Dread(dataset_id, HDF5Constants.H5T_NATIVE_INT,
-                        HDF5Constants.H5S_ALL, HDF5Constants.H5S_ALL,
-                        HDF5Constants.H5P_DEFAULT, dataRead);
-        }
-        catch (Exception e) {
-            e.printStackTrace();
-        }
-
-        // print out the data values
-        System.out.println("\n\nOriginal Data Values");
-        for (int i = 0; i < (int) dims2D[0]; i++) {
-            System.out.print("\n" + dataRead[i][0]);
-            for (int j = 1; j < (int) dims2D[1]; j++) {
-                System.out.print(", " + dataRead[i][j]);
-            }
-        }
-
-        // change data value and write it to file.
-        for (int i = 0; i < (int) dims2D[0]; i++) {
-            for (int j = 0; j < (int) dims2D[1]; j++) {
-                dataRead[i][j]++;
-            }
-        }
-
-        // Write the data to the dataset.
-        try {
-            if (dataset_id >= 0)
-                H5.H5Dwrite(dataset_id, HDF5Constants.H5T_NATIVE_INT,
-                        HDF5Constants.H5S_ALL, HDF5Constants.H5S_ALL, HDF5Constants.H5P_DEFAULT, 
-                        dataRead);
-        }
-        catch (Exception e) {
-            e.printStackTrace();
-        }
-
-        // reload the data value
-        int[][] dataModified = new int[(int) dims2D[0]][(int) (dims2D[1])];
-
-        try {
-            if (dataset_id >= 0)
-                H5.H5Dread(dataset_id, HDF5Constants.H5T_NATIVE_INT,
-                        HDF5Constants.H5S_ALL, HDF5Constants.H5S_ALL,
-                        HDF5Constants.H5P_DEFAULT, dataModified);
-        }
-        catch (Exception e) {
-            e.printStackTrace();
-        }
-
-        // print out the modified data values
-        System.out.println("\n\nModified Data Values");
-        for (int i = 0; i < (int) dims2D[0]; i++) {
-            System.out.print("\n" + dataModified[i][0]);
-            for (int j = 1; j < (int) dims2D[1]; j++) {
-                System.out.print(", " + dataModified[i][j]);
-            }
-        }
-
-        // Close the dataset.
-        try {
-            if (dataset_id >= 0)
-                H5.H5Dclose(dataset_id);
-        }
-        catch (Exception e) {
-            e.printStackTrace();
-        }
-
-        // Close the file.
-        try {
-            if (file_id >= 0)
-                H5.H5Fclose(file_id);
-        }
-        catch (Exception e) {
-            e.printStackTrace();
-        }
-    }
-
-    /**
-     * create the file and add groups ans dataset into the file, which is the
-     * same as javaExample.H5DatasetCreate
-     * 
-     * @see HDF5DatasetCreate.H5DatasetCreate
-     * @throws Exception
-     */
-    private static void createFile() throws Exception {
-        int file_id = -1;
-        int dataspace_id = -1;
-        int dataset_id = -1;
-        
-        // Create a new file using default properties.
-        try {
-            file_id = H5.H5Fcreate(fname, HDF5Constants.H5F_ACC_TRUNC,
-                    HDF5Constants.H5P_DEFAULT, HDF5Constants.H5P_DEFAULT);
-        }
-        catch (Exception e) {
-            e.printStackTrace();
-        }
-
-        // Create the data space for the dataset.
-        try {
-            dataspace_id = H5.H5Screate_simple(2, dims2D, null);
-        }
-        catch (Exception e) {
-            e.printStackTrace();
-        }
-
-        // Create the dataset.
-        try {
-            if ((file_id >= 0) && (dataspace_id >= 0))
-                dataset_id = H5.H5Dcreate(file_id, dsname,
-                        HDF5Constants.H5T_STD_I32LE, dataspace_id,
-                        HDF5Constants.H5P_DEFAULT, HDF5Constants.H5P_DEFAULT, HDF5Constants.H5P_DEFAULT);
-        }
-        catch (Exception e) {
-            e.printStackTrace();
-        }
-
-        // Terminate access to the data space.
-        try {
-            if (dataspace_id >= 0)
-                H5.H5Sclose(dataspace_id);
-        }
-        catch (Exception e) {
-            e.printStackTrace();
-        }
-
-        // set the data values
-        int[] dataIn = new int[(int)dims2D[0] * (int)dims2D[1]];
-        for (int i = 0; i < (int)dims2D[0]; i++) {
-            for (int j = 0; j < (int)dims2D[1]; j++) {
-                dataIn[i * (int)dims2D[1] + j] = i * 100 + j;
-            }
-        }
-
-        // Write the data to the dataset.
-        try {
-            if (dataset_id >= 0)
-                H5.H5Dwrite(dataset_id, HDF5Constants.H5T_NATIVE_INT,
-                        HDF5Constants.H5S_ALL, HDF5Constants.H5S_ALL,
-                        HDF5Constants.H5P_DEFAULT, dataIn);
-        }
-        catch (Exception e) {
-            e.printStackTrace();
-        }
-
-        // End access to the dataset and release resources used by it.
-        try {
-            if (dataset_id >= 0)
-                H5.H5Dclose(dataset_id);
-        }
-        catch (Exception e) {
-            e.printStackTrace();
-        }
-
-        // Close the file.
-        try {
-            if (file_id >= 0)
-                H5.H5Fclose(file_id);
-        }
-        catch (Exception e) {
-            e.printStackTrace();
-        }
-    }    
-}
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package net.sf.jaer.eventio;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.logging.Logger;
+import java.util.prefs.BackingStoreException;
+
+import ch.systemsx.cisd.base.mdarray.MDShortArray;
+import ch.systemsx.cisd.hdf5.HDF5Factory;
+import ch.systemsx.cisd.hdf5.HDF5FloatStorageFeatures;
+import ch.systemsx.cisd.hdf5.HDF5IntStorageFeatures;
+import ch.systemsx.cisd.hdf5.IHDF5Writer;
+import eu.seebetter.ini.chips.DavisChip;
+import eu.seebetter.ini.chips.davis.DavisBaseCamera;
+import eu.seebetter.ini.chips.davis.imu.IMUSample;
+import ncsa.hdf.hdf5lib.exceptions.HDF5Exception;
+import net.sf.jaer.aemonitor.AEConstants;
+import net.sf.jaer.aemonitor.AEPacketRaw;
+import net.sf.jaer.chip.AEChip;
+import net.sf.jaer.chip.EventExtractor2D;
+
+/**
+ * Writes events to an HDF5 file as columnar datasets, so that analysis tools
+ * can read the recording with any HDF5 library. The datasets in group
+ * {@link #EVENTS_GROUP} are chunked, extendable and compressed with shuffle
+ * and deflate, and have one element per event:
+ * <ul>
+ * <li>timestamp: int32 timestamp in us
+ * <li>address: int32 raw address, from which AEFileInputStream plays the file
+ * back
+ * <li>x, y: int16 pixel address of DVS and APS events, decoded like
+ * DavisBaseCamera does for a DavisChip, by the event extractor of the chip
+ * otherwise
+ * <li>polarity: int8 polarity of DVS events, or their type from the event
+ * extractor for chips that are not a DavisChip
+ * <li>kind: int8 KIND_DVS, KIND_APS (frame sample), KIND_IMU (IMU sample word)
+ * or KIND_SPECIAL (external input) for a DavisChip, KIND_DVS for other chips
+ * <li>adc: int16 ADC sample of APS events
+ * </ul>
+ * Fields that do not apply to the kind of an event are 0. The events are
+ * written in blocks of BLOCK_EVENTS events, which are also the chunks of the
+ * datasets, with one hyperslab write per dataset. On close, the first and
+ * last timestamp of each block are written to block_first_timestamp and
+ * block_last_timestamp, which {@link Hdf5AedatFileInputReader} uses for
+ * seeking.
+ * <p>
+ * For a DAVIS camera the APS and IMU sample events are also assembled, like
+ * the APS frame extractor and DavisBaseCamera do, into
+ * <ul>
+ * <li>{@link #FRAMES_GROUP}/timestamp: int32 timestamp of the first reset read
+ * of each frame, and /data: int16 frames x sizeY x sizeX of reset minus signal
+ * read, indexed by the jAER y and x of the pixel, written when the signal read
+ * of the last pixel of the frame arrives
+ * <li>{@link #IMU_GROUP}/timestamp: int32 timestamp of each IMU sample, /accel:
+ * float32 samples x 3 of x, y and z acceleration in g, /gyro: float32 samples
+ * x 3 of tilt (x), yaw (y) and roll (z) rate in deg/s, and /temp: float32
+ * temperature in deg C, scaled like IMUSample does
+ * </ul>
+ * The raw sample events stay in {@link #EVENTS_GROUP}, so that the file plays
+ * back like the AER-DAT file would.
+ * <p>
+ * The header lines that an AER-DAT file starts with are stored in the string
+ * array attribute "header" of the root group, and the preferences of the chip
+ * in the string dataset /chip_preferences.
+ *
+ * @author minliu
+ */
+public class Hdf5FileOutputWriter implements AEPacketRawWriterInterface {
+
+    private static final Logger log = Logger.getLogger("net.sf.jaer.eventio");
+    /**
+     * The first header line, without comment char, is FORMAT_HEADER +
+     * FORMAT_VERSION
+     */
+    public static final String FORMAT_HEADER = "!AER-HDF5", FORMAT_VERSION = "1.0";
+    /**
+     * Group and dataset paths
+     */
+    public static final String EVENTS_GROUP = "/events",
+            TIMESTAMP_DATASET = EVENTS_GROUP + "/timestamp",
+            ADDRESS_DATASET = EVENTS_GROUP + "/address",
+            X_DATASET = EVENTS_GROUP + "/x",
+            Y_DATASET = EVENTS_GROUP + "/y",
+            POLARITY_DATASET = EVENTS_GROUP + "/polarity",
+            KIND_DATASET = EVENTS_GROUP + "/kind",
+            ADC_DATASET = EVENTS_GROUP + "/adc",
+            BLOCK_FIRST_TIMESTAMP_DATASET = EVENTS_GROUP + "/block_first_timestamp",
+            BLOCK_LAST_TIMESTAMP_DATASET = EVENTS_GROUP + "/block_last_timestamp",
+            FRAMES_GROUP = "/frames",
+            FRAME_TIMESTAMP_DATASET = FRAMES_GROUP + "/timestamp",
+            FRAME_DATA_DATASET = FRAMES_GROUP + "/data",
+            IMU_GROUP = "/imu",
+            IMU_TIMESTAMP_DATASET = IMU_GROUP + "/timestamp",
+            IMU_ACCEL_DATASET = IMU_GROUP + "/accel",
+            IMU_GYRO_DATASET = IMU_GROUP + "/gyro",
+            IMU_TEMP_DATASET = IMU_GROUP + "/temp",
+            CHIP_PREFERENCES_DATASET = "/chip_preferences";
+    /**
+     * Attribute names; header is an attribute of the root group, the others
+     * of EVENTS_GROUP
+     */
+    public static final String HEADER_ATTRIBUTE = "header", BLOCK_EVENTS_ATTRIBUTE = "blockEvents",
+            SIZE_X_ATTRIBUTE = "sizeX", SIZE_Y_ATTRIBUTE = "sizeY", TIMESTAMP_TICK_US_ATTRIBUTE = "timestampTickUs";
+    /**
+     * Values of the kind dataset
+     */
+    public static final byte KIND_DVS = 0, KIND_APS = 1, KIND_IMU = 2, KIND_SPECIAL = 3;
+    /**
+     * Number of events written at once, and chunk size of the datasets
+     */
+    public static final int BLOCK_EVENTS = 1 << 16;
+    /**
+     * Number of IMU samples written at once, and chunk size of the IMU
+     * datasets
+     */
+    public static final int BLOCK_IMU_SAMPLES = 1 << 10;
+    private static final int FRAME_TIMESTAMP_CHUNK = 256;
+    private static final int IMU_DATA_MASK = 0x0FFFF000, IMU_DATA_SHIFT = 12; // data bits of an IMU sample word, as in IMUSample
+
+    private final IHDF5Writer writer;
+    private final EventExtractor2D extractor;
+    private final DavisBaseCamera davis; // null if the chip is not a DAVIS camera
+    private final int sizeX, sizeY;
+    private final int sx1; // chip width minus one, to flip DAVIS DVS x addresses
+    private final int[] timestamps = new int[BLOCK_EVENTS], addresses = new int[BLOCK_EVENTS];
+    private final short[] x = new short[BLOCK_EVENTS], y = new short[BLOCK_EVENTS], adc = new short[BLOCK_EVENTS];
+    private final byte[] polarity = new byte[BLOCK_EVENTS], kind = new byte[BLOCK_EVENTS];
+    private int blockSize = 0; // number of events in the arrays
+    private int[] blockFirstTimestamp = new int[64], blockLastTimestamp = new int[64];
+    private int numBlocks = 0;
+    private long eventsWritten = 0;
+    private final short[] resetRead, signalRead, frame; // per pixel, null if not a DAVIS camera
+    private int frameTimestamp = 0;
+    private long framesWritten = 0;
+    private final short[] imuData = new short[IMUSample.SIZE_EVENTS];
+    private int imuNextCode = 0, imuTimestamp = 0;
+    private final int[] imuTimestamps = new int[BLOCK_IMU_SAMPLES];
+    private final float[][] imuAccel = new float[BLOCK_IMU_SAMPLES][3], imuGyro = new float[BLOCK_IMU_SAMPLES][3];
+    private final float[] imuTemp = new float[BLOCK_IMU_SAMPLES];
+    private int imuBlockSize = 0;
+    private long imuSamplesWritten = 0;
+    private boolean closed = false;
+
+    /**
+     * Creates the file, overwriting an existing one, and writes the header
+     *
+     * @param f the file
+     * @param chip the chip whose events are written, which determines how x,
+     * y and polarity are decoded, and whether frames and IMU samples are
+     * assembled
+     * @throws IOException if the file cannot be created
+     */
+    public Hdf5FileOutputWriter(File f, AEChip chip) throws IOException {
+        extractor = chip.getEventExtractor();
+        davis = chip instanceof DavisBaseCamera ? (DavisBaseCamera) chip : null;
+        sizeX = chip.getSizeX();
+        sizeY = chip.getSizeY();
+        sx1 = sizeX - 1;
+        if (davis != null) {
+            resetRead = new short[sizeX * sizeY];
+            signalRead = new short[sizeX * sizeY];
+            frame = new short[sizeX * sizeY];
+        } else {
+            resetRead = null;
+            signalRead = null;
+            frame = null;
+        }
+        try {
+            writer = HDF5Factory.configure(f).overwrite().writer();
+        } catch (HDF5Exception e) {
+            throw new IOException("cannot create HDF5 file " + f + ": " + e.toString(), e);
+        }
+        try {
+            writer.object().createGroup(EVENTS_GROUP);
+            final HDF5IntStorageFeatures features = HDF5IntStorageFeatures.INT_SHUFFLE_DEFLATE;
+            writer.int32().createArray(TIMESTAMP_DATASET, 0, BLOCK_EVENTS, features);
+            writer.int32().createArray(ADDRESS_DATASET, 0, BLOCK_EVENTS, features);
+            writer.int16().createArray(X_DATASET, 0, BLOCK_EVENTS, features);
+            writer.int16().createArray(Y_DATASET, 0, BLOCK_EVENTS, features);
+            writer.int8().createArray(POLARITY_DATASET, 0, BLOCK_EVENTS, features);
+            writer.int8().createArray(KIND_DATASET, 0, BLOCK_EVENTS, features);
+            writer.int16().createArray(ADC_DATASET, 0, BLOCK_EVENTS, features);
+            if (davis != null) {
+                final HDF5FloatStorageFeatures floatFeatures = HDF5FloatStorageFeatures.FLOAT_SHUFFLE_DEFLATE;
+                writer.object().createGroup(FRAMES_GROUP);
+                writer.int32().createArray(FRAME_TIMESTAMP_DATASET, 0, FRAME_TIMESTAMP_CHUNK, features);
+                writer.int16().createMDArray(FRAME_DATA_DATASET, new long[]{0, sizeY, sizeX}, new int[]{1, sizeY, sizeX}, features);
+                writer.object().createGroup(IMU_GROUP);
+                writer.int32().createArray(IMU_TIMESTAMP_DATASET, 0, BLOCK_IMU_SAMPLES, features);
+                writer.float32().createMatrix(IMU_ACCEL_DATASET, 0, 3, BLOCK_IMU_SAMPLES, 3, floatFeatures);
+                writer.float32().createMatrix(IMU_GYRO_DATASET, 0, 3, BLOCK_IMU_SAMPLES, 3, floatFeatures);
+                writer.float32().createArray(IMU_TEMP_DATASET, 0, BLOCK_IMU_SAMPLES, floatFeatures);
+            }
+            writer.int32().setAttr(EVENTS_GROUP, BLOCK_EVENTS_ATTRIBUTE, BLOCK_EVENTS);
+            writer.int32().setAttr(EVENTS_GROUP, SIZE_X_ATTRIBUTE, chip.getSizeX());
+            writer.int32().setAttr(EVENTS_GROUP, SIZE_Y_ATTRIBUTE, chip.getSizeY());
+            writer.int32().setAttr(EVENTS_GROUP, TIMESTAMP_TICK_US_ATTRIBUTE, AEConstants.TICK_DEFAULT_US);
+            writeChipPreferences(chip);
+            writer.string().setArrayAttr("/", HEADER_ATTRIBUTE, makeHeader(chip));
+        } catch (HDF5Exception e) {
+            writer.close();
+            throw new IOException("cannot write header to HDF5 file " + f + ": " + e.toString(), e);
+        }
+        log.info("writing events to HDF5 file " + f);
+    }
+
+    /**
+     * @return the header lines without comment char, like the ones
+     * AEFileOutputStream writes
+     */
+    private String[] makeHeader(AEChip chip) {
+        final ArrayList<String> header = new ArrayList<>();
+        header.add(FORMAT_HEADER + FORMAT_VERSION);
+        header.add(" This is an HDF5 AE data file, the events are in the datasets of group " + EVENTS_GROUP);
+        header.add(" Timestamps tick: " + AEConstants.TICK_DEFAULT_US + " us");
+        header.add(" Creation date: " + new Date());
+        header.add(" Creation time: System.currentTimeMillis() " + System.currentTimeMillis());
+        header.add(" User name: " + System.getProperty("user.name"));
+        String computerName = null;
+        try {
+            computerName = InetAddress.getLocalHost().getHostName();
+        } catch (Exception ex) {
+            log.warning("couldn't determine local host name");
+        }
+        header.add(" Hostname: " + computerName);
+        if (chip.getHardwareInterface() != null) {
+            header.add(" HardwareInterface: " + chip.getHardwareInterface().toString());
+        }
+        header.add(" AEChip: " + chip.getClass().getName());
+        header.add(" DataStartTime: System.currentTimeMillis() " + System.currentTimeMillis());
+        return header.toArray(new String[header.size()]);
+    }
+
+    private void writeChipPreferences(AEChip chip) {
+        try {
+            final ByteArrayOutputStream bos = new ByteArrayOutputStream(200000);
+            chip.getPrefs().exportSubtree(bos);
+            writer.string().write(CHIP_PREFERENCES_DATASET, bos.toString("UTF-8"));
+        } catch (IOException | BackingStoreException e) {
+            log.warning("couldn't write preferences of " + chip + ": " + e.toString());
+        }
+    }
+
+    /**
+     * Adds the events of a packet to the current block, and writes the block
+     * when it is full
+     *
+     * @param ae the packet
+     * @throws IOException if writing a block failed or the writer is closed
+     */
+    @Override
+    public void writePacket(AEPacketRaw ae) throws IOException {
+        if (closed) {
+            throw new IOException("writer is closed");
+        }
+        if (ae == null) {
+            return;
+        }
+        final int n = ae.getNumEvents();
+        final int[] a = ae.getAddresses(), t = ae.getTimestamps();
+        for (int i = 0; i < n; i++) {
+            final int addr = a[i];
+            final byte k = kindOf(addr);
+            timestamps[blockSize] = t[i];
+            addresses[blockSize] = addr;
+            kind[blockSize] = k;
+            x[blockSize] = 0;
+            y[blockSize] = 0;
+            polarity[blockSize] = 0;
+            adc[blockSize] = 0;
+            if (davis != null) {
+                if ((k == KIND_DVS) || (k == KIND_APS)) {
+                    final int rawX = (addr & DavisChip.XMASK) >>> DavisChip.XSHIFT;
+                    x[blockSize] = (short) (k == KIND_DVS ? sx1 - rawX : rawX);
+                    y[blockSize] = (short) ((addr & DavisChip.YMASK) >>> DavisChip.YSHIFT);
+                }
+                if (k == KIND_DVS) {
+                    polarity[blockSize] = (byte) ((addr & DavisChip.POLMASK) == DavisChip.POLMASK ? 1 : 0);
+                } else if (k == KIND_APS) {
+                    adc[blockSize] = (short) (addr & DavisChip.ADC_DATA_MASK);
+                    addApsSample(x[blockSize], y[blockSize], addr, t[i]);
+                } else if (k == KIND_IMU) {
+                    addImuWord(addr, t[i]);
+                }
+            } else if (extractor != null) {
+                x[blockSize] = extractor.getXFromAddress(addr);
+                y[blockSize] = extractor.getYFromAddress(addr);
+                polarity[blockSize] = extractor.getTypeFromAddress(addr);
+            }
+            if (++blockSize == BLOCK_EVENTS) {
+                writeBlock();
+            }
+        }
+    }
+
+    /**
+     * Stores the reset or signal read of a pixel, and writes the frame after
+     * the signal read of the last pixel
+     */
+    private void addApsSample(short px, short py, int addr, int timestamp) throws IOException {
+        if ((px < 0) || (px >= sizeX) || (py < 0) || (py >= sizeY)) {
+            return;
+        }
+        final int idx = (py * sizeX) + px;
+        final short sample = (short) (addr & DavisChip.ADC_DATA_MASK);
+        switch ((addr & DavisChip.ADC_READCYCLE_MASK) >>> DavisChip.ADC_READCYCLE_SHIFT) {
+            case 0:
+                resetRead[idx] = sample;
+                if (davis.firstFrameAddress(px, py)) {
+                    frameTimestamp = timestamp;
+                }
+                break;
+            case 1:
+                signalRead[idx] = sample;
+                if (davis.lastFrameAddress(px, py)) {
+                    writeFrame();
+                }
+                break;
+            default:
+                break;
+        }
+    }
+
+    private void writeFrame() throws IOException {
+        for (int i = 0; i < frame.length; i++) {
+            frame[i] = (short) (resetRead[i] - signalRead[i]);
+        }
+        try {
+            writer.int16().writeMDArrayBlockWithOffset(FRAME_DATA_DATASET, new MDShortArray(frame, new int[]{1, sizeY, sizeX}),
+                    new long[]{framesWritten, 0, 0});
+            writer.int32().writeArrayBlockWithOffset(FRAME_TIMESTAMP_DATASET, new int[]{frameTimestamp}, 1, framesWritten);
+        } catch (HDF5Exception e) {
+            throw new IOException("writing frame to HDF5 file: " + e.toString(), e);
+        }
+        framesWritten++;
+    }
+
+    /**
+     * Collects the words of an IMU sample, which come in the order of their
+     * codes, and adds the sample when it is complete. An incomplete sample is
+     * dropped, like DavisBaseCamera drops bad IMU data.
+     */
+    private void addImuWord(int addr, int timestamp) throws IOException {
+        final int code = IMUSample.extractSampleTypeCode(addr);
+        if (code != imuNextCode) {
+            imuNextCode = 0;
+            if (code != 0) {
+                return;
+            }
+        }
+        if (code == 0) {
+            imuTimestamp = timestamp;
+        }
+        imuData[code] = (short) ((addr & IMU_DATA_MASK) >>> IMU_DATA_SHIFT);
+        if (++imuNextCode < IMUSample.SIZE_EVENTS) {
+            return;
+        }
+        imuNextCode = 0;
+        final IMUSample sample = new IMUSample(imuTimestamp, imuData);
+        imuTimestamps[imuBlockSize] = imuTimestamp;
+        imuAccel[imuBlockSize][0] = sample.getAccelX();
+        imuAccel[imuBlockSize][1] = sample.getAccelY();
+        imuAccel[imuBlockSize][2] = sample.getAccelZ();
+        imuGyro[imuBlockSize][0] = sample.getGyroTiltX();
+        imuGyro[imuBlockSize][1] = sample.getGyroYawY();
+        imuGyro[imuBlockSize][2] = sample.getGyroRollZ();
+        imuTemp[imuBlockSize] = sample.getTemperature();
+        if (++imuBlockSize == BLOCK_IMU_SAMPLES) {
+            writeImuBlock();
+        }
+    }
+
+    private void writeImuBlock() throws IOException {
+        if (imuBlockSize == 0) {
+            return;
+        }
+        try {
+            writer.int32().writeArrayBlockWithOffset(IMU_TIMESTAMP_DATASET, imuTimestamps, imuBlockSize, imuSamplesWritten);
+            writer.float32().writeMatrixBlockWithOffset(IMU_ACCEL_DATASET, imuAccel, imuBlockSize, 3, imuSamplesWritten, 0);
+            writer.float32().writeMatrixBlockWithOffset(IMU_GYRO_DATASET, imuGyro, imuBlockSize, 3, imuSamplesWritten, 0);
+            writer.float32().writeArrayBlockWithOffset(IMU_TEMP_DATASET, imuTemp, imuBlockSize, imuSamplesWritten);
+        } catch (HDF5Exception e) {
+            throw new IOException("writing IMU samples to HDF5 file: " + e.toString(), e);
+        }
+        imuSamplesWritten += imuBlockSize;
+        imuBlockSize = 0;
+    }
+
+    private byte kindOf(int addr) {
+        if (davis == null) {
+            return KIND_DVS;
+        }
+        if ((addr & DavisChip.ADDRESS_TYPE_IMU) == DavisChip.ADDRESS_TYPE_IMU) {
+            return KIND_IMU;
+        }
+        if ((addr & DavisChip.ADDRESS_TYPE_MASK) == DavisChip.ADDRESS_TYPE_APS) {
+            return KIND_APS;
+        }
+        if ((addr & DavisChip.EXTERNAL_INPUT_EVENT_ADDR) != 0) {
+            return KIND_SPECIAL;
+        }
+        return KIND_DVS;
+    }
+
+    private void writeBlock() throws IOException {
+        if (blockSize == 0) {
+            return;
+        }
+        try {
+            writer.int32().writeArrayBlockWithOffset(TIMESTAMP_DATASET, timestamps, blockSize, eventsWritten);
+            writer.int32().writeArrayBlockWithOffset(ADDRESS_DATASET, addresses, blockSize, eventsWritten);
+            writer.int16().writeArrayBlockWithOffset(X_DATASET, x, blockSize, eventsWritten);
+            writer.int16().writeArrayBlockWithOffset(Y_DATASET, y, blockSize, eventsWritten);
+            writer.int8().writeArrayBlockWithOffset(POLARITY_DATASET, polarity, blockSize, eventsWritten);
+            writer.int8().writeArrayBlockWithOffset(KIND_DATASET, kind, blockSize, eventsWritten);
+            writer.int16().writeArrayBlockWithOffset(ADC_DATASET, adc, blockSize, eventsWritten);
+        } catch (HDF5Exception e) {
+            throw new IOException("writing events to HDF5 file: " + e.toString(), e);
+        }
+        if (numBlocks == blockFirstTimestamp.length) {
+            blockFirstTimestamp = Arrays.copyOf(blockFirstTimestamp, 2 * numBlocks);
+            blockLastTimestamp = Arrays.copyOf(blockLastTimestamp, 2 * numBlocks);
+        }
+        blockFirstTimestamp[numBlocks] = timestamps[0];
+        blockLastTimestamp[numBlocks] = timestamps[blockSize - 1];
+        numBlocks++;
+        eventsWritten += blockSize;
+        blockSize = 0;
+    }
+
+    /**
+     * Writes the last block and the block timestamps, and closes the file.
+     * Does nothing if already closed.
+     *
+     * @throws IOException if writing failed
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            writeBlock();
+            writeImuBlock();
+            writer.int32().writeArray(BLOCK_FIRST_TIMESTAMP_DATASET, Arrays.copyOf(blockFirstTimestamp, numBlocks), HDF5IntStorageFeatures.INT_DEFLATE);
+            writer.int32().writeArray(BLOCK_LAST_TIMESTAMP_DATASET, Arrays.copyOf(blockLastTimestamp, numBlocks), HDF5IntStorageFeatures.INT_DEFLATE);
+        } catch (HDF5Exception e) {
+            throw new IOException("writing block timestamps to HDF5 file: " + e.toString(), e);
+        } finally {
+            writer.close();
+        }
+        log.info("closed HDF5 file after writing " + eventsWritten + " events, " + framesWritten + " frames and " + imuSamplesWritten
+                + " IMU samples");
+    }
+
+    /**
+     * @return the number of events written to the file, not counting the
+     * ones of the current block
+     */
+    public long getEventsWritten() {
+        return eventsWritten;
+    }
+}
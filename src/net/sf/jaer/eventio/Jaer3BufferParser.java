@@ -48,8 +48,8 @@ public class Jaer3BufferParser {
     // private ByteBuffer out = ByteBuffer.allocate(BUFFER_CAPACITY_BYTES);
 
     private final int PKT_HEADER_SIZE = 28;
+    private final int FRAME_PIXELS_OFFSET = 36; // of the pixel array in a frame event, after the frame header
 
-    private int framePixelArrayOffset = 0; // Just for frame events and this is the origin index
     private int translatedArrayIndex = 0; // This is the correct index, in fact it's the transpose of the origin array.
 
     private PacketDescriptor currentPkt = new PacketDescriptor();
@@ -97,7 +97,14 @@ public class Jaer3BufferParser {
     // The reason why we use this flag is that a whole frame events is divided into several pixels data, and current in jaer, every
     // pixel data is packed as one single complete jaer 2 event.
     private int frameCurrentEventOffset; // TODO ?? counter for something
-    private boolean readOutType = false; // TODO ?? flag for something
+    private final FrameDescriptor frame = new FrameDescriptor(); // header of the frame at frameCurrentEventOffset, see readFrameHeader
+    private boolean currentPktChecked = false; // currentPkt was found in the current buffer
+    private boolean colorFilterWarned = false;
+
+    // the event returned by getJaer2EventBuf, decoded by decodeEvents
+    private final int[] jaer2Addr = new int[1], jaer2Ts = new int[1], jaer2PixelData = new int[1];
+    private final EventType[] jaer2Type = new EventType[1];
+    private final ByteBuffer jaer2Buffer = ByteBuffer.allocate(16);
 
     private static AEChip ORIGINAL_CHIP = null;
     private static EventExtractor2D ORIGINAL_EVENT_EXTRACTOR = null;
@@ -165,6 +172,8 @@ public class Jaer3BufferParser {
         int yLength; // height
         int xPosition; // offset of LL corner in pixels
         int yPosition; // offset of LL corner in pixels
+        int numChannels; // 1 for gray, 3 for RGB, 4 for RGBA
+        int xOffset; // added to the x addresses to place the frame on the sensor, which is mirrored in x by the extractor
     }
 
     // private EventRaw tmpEventRaw = new EventRaw();
@@ -415,6 +424,7 @@ public class Jaer3BufferParser {
         chip.setEventExtractor(JAER3_EXTRACTOR);
 
         currentPkt = searchPacketHeader(0, 1);
+        currentPktChecked = true;
 
         try {
             numEvents = bufferNumEvents();
@@ -622,129 +632,249 @@ public class Jaer3BufferParser {
     /**
      * This is most important method. It returns the 16-byte events (eventtype,
      * addr, ts and pixeldata) like it's a jaer2 event. Pixeldata is only used
-     * by frame event, in other case it's 0.
+     * by frame event, in other case it's 0. The event is decoded by
+     * decodeEvents; only if the position is not one decodeEvents can continue
+     * from, the next valid event is searched from the packet headers.
      *
-     * @return one buffer that contains the standard 16-byte event.
+     * @return one buffer that contains the standard 16-byte event. The buffer
+     * is reused by the next call.
      * @throws IOException
      */
     public ByteBuffer getJaer2EventBuf() throws IOException {
-        ByteBuffer jaer2Buffer = ByteBuffer.allocate(16);
-
-        int nextEventOffset = 0;
-        if (!inFrameEvent) { // we are a Polarity or Special event currently
-            nextEventOffset = getNextValidEventOffset();
-            frameCurrentEventOffset = nextEventOffset;
-            if (currentPkt.pktHeader.eventType == EventType.FrameEvent) { // ?? tobi doesn't understand this logic
-                int xlengthOffset = frameCurrentEventOffset + 20;
-                int xlength = in.getInt(xlengthOffset);
-                int ylengthOffset = frameCurrentEventOffset + 24;
-                int ylength = in.getInt(ylengthOffset);
-                translatedArrayIndex = (2 * xlength * ylength) - 1; // TODO handle mutliple channels
+        if (decodeEvents(jaer2Addr, jaer2Ts, jaer2Type, jaer2PixelData, 0, 1, false, 0, 0, 0) == 0) {
+            inFrameEvent = false;
+            in.position(getNextValidEventOffset());
+            if (decodeEvents(jaer2Addr, jaer2Ts, jaer2Type, jaer2PixelData, 0, 1, false, 0, 0, 0) == 0) {
+                throw new BufferUnderflowException(); // the event continues beyond the end of the buffer
             }
         }
+        jaer2Buffer.clear();
+        jaer2Buffer.putInt(jaer2Type[0].getValue());
+        jaer2Buffer.putInt(jaer2Addr[0]);
+        jaer2Buffer.putInt(jaer2Ts[0]);
+        jaer2Buffer.putInt(jaer2PixelData[0]); // pixelData just for frame event, other events don't use it;
+        jaer2Buffer.flip();
+        return jaer2Buffer;
+    } // getJaer2EventBuf
 
-        // First check if it's a frame event, if it's a frame event, we must check
-        // whether the current event is finished or not (tobi: does this mean current *frame* is finished??)
-        if (currentPkt.pktHeader.eventType == EventType.FrameEvent) {   // TODO why does it parse the frame header over and over again
-            // it only needs to read the frame header once per frame???
-            final int frameInfoOffset = frameCurrentEventOffset;
-            final int frameInfo = in.getInt(frameInfoOffset); // http://inilabs.com/support/software/fileformat/#h.k6b3f6wpvb87
-            final boolean frameValidFlag = (frameInfo & 1) != 0;
-            if (frameValidFlag == false) {
-                log.warning("parsing a frame that has been marked invalid - this frame should have been skipped by earlier parsing");
-            }
-            final int numChannels = (frameInfo >>> 1) & 7;
-            if (numChannels > 1) {
-                log.warning("number of (color) channels is larger than 1, cannot currently handle multi-channel input");
+    /**
+     * Decodes the events of the buffer into the arrays of a raw packet a whole
+     * packet at a time rather than event by event. The events of a packet are
+     * read from the buffer with absolute gets, invalid events and IMU packets
+     * are skipped, and the frame header of a frame event is read once and its
+     * pixel array then expanded into the reset read and signal read events, in
+     * the same order and with the same addresses as returned by
+     * getJaer2EventBuf. Frames with several (color) channels are decoded as
+     * gray by averaging the color channels, and the addresses of frames of a
+     * region of interest are offset by their position on the sensor.
+     * <p>
+     * Decoding continues from where the previous call or getJaer2EventBuf left
+     * the buffer. It stops at the end of the buffer or of the data, after an
+     * event at endTimestamp, and before any event with a zero timestamp, a
+     * timestamp later than endTimestamp or earlier than the timestamp of the
+     * event before, which the caller must read with getJaer2EventBuf.
+     *
+     * @param addr the addresses to fill
+     * @param ts the timestamps to fill
+     * @param etypes the event types to fill
+     * @param pixelData the pixel data to fill
+     * @param i the index of the first event to fill
+     * @param maxEvents fill up to this index
+     * @param lastTimestamp the timestamp of the event before the first event
+     * @param endTimestamp the latest timestamp to decode
+     * @param timestampOffset subtracted from the timestamps in the buffer
+     * @return the index after the last event filled
+     * @throws IOException
+     */
+    public int decodeEvents(int[] addr, int[] ts, EventType[] etypes, int[] pixelData, int i, int maxEvents,
+            int lastTimestamp, int endTimestamp, int timestampOffset) throws IOException {
+        return decodeEvents(addr, ts, etypes, pixelData, i, maxEvents, true, lastTimestamp, endTimestamp, timestampOffset);
+    }
+
+    private int decodeEvents(int[] addr, int[] ts, EventType[] etypes, int[] pixelData, int i, int maxEvents,
+            boolean checkTimestamps, int lastTimestamp, int endTimestamp, int timestampOffset) throws IOException {
+        if ((in == null) || (currentPkt == null) || (i >= maxEvents)) {
+            return i;
+        }
+        PacketDescriptor pkt = currentPkt;
+        if (!currentPktChecked) { // the buffer was replaced, check currentPkt is still a packet of it
+            final PacketDescriptor p = searchPacketHeader(pkt.pktPosition, 1);
+            if ((p == null) || (p.pktPosition != pkt.pktPosition) || (p.pktHeader.eventType != pkt.pktHeader.eventType)
+                    || (p.pktHeader.eventSize != pkt.pktHeader.eventSize) || (p.pktHeader.eventNumber != pkt.pktHeader.eventNumber)) {
+                return i;
             }
-            final int filterInformationCode = (frameInfo >>> 4) & 0xf;
-            if (filterInformationCode > 0) {
-                log.warning("color filter information indicates color input, cannot currently parse");
+            currentPktChecked = true;
+        }
+        final int limit = in.limit();
+        final int validMask = 1 << JAER3VALIDITY_BIT;
+        PacketHeader h = pkt.pktHeader;
+        int pktStart = pkt.pktPosition + PKT_HEADER_SIZE;
+        int pktEnd = pktStart + (h.eventNumber * h.eventSize);
+        int offset; // of the current event
+        boolean inFrame = false;
+        int pixelIndex = -1; // of the next frame event, counting down like translatedArrayIndex
+
+        if (inFrameEvent) {
+            offset = frameCurrentEventOffset;
+            if ((h.eventType != EventType.FrameEvent) || ((offset + h.eventSize) > limit) || !readFrameHeader(offset, h.eventSize)) {
+                return i;
             }
-            final int roiIdentifier = (frameInfo >>> 8) & 0x1ff;
-            if (roiIdentifier > 0) {
-                log.warning("ROI input not current handled");
+            inFrame = true;
+            pixelIndex = translatedArrayIndex;
+        } else {
+            final int p = in.position();
+            if ((p >= pkt.pktPosition) && (p <= pktStart)) {
+                offset = pktStart;
+            } else if ((p > pktStart) && (p <= pktEnd) && (((p - pktStart) % h.eventSize) == 0)) {
+                offset = p;
+            } else {
+                return i;
             }
-            final int xlengthOffset = frameCurrentEventOffset + 20; // see http://inilabs.com/support/software/fileformat/#h.k6b3f6wpvb87 
-            final int xlength = in.getInt(xlengthOffset);
-            final int ylengthOffset = frameCurrentEventOffset + 24; // http://inilabs.com/support/software/fileformat/#h.k6b3f6wpvb87
-            final int ylength = in.getInt(ylengthOffset);
-
-            final int numPixels = xlength * ylength * numChannels;
-
-            // int channelNumber = (in.getInt(frameCurrentEventOffset) & 0xe) >> 1;
-            final int tsOffset = currentPkt.pktHeader.eventTSOffset;
-            int ts = in.getInt(frameCurrentEventOffset + tsOffset); // Start of Exposure timestamp
-
-            if (translatedArrayIndex >= 0) {
-                inFrameEvent = true;
-                // framePixelArrayOffset = translatedArrayIndex;
-                jaer2Buffer.putInt(currentPkt.pktHeader.eventType.getValue()); // type 2, frame event
-                // jaer2Buffer.putInt(((framePixelArrayOffset/ylength)<< 16) + framePixelArrayOffset%ylength); //addr
-
-                int jaer2FrameAddr;
-                int data;
-
-                // TODO: The frame pixel size should be xlength * ylength * channelNumber. Here we always set the channelNumber to 1.
-                if ((translatedArrayIndex >= (numPixels)) && (translatedArrayIndex <= ((2 * numPixels) - 1))) {
-                    jaer2FrameAddr = ((((translatedArrayIndex - (numPixels)) / ylength)) << 17)
-                            + (((translatedArrayIndex - (numPixels)) % ylength) << 2) + 0;
-
-                    // TODO: 239 should be replaced by the chip width, added the code to get the current chip size.
-                    // Reset Read Array
-                    // TODO why was 239 hardcoded for the first xlength below when it is available from the frame event header?? (tobi)
-                    framePixelArrayOffset = (xlength/* was 239 hardcoded */ - 1 - ((translatedArrayIndex - (numPixels)) / ylength))
-                            + (xlength * ((translatedArrayIndex - (numPixels)) % ylength));
-
-                    int dataOffset = 36 + (2 * (framePixelArrayOffset));
-                    if ((frameCurrentEventOffset + dataOffset) >= in.limit()) {
-                        throw new BufferUnderflowException(); // Reach the end of the buffer
+        }
+
+        int last = lastTimestamp;
+        while (i < maxEvents) {
+            if (inFrame) {
+                if (pixelIndex >= 0) {
+                    final int numPixels = frame.xLength * frame.yLength;
+                    final boolean resetRead = pixelIndex >= numPixels;
+                    final int j = resetRead ? pixelIndex - numPixels : pixelIndex;
+                    final int x = j / frame.yLength, y = j % frame.yLength;
+                    final int t = (resetRead ? frame.startOfCaptureTimestamp : frame.endOfCaptureTimestamp) - timestampOffset;
+                    if (checkTimestamps && ((t == 0) || (t > endTimestamp) || (t < last))) {
+                        break;
                     }
-                    data = in.getShort(frameCurrentEventOffset + dataOffset);  // Reset read array
-                    ts = in.getInt(frameCurrentEventOffset + 4); // Start of Frame Capture timestamp
+                    addr[i] = ((x + frame.xOffset) << 17) + ((y + frame.yPosition) << 2) + (resetRead ? 0 : 1);
+                    ts[i] = t;
+                    etypes[i] = EventType.FrameEvent;
+                    pixelData[i] = resetRead ? readFramePixel(offset, frame.xLength - 1 - x, y) : 0;
+                    i++;
+                    pixelIndex--;
+                    last = t;
+                    if (checkTimestamps && (t == endTimestamp)) {
+                        break;
+                    }
+                    continue;
+                }
+                inFrame = false;
+                offset += h.eventSize;
+            }
+            if (offset >= pktEnd) {
+                final PacketDescriptor next = getNextPkt(pktEnd);
+                if (next == null) {
+                    break;
+                }
+                pkt = next;
+                h = pkt.pktHeader;
+                pktStart = pkt.pktPosition + PKT_HEADER_SIZE;
+                pktEnd = pktStart + (h.eventNumber * h.eventSize);
+                offset = pktStart;
+                continue;
+            }
+            if ((offset + h.eventSize) > limit) {
+                break;
+            }
+            if ((h.eventType == EventType.Imu6Event) || (h.eventType == EventType.Imu9Event)) {
+                offset = pktEnd;
+                continue;
+            }
+            if ((in.getInt(offset) & validMask) != 1) {
+                offset += h.eventSize;
+                continue;
+            }
+            if (h.eventType == EventType.FrameEvent) {
+                if (readFrameHeader(offset, h.eventSize)) {
+                    inFrame = true;
+                    pixelIndex = (2 * frame.xLength * frame.yLength) - 1;
                 } else {
-                    jaer2FrameAddr = ((((translatedArrayIndex) / ylength)) << 17) + (((translatedArrayIndex) % ylength) << 2) + 1;
-
-                    // Signal Read Array
-                    data = 0;
-                    ts = in.getInt(frameCurrentEventOffset + 8); // End of Frame Capture timestamp
+                    offset += h.eventSize;
                 }
-
-                jaer2Buffer.putInt(jaer2FrameAddr);
-                jaer2Buffer.putInt(ts); // ts
-                jaer2Buffer.putInt(data); // pixeldata
-                jaer2Buffer.flip();
-
-                // outFile.writeInt(jaer2FrameData);
-                // outFile.writeInt(ts);
-                // outFile.close();
-                translatedArrayIndex -= 1;
-                return jaer2Buffer;
-            } else {
-                inFrameEvent = false;
-                readOutType = !readOutType;
-                // framePixelArrayOffset = 0;
-                in.position(frameCurrentEventOffset + currentPkt.pktHeader.eventSize);
-                return getJaer2EventBuf();
+                continue;
             }
+            final int t = in.getInt(offset + h.eventTSOffset) - timestampOffset;
+            if (checkTimestamps && ((t == 0) || (t > endTimestamp) || (t < last))) {
+                break;
+            }
+            addr[i] = in.getInt(offset);
+            ts[i] = t;
+            etypes[i] = h.eventType;
+            pixelData[i] = 0;
+            i++;
+            last = t;
+            offset += h.eventSize;
+            if (checkTimestamps && (t == endTimestamp)) {
+                break;
+            }
+        }
 
-        } // end of dealing with frame??
-
-        int dataOffset = getDataOffset(currentPkt.pktHeader);
-        int tsOffset = currentPkt.pktHeader.eventTSOffset;
+        currentPkt = pkt;
+        inFrameEvent = inFrame;
+        if (inFrame) {
+            frameCurrentEventOffset = offset;
+            translatedArrayIndex = pixelIndex;
+            in.position(offset + 4);
+        } else {
+            in.position(offset);
+        }
+        return i;
+    } // decodeEvents
 
-        in.position(nextEventOffset + dataOffset);
-        int addr = in.getInt();
-        in.position(nextEventOffset + tsOffset);
-        int ts = in.getInt();
+    /**
+     * Reads the header of a frame event into the frame field
+     *
+     * @param frameOffset the offset of the frame event
+     * @param eventSize the size of the frame event
+     * @return false if the pixel array does not fit in the frame event
+     */
+    private boolean readFrameHeader(int frameOffset, int eventSize) {
+        final int frameInfo = in.getInt(frameOffset); // http://inilabs.com/support/software/fileformat/#h.k6b3f6wpvb87
+        frame.frameInfo = frameInfo;
+        frame.numChannels = Math.max(1, (frameInfo >>> 1) & 7);
+        frame.startOfCaptureTimestamp = in.getInt(frameOffset + 4);
+        frame.endOfCaptureTimestamp = in.getInt(frameOffset + 8);
+        frame.startOfExposureTimestamp = in.getInt(frameOffset + 12);
+        frame.endOfExposureTimestamp = in.getInt(frameOffset + 16);
+        frame.xLength = in.getInt(frameOffset + 20);
+        frame.yLength = in.getInt(frameOffset + 24);
+        frame.xPosition = in.getInt(frameOffset + 28);
+        frame.yPosition = in.getInt(frameOffset + 32);
+        if ((frame.xLength < 0) || (frame.yLength < 0)
+                || ((FRAME_PIXELS_OFFSET + (2L * frame.numChannels * frame.xLength * frame.yLength)) > eventSize)) {
+            log.warning("skipping frame whose pixel array does not fit in the frame event of " + eventSize + " bytes: " + frame.xLength + "x"
+                    + frame.yLength + " pixels with " + frame.numChannels + " channels");
+            return false;
+        }
+        final int sizeX = chip == null ? 0 : chip.getSizeX();
+        frame.xOffset = (sizeX >= (frame.xPosition + frame.xLength)) ? sizeX - frame.xPosition - frame.xLength : 0;
+        if (!colorFilterWarned && (((frameInfo >>> 4) & 0xf) != 0)) {
+            colorFilterWarned = true;
+            log.warning("color filter information of frames is ignored, frames are decoded as gray");
+        }
+        return true;
+    }
 
-        jaer2Buffer.putInt(currentPkt.pktHeader.eventType.getValue());
-        jaer2Buffer.putInt(addr);
-        jaer2Buffer.putInt(ts);
-        jaer2Buffer.putInt(0); // pixelData just for frame event, other events don't use it;
-        jaer2Buffer.flip();
-        return jaer2Buffer;
-    } // getJaer2EventBuf
+    /**
+     * Reads a pixel of the frame of the frame field, averaging the color
+     * channels if there are several
+     *
+     * @param frameOffset the offset of the frame event
+     * @param column the column in the pixel array
+     * @param row the row in the pixel array
+     * @return the pixel value
+     */
+    private int readFramePixel(int frameOffset, int column, int row) {
+        final int channels = frame.numChannels;
+        final int pixelOffset = frameOffset + FRAME_PIXELS_OFFSET + (2 * channels * (column + (frame.xLength * row)));
+        if (channels == 1) {
+            return in.getShort(pixelOffset);
+        }
+        final int colors = Math.min(channels, 3); // the 4th channel is alpha
+        int sum = 0;
+        for (int c = 0; c < colors; c++) {
+            sum += in.getShort(pixelOffset + (2 * c)) & 0xffff;
+        }
+        return (short) (sum / colors);
+    }
 
     /**
      * This function gets the total events number of the buffer
@@ -786,42 +916,6 @@ public class Jaer3BufferParser {
         return numEvents;
     }
 
-    /** 
-     * Returns the data offset of different events.
-     *
-     * @param packetHeader the current packet header.
-     * @return the data offset of different events.
-     * @throws IOException
-     */
-    private int getDataOffset(PacketHeader packetHeader) throws IOException {
-        int eventDataOffset = 0;
-
-        switch (packetHeader.eventType) {
-            case PolarityEvent:
-                eventDataOffset = 0;
-                break;
-            case FrameEvent:
-                eventDataOffset = 36 + (2 * framePixelArrayOffset); // TODO, Consider the channel number
-                break;
-            case SampleEvent:
-                eventDataOffset = 0;
-                break;
-            case ConfigEvent:
-                eventDataOffset = 0;
-                break;
-            case Imu6Event:
-                eventDataOffset = 0;
-                break;
-            case Imu9Event:
-                eventDataOffset = 0;
-                break;
-            default:
-                eventDataOffset = 0;
-        }
-
-        return eventDataOffset;
-    }
-
     /**
      * Gets the current packet header position
      *
@@ -847,6 +941,7 @@ public class Jaer3BufferParser {
      */
     public void setInBuffer(ByteBuffer BufferToBeProcessed) throws IOException {
         in = BufferToBeProcessed; // To change body of generated methods, choose Tools | Templates.
+        currentPktChecked = false;
         // currentPkt = searchPacketHeader(0, 1); TODO, Now the different chuncks may seperate the data in the same packet, so it's not easy to find the currentPkt
     }
 
@@ -0,0 +1,68 @@
+/*
+ * ColumnarEventFilter2D.java
+ *
+ * Created on October 18, 2026
+ */
+package net.sf.jaer.eventprocessing;
+
+import net.sf.jaer.chip.AEChip;
+import net.sf.jaer.event.BasicEvent;
+import net.sf.jaer.event.ColumnarEventPacket;
+import net.sf.jaer.event.EventPacket;
+
+/**
+ * Base class for filters that are ported to process
+ * {@link ColumnarEventPacket}, i.e. that iterate primitive arrays of
+ * timestamps, addresses etc. rather than event objects.
+ * <p>
+ * The filter still plugs into an ordinary {@link FilterChain}:
+ * <code>filterPacket</code> loads the input packet into a reused columnar
+ * packet, calls {@link #filterColumns(net.sf.jaer.event.ColumnarEventPacket) }
+ * and transfers the result back. Subclasses implement in-place filtering by
+ * setting the filteredOut flag of events in the columns; these flags are copied
+ * back to the input packet, which is returned. Subclasses that produce a
+ * different set of events return another columnar packet, which is written to
+ * the built-in <code>out</code> packet.
+ * <p>
+ * Callers that already hold a columnar packet, e.g. from a columnar event
+ * extractor, call <code>filterColumns</code> directly and avoid the copy.
+ */
+abstract public class ColumnarEventFilter2D extends EventFilter2D {
+
+    /**
+     * The reused columnar copy of the input packet
+     */
+    protected ColumnarEventPacket columns = new ColumnarEventPacket();
+
+    public ColumnarEventFilter2D(AEChip chip) {
+        super(chip);
+    }
+
+    /**
+     * Subclasses implement this method to process the columns.
+     *
+     * @param in the input packet
+     * @return the output packet, which is <code>in</code> for filters that only
+     * set filteredOut flags
+     */
+    public abstract ColumnarEventPacket filterColumns(ColumnarEventPacket in);
+
+    /**
+     * Adapts the object packet to columns, filters the columns, and returns
+     * the result as an object packet.
+     *
+     * @param in the input packet
+     * @return the output packet
+     */
+    @Override
+    public EventPacket<?> filterPacket(EventPacket<?> in) {
+        columns.copyFrom((EventPacket<? extends BasicEvent>) in);
+        final ColumnarEventPacket result = filterColumns(columns);
+        if (result == columns) {
+            columns.applyFilteredOutTo((EventPacket<? extends BasicEvent>) in);
+            return in;
+        }
+        checkOutputPacketEventType(in);
+        return result.writeTo((EventPacket<BasicEvent>) out);
+    }
+}
@@ -30,6 +30,7 @@ public class EventProcessingPerformanceMeter {
     long durationNs=1;
     int nSamples=0;
     float thisNspe=0, nspeSum=0,nspeSq=0; // summary stats for ns per event
+    long totalEvents=0, totalDurationNs=0; // cumulative totals since last reset
     EventFilter filter;
     String filterClassName;
     
@@ -57,6 +58,8 @@ public class EventProcessingPerformanceMeter {
         nspeSum+=thisNspe;
         nspeSq+=thisNspe*thisNspe;
         nSamples++;
+        totalEvents+=size;
+        totalDurationNs+=durationNs;
     }
     
     public void stop(int nEvents){
@@ -91,6 +94,23 @@ public class EventProcessingPerformanceMeter {
         thisNspe = 0;
         nspeSum = 0;
         nspeSq = 0; // summary stats for ns per event
+        totalEvents = 0;
+        totalDurationNs = 0;
+    }
+
+    /** @return the total number of events processed since the last reset */
+    public long getTotalEvents(){
+        return totalEvents;
+    }
+
+    /** @return the total processing time in ns since the last reset */
+    public long getTotalDurationNs(){
+        return totalDurationNs;
+    }
+
+    /** @return the average processing cost in ns per event since the last reset, weighted by packet size */
+    public float getTotalNsPerEvent(){
+        return totalEvents==0? 0: (float)totalDurationNs/totalEvents;
     }
     
 //    public float meanEps(){
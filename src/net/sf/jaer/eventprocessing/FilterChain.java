@@ -68,6 +68,8 @@ public class FilterChain extends LinkedList<EventFilter2D> {
 
     private PropertyChangeSupport support = new PropertyChangeSupport(this);
     private boolean measurePerformanceEnabled = false;
+    private boolean printPerformanceEnabled = false;
+    private final FilterChainMetrics metrics = new FilterChainMetrics(this);
     volatile private boolean resetPerformanceMeasurementStatistics = false; // flag to reset everyone on this cycle
     static final Logger log = Logger.getLogger("FilterChain");
     AEChip chip;
@@ -113,12 +115,22 @@ public class FilterChain extends LinkedList<EventFilter2D> {
      * graphics this processing can cause threading problems, e.g. if the
      * annotation modifies the graphics buffer while the image is being
      * rendered.
+     * <p>
+     * In PIPELINED mode, packets are passed to the chain in the rendering
+     * cycle, but each enabled filter runs on its own thread, so that a chain
+     * of filters uses several cores. Packets leave the chain in order but
+     * delayed by a few packets.
+     *
+     * @see #filterPacket(net.sf.jaer.event.EventPacket)
      */
     public enum ProcessingMode {
 
-        RENDERING, ACQUISITION
+        RENDERING, ACQUISITION, PIPELINED
     };
     private ProcessingMode processingMode = ProcessingMode.RENDERING;
+    private FilterChainPipeline pipeline = null;
+    private final ArrayList<EventFilter2D> enabledFilters = new ArrayList<EventFilter2D>(); // reused for each pipelined packet; the pipeline keeps its own copy
+    private boolean pipelineFailed = false; // set when a stage thread of pipeline died, until the processing mode is set again
 
     /**
      * Creates a new instance of FilterChain. Use
@@ -163,6 +175,7 @@ public class FilterChain extends LinkedList<EventFilter2D> {
      * @see EventFilter#cleanup()
      */
     public void cleanup() {
+        stopPipeline();
         for (EventFilter f : this) {
             f.cleanup();
         }
@@ -174,9 +187,16 @@ public class FilterChain extends LinkedList<EventFilter2D> {
      * timeLimitEnabled=true then the timeLimiter is started on the first
      * packet. Any subsequent input iterator for events will then timeout when
      * the time limit has been reached.
+     * <p>
+     * In {@link ProcessingMode#PIPELINED} mode, a copy of the packet is
+     * submitted to the pipeline and the oldest packet that has passed all
+     * filters is returned. This packet may be empty while the pipeline fills
+     * and is valid until the next call. The time limit does not apply to
+     * pipelined processing.
      *
      * @param in the input packet of events
      * @return the resulting output.
+     * @see #pollPipelineOutput(boolean)
      */
     synchronized public EventPacket filterPacket(EventPacket in) {
         if (!filteringEnabled || size() == 0) {
@@ -184,7 +204,7 @@ public class FilterChain extends LinkedList<EventFilter2D> {
         }
         EventPacket out;
         if (timeLimitEnabled) {
-            if (chip.getAeViewer().isPaused()) {
+            if (chip.getAeViewer() != null && chip.getAeViewer().isPaused()) {
                 in.setTimeLimitEnabled(false);
             } else {
                 in.setTimeLimitEnabled(true);
@@ -199,30 +219,98 @@ public class FilterChain extends LinkedList<EventFilter2D> {
                     f.perf.resetStatistics();
                 }
             }
+            metrics.reset();
             log.info("compute performance statistics reset");
             resetPerformanceMeasurementStatistics = false;
         }
+        if ((processingMode == ProcessingMode.PIPELINED) && !enclosed && !pipelineFailed) {
+            out = filterPacketPipelined(in);
+            if (!pipelineFailed) {
+                return out;
+            }
+        }
         for (EventFilter2D f : this) {
             if (!f.isFilterEnabled() || in == null) {
                 continue;  // tobi added so that each filter doesn't need to check if enabled and non-null packet
             }
+            int eventsIn = 0;
             if (measurePerformanceEnabled) {
                 if (f.perf == null) {
                     f.perf = new EventProcessingPerformanceMeter(f);
                 }
+                eventsIn = FilterChainMetrics.countNotFilteredOut(in);
                 f.perf.start(in);
             }
             out = f.filterPacket(in);
             timedOut = in.isTimedOut();
             if (measurePerformanceEnabled && f.perf != null) {
                 f.perf.stop();
-                System.out.println(f.perf);
+                metrics.getFilterMetrics(f).record(eventsIn, FilterChainMetrics.countNotFilteredOut(out), f.perf.durationNs, timedOut);
+                if (printPerformanceEnabled) {
+                    System.out.println(f.perf);
+                }
             }
             in = out;
         }
         return in;
     }
 
+    private EventPacket filterPacketPipelined(EventPacket in) {
+        timedOut = false;
+        if (in == null) {
+            return null;
+        }
+        enabledFilters.clear();
+        for (EventFilter2D f : this) {
+            if (f.isFilterEnabled()) {
+                enabledFilters.add(f);
+            }
+        }
+        if ((pipeline == null) || !pipeline.runs(enabledFilters)) {
+            stopPipeline();
+            if (enabledFilters.isEmpty()) {
+                return in;
+            }
+            pipeline = new FilterChainPipeline(this, enabledFilters);
+        }
+        final EventPacket out = pipeline.filterPacket(in);
+        if (pipeline.isFailed()) {
+            log.warning("filter pipeline failed, packets in it are lost; filtering sequentially until the processing mode is set again");
+            stopPipeline();
+            pipelineFailed = true;
+            return in;
+        }
+        return out;
+    }
+
+    /**
+     * Returns the oldest packet that has passed all filters in
+     * {@link ProcessingMode#PIPELINED} mode without submitting a new one, e.g.
+     * to drain the pipeline at the end of a recording.
+     *
+     * @param wait true to wait for a packet if the pipeline is not empty
+     * @return the packet, valid until the next call of this method or of
+     * filterPacket, or null if there is none
+     */
+    synchronized public EventPacket pollPipelineOutput(boolean wait) {
+        if (pipeline == null) {
+            return null;
+        }
+        return pipeline.pollOutput(wait);
+    }
+
+    /**
+     * Stops the filter threads of {@link ProcessingMode#PIPELINED} mode;
+     * packets in the pipeline are discarded. The pipeline is restarted by the
+     * next filterPacket.
+     */
+    synchronized public void stopPipeline() {
+        if (pipeline != null) {
+            pipeline.shutdown();
+            pipeline = null;
+        }
+    }
+
     /**
      * @param filterClass the class to search for
      * @return the first filter with class filterClass, or null if there is none
@@ -308,6 +396,10 @@ public class FilterChain extends LinkedList<EventFilter2D> {
      */
     synchronized public void setProcessingMode(ProcessingMode processingMode) {
         getSupport().firePropertyChange("processingmode", this.processingMode, processingMode);
+        if (processingMode != ProcessingMode.PIPELINED) {
+            stopPipeline();
+        }
+        pipelineFailed = false;
         this.processingMode = processingMode;
         chip.getPrefs().put("FilterChain.processingMode", processingMode.toString());
     }
@@ -340,6 +432,33 @@ public class FilterChain extends LinkedList<EventFilter2D> {
         this.measurePerformanceEnabled = measurePerformanceEnabled;
     }
 
+    /**
+     * Returns the registry of per-filter metrics, which are recorded while
+     * performance measurement is enabled
+     *
+     * @return the metrics
+     * @see #setMeasurePerformanceEnabled(boolean)
+     */
+    public FilterChainMetrics getMetrics() {
+        return metrics;
+    }
+
+    public boolean isPrintPerformanceEnabled() {
+        return printPerformanceEnabled;
+    }
+
+    /**
+     * Sets whether the performance of each filter is printed to the console
+     * for every packet when performance measurement is enabled. The metrics
+     * are always collected in {@link #getMetrics() }, which is usually more
+     * useful than printing every packet.
+     *
+     * @param printPerformanceEnabled true to print (default false)
+     */
+    public void setPrintPerformanceEnabled(boolean printPerformanceEnabled) {
+        this.printPerformanceEnabled = printPerformanceEnabled;
+    }
+
     /**
      * disables all filters individually, which will turn off each of them.
      *
@@ -0,0 +1,405 @@
+/*
+ * FilterChainBatchProcessor.java
+ *
+ * Created on October 18, 2026
+ */
+package net.sf.jaer.eventprocessing;
+
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Constructor;
+import java.util.logging.Logger;
+
+import ml.options.Options;
+import ml.options.Options.Multiplicity;
+import ml.options.Options.Separator;
+import net.sf.jaer.aemonitor.AEPacketRaw;
+import net.sf.jaer.chip.AEChip;
+import net.sf.jaer.chip.EventExtractor2D;
+import net.sf.jaer.event.EventPacket;
+import net.sf.jaer.eventio.AEFileInputStream;
+import net.sf.jaer.eventio.AEFileOutputStream;
+import net.sf.jaer.eventio.AEInputStream;
+import static net.sf.jaer.graphics.AEViewer.DEFAULT_CHIP_CLASS;
+import static net.sf.jaer.graphics.AEViewer.prefs;
+
+/**
+ * Runs a {@link FilterChain} over recorded data files without AEViewer, i.e.
+ * without rendering, GL or the sleeps of the ViewLoop. Raw packets are read
+ * from an {@link AEFileInputStream} as fast as possible, extracted by the
+ * chip's event extractor, filtered by the chain and optionally written to an
+ * output data file. The throughput of the whole pipeline and the cost in ns
+ * per event of extraction, of each filter and of writing are reported at the
+ * end.
+ * <p>
+ * Run it from the command line with <code>-Djava.awt.headless=true</code> on
+ * machines without a display; the chip then does not create its GL canvas.
+ * Filters that need the canvas, e.g. to add mouse listeners, cannot be used
+ * headless.
+ */
+public class FilterChainBatchProcessor {
+
+    private static final Logger log = Logger.getLogger("net.sf.jaer");
+    /**
+     * Default number of events read from the file per packet
+     */
+    public static final int DEFAULT_PACKET_SIZE_EVENTS = 1 << 15;
+
+    private final AEChip chip;
+    private FilterChain filterChain;
+    private int packetSizeEvents = DEFAULT_PACKET_SIZE_EVENTS;
+    private long maxEvents = 0;
+    private File outputFile = null;
+    private boolean pipelined = false;
+    private volatile boolean endOfFile = false;
+
+    private long numPackets, numEventsIn, numEventsOut;
+    private long readDurationNs, extractDurationNs, filterDurationNs, writeDurationNs, totalDurationNs;
+
+    /**
+     * Creates a processor that uses the chip's own (preferred) filter chain
+     *
+     * @param chip the chip, which supplies the event extractor
+     */
+    public FilterChainBatchProcessor(AEChip chip) {
+        this.chip = chip;
+        this.filterChain = chip.getFilterChain();
+    }
+
+    /**
+     * Reads the whole file through the filter chain.
+     *
+     * @param inputFile the recording
+     * @throws IOException if the input file cannot be opened or the output
+     * file cannot be written
+     */
+    public void process(File inputFile) throws IOException {
+        numPackets = 0;
+        numEventsIn = 0;
+        numEventsOut = 0;
+        readDurationNs = 0;
+        extractDurationNs = 0;
+        filterDurationNs = 0;
+        writeDurationNs = 0;
+        endOfFile = false;
+
+        final AEFileInputStream ais = new AEFileInputStream(inputFile, chip);
+        ais.setNonMonotonicTimeExceptionsChecked(false); // to avoid wrap and big wrap exceptions in long recordings
+        ais.setRepeat(false);
+        ais.getSupport().addPropertyChangeListener(AEInputStream.EVENT_EOF, new PropertyChangeListener() {
+            @Override
+            public void propertyChange(PropertyChangeEvent evt) {
+                endOfFile = true;
+            }
+        });
+        AEFileOutputStream aos = null;
+        if (outputFile != null) {
+            aos = new AEFileOutputStream(new FileOutputStream(outputFile), chip, "2.0");
+        }
+        final EventExtractor2D extractor = chip.getEventExtractor();
+        if (filterChain.isTimeLimitEnabled()) {
+            log.warning("FilterChain time limit is enabled; filters may skip events of packets that take longer than " + filterChain.getTimeLimitMs() + " ms");
+        }
+        final boolean oldMeasure = filterChain.isMeasurePerformanceEnabled(), oldPrint = filterChain.isPrintPerformanceEnabled();
+        final FilterChain.ProcessingMode oldMode = filterChain.getProcessingMode();
+        if (pipelined) {
+            filterChain.setProcessingMode(FilterChain.ProcessingMode.PIPELINED);
+        }
+        filterChain.setMeasurePerformanceEnabled(true);
+        filterChain.setPrintPerformanceEnabled(false);
+        filterChain.resetResetPerformanceMeasurementStatistics();
+        log.info("processing " + inputFile + " with " + ais.size() + " events through " + filterChain.size() + " filters");
+
+        final long startNs = System.nanoTime();
+        try {
+            while (!endOfFile) {
+                long remaining = ais.size() - ais.position();
+                if (maxEvents > 0) {
+                    remaining = Math.min(remaining, maxEvents - numEventsIn);
+                }
+                if (remaining <= 0) {
+                    break;
+                }
+                long t0 = System.nanoTime();
+                final AEPacketRaw raw;
+                try {
+                    raw = ais.readPacketByNumber((int) Math.min(packetSizeEvents, remaining));
+                } catch (EOFException e) {
+                    break;
+                }
+                long t1 = System.nanoTime();
+                final EventPacket<?> cooked = extractor.extractPacket(raw);
+                long t2 = System.nanoTime();
+                final EventPacket<?> filtered = filterChain.filterPacket(cooked);
+                long t3 = System.nanoTime();
+                if (aos != null) {
+                    aos.writePacket(extractor.reconstructRawPacket(filtered));
+                }
+                long t4 = System.nanoTime();
+                readDurationNs += t1 - t0;
+                extractDurationNs += t2 - t1;
+                filterDurationNs += t3 - t2;
+                writeDurationNs += t4 - t3;
+                numPackets++;
+                numEventsIn += raw.getNumEvents();
+                numEventsOut += filtered.getSizeNotFilteredOut();
+            }
+            EventPacket<?> filtered;
+            while ((filtered = filterChain.pollPipelineOutput(true)) != null) { // drain the pipeline
+                long t3 = System.nanoTime();
+                if (aos != null) {
+                    aos.writePacket(extractor.reconstructRawPacket(filtered));
+                }
+                writeDurationNs += System.nanoTime() - t3;
+                numEventsOut += filtered.getSizeNotFilteredOut();
+            }
+        } finally {
+            totalDurationNs = System.nanoTime() - startNs;
+            filterChain.setMeasurePerformanceEnabled(oldMeasure);
+            filterChain.setPrintPerformanceEnabled(oldPrint);
+            if (pipelined) {
+                filterChain.setProcessingMode(oldMode);
+                filterChain.stopPipeline();
+            }
+            ais.close();
+            if (aos != null) {
+                aos.close();
+            }
+        }
+    }
+
+    /**
+     * Returns a multi-line throughput report of the last
+     * {@link #process(java.io.File) }
+     *
+     * @return the report
+     */
+    public String getSummary() {
+        final StringBuilder sb = new StringBuilder();
+        sb.append(String.format("%d events in %d packets processed in %.3f s: %.3g events/s, %.1f ns/event; %d events out%n",
+                numEventsIn, numPackets, 1e-9 * totalDurationNs, eventsPerSecond(numEventsIn, totalDurationNs), nsPerEvent(totalDurationNs, numEventsIn), numEventsOut));
+        sb.append(String.format("%-40s %14s %12s %12s%n", "stage", "events", "ms", "ns/event"));
+        appendStage(sb, "read (" + AEFileInputStream.class.getSimpleName() + ")", numEventsIn, readDurationNs);
+        appendStage(sb, "extract (" + chip.getEventExtractor().getClass().getSimpleName() + ")", numEventsIn, extractDurationNs);
+        for (EventFilter2D f : filterChain) {
+            if (f.perf != null && f.perf.getTotalEvents() > 0) {
+                appendStage(sb, "  " + f.getClass().getSimpleName(), f.perf.getTotalEvents(), f.perf.getTotalDurationNs());
+            }
+        }
+        appendStage(sb, "filter (all)", numEventsIn, filterDurationNs);
+        if (outputFile != null) {
+            appendStage(sb, "write " + outputFile.getName(), numEventsOut, writeDurationNs);
+        }
+        sb.append(filterChain.getMetrics().toString());
+        return sb.toString();
+    }
+
+    private static void appendStage(StringBuilder sb, String name, long events, long durationNs) {
+        sb.append(String.format("%-40s %14d %12.1f %12.1f%n", name, events, 1e-6 * durationNs, nsPerEvent(durationNs, events)));
+    }
+
+    private static double nsPerEvent(long durationNs, long events) {
+        return events == 0 ? 0 : (double) durationNs / events;
+    }
+
+    private static double eventsPerSecond(long events, long durationNs) {
+        return durationNs == 0 ? 0 : (1e9 * events) / durationNs;
+    }
+
+    /**
+     * @return the filter chain that is run
+     */
+    public FilterChain getFilterChain() {
+        return filterChain;
+    }
+
+    /**
+     * Replaces the chip's filter chain by another chain, e.g. one built from
+     * filter class names.
+     *
+     * @param filterChain the chain to run
+     */
+    public void setFilterChain(FilterChain filterChain) {
+        this.filterChain = filterChain;
+    }
+
+    /**
+     * @return the number of events read from the file per packet
+     */
+    public int getPacketSizeEvents() {
+        return packetSizeEvents;
+    }
+
+    /**
+     * @param packetSizeEvents the number of events read from the file per
+     * packet
+     */
+    public void setPacketSizeEvents(int packetSizeEvents) {
+        if (packetSizeEvents < 1) {
+            throw new IllegalArgumentException("packetSizeEvents must be positive, got " + packetSizeEvents);
+        }
+        this.packetSizeEvents = packetSizeEvents;
+    }
+
+    /**
+     * @return the maximum number of events to process, 0 for the whole file
+     */
+    public long getMaxEvents() {
+        return maxEvents;
+    }
+
+    /**
+     * @param maxEvents the maximum number of events to process, 0 for the
+     * whole file
+     */
+    public void setMaxEvents(long maxEvents) {
+        this.maxEvents = maxEvents;
+    }
+
+    /**
+     * @return the output data file, or null if the output is discarded
+     */
+    public File getOutputFile() {
+        return outputFile;
+    }
+
+    /**
+     * @param outputFile the AER-DAT2.0 file the filtered events are written
+     * to, or null to discard them
+     */
+    public void setOutputFile(File outputFile) {
+        this.outputFile = outputFile;
+    }
+
+    /**
+     * @return true if the filters run in
+     * {@link FilterChain.ProcessingMode#PIPELINED} mode
+     */
+    public boolean isPipelined() {
+        return pipelined;
+    }
+
+    /**
+     * @param pipelined true to run each filter on its own thread in
+     * {@link FilterChain.ProcessingMode#PIPELINED} mode
+     */
+    public void setPipelined(boolean pipelined) {
+        this.pipelined = pipelined;
+    }
+
+    public long getNumEventsIn() {
+        return numEventsIn;
+    }
+
+    public long getNumEventsOut() {
+        return numEventsOut;
+    }
+
+    public long getTotalDurationNs() {
+        return totalDurationNs;
+    }
+
+    public static final String USAGE = "java -Djava.awt.headless=true FilterChainBatchProcessor [-aechip=aechipclassname (fully qualified class name, e.g. eu.seebetter.ini.chips.davis.DAVIS240C)] "
+            + "[-filters=filterclassname,filterclassname,...] [-packetsize=" + DEFAULT_PACKET_SIZE_EVENTS + "] [-maxevents=0] [-pipelined=false] [-metrics=metricsfile.csv|metricsfile.json] "
+            + "inputFile.aedat [outputfile.aedat]"
+            + "\n"
+            + "Note arguments values are assigned with =, not space"
+            + "\n"
+            + "If -filters is not provided the chip's preferred filters and their enabled states from the last AEViewer session are used. "
+            + "If outputfile is not provided the filtered events are discarded. "
+            + "The per-filter metrics are appended to a CSV metricsfile or written to a JSON metricsfile.";
+
+    public static void main(String[] args) {
+        Options opt = new Options(args, 1, 2);
+        opt.getSet().addOption("aechip", Separator.EQUALS, Multiplicity.ZERO_OR_ONE);
+        opt.getSet().addOption("filters", Separator.EQUALS, Multiplicity.ZERO_OR_ONE);
+        opt.getSet().addOption("packetsize", Separator.EQUALS, Multiplicity.ZERO_OR_ONE);
+        opt.getSet().addOption("maxevents", Separator.EQUALS, Multiplicity.ZERO_OR_ONE);
+        opt.getSet().addOption("pipelined", Separator.EQUALS, Multiplicity.ZERO_OR_ONE);
+        opt.getSet().addOption("metrics", Separator.EQUALS, Multiplicity.ZERO_OR_ONE);
+        if (!opt.check()) {
+            System.out.println(USAGE);
+            System.exit(1);
+        }
+
+        String chipname = null;
+        if (opt.getSet().isSet("aechip")) {
+            chipname = opt.getSet().getOption("aechip").getResultValue(0);
+        } else {
+            chipname = prefs.get("AEViewer.aeChipClassName", DEFAULT_CHIP_CLASS);
+        }
+        AEChip chip = null;
+        try {
+            System.out.println("constructing AEChip " + chipname);
+            Class chipClass = Class.forName(chipname);
+            Constructor<AEChip> constructor = chipClass.getConstructor();
+            chip = constructor.newInstance((java.lang.Object[]) null);
+        } catch (Exception ex) {
+            System.err.println("Could not construct instance of aechip=" + chipname + ": " + ex.toString());
+            System.exit(1);
+        }
+
+        final FilterChainBatchProcessor processor = new FilterChainBatchProcessor(chip);
+        if (opt.getSet().isSet("filters")) {
+            FilterChain chain = new FilterChain(chip);
+            for (String name : opt.getSet().getOption("filters").getResultValue(0).split(",")) {
+                try {
+                    Class filterClass = Class.forName(name.trim());
+                    Constructor<EventFilter2D> constructor = filterClass.getConstructor(AEChip.class);
+                    EventFilter2D filter = constructor.newInstance(chip);
+                    filter.setFilterEnabled(true);
+                    chain.add(filter);
+                } catch (Exception ex) {
+                    System.err.println("Could not construct filter " + name + ": " + ex.toString());
+                    System.exit(1);
+                }
+            }
+            processor.setFilterChain(chain);
+        }
+        if (opt.getSet().isSet("packetsize")) {
+            try {
+                processor.setPacketSizeEvents(Integer.parseInt(opt.getSet().getOption("packetsize").getResultValue(0)));
+            } catch (IllegalArgumentException e) {
+                System.err.println("Bad packetsize argument: " + e.toString());
+                System.exit(1);
+            }
+        }
+        if (opt.getSet().isSet("maxevents")) {
+            try {
+                processor.setMaxEvents(Long.parseLong(opt.getSet().getOption("maxevents").getResultValue(0)));
+            } catch (NumberFormatException e) {
+                System.err.println("Bad maxevents argument: " + e.toString());
+                System.exit(1);
+            }
+        }
+        if (opt.getSet().isSet("pipelined")) {
+            processor.setPipelined(Boolean.parseBoolean(opt.getSet().getOption("pipelined").getResultValue(0)));
+        }
+        if (opt.getSet().getData().size() == 2) {
+            processor.setOutputFile(new File(opt.getSet().getData().get(1)));
+        }
+
+        File inpfile = new File(opt.getSet().getData().get(0));
+        try {
+            processor.process(inpfile);
+        } catch (IOException ex) {
+            System.err.println("Couldn't process file " + inpfile + " from working directory " + System.getProperty("user.dir") + " : " + ex.toString());
+            System.exit(1);
+        }
+        System.out.print(processor.getSummary());
+        if (opt.getSet().isSet("metrics")) {
+            File metricsFile = new File(opt.getSet().getOption("metrics").getResultValue(0));
+            try {
+                processor.getFilterChain().getMetrics().export(metricsFile);
+            } catch (IOException ex) {
+                System.err.println("Couldn't write metrics to " + metricsFile + " : " + ex.toString());
+                System.exit(1);
+            }
+        }
+        System.exit(0);
+    }
+}
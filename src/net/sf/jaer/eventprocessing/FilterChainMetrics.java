@@ -0,0 +1,404 @@
+/*
+ * FilterChainMetrics.java
+ *
+ * Created on October 18, 2026
+ */
+package net.sf.jaer.eventprocessing;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.logging.Logger;
+
+import net.sf.jaer.event.BasicEvent;
+import net.sf.jaer.event.EventPacket;
+import net.sf.jaer.util.LogLinearHistogram;
+import net.sf.jaer.util.RemoteControlCommand;
+import net.sf.jaer.util.RemoteControlled;
+
+/**
+ * Registry of the processing metrics of each filter of a {@link FilterChain}.
+ * While performance measurement is enabled on the chain, every call of a
+ * filter's filterPacket records the latency, the packet size, the number of
+ * events that the filter passed and whether the time limiter timed out. The
+ * metrics can be queried with {@link #getFilterMetrics(net.sf.jaer.eventprocessing.EventFilter)
+ * }, printed with {@link #toString() }, exported to CSV or JSON and queried
+ * remotely with the <code>filtermetrics</code> command of the chip's
+ * {@link net.sf.jaer.util.RemoteControl}.
+ * <p>
+ * The CSV export appends rows stamped with the wall clock time to the file, so
+ * periodic exports form a log; the JSON export writes a snapshot.
+ */
+public class FilterChainMetrics implements RemoteControlled {
+
+    private static final Logger log = Logger.getLogger("FilterChain");
+    /**
+     * The remote control command
+     */
+    public static final String REMOTE_FILTER_METRICS = "filtermetrics";
+    public static final String REMOTE_FILTER_METRICS_HELP = "shows per-filter processing metrics; on|off enables measurement, reset clears, csv|json shows them in these formats, filename exports (.json or CSV log)";
+    public static final String CSV_HEADER = "time,filter,packets,events,eventsOut,filteredOutRatio,throughputEps,meanNs,p50Ns,p99Ns,maxNs,meanPacketSize,p50PacketSize,maxPacketSize,timeouts,chainTimeShare";
+
+    private final FilterChain chain;
+    private final Map<EventFilter, FilterMetrics> metricsMap = new IdentityHashMap<EventFilter, FilterMetrics>();
+
+    /**
+     * The metrics of a single filter. All methods are synchronized because
+     * metrics are recorded on the processing thread (or a pipeline stage
+     * thread) and read e.g. by the RemoteControl thread.
+     */
+    public static class FilterMetrics {
+
+        private final String filterName;
+        private final LogLinearHistogram latencyNs = new LogLinearHistogram(), packetSize = new LogLinearHistogram();
+        private long packets, eventsIn, eventsOut, durationNs, timeouts;
+
+        FilterMetrics(String filterName) {
+            this.filterName = filterName;
+        }
+
+        /**
+         * Records one call of filterPacket
+         *
+         * @param eventsIn the number of events in the input packet that were
+         * not filtered out
+         * @param eventsOut the number of events in the output packet that were
+         * not filtered out
+         * @param durationNs the duration of the call
+         * @param timedOut true if the time limiter timed out during the call
+         */
+        synchronized public void record(int eventsIn, int eventsOut, long durationNs, boolean timedOut) {
+            packets++;
+            this.eventsIn += eventsIn;
+            this.eventsOut += eventsOut;
+            this.durationNs += durationNs;
+            latencyNs.record(durationNs);
+            packetSize.record(eventsIn);
+            if (timedOut) {
+                timeouts++;
+            }
+        }
+
+        synchronized public void reset() {
+            packets = 0;
+            eventsIn = 0;
+            eventsOut = 0;
+            durationNs = 0;
+            timeouts = 0;
+            latencyNs.reset();
+            packetSize.reset();
+        }
+
+        public String getFilterName() {
+            return filterName;
+        }
+
+        synchronized public long getPackets() {
+            return packets;
+        }
+
+        synchronized public long getEventsIn() {
+            return eventsIn;
+        }
+
+        synchronized public long getEventsOut() {
+            return eventsOut;
+        }
+
+        /**
+         * @return the total processing time in ns
+         */
+        synchronized public long getDurationNs() {
+            return durationNs;
+        }
+
+        /**
+         * @return the number of packets during which the time limiter timed
+         * out
+         */
+        synchronized public long getTimeouts() {
+            return timeouts;
+        }
+
+        /**
+         * @return the fraction of input events that were removed or filtered
+         * out
+         */
+        synchronized public float getFilteredOutRatio() {
+            return eventsIn == 0 ? 0 : 1 - ((float) eventsOut / eventsIn);
+        }
+
+        /**
+         * @return the processing throughput in events per second of
+         * processing time
+         */
+        synchronized public float getThroughputEps() {
+            return durationNs == 0 ? 0 : (1e9f * eventsIn) / durationNs;
+        }
+
+        /**
+         * @param percentile e.g. 99
+         * @return the latency per packet at this percentile in ns
+         */
+        synchronized public long getLatencyNsAtPercentile(double percentile) {
+            return latencyNs.getValueAtPercentile(percentile);
+        }
+
+        synchronized public double getMeanLatencyNs() {
+            return latencyNs.getMean();
+        }
+
+        synchronized public long getMaxLatencyNs() {
+            return latencyNs.getMax();
+        }
+
+        /**
+         * @param percentile e.g. 50
+         * @return the input packet size at this percentile in events
+         */
+        synchronized public long getPacketSizeAtPercentile(double percentile) {
+            return packetSize.getValueAtPercentile(percentile);
+        }
+
+        synchronized public double getMeanPacketSize() {
+            return packetSize.getMean();
+        }
+
+        synchronized public long getMaxPacketSize() {
+            return packetSize.getMax();
+        }
+
+        @Override
+        synchronized public String toString() {
+            return String.format("%-36s %8d %12d %7.3f %10.3g %10.0f %10d %10d %10d %8.0f %6d", filterName, packets, eventsIn, getFilteredOutRatio(), getThroughputEps(),
+                    latencyNs.getMean(), latencyNs.getValueAtPercentile(50), latencyNs.getValueAtPercentile(99), latencyNs.getMax(), packetSize.getMean(), timeouts);
+        }
+    }
+
+    /**
+     * Creates the registry of a chain
+     *
+     * @param chain the chain whose filters are measured
+     */
+    public FilterChainMetrics(FilterChain chain) {
+        this.chain = chain;
+    }
+
+    /**
+     * Returns the metrics of a filter, creating them if needed
+     *
+     * @param f the filter
+     * @return the metrics
+     */
+    public FilterMetrics getFilterMetrics(EventFilter f) {
+        synchronized (metricsMap) {
+            FilterMetrics m = metricsMap.get(f);
+            if (m == null) {
+                m = new FilterMetrics(f.getClass().getSimpleName());
+                metricsMap.put(f, m);
+            }
+            return m;
+        }
+    }
+
+    /**
+     * @return the metrics of the filters of the chain that have recorded
+     * packets, in chain order
+     */
+    public List<FilterMetrics> getFilterMetrics() {
+        final ArrayList<FilterMetrics> list = new ArrayList<FilterMetrics>();
+        synchronized (metricsMap) {
+            for (EventFilter f : new ArrayList<EventFilter2D>(chain)) {
+                final FilterMetrics m = metricsMap.get(f);
+                if ((m != null) && (m.getPackets() > 0)) {
+                    list.add(m);
+                }
+            }
+        }
+        return list;
+    }
+
+    /**
+     * Clears the metrics of all filters
+     */
+    public void reset() {
+        synchronized (metricsMap) {
+            for (FilterMetrics m : metricsMap.values()) {
+                m.reset();
+            }
+        }
+    }
+
+    /**
+     * Counts the events that are not filtered out. Unlike
+     * {@link EventPacket#getSizeNotFilteredOut() } this does not depend on the
+     * packet having been iterated over.
+     *
+     * @param packet the packet, may be null
+     * @return the number of events
+     */
+    static int countNotFilteredOut(EventPacket packet) {
+        if (packet == null) {
+            return 0;
+        }
+        final Object[] events = packet.getElementData();
+        final int n = packet.getSize();
+        int count = 0;
+        for (int i = 0; i < n; i++) {
+            if (!((BasicEvent) events[i]).isFilteredOut()) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @return the metrics as a table with one line per filter
+     */
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder();
+        sb.append(String.format("%-36s %8s %12s %7s %10s %10s %10s %10s %10s %8s %6s%n", "filter", "packets", "events", "fltOut", "eps", "mean ns", "p50 ns", "p99 ns", "max ns", "pktSize", "tmout"));
+        for (FilterMetrics m : getFilterMetrics()) {
+            sb.append(m.toString()).append(String.format("%n"));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * @return a CSV row per filter, without header, stamped with the current
+     * time
+     */
+    public String toCsv() {
+        final String time = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSSZ").format(new Date());
+        final List<FilterMetrics> list = getFilterMetrics();
+        final long chainNs = totalDurationNs(list);
+        final StringBuilder sb = new StringBuilder();
+        for (FilterMetrics m : list) {
+            synchronized (m) {
+                sb.append(String.format(Locale.US, "%s,%s,%d,%d,%d,%.4f,%.1f,%.1f,%d,%d,%d,%.1f,%d,%d,%d,%.4f%n", time, m.filterName, m.packets, m.eventsIn, m.eventsOut,
+                        m.getFilteredOutRatio(), m.getThroughputEps(), m.latencyNs.getMean(), m.latencyNs.getValueAtPercentile(50), m.latencyNs.getValueAtPercentile(99), m.latencyNs.getMax(),
+                        m.packetSize.getMean(), m.packetSize.getValueAtPercentile(50), m.packetSize.getMax(), m.timeouts, chainNs == 0 ? 0 : (double) m.durationNs / chainNs));
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * @return the metrics as a JSON object with an array of filters
+     */
+    public String toJson() {
+        final List<FilterMetrics> list = getFilterMetrics();
+        final long chainNs = totalDurationNs(list);
+        final StringBuilder sb = new StringBuilder("{\"time\":").append(System.currentTimeMillis()).append(",\"filters\":[");
+        boolean first = true;
+        for (FilterMetrics m : list) {
+            if (!first) {
+                sb.append(',');
+            }
+            first = false;
+            synchronized (m) {
+                sb.append(String.format(Locale.US, "{\"filter\":\"%s\",\"packets\":%d,\"events\":%d,\"eventsOut\":%d,\"filteredOutRatio\":%.4f,\"throughputEps\":%.1f,"
+                        + "\"latencyNs\":{\"mean\":%.1f,\"p50\":%d,\"p99\":%d,\"max\":%d},\"packetSize\":{\"mean\":%.1f,\"p50\":%d,\"max\":%d},\"timeouts\":%d,\"chainTimeShare\":%.4f}",
+                        m.filterName, m.packets, m.eventsIn, m.eventsOut, m.getFilteredOutRatio(), m.getThroughputEps(),
+                        m.latencyNs.getMean(), m.latencyNs.getValueAtPercentile(50), m.latencyNs.getValueAtPercentile(99), m.latencyNs.getMax(),
+                        m.packetSize.getMean(), m.packetSize.getValueAtPercentile(50), m.packetSize.getMax(), m.timeouts, chainNs == 0 ? 0 : (double) m.durationNs / chainNs));
+            }
+        }
+        return sb.append("]}").toString();
+    }
+
+    private static long totalDurationNs(List<FilterMetrics> list) {
+        long ns = 0;
+        for (FilterMetrics m : list) {
+            ns += m.getDurationNs();
+        }
+        return ns;
+    }
+
+    /**
+     * Appends the current metrics to a CSV log file, writing the header if the
+     * file is new
+     *
+     * @param file the file
+     * @throws IOException if the file cannot be written
+     */
+    public void appendCsv(File file) throws IOException {
+        final boolean writeHeader = !file.exists() || (file.length() == 0);
+        try (PrintWriter w = new PrintWriter(new FileWriter(file, true))) {
+            if (writeHeader) {
+                w.println(CSV_HEADER);
+            }
+            w.print(toCsv());
+        }
+    }
+
+    /**
+     * Writes the current metrics to a JSON file
+     *
+     * @param file the file, which is overwritten
+     * @throws IOException if the file cannot be written
+     */
+    public void writeJson(File file) throws IOException {
+        try (PrintWriter w = new PrintWriter(new FileWriter(file))) {
+            w.println(toJson());
+        }
+    }
+
+    /**
+     * Exports to a file, as JSON if the file name ends with .json and as CSV
+     * otherwise
+     *
+     * @param file the file
+     * @throws IOException if the file cannot be written
+     */
+    public void export(File file) throws IOException {
+        if (file.getName().toLowerCase().endsWith(".json")) {
+            writeJson(file);
+        } else {
+            appendCsv(file);
+        }
+        log.info("exported filter metrics to " + file.getAbsolutePath());
+    }
+
+    /**
+     * Processes the <code>filtermetrics [on|off|reset|csv|json|filename]</code>
+     * command. Without argument the metrics table is returned; on and off
+     * enable and disable measurement; csv and json return the metrics in these
+     * formats; a file name exports to the file.
+     */
+    @Override
+    public String processRemoteControlCommand(RemoteControlCommand command, String input) {
+        final String[] tok = input.trim().split("\\s+", 2);
+        if (tok.length < 2) {
+            return toString();
+        }
+        final String arg = tok[1].trim();
+        if (arg.equals("on") || arg.equals("off")) {
+            chain.setMeasurePerformanceEnabled(arg.equals("on"));
+            return "filter metrics " + (chain.isMeasurePerformanceEnabled() ? "enabled" : "disabled") + "\n";
+        } else if (arg.equals("reset")) {
+            chain.resetResetPerformanceMeasurementStatistics();
+            return "filter metrics will be reset on next packet\n";
+        } else if (arg.equals("csv")) {
+            return CSV_HEADER + "\n" + toCsv();
+        } else if (arg.equals("json")) {
+            return toJson() + "\n";
+        }
+        try {
+            final File f = new File(arg);
+            export(f);
+            return "exported filter metrics to " + f.getAbsolutePath() + "\n";
+        } catch (IOException e) {
+            return e.toString() + "\n";
+        }
+    }
+}
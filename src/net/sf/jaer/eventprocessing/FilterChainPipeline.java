@@ -0,0 +1,314 @@
+/*
+ * FilterChainPipeline.java
+ *
+ * Created on October 18, 2026
+ */
+package net.sf.jaer.eventprocessing;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Logger;
+
+import net.sf.jaer.event.BasicEvent;
+import net.sf.jaer.event.EventPacket;
+import net.sf.jaer.event.OutputEventIterator;
+import net.sf.jaer.util.SpscRingBuffer;
+
+/**
+ * Runs the enabled filters of a {@link FilterChain} in
+ * {@link FilterChain.ProcessingMode#PIPELINED} mode. Each filter runs on its
+ * own stage thread; stages are connected by bounded lock-free
+ * {@link SpscRingBuffer}s, so packets leave the pipeline in the order they
+ * entered it.
+ * <p>
+ * Packets are copied into recycled packets on entry, because the caller
+ * reuses its input packet, and after each filter that returns its own output
+ * packet, because the filter reuses that packet for the next call.
+ * <p>
+ * A packet whose filter throws is passed on unfiltered. If a stage thread
+ * dies nevertheless, the pipeline is marked failed and stops, so that no call
+ * waits for it; {@link FilterChain} then filters sequentially.
+ */
+class FilterChainPipeline {
+
+    private static final Logger log = Logger.getLogger("FilterChain");
+    /**
+     * Number of packets that may be in the pipeline per stage
+     */
+    private static final int PACKETS_PER_STAGE = 2;
+    /**
+     * Longest wait of a caller polling for output between checks
+     */
+    private static final long POLL_PARK_NS = 50000;
+
+    private final FilterChain chain;
+    private final List<EventFilter2D> filters;
+    private final List<Stage> stages = new ArrayList<>();
+    private final SpscRingBuffer<EventPacket> inputQueue, outputQueue;
+    private final ConcurrentLinkedQueue<EventPacket> freePackets = new ConcurrentLinkedQueue<>();
+    private final int maxInFlight;
+    private int inFlight = 0;
+    private EventPacket lastOutput = null, emptyPacket = null;
+    private volatile boolean running = true, failed = false;
+    private volatile Thread consumerThread = null;
+
+    /**
+     * Starts a stage thread for each filter
+     *
+     * @param chain the chain, which holds the performance measurement flags
+     * @param filters the enabled filters in processing order
+     */
+    FilterChainPipeline(FilterChain chain, List<EventFilter2D> filters) {
+        this.chain = chain;
+        this.filters = new ArrayList<>(filters);
+        maxInFlight = PACKETS_PER_STAGE * filters.size();
+        inputQueue = new SpscRingBuffer<>(maxInFlight);
+        SpscRingBuffer<EventPacket> q = inputQueue;
+        for (int i = 0; i < filters.size(); i++) {
+            final SpscRingBuffer<EventPacket> next = new SpscRingBuffer<>(maxInFlight);
+            final Stage stage = new Stage(i, filters.get(i), q, next);
+            stages.add(stage);
+            q = next;
+        }
+        outputQueue = q;
+        for (Stage s : stages) {
+            s.start();
+        }
+        log.info("started pipeline of " + stages.size() + " stages with up to " + maxInFlight + " packets in flight");
+    }
+
+    /**
+     * @param enabledFilters the currently enabled filters
+     * @return true if this pipeline runs exactly these filters
+     */
+    boolean runs(List<EventFilter2D> enabledFilters) {
+        return filters.equals(enabledFilters);
+    }
+
+    /**
+     * Submits a copy of a packet to the first stage and returns the oldest
+     * processed packet. While the pipeline fills, an empty packet is returned;
+     * when the pipeline is full, this call waits for the oldest packet. The
+     * returned packet is valid until the next call.
+     *
+     * @param in the input packet
+     * @return the oldest output packet or an empty packet
+     */
+    EventPacket filterPacket(EventPacket in) {
+        recycleLastOutput();
+        EventPacket out = null;
+        if (inFlight >= maxInFlight) {
+            out = poll(true);
+        }
+        if (failed) {
+            return in;
+        }
+        final EventPacket p = copy(in);
+        p.setTimeLimitEnabled(false);
+        while (!inputQueue.offer(p)) { // cannot happen while inFlight<maxInFlight, but be safe
+            Thread.yield();
+        }
+        stages.get(0).wake();
+        inFlight++;
+        if (out == null) {
+            out = poll(false);
+        }
+        if (out != null) {
+            return lastOutput = out;
+        }
+        if ((emptyPacket == null) || (emptyPacket.getClass() != in.getClass()) || (emptyPacket.getEventClass() != in.getEventClass())) {
+            emptyPacket = in.constructNewPacket();
+        }
+        emptyPacket.clear();
+        return emptyPacket;
+    }
+
+    /**
+     * Returns the oldest processed packet, e.g. to drain the pipeline at the
+     * end of a recording. The returned packet is valid until the next call.
+     *
+     * @param wait true to wait until a packet leaves the pipeline
+     * @return the packet, or null if there is none in flight or if none is
+     * available and wait is false
+     */
+    EventPacket pollOutput(boolean wait) {
+        recycleLastOutput();
+        return lastOutput = poll(wait);
+    }
+
+    private EventPacket poll(boolean wait) {
+        if (inFlight == 0) {
+            return null;
+        }
+        EventPacket p = outputQueue.poll();
+        if (wait) {
+            consumerThread = Thread.currentThread();
+            while ((p == null) && running) {
+                LockSupport.parkNanos(this, POLL_PARK_NS);
+                p = outputQueue.poll();
+            }
+            consumerThread = null;
+        }
+        if (p != null) {
+            inFlight--;
+        }
+        return p;
+    }
+
+    private void recycleLastOutput() {
+        if (lastOutput != null) {
+            freePackets.offer(lastOutput);
+            lastOutput = null;
+        }
+    }
+
+    /**
+     * @return the number of packets submitted but not yet returned
+     */
+    int getInFlight() {
+        return inFlight;
+    }
+
+    /**
+     * @return true if a stage thread died, so that the pipeline has stopped
+     * and its packets are lost
+     */
+    boolean isFailed() {
+        return failed;
+    }
+
+    /**
+     * Stops the stage threads. Packets still in the pipeline are discarded.
+     */
+    void shutdown() {
+        running = false;
+        for (Stage s : stages) {
+            s.interrupt();
+        }
+        for (Stage s : stages) {
+            try {
+                s.join(1000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        log.info("stopped pipeline of " + stages.size() + " stages");
+    }
+
+    /**
+     * Copies all events of a packet, including filtered out ones, to a
+     * recycled packet of the same type.
+     */
+    private EventPacket copy(EventPacket src) {
+        EventPacket dst = freePackets.poll();
+        if ((dst == null) || (dst.getClass() != src.getClass()) || (dst.getEventClass() != src.getEventClass())) {
+            dst = src.constructNewPacket();
+        }
+        final OutputEventIterator outItr = dst.outputIterator();
+        final Object[] events = src.getElementData();
+        final int n = src.getSize();
+        for (int i = 0; i < n; i++) {
+            outItr.nextOutput().copyFrom((BasicEvent) events[i]);
+        }
+        dst.setRawPacket(src.getRawPacket());
+        return dst;
+    }
+
+    /**
+     * Runs one filter on packets from its input queue
+     */
+    private class Stage extends Thread {
+
+        private final EventFilter2D filter;
+        private final SpscRingBuffer<EventPacket> in, out;
+        private Stage next = null;
+
+        Stage(int index, EventFilter2D filter, SpscRingBuffer<EventPacket> in, SpscRingBuffer<EventPacket> out) {
+            super("FilterChain stage " + index + ": " + filter.getClass().getSimpleName());
+            setDaemon(true);
+            this.filter = filter;
+            this.in = in;
+            this.out = out;
+            if (index > 0) {
+                stages.get(index - 1).next = this;
+            }
+        }
+
+        /**
+         * Unparks this stage if it is waiting for input. The unpark is not
+         * conditional on the stage being idle: the ring buffer publishes with
+         * lazySet, so the stage might not yet see the packet the caller just
+         * offered and would park without a timeout after the caller checked.
+         */
+        void wake() {
+            LockSupport.unpark(this);
+        }
+
+        @Override
+        public void run() {
+            try {
+                runStage();
+            } catch (Throwable t) {
+                log.severe(getName() + " died with " + t.toString() + "; stopping pipeline");
+                failed = true;
+                running = false;
+                final Thread consumer = consumerThread;
+                if (consumer != null) {
+                    LockSupport.unpark(consumer);
+                }
+            }
+        }
+
+        private void runStage() {
+            while (running) {
+                EventPacket p = in.poll();
+                if (p == null) {
+                    LockSupport.park(this); // until wake() or shutdown()
+                    continue;
+                }
+                try {
+                    final boolean measure = chain.isMeasurePerformanceEnabled();
+                    int eventsIn = 0;
+                    if (measure) {
+                        if (filter.perf == null) {
+                            filter.perf = new EventProcessingPerformanceMeter(filter);
+                        }
+                        eventsIn = FilterChainMetrics.countNotFilteredOut(p);
+                        filter.perf.start(p);
+                    }
+                    final EventPacket result = filter.filterPacket(p);
+                    if (measure) {
+                        filter.perf.stop();
+                        chain.getMetrics().getFilterMetrics(filter).record(eventsIn, FilterChainMetrics.countNotFilteredOut(result == null ? p : result), filter.perf.durationNs, false);
+                        if (chain.isPrintPerformanceEnabled()) {
+                            System.out.println(filter.perf);
+                        }
+                    }
+                    if ((result != null) && (result != p)) {
+                        freePackets.offer(p);
+                        p = copy(result);
+                    }
+                } catch (Throwable t) { // also Errors, e.g. AssertionError or StackOverflowError, so that the packet is not lost
+                    log.warning(getName() + " caught " + t.toString() + "; passing packet on unfiltered");
+                }
+                while (!out.offer(p)) { // cannot happen because at most maxInFlight packets are in the pipeline
+                    if (!running) {
+                        return;
+                    }
+                    Thread.yield();
+                }
+                if (next != null) {
+                    next.wake();
+                } else {
+                    final Thread consumer = consumerThread;
+                    if (consumer != null) {
+                        LockSupport.unpark(consumer);
+                    }
+                }
+            }
+        }
+    }
+}
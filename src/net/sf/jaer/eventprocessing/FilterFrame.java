@@ -15,6 +15,7 @@ import java.beans.PropertyChangeListener;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
+import java.io.IOException;
 import java.net.URI;
 import java.util.ArrayList;
 import java.util.logging.Logger;
@@ -96,6 +97,9 @@ public class FilterFrame<PanelType extends FilterPanel> extends javax.swing.JFra
             case ACQUISITION:
                 acquisitionModeMenuItem.setSelected(true);
                 break;
+            case PIPELINED:
+                pipelinedModeMenuItem.setSelected(true);
+                break;
             default:
 
         }
@@ -203,9 +207,11 @@ public class FilterFrame<PanelType extends FilterPanel> extends javax.swing.JFra
         modeMenu = new javax.swing.JMenu();
         renderingModeMenuItem = new javax.swing.JRadioButtonMenuItem();
         acquisitionModeMenuItem = new javax.swing.JRadioButtonMenuItem();
+        pipelinedModeMenuItem = new javax.swing.JRadioButtonMenuItem();
         jSeparator1 = new javax.swing.JSeparator();
         measurePerformanceCheckBoxMenuItem = new javax.swing.JCheckBoxMenuItem();
         resetPerformanceMeasurementMI = new javax.swing.JMenuItem();
+        exportPerformanceMetricsMI = new javax.swing.JMenuItem();
         jSeparator3 = new javax.swing.JSeparator();
         limitTimeCheckBoxMenuItem = new javax.swing.JCheckBoxMenuItem();
         setTimeLimitMenuItem = new javax.swing.JMenuItem();
@@ -399,11 +405,22 @@ public class FilterFrame<PanelType extends FilterPanel> extends javax.swing.JFra
             }
         });
         modeMenu.add(acquisitionModeMenuItem);
+
+        modeButtonGroup.add(pipelinedModeMenuItem);
+        pipelinedModeMenuItem.setMnemonic('i');
+        pipelinedModeMenuItem.setText("Process pipelined on rendering cycle");
+        pipelinedModeMenuItem.setToolTipText("Process events on rendering cycle with each filter on its own thread; output is delayed by a few packets");
+        pipelinedModeMenuItem.addActionListener(new java.awt.event.ActionListener() {
+            public void actionPerformed(java.awt.event.ActionEvent evt) {
+                pipelinedModeMenuItemActionPerformed(evt);
+            }
+        });
+        modeMenu.add(pipelinedModeMenuItem);
         modeMenu.add(jSeparator1);
 
         measurePerformanceCheckBoxMenuItem.setMnemonic('p');
         measurePerformanceCheckBoxMenuItem.setText("Measure filter processing time");
-        measurePerformanceCheckBoxMenuItem.setToolTipText("Enables instrumentation of filter performance. Filter processing time statistics are printed to System.out. They appear in netbeans IDE console, for example, but not in built-in jAER console, which does not show System.out.");
+        measurePerformanceCheckBoxMenuItem.setToolTipText("Enables instrumentation of filter performance. Per-filter latency, throughput and filtered-out statistics are collected and can be exported, or queried with the filtermetrics remote control command.");
         measurePerformanceCheckBoxMenuItem.addActionListener(new java.awt.event.ActionListener() {
             public void actionPerformed(java.awt.event.ActionEvent evt) {
                 measurePerformanceCheckBoxMenuItemActionPerformed(evt);
@@ -420,6 +437,16 @@ public class FilterFrame<PanelType extends FilterPanel> extends javax.swing.JFra
             }
         });
         modeMenu.add(resetPerformanceMeasurementMI);
+
+        exportPerformanceMetricsMI.setMnemonic('x');
+        exportPerformanceMetricsMI.setText("Export performance metrics...");
+        exportPerformanceMetricsMI.setToolTipText("Logs the per-filter metrics and exports them to a CSV log or, if the file name ends with .json, a JSON file");
+        exportPerformanceMetricsMI.addActionListener(new java.awt.event.ActionListener() {
+            public void actionPerformed(java.awt.event.ActionEvent evt) {
+                exportPerformanceMetricsMIActionPerformed(evt);
+            }
+        });
+        modeMenu.add(exportPerformanceMetricsMI);
         modeMenu.add(jSeparator3);
 
         limitTimeCheckBoxMenuItem.setMnemonic('l');
@@ -571,6 +598,10 @@ public class FilterFrame<PanelType extends FilterPanel> extends javax.swing.JFra
             filterChain.setProcessingMode(FilterChain.ProcessingMode.RENDERING);
 	}//GEN-LAST:event_renderingModeMenuItemActionPerformed
 
+    private void pipelinedModeMenuItemActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_pipelinedModeMenuItemActionPerformed
+        filterChain.setProcessingMode(FilterChain.ProcessingMode.PIPELINED);
+    }//GEN-LAST:event_pipelinedModeMenuItemActionPerformed
+
     /**
      * renews contents by newing all filters, thus filling them with preference
      * values. This is how preferences can replace values without using
@@ -756,6 +787,31 @@ public class FilterFrame<PanelType extends FilterPanel> extends javax.swing.JFra
         }
     }//GEN-LAST:event_resetPerformanceMeasurementMIActionPerformed
 
+    private void exportPerformanceMetricsMIActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_exportPerformanceMetricsMIActionPerformed
+        if (filterChain == null) {
+            return;
+        }
+        log.info("filter metrics:\n" + filterChain.getMetrics());
+        JFileChooser fileChooser = new JFileChooser();
+        String lastMetricsFile = prefs.get("FilterFrame.lastMetricsFile", null);
+        if (lastMetricsFile != null) {
+            fileChooser.setSelectedFile(new File(lastMetricsFile));
+        } else {
+            fileChooser.setCurrentDirectory(new File(System.getProperty("user.dir")));
+            fileChooser.setSelectedFile(new File("filtermetrics.csv"));
+        }
+        fileChooser.setDialogTitle("Export filter metrics to (appends to .csv, overwrites .json)");
+        if (fileChooser.showSaveDialog(this) == JFileChooser.APPROVE_OPTION) {
+            File file = fileChooser.getSelectedFile();
+            try {
+                filterChain.getMetrics().export(file);
+                prefs.put("FilterFrame.lastMetricsFile", file.getPath());
+            } catch (IOException e) {
+                JOptionPane.showMessageDialog(this, "Couldn't export metrics: " + e, "Export failed", JOptionPane.WARNING_MESSAGE);
+            }
+        }
+    }//GEN-LAST:event_exportPerformanceMetricsMIActionPerformed
+
     private void searchTFActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_searchTFActionPerformed
         // search for and highlight filter starting with string
 
@@ -815,6 +871,8 @@ public class FilterFrame<PanelType extends FilterPanel> extends javax.swing.JFra
                 acquisitionModeMenuItem.setSelected(true);
             } else if (evt.getNewValue() == FilterChain.ProcessingMode.RENDERING) {
                 renderingModeMenuItem.setSelected(true);
+            } else if (evt.getNewValue() == FilterChain.ProcessingMode.PIPELINED) {
+                pipelinedModeMenuItem.setSelected(true);
             }
         }
     }
@@ -897,6 +955,7 @@ public class FilterFrame<PanelType extends FilterPanel> extends javax.swing.JFra
     private javax.swing.JMenuItem customizeMenuItem;
     private javax.swing.JToggleButton disableFilteringToggleButton;
     private javax.swing.JMenuItem exitMenuItem;
+    private javax.swing.JMenuItem exportPerformanceMetricsMI;
     private javax.swing.JMenu fileMenu;
     protected javax.swing.JPanel filtersPanel;
     private javax.swing.JMenu helpMenu;
@@ -915,6 +974,7 @@ public class FilterFrame<PanelType extends FilterPanel> extends javax.swing.JFra
     private javax.swing.ButtonGroup modeButtonGroup;
     private javax.swing.JMenu modeMenu;
     private javax.swing.JButton overviewButton;
+    private javax.swing.JRadioButtonMenuItem pipelinedModeMenuItem;
     private javax.swing.JRadioButtonMenuItem renderingModeMenuItem;
     private javax.swing.JButton resetAllButton;
     private javax.swing.JMenuItem resetPerformanceMeasurementMI;
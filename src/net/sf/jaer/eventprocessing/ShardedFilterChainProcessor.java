@@ -0,0 +1,620 @@
+/*
+ * ShardedFilterChainProcessor.java
+ *
+ * Created on October 18, 2026
+ */
+package net.sf.jaer.eventprocessing;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Constructor;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.logging.Logger;
+
+import ml.options.Options;
+import ml.options.Options.Multiplicity;
+import ml.options.Options.Separator;
+import net.sf.jaer.aemonitor.AEPacketRaw;
+import net.sf.jaer.chip.AEChip;
+import net.sf.jaer.chip.EventExtractor2D;
+import net.sf.jaer.event.EventPacket;
+import net.sf.jaer.eventio.AEFileInputStream;
+import net.sf.jaer.eventio.AEFileOutputStream;
+import net.sf.jaer.eventio.AEFileTimestampIndex;
+import static net.sf.jaer.graphics.AEViewer.DEFAULT_CHIP_CLASS;
+import static net.sf.jaer.graphics.AEViewer.prefs;
+
+/**
+ * Runs a filter chain over a recording in parallel, like
+ * {@link FilterChainBatchProcessor} but split into time shards. The recording
+ * is cut into shards of equal duration at event positions found with the
+ * file's {@link AEFileTimestampIndex}. Each shard is processed on its own
+ * thread by its own chip, event extractor and {@link FilterChain}, created by
+ * a {@link ChainFactory}, so that no filter state is shared between threads.
+ * <p>
+ * Filters have state that depends on the past events, e.g. the last event
+ * timestamps of a background activity filter. To rebuild this state, each
+ * shard except the first starts reading {@link #getWarmupUs() } before its
+ * start and runs these warm-up events through the chain but drops their
+ * output. The output of the shard is then nearly what a single chain over the
+ * whole file would give, provided the warm-up is longer than the memory of
+ * the filters.
+ * <p>
+ * The outputs of the shards are written to temporary files next to the output
+ * file and appended to the output file in shard order at the end.
+ * <p>
+ * The file must have monotonic timestamps for the index to be searched; if it
+ * has not, e.g. because time wrapped, or if it is a jAER 3.0 file, it is
+ * processed as one shard.
+ */
+public class ShardedFilterChainProcessor {
+
+    private static final Logger log = Logger.getLogger("net.sf.jaer");
+    /**
+     * Default warm-up duration before each shard in us
+     */
+    public static final int DEFAULT_WARMUP_US = 1000000;
+
+    /**
+     * Creates the independent chip and filter chain of each shard
+     */
+    public interface ChainFactory {
+
+        /**
+         * @return a new chip, which supplies the event extractor
+         * @throws Exception if the chip cannot be constructed
+         */
+        AEChip createChip() throws Exception;
+
+        /**
+         * @param chip a chip from {@link #createChip() }
+         * @return a new filter chain for the chip
+         * @throws Exception if a filter cannot be constructed
+         */
+        FilterChain createFilterChain(AEChip chip) throws Exception;
+    }
+
+    /**
+     * A part of the recording and the result of processing it
+     */
+    public static class Shard {
+
+        private final int number;
+        private final int startTimestamp, endTimestamp;
+        private final long warmupPosition, startPosition, endPosition;
+        private long numEventsIn, numEventsOut, numWarmupEvents, durationNs;
+
+        Shard(int number, int startTimestamp, int endTimestamp, long warmupPosition, long startPosition, long endPosition) {
+            this.number = number;
+            this.startTimestamp = startTimestamp;
+            this.endTimestamp = endTimestamp;
+            this.warmupPosition = warmupPosition;
+            this.startPosition = startPosition;
+            this.endPosition = endPosition;
+        }
+
+        public int getNumber() {
+            return number;
+        }
+
+        public int getStartTimestamp() {
+            return startTimestamp;
+        }
+
+        public int getEndTimestamp() {
+            return endTimestamp;
+        }
+
+        /**
+         * @return the event position where the warm-up starts
+         */
+        public long getWarmupPosition() {
+            return warmupPosition;
+        }
+
+        /**
+         * @return the position of the first event of the shard
+         */
+        public long getStartPosition() {
+            return startPosition;
+        }
+
+        /**
+         * @return the position after the last event of the shard
+         */
+        public long getEndPosition() {
+            return endPosition;
+        }
+
+        public long getNumEventsIn() {
+            return numEventsIn;
+        }
+
+        public long getNumEventsOut() {
+            return numEventsOut;
+        }
+
+        public long getNumWarmupEvents() {
+            return numWarmupEvents;
+        }
+
+        public long getDurationNs() {
+            return durationNs;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("shard %d [%d,%d) us, events [%d,%d) after %d warm-up events", number, startTimestamp, endTimestamp,
+                    startPosition, endPosition, startPosition - warmupPosition);
+        }
+    }
+
+    private final ChainFactory factory;
+    private int numThreads = Runtime.getRuntime().availableProcessors();
+    private int numShards = 0;
+    private int warmupUs = DEFAULT_WARMUP_US;
+    private int packetSizeEvents = FilterChainBatchProcessor.DEFAULT_PACKET_SIZE_EVENTS;
+    private File outputFile = null;
+
+    private List<Shard> shards = new ArrayList<>();
+    private long totalDurationNs;
+
+    /**
+     * Creates a processor
+     *
+     * @param factory creates the chip and filter chain of each shard
+     */
+    public ShardedFilterChainProcessor(ChainFactory factory) {
+        this.factory = factory;
+    }
+
+    /**
+     * Returns a factory that constructs the chip by its class name and either
+     * the chip's own (preferred) filter chain or a chain of the named filters,
+     * all enabled.
+     *
+     * @param chipClassName the fully qualified class name of the chip
+     * @param filterClassNames the fully qualified class names of the filters,
+     * or null for the chip's filter chain
+     * @return the factory
+     */
+    public static ChainFactory createFactory(final String chipClassName, final String[] filterClassNames) {
+        return new ChainFactory() {
+            @Override
+            public AEChip createChip() throws Exception {
+                Class chipClass = Class.forName(chipClassName);
+                Constructor<AEChip> constructor = chipClass.getConstructor();
+                return constructor.newInstance((java.lang.Object[]) null);
+            }
+
+            @Override
+            public FilterChain createFilterChain(AEChip chip) throws Exception {
+                if (filterClassNames == null) {
+                    return chip.getFilterChain();
+                }
+                FilterChain chain = new FilterChain(chip);
+                for (String name : filterClassNames) {
+                    Class filterClass = Class.forName(name.trim());
+                    Constructor<EventFilter2D> constructor = filterClass.getConstructor(AEChip.class);
+                    EventFilter2D filter = constructor.newInstance(chip);
+                    filter.setFilterEnabled(true);
+                    chain.add(filter);
+                }
+                return chain;
+            }
+        };
+    }
+
+    /**
+     * Processes the whole file.
+     *
+     * @param inputFile the recording
+     * @throws IOException if the input file cannot be read, the output file
+     * cannot be written, or a chip or filter chain cannot be created
+     */
+    public void process(final File inputFile) throws IOException {
+        final long startNs = System.nanoTime();
+        final AEChip[] chips;
+        final FilterChain[] chains;
+        try {
+            shards = planShards(inputFile, factory.createChip());
+            chips = new AEChip[shards.size()];
+            chains = new FilterChain[shards.size()];
+            for (int i = 0; i < shards.size(); i++) { // on this thread, since chips and filters may use preferences and statics while constructed
+                chips[i] = factory.createChip();
+                chains[i] = factory.createFilterChain(chips[i]);
+                if (chains[i].isTimeLimitEnabled()) {
+                    log.warning("FilterChain time limit is enabled; filters may skip events of packets that take longer than " + chains[i].getTimeLimitMs() + " ms");
+                }
+            }
+        } catch (IOException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOException("could not create chip or filter chain: " + e.toString(), e);
+        }
+
+        final ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(numThreads, shards.size())), new ThreadFactory() {
+            int count = 0;
+
+            @Override
+            public Thread newThread(Runnable r) {
+                final Thread t = new Thread(r, "ShardedFilterChainProcessor-" + (count++));
+                t.setDaemon(true);
+                return t;
+            }
+        });
+        final File[] shardFiles = new File[shards.size()];
+        try {
+            final List<Future<Shard>> futures = new ArrayList<>();
+            for (int i = 0; i < shards.size(); i++) {
+                if (outputFile != null) {
+                    shardFiles[i] = File.createTempFile(outputFile.getName() + "-shard" + i + "-", ".tmp", outputFile.getAbsoluteFile().getParentFile());
+                    shardFiles[i].deleteOnExit();
+                }
+                final Shard shard = shards.get(i);
+                final AEChip chip = chips[i];
+                final FilterChain chain = chains[i];
+                final File shardFile = shardFiles[i];
+                futures.add(executor.submit(new Callable<Shard>() {
+                    @Override
+                    public Shard call() throws IOException {
+                        processShard(inputFile, shard, chip, chain, shardFile);
+                        return shard;
+                    }
+                }));
+            }
+            AEFileOutputStream aos = null;
+            try {
+                if (outputFile != null) {
+                    aos = new AEFileOutputStream(new FileOutputStream(outputFile), chips[0], "2.0");
+                }
+                for (int i = 0; i < futures.size(); i++) { // merge in shard order as the shards finish
+                    final Shard shard = futures.get(i).get();
+                    log.info("finished " + shard + " in " + (shard.durationNs / 1000000) + " ms");
+                    if (aos != null) {
+                        appendShardFile(shardFiles[i], aos);
+                        shardFiles[i].delete();
+                    }
+                }
+            } finally {
+                if (aos != null) {
+                    aos.close();
+                }
+            }
+        } catch (InterruptedException e) {
+            throw new IOException("interrupted while processing " + inputFile, e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException("processing a shard of " + inputFile + " failed: " + e.getCause(), e.getCause());
+        } finally {
+            executor.shutdownNow();
+            for (File f : shardFiles) {
+                if (f != null) {
+                    f.delete();
+                }
+            }
+            totalDurationNs = System.nanoTime() - startNs;
+        }
+    }
+
+    /**
+     * Cuts the file into shards of equal duration.
+     *
+     * @param inputFile the recording
+     * @param chip a chip to open the file with
+     * @return the shards
+     * @throws IOException if the file cannot be read
+     */
+    private List<Shard> planShards(File inputFile, AEChip chip) throws IOException {
+        final List<Shard> list = new ArrayList<>();
+        final AEFileInputStream ais = new AEFileInputStream(inputFile, chip);
+        try {
+            ais.setNonMonotonicTimeExceptionsChecked(false);
+            ais.setRepeat(false);
+            final long size = ais.size();
+            final int first = ais.getFirstTimestamp(), last = ais.getLastTimestamp();
+            final AEFileTimestampIndex index = ais.getTimestampIndex();
+            int n = numShards > 0 ? numShards : numThreads;
+            if ((index == null) || !index.isMonotonic() || (ais.getTimestampResetBitmask() != 0)) {
+                log.warning(inputFile + " has no usable timestamp index (time wraps, timestamp resets or jAER 3.0 format), processing it as one shard");
+                n = 1;
+            }
+            n = (int) Math.max(1, Math.min(n, Math.min(size, (long) last - first + 1)));
+            final long duration = (long) last - first + 1;
+            long startPosition = 0;
+            int startTimestamp = first;
+            for (int i = 0; i < n; i++) {
+                final int endTimestamp = i == (n - 1) ? last + 1 : (int) (first + ((duration * (i + 1)) / n));
+                final long endPosition = i == (n - 1) ? size : positionOf(ais, endTimestamp);
+                final long warmupPosition = i == 0 ? 0 : positionOf(ais, (int) Math.max(first, (long) startTimestamp - warmupUs));
+                list.add(new Shard(i, startTimestamp, endTimestamp, Math.min(warmupPosition, startPosition), startPosition, endPosition));
+                startPosition = endPosition;
+                startTimestamp = endTimestamp;
+            }
+        } finally {
+            ais.close();
+        }
+        log.info("processing " + inputFile + " in " + list.size() + " shards on " + numThreads + " threads with " + warmupUs + " us warm-up");
+        return list;
+    }
+
+    private static long positionOf(AEFileInputStream ais, int timestamp) throws IOException {
+        ais.positionAtTimestamp(timestamp);
+        return ais.position();
+    }
+
+    /**
+     * Runs the warm-up and the events of the shard through the chain and
+     * writes the output of the shard events to the shard file.
+     */
+    private void processShard(File inputFile, Shard shard, AEChip chip, FilterChain chain, File shardFile) throws IOException {
+        final long startNs = System.nanoTime();
+        final AEFileInputStream ais = new AEFileInputStream(inputFile, chip);
+        DataOutputStream out = null;
+        try {
+            ais.setNonMonotonicTimeExceptionsChecked(false);
+            ais.setRepeat(false);
+            if (shardFile != null) {
+                out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(shardFile), 1 << 16));
+            }
+            final EventExtractor2D extractor = chip.getEventExtractor();
+            ais.position(shard.warmupPosition);
+            long pos = shard.warmupPosition;
+            while (pos < shard.endPosition) {
+                final boolean warmup = pos < shard.startPosition;
+                final AEPacketRaw raw;
+                try { // warm-up packets end at the shard start, so that its output can be dropped per packet
+                    raw = ais.readPacketByNumber((int) Math.min(packetSizeEvents, (warmup ? shard.startPosition : shard.endPosition) - pos));
+                } catch (EOFException e) {
+                    break;
+                }
+                final int n = raw.getNumEvents();
+                if (n == 0) {
+                    break;
+                }
+                pos += n;
+                final EventPacket<?> filtered = chain.filterPacket(extractor.extractPacket(raw));
+                if (warmup) {
+                    shard.numWarmupEvents += n;
+                    continue;
+                }
+                shard.numEventsIn += n;
+                if (out != null) {
+                    final AEPacketRaw r = extractor.reconstructRawPacket(filtered);
+                    final int[] a = r.getAddresses(), t = r.getTimestamps();
+                    for (int i = 0; i < r.getNumEvents(); i++) {
+                        out.writeInt(a[i]);
+                        out.writeInt(t[i]);
+                    }
+                }
+                shard.numEventsOut += filtered.getSizeNotFilteredOut(); // after writing, like FilterChainBatchProcessor
+            }
+        } finally {
+            ais.close();
+            if (out != null) {
+                out.close();
+            }
+            shard.durationNs = System.nanoTime() - startNs;
+        }
+    }
+
+    private void appendShardFile(File shardFile, AEFileOutputStream aos) throws IOException {
+        final AEPacketRaw packet = new AEPacketRaw(packetSizeEvents);
+        final int[] a = packet.getAddresses(), t = packet.getTimestamps();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(shardFile), 1 << 16))) {
+            long remaining = shardFile.length() / 8;
+            while (remaining > 0) {
+                final int n = (int) Math.min(remaining, packetSizeEvents);
+                for (int i = 0; i < n; i++) {
+                    a[i] = in.readInt();
+                    t[i] = in.readInt();
+                }
+                packet.setNumEvents(n);
+                aos.writePacket(packet);
+                remaining -= n;
+            }
+        }
+    }
+
+    /**
+     * Returns a report of the shards and the throughput of the last
+     * {@link #process(java.io.File) }
+     *
+     * @return the report
+     */
+    public String getSummary() {
+        final StringBuilder sb = new StringBuilder();
+        long in = 0, out = 0, warmup = 0;
+        sb.append(String.format("%-6s %14s %14s %14s %14s %12s %12s%n", "shard", "start us", "events", "warm-up", "events out", "ms", "ns/event"));
+        for (Shard s : shards) {
+            sb.append(String.format("%-6d %14d %14d %14d %14d %12.1f %12.1f%n", s.number, s.startTimestamp, s.numEventsIn, s.numWarmupEvents, s.numEventsOut,
+                    1e-6 * s.durationNs, s.numEventsIn + s.numWarmupEvents == 0 ? 0 : (double) s.durationNs / (s.numEventsIn + s.numWarmupEvents)));
+            in += s.numEventsIn;
+            out += s.numEventsOut;
+            warmup += s.numWarmupEvents;
+        }
+        sb.append(String.format("%d events (plus %d warm-up events) in %d shards processed in %.3f s: %.3g events/s; %d events out%n",
+                in, warmup, shards.size(), 1e-9 * totalDurationNs, totalDurationNs == 0 ? 0 : (1e9 * in) / totalDurationNs, out));
+        return sb.toString();
+    }
+
+    /**
+     * @return the shards of the last {@link #process(java.io.File) }
+     */
+    public List<Shard> getShards() {
+        return shards;
+    }
+
+    public long getTotalDurationNs() {
+        return totalDurationNs;
+    }
+
+    /**
+     * @return the number of shards processed at the same time
+     */
+    public int getNumThreads() {
+        return numThreads;
+    }
+
+    /**
+     * @param numThreads the number of shards processed at the same time,
+     * default the number of processors
+     */
+    public void setNumThreads(int numThreads) {
+        if (numThreads < 1) {
+            throw new IllegalArgumentException("numThreads must be positive, got " + numThreads);
+        }
+        this.numThreads = numThreads;
+    }
+
+    /**
+     * @return the number of shards, 0 for one per thread
+     */
+    public int getNumShards() {
+        return numShards;
+    }
+
+    /**
+     * @param numShards the number of shards, 0 for one per thread. More
+     * shards than threads balance the load better if the event rate varies
+     * over the recording, but cost more warm-up.
+     */
+    public void setNumShards(int numShards) {
+        if (numShards < 0) {
+            throw new IllegalArgumentException("numShards must not be negative, got " + numShards);
+        }
+        this.numShards = numShards;
+    }
+
+    /**
+     * @return the warm-up duration before each shard in us
+     */
+    public int getWarmupUs() {
+        return warmupUs;
+    }
+
+    /**
+     * @param warmupUs the warm-up duration before each shard in us, 0 for no
+     * warm-up
+     */
+    public void setWarmupUs(int warmupUs) {
+        if (warmupUs < 0) {
+            throw new IllegalArgumentException("warmupUs must not be negative, got " + warmupUs);
+        }
+        this.warmupUs = warmupUs;
+    }
+
+    /**
+     * @return the number of events read from the file per packet
+     */
+    public int getPacketSizeEvents() {
+        return packetSizeEvents;
+    }
+
+    /**
+     * @param packetSizeEvents the number of events read from the file per
+     * packet
+     */
+    public void setPacketSizeEvents(int packetSizeEvents) {
+        if (packetSizeEvents < 1) {
+            throw new IllegalArgumentException("packetSizeEvents must be positive, got " + packetSizeEvents);
+        }
+        this.packetSizeEvents = packetSizeEvents;
+    }
+
+    /**
+     * @return the output data file, or null if the output is discarded
+     */
+    public File getOutputFile() {
+        return outputFile;
+    }
+
+    /**
+     * @param outputFile the AER-DAT2.0 file the filtered events are written
+     * to, or null to discard them
+     */
+    public void setOutputFile(File outputFile) {
+        this.outputFile = outputFile;
+    }
+
+    public static final String USAGE = "java -Djava.awt.headless=true ShardedFilterChainProcessor [-aechip=aechipclassname (fully qualified class name, e.g. eu.seebetter.ini.chips.davis.DAVIS240C)] "
+            + "[-filters=filterclassname,filterclassname,...] [-threads=" + Runtime.getRuntime().availableProcessors() + "] [-shards=0] [-warmupus=" + DEFAULT_WARMUP_US + "] "
+            + "[-packetsize=" + FilterChainBatchProcessor.DEFAULT_PACKET_SIZE_EVENTS + "] "
+            + "inputFile.aedat [outputfile.aedat]"
+            + "\n"
+            + "Note arguments values are assigned with =, not space"
+            + "\n"
+            + "If -filters is not provided the chip's preferred filters and their enabled states from the last AEViewer session are used. "
+            + "If -shards is 0 there is one shard per thread. "
+            + "If outputfile is not provided the filtered events are discarded.";
+
+    public static void main(String[] args) {
+        Options opt = new Options(args, 1, 2);
+        opt.getSet().addOption("aechip", Separator.EQUALS, Multiplicity.ZERO_OR_ONE);
+        opt.getSet().addOption("filters", Separator.EQUALS, Multiplicity.ZERO_OR_ONE);
+        opt.getSet().addOption("threads", Separator.EQUALS, Multiplicity.ZERO_OR_ONE);
+        opt.getSet().addOption("shards", Separator.EQUALS, Multiplicity.ZERO_OR_ONE);
+        opt.getSet().addOption("warmupus", Separator.EQUALS, Multiplicity.ZERO_OR_ONE);
+        opt.getSet().addOption("packetsize", Separator.EQUALS, Multiplicity.ZERO_OR_ONE);
+        if (!opt.check()) {
+            System.out.println(USAGE);
+            System.exit(1);
+        }
+
+        String chipname = null;
+        if (opt.getSet().isSet("aechip")) {
+            chipname = opt.getSet().getOption("aechip").getResultValue(0);
+        } else {
+            chipname = prefs.get("AEViewer.aeChipClassName", DEFAULT_CHIP_CLASS);
+        }
+        final String[] filters = opt.getSet().isSet("filters") ? opt.getSet().getOption("filters").getResultValue(0).split(",") : null;
+        final ShardedFilterChainProcessor processor = new ShardedFilterChainProcessor(createFactory(chipname, filters));
+        try {
+            if (opt.getSet().isSet("threads")) {
+                processor.setNumThreads(Integer.parseInt(opt.getSet().getOption("threads").getResultValue(0)));
+            }
+            if (opt.getSet().isSet("shards")) {
+                processor.setNumShards(Integer.parseInt(opt.getSet().getOption("shards").getResultValue(0)));
+            }
+            if (opt.getSet().isSet("warmupus")) {
+                processor.setWarmupUs(Integer.parseInt(opt.getSet().getOption("warmupus").getResultValue(0)));
+            }
+            if (opt.getSet().isSet("packetsize")) {
+                processor.setPacketSizeEvents(Integer.parseInt(opt.getSet().getOption("packetsize").getResultValue(0)));
+            }
+        } catch (IllegalArgumentException e) {
+            System.err.println("Bad argument: " + e.toString());
+            System.out.println(USAGE);
+            System.exit(1);
+        }
+        if (opt.getSet().getData().size() == 2) {
+            processor.setOutputFile(new File(opt.getSet().getData().get(1)));
+        }
+
+        File inpfile = new File(opt.getSet().getData().get(0));
+        try {
+            processor.process(inpfile);
+        } catch (IOException ex) {
+            System.err.println("Couldn't process file " + inpfile + " from working directory " + System.getProperty("user.dir") + " : " + ex.toString());
+            System.exit(1);
+        }
+        System.out.print(processor.getSummary());
+        System.exit(0);
+    }
+}
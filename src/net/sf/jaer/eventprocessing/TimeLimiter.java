@@ -12,8 +12,6 @@
 
 package net.sf.jaer.eventprocessing;
 
-import java.util.Timer;
-import java.util.TimerTask;
 import java.util.logging.Logger;
 
 /**
@@ -21,17 +19,25 @@ import java.util.logging.Logger;
  cheap checking for whether this time is exceeded. Event processors use
  it to limit their own execution time. The caller initializes the 
  TimeLimiter and then calls to see if this time has been exceeded.
+ <p>
+ * The limiter only stores a deadline on the System.nanoTime clock when it is
+ * (re)started and compares the clock with it when checked, so it has no
+ * thread or timer task. Every EventPacket owns one, so this keeps packets
+ * cheap to create and restart. Since reading the clock costs tens of ns,
+ * iterators check it only every {@link #CHECK_INTERVAL_EVENTS} events.
  
  * @author tobi
  */
-final public class TimeLimiter extends Timer{
+final public class TimeLimiter {
     private static Logger log=Logger.getLogger("TimeLimiter");
 //    int counter=0;
     public final int DEFAULT_TIME_LIMIT_MS=10;
+    /** Number of events an iterator may return between checks of the clock */
+    public static final int CHECK_INTERVAL_EVENTS=32;
     volatile public boolean timedOut=false;
     private int timeLimitMs=DEFAULT_TIME_LIMIT_MS;
     volatile private boolean enabled=false;
-    private TimerTask currentTask=null;
+    volatile private long deadlineNs=0;
     
 //    /** only check System.nanoTime every checkTimeInterval calls to isTimedOut */
 //    public static final int checkTimeInterval=100;
@@ -50,19 +56,7 @@ final public class TimeLimiter extends Timer{
     private void start(int ms){
         timedOut=false;
         setTimeLimitMs(ms);
-        if(currentTask!=null){
-            currentTask.cancel();
-        }
-        if(enabled){
-            schedule(currentTask= new TimerTask(){
-                public void run(){
-                    if(enabled) {
-//                        log.info("timeout after "+timeLimitMs+" ms");
-                        timedOut=true;
-                    }
-                }
-            },ms);
-        }
+        deadlineNs=System.nanoTime()+(ms*1000000L);
     }
     
     final public void restart(){
@@ -74,7 +68,12 @@ final public class TimeLimiter extends Timer{
      @return true if time exceeded and timeout is enabled, otherwise false
      */
     final public boolean isTimedOut(){
-        return enabled && timedOut;
+        if(!enabled) return false;
+        if(!timedOut && (System.nanoTime()-deadlineNs)>=0){ // difference, since nanoTime may overflow
+//            log.info("timeout after "+timeLimitMs+" ms");
+            timedOut=true;
+        }
+        return timedOut;
     }
     
     final public int getTimeLimitMs() {
@@ -0,0 +1,116 @@
+/*
+ * ClusterPath.java
+ *
+ * Created on October 18, 2026
+ */
+package net.sf.jaer.eventprocessing.tracking;
+
+import java.util.AbstractList;
+
+/**
+ * The path of a cluster, held in a ring buffer of {@link ClusterPathPoint}. Once the ring is full, adding a point after
+ * removing the oldest one reuses the removed point object, so that a cluster whose path is trimmed to a fixed length
+ * does not allocate anything while it is tracked.
+ * <p>
+ * Because points are reused, a point obtained from the path may later describe another position; copy it to keep it.
+ */
+public class ClusterPath extends AbstractList<ClusterPathPoint> {
+
+    private ClusterPathPoint[] points;
+    private int start = 0, size = 0;
+
+    /**
+     * Constructs an empty path
+     *
+     * @param capacity the initial number of points that can be held; the path grows if more are added
+     */
+    public ClusterPath(int capacity) {
+        points = new ClusterPathPoint[capacity < 2 ? 2 : capacity];
+    }
+
+    /**
+     * Appends a point, reusing a point that was removed before if there is one
+     *
+     * @param x the x location
+     * @param y the y location
+     * @param t the timestamp
+     * @param numEvents the number of events that contributed to this point
+     * @return the added point
+     */
+    public ClusterPathPoint add(float x, float y, int t, int numEvents) {
+        if (size == points.length) {
+            grow();
+        }
+        final int i = index(size);
+        ClusterPathPoint p = points[i];
+        if (p == null) {
+            p = new ClusterPathPoint(x, y, t, numEvents);
+            points[i] = p;
+        } else {
+            p.set(x, y, t, numEvents);
+        }
+        size++;
+        modCount++;
+        return p;
+    }
+
+    /**
+     * Removes the oldest point. The point object is kept to be reused by a following add.
+     *
+     * @return the removed point
+     * @throws IndexOutOfBoundsException if the path is empty
+     */
+    public ClusterPathPoint removeFirst() {
+        if (size == 0) {
+            throw new IndexOutOfBoundsException("path is empty");
+        }
+        final ClusterPathPoint p = points[start];
+        start = index(1);
+        size--;
+        modCount++;
+        return p;
+    }
+
+    /**
+     * Returns the newest point
+     *
+     * @return the newest point, or null if the path is empty
+     */
+    public ClusterPathPoint getLast() {
+        return size == 0 ? null : points[index(size - 1)];
+    }
+
+    @Override
+    public ClusterPathPoint get(int i) {
+        if ((i < 0) || (i >= size)) {
+            throw new IndexOutOfBoundsException("index " + i + " size " + size);
+        }
+        return points[index(i)];
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public void clear() {
+        start = 0;
+        size = 0;
+        modCount++;
+    }
+
+    private int index(int i) {
+        final int j = start + i;
+        return j < points.length ? j : j - points.length;
+    }
+
+    private void grow() {
+        final ClusterPathPoint[] a = new ClusterPathPoint[points.length * 2];
+        for (int i = 0; i < points.length; i++) {
+            a[i] = points[index(i)]; // keeps removed points, which follow the live ones, for reuse
+        }
+        points = a;
+        start = 0;
+    }
+}
@@ -17,6 +17,8 @@ public class ClusterPathPoint extends Point2D.Float {
     public Point2D.Float velocityPPT=null;
     /** disparity of stereo vision. Valid for stereo vision only */
     public float stereoDisparity;
+    /** velocityPPT object of the previous use of this point, kept to be reused */
+    private Point2D.Float spareVelocityPPT = null;
 
     public ClusterPathPoint(float x, float y, int t, int numEvents) {
         super();
@@ -26,6 +28,34 @@ public class ClusterPathPoint extends Point2D.Float {
         this.nEvents = numEvents;
     }
 
+    /** Reuses this point for another position, e.g. in a {@link ClusterPath}. velocityPPT is reset to null
+     * and stereoDisparity to 0.
+     */
+    void set(float x, float y, int t, int numEvents) {
+        this.x = x;
+        this.y = y;
+        this.t = t;
+        this.nEvents = numEvents;
+        if (velocityPPT != null) {
+            spareVelocityPPT = velocityPPT;
+            velocityPPT = null;
+        }
+        stereoDisparity = 0;
+    }
+
+    /** Sets velocityPPT, creating it if it is null, or reusing the one of the previous use of this point.
+     *
+     * @param vx x velocity in pixels per timestamp tick
+     * @param vy y velocity in pixels per timestamp tick
+     */
+    public void setVelocityPPT(float vx, float vy) {
+        if (velocityPPT == null) {
+            velocityPPT = spareVelocityPPT != null ? spareVelocityPPT : new Point2D.Float();
+            spareVelocityPPT = null;
+        }
+        velocityPPT.setLocation(vx, vy);
+    }
+
     public int getT() {
         return t;
     }
@@ -6,7 +6,6 @@
 package net.sf.jaer.eventprocessing.tracking;
 
 import java.awt.Color;
-import java.awt.Point;
 import java.awt.event.MouseEvent;
 import java.awt.event.MouseListener;
 import java.awt.geom.Point2D;
@@ -19,10 +18,11 @@ import java.text.DateFormat;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
-import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedList;
+import java.util.ListIterator;
 import java.util.Observable;
 import java.util.Observer;
 import java.util.Random;
@@ -622,26 +622,15 @@ public class RectangularClusterTracker extends EventFilter2D
 		Cluster c2 = null;
 		do {
 			mergePending = false;
-			int nc = clusters.size();
-			outer:
-			for (int i = 0; i < nc; i++) {
-				c1 = clusters.get(i);
-				for (int j = i + 1; j < nc; j++) {
-					c2 = clusters.get(j); // getString the other cluster
-					// final boolean overlapping = c1.distanceTo(c2) < (c1.getRadius() + c2.getRadius());
-					final boolean overlapping = c1.isOverlappingCenterOf(c2);
-					boolean velSimilar = true; // start assuming velocities are similar
-					if (overlapping && (velAngDiffDegToNotMerge > 0) && c1.isVisible() && c2.isVisible() && c1.isVelocityValid()
-						&& c2.isVelocityValid() && (c1.velocityAngleToRad(c2) > ((velAngDiffDegToNotMerge * Math.PI) / 180))) {
-						// if velocities valid for both and velocities are sufficiently different
-						velSimilar = false; // then flag them as different velocities
-					}
-					if (overlapping && velSimilar) {
-						// if cluster is close to another cluster, merge them
-						// if distance is less than sum of radii merge them and if velAngle < threshold
-						mergePending = true;
-						break outer; // break out of the outer loop
-					}
+			// the first cluster in the list that should merge with a later one, and the first of these later ones;
+			// only clusters with centers in neighboring bins can overlap
+			fastClusterFinder.binCenters();
+			for (Cluster c : clusters) {
+				c2 = fastClusterFinder.findFirstMergePartner(c);
+				if (c2 != null) {
+					c1 = c;
+					mergePending = true;
+					break;
 				}
 			}
 			if (mergePending && (c1 != null) && (c2 != null)) {
@@ -653,7 +642,9 @@ public class RectangularClusterTracker extends EventFilter2D
 				fastClusterFinder.removeCluster(c2);
 
 				// clusters.add(new Cluster(c1, c2)); // No good for cluster-class overriding!
-				clusters.add(createCluster(c1, c2));
+				Cluster merged = createCluster(c1, c2);
+				clusters.add(merged);
+				fastClusterFinder.addCluster(merged, merged.lastUpdateTime);
 
 				// System.out.println("merged "+c1+" and "+c2);
 			}
@@ -669,6 +660,30 @@ public class RectangularClusterTracker extends EventFilter2D
 		}
 	}
 
+	/**
+	 * Returns true if two clusters should be merged: if one overlaps the center
+	 * of the other, unless both are visible and move in directions that differ
+	 * by more than velAngDiffDegToNotMerge.
+	 *
+	 * @param c1
+	 *            a cluster
+	 * @param c2
+	 *            another cluster
+	 * @return true to merge them
+	 */
+	protected boolean shouldMerge(Cluster c1, Cluster c2) {
+		// final boolean overlapping = c1.distanceTo(c2) < (c1.getRadius() + c2.getRadius());
+		final boolean overlapping = c1.isOverlappingCenterOf(c2);
+		boolean velSimilar = true; // start assuming velocities are similar
+		if (overlapping && (velAngDiffDegToNotMerge > 0) && c1.isVisible() && c2.isVisible() && c1.isVelocityValid()
+			&& c2.isVelocityValid() && (c1.velocityAngleToRad(c2) > ((velAngDiffDegToNotMerge * Math.PI) / 180))) {
+			// if velocities valid for both and velocities are sufficiently different
+			velSimilar = false; // then flag them as different velocities
+		}
+		// if distance is less than sum of radii merge them and if velAngle < threshold
+		return overlapping && velSimilar;
+	}
+
 	/**
 	 * Prunes out old clusters that don't have support or that should be purged
 	 * for some other reason.
@@ -678,7 +693,8 @@ public class RectangularClusterTracker extends EventFilter2D
 	 */
 	protected void pruneClusters(int t) {
 		pruneList.clear();
-		for (Cluster c : clusters) {
+		for (Iterator<Cluster> itr = clusters.iterator(); itr.hasNext();) {
+			Cluster c = itr.next();
 			int t0 = c.lastEventTimestamp;
 			// int t1=ae.getLastTimestamp();
 			int timeSinceSupport = t - t0;
@@ -724,6 +740,7 @@ public class RectangularClusterTracker extends EventFilter2D
 				// it if there
 				// is something funny about the timestamps
 				pruneList.add(c);
+				itr.remove();
 				c.prune();
 				// String reason=null;
 				// if(t0>t) reason="time went backwards";
@@ -741,7 +758,6 @@ public class RectangularClusterTracker extends EventFilter2D
 			&& !pruneList.isEmpty()) {
 			clusterLogger.logClusterHistories(pruneList);
 		}
-		clusters.removeAll(pruneList);
 		for (Cluster c : pruneList) {
 			fastClusterFinder.removeCluster(c);
 			c = null;
@@ -766,12 +782,24 @@ public class RectangularClusterTracker extends EventFilter2D
 		updateClusterLocations(t);
 		updateClusterPaths(t);
 		updateClusterMasses(t);
-		visibleClusters.clear();
+		// overwrite the visible clusters in place, so that list nodes are only allocated when their number grows
+		ListIterator<Cluster> visible = visibleClusters.listIterator();
 		for (Cluster c : clusters) {
 			if (c.checkAndSetClusterVisibilityFlag(t)) {
-				visibleClusters.add(c);
+				if (visible.hasNext()) {
+					visible.next();
+					visible.set(c);
+				}
+				else {
+					visible.add(c);
+				}
 			}
 		}
+		while (visible.hasNext()) {
+			visible.next();
+			visible.remove();
+		}
+		fastClusterFinder.refresh(t); // velocities, locations and sizes have changed
 	}
 
 	@Override
@@ -816,6 +844,7 @@ public class RectangularClusterTracker extends EventFilter2D
 		for (Cluster c : clusters) {
 			c.getLastPacketLocation().setLocation(c.location);
 		}
+		fastClusterFinder.refresh(in.getFirstTimestamp()); // in case clusters were changed since the last packet
 
 		// for each event, see which cluster it is closest to and add it to this cluster.
 		// if its too far from any cluster, make a new cluster if we have not jet
@@ -837,6 +866,7 @@ public class RectangularClusterTracker extends EventFilter2D
 				else {
 					closest.addEvent(ev);
 				}
+				fastClusterFinder.updateIndex(closest, ev.timestamp); // it has moved or changed its size
 			}
 			else if (clusters.size() < maxNumClusters) { // start a new cluster
 				Cluster newCluster;
@@ -847,6 +877,7 @@ public class RectangularClusterTracker extends EventFilter2D
 					newCluster = createCluster(ev);
 				}
 				clusters.add(newCluster);
+				fastClusterFinder.addCluster(newCluster, ev.timestamp);
 			}
 
 			updatedClusterList = maybeCallUpdateObservers(in, (lastTimestamp = ev.timestamp)); // callback to update()
@@ -916,6 +947,9 @@ public class RectangularClusterTracker extends EventFilter2D
 	 * <p>
 	 * The cluster radius is actually defined for x and y directions since the
 	 * cluster may not have a square aspect ratio.
+	 * <p>
+	 * Only the clusters that the {@link FastClusterFinder} region index
+	 * registers near the event are checked.
 	 *
 	 * @param event
 	 *            the event
@@ -926,7 +960,7 @@ public class RectangularClusterTracker extends EventFilter2D
 		float minDistance = Float.MAX_VALUE;
 		Cluster closest = null;
 		float currentDistance = 0;
-		for (Cluster c : clusters) {
+		for (Cluster c : fastClusterFinder.clustersNear(event)) {
 			float rX = c.radiusX;
 			float rY = c.radiusY; // this is surround region for purposes of dynamicSize scaling of cluster size or
 									// aspect ratio
@@ -964,7 +998,7 @@ public class RectangularClusterTracker extends EventFilter2D
 		float minDistance = Float.MAX_VALUE;
 		Cluster closest = null;
 		float currentDistance = 0;
-		for (Cluster c : clusters) {
+		for (Cluster c : fastClusterFinder.clustersNear(event)) {
 			float rX = c.radiusX;
 			float rY = c.radiusY; // this is surround region for purposes of dynamicSize scaling of cluster size or
 									// aspect ratio
@@ -1185,7 +1219,7 @@ public class RectangularClusterTracker extends EventFilter2D
 		private float avgEventRate = 0;
 		private float radius; // in chip chip pixels
 		protected float aspectRatio, radiusX, radiusY;
-		protected LinkedList<ClusterPathPoint> path = new LinkedList<>();
+		protected ClusterPath path = new ClusterPath(pathLength + 1);
 
 		private LowpassFilter vxFilter = new LowpassFilter(), vyFilter = new LowpassFilter();
 		private float avgISI;
@@ -1195,6 +1229,17 @@ public class RectangularClusterTracker extends EventFilter2D
 		protected float instantaneousISI; // ticks/event
 		protected float distanceToLastEvent = Float.POSITIVE_INFINITY;
 		protected float xDistanceToLastEvent = Float.POSITIVE_INFINITY, yDistanceToLastEvent = Float.POSITIVE_INFINITY;
+		/**
+		 * Bookkeeping of the {@link FastClusterFinder} region index: the range
+		 * of cells this cluster is registered in (indexCx0 &lt; 0 if it is
+		 * not), the generation of the index and the rank of the cluster in the
+		 * clusters list when it was registered, the timestamps between which
+		 * the registration covers the capture region, and the bin of the
+		 * cluster center for merging. gridX and gridY are the cell of the
+		 * cluster center in the grid cache (gridX &lt; 0 if it is not cached).
+		 */
+		int gridX = -1, gridY;
+		int indexCx0 = -1, indexCy0, indexCx1, indexCy1, indexGeneration, indexRank, indexValidFrom, indexValidTo, mergeBinIndex;
 
 		// public float tauMsVelocity=50; // LP filter time constant for velocityPPT change
 		// private LowpassFilter velocityFilter=new LowpassFilter();
@@ -2211,16 +2256,14 @@ public class RectangularClusterTracker extends EventFilter2D
 				return; // don't add point unless we had events that caused change in path (aside from prediction from
 						// velocityPPT)
 			}
-			path.add(new ClusterPathPoint(location.x, location.y, t, numEvents - previousNumEvents));
+			path.add(location.x, location.y, t, numEvents - previousNumEvents); // reuses the point trimmed last time
 			previousNumEvents = numEvents;
 			updateVelocity();
 
 			if (path.size() > pathLength) {
 				if (!logDataEnabled || (clusterLoggingMethod != ClusterLoggingMethod.LogClusters)) {
-					// path.remove(path.getString(0)); // if we're logging cluster paths, then save all cluster history
-					// regardless of pathLength
-					path.remove(path.get(0)); // if we're logging cluster paths, then save all cluster history
-												// regardless of pathLength
+					// if we're logging cluster paths, then save all cluster history regardless of pathLength
+					path.removeFirst();
 				}
 			}
 		}
@@ -2235,13 +2278,13 @@ public class RectangularClusterTracker extends EventFilter2D
 			}
 
 			// update velocityPPT of cluster using last two path points
-			Iterator<ClusterPathPoint> itr = path.descendingIterator();
-			ClusterPathPoint plast = itr.next();
+			int i = path.size() - 1;
+			ClusterPathPoint plast = path.get(i--);
 			int nevents = plast.getNEvents();
-			ClusterPathPoint pfirst = itr.next();
-			while ((nevents < thresholdMassForVisibleCluster) && itr.hasNext()) {
+			ClusterPathPoint pfirst = path.get(i--);
+			while ((nevents < thresholdMassForVisibleCluster) && (i >= 0)) {
 				nevents += pfirst.getNEvents();
-				pfirst = itr.next();
+				pfirst = path.get(i--);
 			}
 			if (nevents < thresholdMassForVisibleCluster) {
 				return;
@@ -2257,13 +2300,7 @@ public class RectangularClusterTracker extends EventFilter2D
 				velocityPPT.x = velocityPPT.x * factor;
 				velocityPPT.y = velocityPPT.y * factor;
 			}
-			if (plast.velocityPPT == null) {
-				plast.velocityPPT = new Point2D.Float(velocityPPT.x, velocityPPT.y);
-			}
-			else {
-				plast.velocityPPT.setLocation(velocityPPT.x, velocityPPT.y); // = new Point2D.Float(velocityPPT.x,
-																				// velocityPPT.y);
-			}
+			plast.setVelocityPPT(velocityPPT.x, velocityPPT.y);
 			// float m1=1-velocityMixingFactor;
 			// velocityPPT.x=m1*velocityPPT.x+velocityMixingFactor*vx;
 			// velocityPPT.y=m1*velocityPPT.y+velocityMixingFactor*vy;
@@ -2280,6 +2317,12 @@ public class RectangularClusterTracker extends EventFilter2D
 				isVisible(), getSpeedPPS());
 		}
 
+		/**
+		 * Returns the path of the cluster. The points are reused once they
+		 * are trimmed from the path, so copy a point to keep it.
+		 *
+		 * @return the path, oldest point first
+		 */
 		@Override
 		public java.util.List<ClusterPathPoint> getPath() {
 			return path;
@@ -2898,6 +2941,16 @@ public class RectangularClusterTracker extends EventFilter2D
 
 	/**
 	 * Speeds up finding the nearest cluster to an event.
+	 * <p>
+	 * Besides the grid that caches the cluster centers, it keeps a region
+	 * index: a uniform grid of cells in which each cluster is registered in all
+	 * cells that its capture region (including the surround and the predicted
+	 * movement used by the distance measures) may overlap, plus a margin. A
+	 * cluster is registered again only when it moves or grows out of the
+	 * margin, so events only need to be checked against the few clusters
+	 * registered in their cell, in the same order and with the same result as
+	 * checking all clusters. Clusters that are merged are likewise only
+	 * compared with clusters whose centers lie in neighboring bins.
 	 */
 	protected class FastClusterFinder {
 
@@ -2905,14 +2958,39 @@ public class RectangularClusterTracker extends EventFilter2D
 		 * How much the map is subsampled in bits relative to the pixel array
 		 */
 		final int SUBSAMPLE_BY = 2;
+		/**
+		 * The cells of the region index are 2^INDEX_CELL_SHIFT pixels square
+		 */
+		final int INDEX_CELL_SHIFT = 3;
+		/**
+		 * Pixels added around the capture region of a cluster when it is
+		 * registered, so that it can move for a while before it must be
+		 * registered again
+		 */
+		final float INDEX_MARGIN_PIXELS = 4;
+		/**
+		 * Longest time in ticks that a registration is trusted for
+		 */
+		final int MAX_INDEX_VALID_TICKS = 1 << 28;
 		private Cluster[][] grid = null;
-		private HashMap<Cluster, Point> map = new HashMap();
 		int nx = 0, ny = 0;
+		private ArrayList<Cluster>[] cells = null;
+		private int cnx = 0, cny = 0;
+		private int registeredCount = 0, generation = 0, rankCounter = 0;
+		private int validFrom = 0, validTo = 0; // all registrations cover the capture regions between these timestamps
+		private Cluster[] binned = new Cluster[0];
+		private int[] binHead = new int[0], binNext = new int[0];
+		private float binSize = 1;
+		private int bnx = 1, bny = 1;
 
 		void init() {
 			nx = chip.getSizeX() >> SUBSAMPLE_BY;
 			ny = chip.getSizeY() >> SUBSAMPLE_BY;
 			grid = new Cluster[nx+1][ny+1];
+			cnx = (chip.getSizeX() >> INDEX_CELL_SHIFT) + 1;
+			cny = (chip.getSizeY() >> INDEX_CELL_SHIFT) + 1;
+			cells = new ArrayList[cnx * cny];
+			clearIndex();
 		}
 
 		/**
@@ -2939,6 +3017,31 @@ public class RectangularClusterTracker extends EventFilter2D
 			return c;
 		}
 
+		/**
+		 * Returns the clusters whose capture region may contain the event, in
+		 * the order of the clusters list. These are the clusters registered in
+		 * the cell of the event, or all clusters if the event lies outside the
+		 * index.
+		 *
+		 * @param e
+		 *            the event
+		 * @return the candidate clusters
+		 */
+		protected java.util.List<Cluster> clustersNear(BasicEvent e) {
+			final int cx = e.x >> INDEX_CELL_SHIFT, cy = e.y >> INDEX_CELL_SHIFT;
+			if ((cells == null) || (e.x < 0) || (e.y < 0) || (cx >= cnx) || (cy >= cny)) {
+				return clusters;
+			}
+			if (registeredCount != clusters.size()) {
+				rebuild(e.timestamp); // clusters were added or removed behind our back
+			}
+			else if (((e.timestamp - validFrom) < 0) || ((validTo - e.timestamp) < 0)) {
+				refresh(e.timestamp); // moving clusters may have left their registered cells by now
+			}
+			final ArrayList<Cluster> cell = cells[cx + (cnx * cy)];
+			return cell != null ? cell : Collections.<Cluster>emptyList();
+		}
+
 		/**
 		 * updates the lookup table for this cluster.
 		 *
@@ -2946,7 +3049,7 @@ public class RectangularClusterTracker extends EventFilter2D
 		 *            the cluster to update
 		 */
 		protected void update(Cluster c) {
-			removeCluster(c);
+			removeFromGrid(c);
 			int x = (int) (c.location.x) >> SUBSAMPLE_BY;
 			if (x < 0) {
 				x = 0;
@@ -2962,7 +3065,284 @@ public class RectangularClusterTracker extends EventFilter2D
 				y = ny - 1;
 			}
 			grid[x][y] = c;
-			map.put(c, new Point(x, y));
+			c.gridX = x;
+			c.gridY = y;
+		}
+
+		/**
+		 * Adds a cluster that was appended to the clusters list to the region
+		 * index.
+		 *
+		 * @param c
+		 *            the new cluster
+		 * @param t
+		 *            the present timestamp
+		 */
+		protected void addCluster(Cluster c, int t) {
+			if (cells == null) {
+				return;
+			}
+			c.indexCx0 = -1;
+			c.indexGeneration = generation;
+			c.indexRank = rankCounter++;
+			updateIndex(c, t);
+		}
+
+		/**
+		 * Registers a cluster again in the region index if it has moved or
+		 * grown out of its registered cells, and updates the time for which its
+		 * registration is valid. Called after the cluster has changed.
+		 *
+		 * @param c
+		 *            the cluster, which must have been added
+		 * @param t
+		 *            the present timestamp
+		 */
+		protected void updateIndex(Cluster c, int t) {
+			if ((cells == null) || (c.indexGeneration != generation)) {
+				return;
+			}
+			float rX = c.radiusX, rY = c.radiusY;
+			if (dynamicSizeEnabled) {
+				rX *= surround;
+				rY *= surround;
+			}
+			final float ac = Math.abs(c.cosAngle), as = Math.abs(c.sinAngle);
+			final float hx = (ac * rX) + (as * rY), hy = (as * rX) + (ac * rY); // bounds the rotated capture rectangle
+			final int dt = t - c.lastUpdateTime;
+			final float vx = c.velocityPPT.x, vy = c.velocityPPT.y;
+			final float x = c.location.x - (vx * dt), y = c.location.y - (vy * dt); // center as seen by distanceToX/Y
+			final float cs = 1 << INDEX_CELL_SHIFT;
+			final float check = x + y + hx + hy;
+			if (Float.isNaN(check) || Float.isInfinite(check)) {
+				register(c, 0, 0, cnx - 1, cny - 1); // cannot bound it
+				setValidity(c, t, -MAX_INDEX_VALID_TICKS, MAX_INDEX_VALID_TICKS);
+				return;
+			}
+			// register again if the region came too close to the edge of the registered cells, or if these have become
+			// much larger than needed; the different thresholds avoid registering again each time the cluster jitters
+			final float minSlack = INDEX_MARGIN_PIXELS / 2;
+			if ((c.indexCx0 < 0) || (slackLo(x - hx, c.indexCx0) < minSlack) || (slackHi(x + hx, c.indexCx1, cnx) < minSlack)
+				|| (slackLo(y - hy, c.indexCy0) < minSlack) || (slackHi(y + hy, c.indexCy1, cny) < minSlack)
+				|| (cellOf(x - hx - (2 * INDEX_MARGIN_PIXELS), cnx) > c.indexCx0) || (cellOf(x + hx + (2 * INDEX_MARGIN_PIXELS), cnx) < c.indexCx1)
+				|| (cellOf(y - hy - (2 * INDEX_MARGIN_PIXELS), cny) > c.indexCy0) || (cellOf(y + hy + (2 * INDEX_MARGIN_PIXELS), cny) < c.indexCy1)) {
+				register(c, cellOf(x - hx - INDEX_MARGIN_PIXELS, cnx), cellOf(y - hy - INDEX_MARGIN_PIXELS, cny),
+					cellOf(x + hx + INDEX_MARGIN_PIXELS, cnx), cellOf(y + hy + INDEX_MARGIN_PIXELS, cny));
+			}
+			// the registration stays valid until the predicted center has moved by the slack, less some rounding
+			float dtMin = -MAX_INDEX_VALID_TICKS, dtMax = MAX_INDEX_VALID_TICKS;
+			final float lox = slackLo(x - hx, c.indexCx0) - .5f, hix = slackHi(x + hx, c.indexCx1, cnx) - .5f;
+			final float loy = slackLo(y - hy, c.indexCy0) - .5f, hiy = slackHi(y + hy, c.indexCy1, cny) - .5f;
+			if (vx > 0) {
+				dtMax = Math.min(dtMax, lox / vx);
+				dtMin = Math.max(dtMin, -hix / vx);
+			}
+			else if (vx < 0) {
+				dtMin = Math.max(dtMin, lox / vx);
+				dtMax = Math.min(dtMax, -hix / vx);
+			}
+			if (vy > 0) {
+				dtMax = Math.min(dtMax, loy / vy);
+				dtMin = Math.max(dtMin, -hiy / vy);
+			}
+			else if (vy < 0) {
+				dtMin = Math.max(dtMin, loy / vy);
+				dtMax = Math.min(dtMax, -hiy / vy);
+			}
+			setValidity(c, t, (int) Math.ceil(dtMin), (int) Math.floor(dtMax));
+		}
+
+		/**
+		 * Registers the cluster in the region index for all clusters at time
+		 * t, e.g. after an update of the clusters.
+		 *
+		 * @param t
+		 *            the present timestamp
+		 */
+		protected void refresh(int t) {
+			if (cells == null) {
+				return;
+			}
+			if (registeredCount != clusters.size()) {
+				rebuild(t);
+				return;
+			}
+			validFrom = t - MAX_INDEX_VALID_TICKS;
+			validTo = t + MAX_INDEX_VALID_TICKS;
+			int lastRank = Integer.MIN_VALUE;
+			for (Cluster c : clusters) {
+				if ((c.indexGeneration != generation) || (c.indexCx0 < 0) || (c.indexRank <= lastRank)) {
+					rebuild(t); // cluster list was changed behind our back
+					return;
+				}
+				lastRank = c.indexRank;
+				updateIndex(c, t);
+			}
+		}
+
+		/**
+		 * Registers all clusters anew in the order of the clusters list
+		 */
+		private void rebuild(int t) {
+			clearIndex();
+			validFrom = t - MAX_INDEX_VALID_TICKS;
+			validTo = t + MAX_INDEX_VALID_TICKS;
+			for (Cluster c : clusters) {
+				addCluster(c, t);
+			}
+		}
+
+		private void clearIndex() {
+			if (cells != null) {
+				for (ArrayList<Cluster> cell : cells) {
+					if (cell != null) {
+						cell.clear();
+					}
+				}
+			}
+			generation++;
+			registeredCount = 0;
+			rankCounter = 0;
+			validFrom = 0;
+			validTo = 0;
+		}
+
+		private int cellOf(float v, int n) {
+			final int i = (int) Math.floor(v / (1 << INDEX_CELL_SHIFT));
+			return i < 0 ? 0 : (i >= n ? n - 1 : i);
+		}
+
+		/** Room between the low edge of the registered cells and the capture region, infinite at the edge of the array */
+		private float slackLo(float v, int c0) {
+			return c0 == 0 ? Float.POSITIVE_INFINITY : v - (c0 << INDEX_CELL_SHIFT);
+		}
+
+		/** Room between the capture region and the high edge of the registered cells, infinite at the edge of the array */
+		private float slackHi(float v, int c1, int n) {
+			return c1 == (n - 1) ? Float.POSITIVE_INFINITY : ((c1 + 1) << INDEX_CELL_SHIFT) - v;
+		}
+
+		private void setValidity(Cluster c, int t, int dtMin, int dtMax) {
+			c.indexValidFrom = t + dtMin;
+			c.indexValidTo = t + dtMax;
+			if ((c.indexValidFrom - validFrom) > 0) {
+				validFrom = c.indexValidFrom;
+			}
+			if ((c.indexValidTo - validTo) < 0) {
+				validTo = c.indexValidTo;
+			}
+		}
+
+		/**
+		 * Moves the cluster to the given range of cells, keeping each cell in
+		 * the order of the clusters list
+		 */
+		private void register(Cluster c, int x0, int y0, int x1, int y1) {
+			if (c.indexCx0 >= 0) {
+				if ((x0 == c.indexCx0) && (y0 == c.indexCy0) && (x1 == c.indexCx1) && (y1 == c.indexCy1)) {
+					return;
+				}
+				unregister(c);
+			}
+			c.indexCx0 = x0;
+			c.indexCy0 = y0;
+			c.indexCx1 = x1;
+			c.indexCy1 = y1;
+			registeredCount++;
+			for (int y = y0; y <= y1; y++) {
+				for (int x = x0; x <= x1; x++) {
+					ArrayList<Cluster> cell = cells[x + (cnx * y)];
+					if (cell == null) {
+						cell = new ArrayList<>();
+						cells[x + (cnx * y)] = cell;
+					}
+					int i = cell.size();
+					while ((i > 0) && (cell.get(i - 1).indexRank > c.indexRank)) {
+						i--;
+					}
+					cell.add(i, c);
+				}
+			}
+		}
+
+		private void unregister(Cluster c) {
+			for (int y = c.indexCy0; y <= c.indexCy1; y++) {
+				for (int x = c.indexCx0; x <= c.indexCx1; x++) {
+					final ArrayList<Cluster> cell = cells[x + (cnx * y)];
+					for (int i = cell.size() - 1; i >= 0; i--) {
+						if (cell.get(i) == c) { // not equals(), which compares cluster numbers
+							cell.remove(i);
+							break;
+						}
+					}
+				}
+			}
+			c.indexCx0 = -1;
+			registeredCount--;
+		}
+
+		/**
+		 * Bins the centers of all clusters for
+		 * {@link #findFirstMergePartner(Cluster)}. The bins are at least as
+		 * large as the largest center distance at which two clusters overlap.
+		 */
+		protected void binCenters() {
+			final int n = clusters.size();
+			if (binned.length < n) {
+				binned = new Cluster[2 * n];
+				binNext = new int[2 * n];
+			}
+			float maxRadius = 0;
+			for (Cluster c : clusters) {
+				if (c.getRadius() > maxRadius) {
+					maxRadius = c.getRadius();
+				}
+			}
+			binSize = Math.max(2 * maxRadius, 1 << INDEX_CELL_SHIFT);
+			bnx = Math.max(1, Math.min(1024, (int) (chip.getSizeX() / binSize) + 1));
+			bny = Math.max(1, Math.min(1024, (int) (chip.getSizeY() / binSize) + 1));
+			if (binHead.length < (bnx * bny)) {
+				binHead = new int[bnx * bny];
+			}
+			Arrays.fill(binHead, 0, bnx * bny, -1);
+			int i = 0;
+			for (Cluster c : clusters) {
+				binned[i] = c;
+				c.mergeBinIndex = i;
+				final int b = binOf(c.location.x, bnx) + (bnx * binOf(c.location.y, bny));
+				binNext[i] = binHead[b];
+				binHead[b] = i;
+				i++;
+			}
+		}
+
+		private int binOf(float v, int n) {
+			final int i = (int) Math.floor(v / binSize);
+			return i < 0 ? 0 : (i >= n ? n - 1 : i);
+		}
+
+		/**
+		 * Finds the first cluster after the given one in the clusters list
+		 * that it should merge with, as binned by the last
+		 * {@link #binCenters()}.
+		 *
+		 * @param c1
+		 *            the cluster
+		 * @return the cluster to merge with, or null
+		 */
+		protected Cluster findFirstMergePartner(Cluster c1) {
+			final int bx = binOf(c1.location.x, bnx), by = binOf(c1.location.y, bny);
+			int first = Integer.MAX_VALUE;
+			for (int y = Math.max(0, by - 1); y <= Math.min(bny - 1, by + 1); y++) {
+				for (int x = Math.max(0, bx - 1); x <= Math.min(bnx - 1, bx + 1); x++) {
+					for (int j = binHead[x + (bnx * y)]; j >= 0; j = binNext[j]) {
+						if ((j > c1.mergeBinIndex) && (j < first) && shouldMerge(c1, binned[j])) {
+							first = j;
+						}
+					}
+				}
+			}
+			return first == Integer.MAX_VALUE ? null : binned[first];
 		}
 
 		/**
@@ -2976,7 +3356,9 @@ public class RectangularClusterTracker extends EventFilter2D
 				for (Cluster[] ca : grid) {
 					Arrays.fill(ca, null);
 				}
+				clearIndex();
 			}
+			Arrays.fill(binned, null);
 		}
 
 		/**
@@ -2986,10 +3368,18 @@ public class RectangularClusterTracker extends EventFilter2D
 		 *            the cluster to be removed
 		 */
 		protected void removeCluster(Cluster c) {
-			if (map.containsKey(c)) {
-				Point p = map.get(c);
-				grid[p.x][p.y] = null;
-				map.remove(c);
+			removeFromGrid(c);
+			if ((cells != null) && (c.indexCx0 >= 0) && (c.indexGeneration == generation)) {
+				unregister(c);
+			}
+		}
+
+		private void removeFromGrid(Cluster c) {
+			if (c.gridX >= 0) {
+				if ((c.gridX < grid.length) && (c.gridY < grid[c.gridX].length)) { // grid may have been reallocated
+					grid[c.gridX][c.gridY] = null;
+				}
+				c.gridX = -1;
 			}
 		}
 	}
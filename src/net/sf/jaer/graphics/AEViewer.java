@@ -104,6 +104,7 @@ import net.sf.jaer.eventio.AEFileOutputStream;
 import net.sf.jaer.eventio.AEInputStream;
 import net.sf.jaer.eventio.AEMulticastInput;
 import net.sf.jaer.eventio.AEMulticastOutput;
+import net.sf.jaer.eventio.AEPacketRawWriterInterface;
 import net.sf.jaer.eventio.AEServerSocket;
 import net.sf.jaer.eventio.AEServerSocketOptionsDialog;
 import net.sf.jaer.eventio.AESocket;
@@ -111,6 +112,8 @@ import net.sf.jaer.eventio.AESocketDialog;
 import net.sf.jaer.eventio.AEUnicastDialog;
 import net.sf.jaer.eventio.AEUnicastInput;
 import net.sf.jaer.eventio.AEUnicastOutput;
+import net.sf.jaer.eventio.AsyncAEPacketWriter;
+import net.sf.jaer.eventio.Hdf5FileOutputWriter;
 import net.sf.jaer.eventprocessing.EventFilter;
 import net.sf.jaer.eventprocessing.EventFilter2D;
 import net.sf.jaer.eventprocessing.FilterChain;
@@ -575,7 +578,8 @@ public class AEViewer extends javax.swing.JFrame implements PropertyChangeListen
      * The date formatter used by AEViewer for logged data files
      */
     private File loggingFile;
-    AEFileOutputStream loggingOutputStream;
+    AEPacketRawWriterInterface loggingOutputStream; // AEFileOutputStream, or Hdf5FileOutputWriter for HDF5 files
+    volatile AsyncAEPacketWriter loggingWriter; // writes to loggingOutputStream from its own thread
     private boolean activeRenderingEnabled = prefs.getBoolean("AEViewer.activeRenderingEnabled", true);
     private boolean renderBlankFramesEnabled = prefs.getBoolean("AEViewer.renderBlankFramesEnabled", false);
     // number of packets to skip over rendering, used to speed up real time processing
@@ -588,6 +592,7 @@ public class AEViewer extends javax.swing.JFrame implements PropertyChangeListen
     private long loggingTimeLimit = 0, loggingStartTime = System.currentTimeMillis();
     private boolean stereoModeEnabled = false;
     private boolean logFilteredEventsEnabled = prefs.getBoolean("AEViewer.logFilteredEventsEnabled", false);
+    private boolean loggingHdf5Enabled = prefs.getBoolean("AEViewer.loggingHdf5Enabled", false);
     private DynamicFontSizeJLabel statisticsLabel;
     private boolean filterFrameBuilt = false; // flag to signal that the frame should be rebuilt when initially shown or when chip is changed
     private AEChip chip;
@@ -825,6 +830,7 @@ public class AEViewer extends javax.swing.JFrame implements PropertyChangeListen
         pauseRenderingCheckBoxMenuItem.setSelected(false);// not isPaused because aePlayer doesn't exist yet
         viewRenderBlankFramesCheckBoxMenuItem.setSelected(isRenderBlankFramesEnabled());
         logFilteredEventsCheckBoxMenuItem.setSelected(logFilteredEventsEnabled);
+        loggingHdf5CheckBoxMenuItem.setSelected(loggingHdf5Enabled);
         enableFiltersOnStartupCheckBoxMenuItem.setSelected(enableFiltersOnStartup);
 
 //        fixSkipPacketsRenderingMenuItems();
@@ -2196,8 +2202,9 @@ public class AEViewer extends javax.swing.JFrame implements PropertyChangeListen
         }
 
         /**
-         * Filters packet through processing chain if ProcessingMode is
-         * RENDERING or LIVE. If any filter throws an exception, all filters are
+         * Filters packet through processing chain unless ProcessingMode is
+         * ACQUISITION and the input is LIVE, in which case the hardware
+         * interface has already filtered it. If any filter throws an exception, all filters are
          * disabled.
          *
          * @return true if packet is null, otherwise false.
@@ -2205,7 +2212,7 @@ public class AEViewer extends javax.swing.JFrame implements PropertyChangeListen
         boolean filterPacket() {
 
             // filter events, do processing on them in rendering loop here
-            if ((filterChain.getProcessingMode() == FilterChain.ProcessingMode.RENDERING) || (playMode != PlayMode.LIVE)) {
+            if ((filterChain.getProcessingMode() != FilterChain.ProcessingMode.ACQUISITION) || (playMode != PlayMode.LIVE)) {
                 try {
                     packet = filterChain.filterPacket(packet);
                 } catch (Exception e) {
@@ -2225,20 +2232,28 @@ public class AEViewer extends javax.swing.JFrame implements PropertyChangeListen
         }
 
         void logPacket() {
-            synchronized (loggingOutputStream) {
+            final AsyncAEPacketWriter writer = loggingWriter;
+            if (writer == null) {
+                return;
+            }
+            synchronized (writer) {
+                if (!loggingEnabled || (writer != loggingWriter) || writer.isClosed()) {
+                    return; // stopped, or stopped and restarted with a new writer, while we waited
+                }
                 try {
+                    // the packet is copied and written to disk by the writer thread
                     if (!isLogFilteredEventsEnabled()) {
-                        loggingOutputStream.writePacket(aeRaw); // log all events
+                        writer.writePacket(aeRaw); // log all events
                     } else {
-                        // log the reconstructed packet after filtering
+                        // log the reconstructed packet after filtering; reconstructed here because the cooked packet is reused
                         AEPacketRaw aeRawRecon = extractor.reconstructRawPacket(packet);
-                        loggingOutputStream.writePacket(aeRawRecon);
+                        writer.writePacket(aeRawRecon);
                     }
                 } catch (IOException e) {
                     e.printStackTrace();
                     loggingEnabled = false;
                     try {
-                        loggingOutputStream.close();
+                        writer.close();
                     } catch (IOException e2) {
                         e2.printStackTrace();
                     }
@@ -2272,26 +2287,14 @@ public class AEViewer extends javax.swing.JFrame implements PropertyChangeListen
             // write to network socket if a client has opened a socket to us
             // we serve up events on this socket
 
-            if ((getAeServerSocket() != null) && (getAeServerSocket().getAESocket() != null)) {
-                AESocket s = getAeServerSocket().getAESocket();
-                try {
-                    if (!isLogFilteredEventsEnabled()) {
-                        s.writePacket(aeRaw);
-                    } else {
-                        // send the reconstructed packet after filtering
-                        AEPacketRaw aeRawRecon = extractor.reconstructRawPacket(packet);
-                        s.writePacket(aeRawRecon);
-                    }
-                } catch (IOException e) {
-                    //                            e.printStackTrace();
-                    log.warning("sending packet " + aeRaw + " from " + this + " to " + s + " failed, closing socket");
-                    try {
-                        s.close();
-                    } catch (IOException e2) {
-                        e2.printStackTrace();
-                    } finally {
-                        getAeServerSocket().setSocket(null);
-                    }
+            // the packet is queued for each client without blocking; slow clients are handled by the server
+            if ((getAeServerSocket() != null) && getAeServerSocket().hasClients()) {
+                if (!isLogFilteredEventsEnabled()) {
+                    getAeServerSocket().writePacket(aeRaw);
+                } else {
+                    // send the reconstructed packet after filtering
+                    AEPacketRaw aeRawRecon = extractor.reconstructRawPacket(packet);
+                    getAeServerSocket().writePacket(aeRawRecon);
                 }
             }
 
@@ -2924,6 +2927,7 @@ public class AEViewer extends javax.swing.JFrame implements PropertyChangeListen
         loggingPlaybackImmediatelyCheckBoxMenuItem = new javax.swing.JCheckBoxMenuItem();
         loggingSetTimelimitMenuItem = new javax.swing.JMenuItem();
         logFilteredEventsCheckBoxMenuItem = new javax.swing.JCheckBoxMenuItem();
+        loggingHdf5CheckBoxMenuItem = new javax.swing.JCheckBoxMenuItem();
         networkSeparator = new javax.swing.JSeparator();
         remoteMenu = new javax.swing.JMenu();
         openSocketInputStreamMenuItem = new javax.swing.JMenuItem();
@@ -3232,6 +3236,15 @@ public class AEViewer extends javax.swing.JFrame implements PropertyChangeListen
             }
         });
         fileMenu.add(logFilteredEventsCheckBoxMenuItem);
+
+        loggingHdf5CheckBoxMenuItem.setText("Log to HDF5 file");
+        loggingHdf5CheckBoxMenuItem.setToolTipText("Logging writes an HDF5 file with compressed event datasets (timestamp, address, x, y, polarity, ...) instead of an AEDAT file");
+        loggingHdf5CheckBoxMenuItem.addActionListener(new java.awt.event.ActionListener() {
+            public void actionPerformed(java.awt.event.ActionEvent evt) {
+                loggingHdf5CheckBoxMenuItemActionPerformed(evt);
+            }
+        });
+        fileMenu.add(loggingHdf5CheckBoxMenuItem);
         fileMenu.add(networkSeparator);
 
         remoteMenu.setMnemonic('r');
@@ -4733,9 +4746,11 @@ public class AEViewer extends javax.swing.JFrame implements PropertyChangeListen
      * Starts logging AE data to a file.
      *
      * @param filename the filename to log to, including all path information.
-     * Filenames without path are logged to the startup folder. The default
-     * extension of AEDataFile.DATA_FILE_EXTENSION is appended if there is no
-     * extension.
+     * Filenames without path are logged to the startup folder. Filenames
+     * with extension AEDataFile.HDF5_DATA_FILE_EXTENSION are logged to an
+     * HDF5 file. The default extension of AEDataFile.DATA_FILE_EXTENSION, or
+     * of AEDataFile.HDF5_DATA_FILE_EXTENSION if isLoggingHdf5Enabled(), is
+     * appended if there is no extension.
      *
      * @param dataFileVersionNum the version number string, e.g. "2.0", "3.0",
      * or "3.1". ("2.0" is standard AEDAT file format for pre-caer records and
@@ -4748,15 +4763,23 @@ public class AEViewer extends javax.swing.JFrame implements PropertyChangeListen
             log.warning("tried to log to null filename, aborting");
             return null;
         }
-        if (!filename.toLowerCase().endsWith(AEDataFile.DATA_FILE_EXTENSION) && !filename.toLowerCase().endsWith(AEDataFile.OLD_DATA_FILE_EXTENSION)) {
+        if (!filename.toLowerCase().endsWith(AEDataFile.DATA_FILE_EXTENSION) && !filename.toLowerCase().endsWith(AEDataFile.OLD_DATA_FILE_EXTENSION)
+                && !isHdf5DataFile(new File(filename))) {
             // allow both extensions for  backward compatibility
-            filename = filename + AEDataFile.DATA_FILE_EXTENSION;
-            log.info("Appended extension " + AEDataFile.DATA_FILE_EXTENSION + " to make filename=" + filename);
+            String extension = isLoggingHdf5Enabled() ? AEDataFile.HDF5_DATA_FILE_EXTENSION : AEDataFile.DATA_FILE_EXTENSION;
+            filename = filename + extension;
+            log.info("Appended extension " + extension + " to make filename=" + filename);
         }
         try {
             loggingFile = new File(filename);
 //			loggingOutputStream = new AEFileOutputStream(new BufferedOutputStream(new FileOutputStream(loggingFile), AEFileOutputStream.OUTPUT_BUFFER_SIZE), chip); // tobi changed to 8k buffer (from 400k) because this has measurablly better performance than super large buffer
-            loggingOutputStream = new AEFileOutputStream(new FileOutputStream(loggingFile), chip, dataFileVersionNum); // tobi changed to 8k buffer (from 400k) because this has measurablly better performance than super large buffer
+            if (isHdf5DataFile(loggingFile)) {
+                loggingOutputStream = new Hdf5FileOutputWriter(loggingFile, chip);
+            } else {
+                // large buffer because the stream is written by the thread of loggingWriter, so latency of writes doesn't matter
+                loggingOutputStream = new AEFileOutputStream(new FileOutputStream(loggingFile), chip, dataFileVersionNum, AEFileOutputStream.LARGE_BUFFER_EVENTS);
+            }
+            loggingWriter = new AsyncAEPacketWriter(loggingOutputStream);
 
             if (playMode == PlayMode.PLAYBACK) { // add change listener for rewind to stop logging
                 getAePlayer().getAEInputStream().getSupport().addPropertyChangeListener(AEInputStream.EVENT_REWIND, new PropertyChangeListener() {
@@ -4853,7 +4876,8 @@ public class AEViewer extends javax.swing.JFrame implements PropertyChangeListen
 
         do {
             // log files to tmp folder initially, later user will move or delete file on end of logging
-            filename = lastLoggingFolder + File.separator + className + "-" + dateString + serialNumber + "-" + suffixNumber + AEDataFile.DATA_FILE_EXTENSION;
+            filename = lastLoggingFolder + File.separator + className + "-" + dateString + serialNumber + "-" + suffixNumber
+                    + (isLoggingHdf5Enabled() ? AEDataFile.HDF5_DATA_FILE_EXTENSION : AEDataFile.DATA_FILE_EXTENSION);
             File lf = new File(filename);
             if (!lf.isFile()) {
                 succeeded = true;
@@ -4893,13 +4917,17 @@ public class AEViewer extends javax.swing.JFrame implements PropertyChangeListen
             loggingMenuItem.setText("Start logging data");
             try {
                 log.info("stopped logging at " + AEDataFile.DATE_FORMAT.format(new Date()) + " to file " + loggingFile);
-                synchronized (loggingOutputStream) {
+                synchronized (loggingWriter) {
                     loggingEnabled = false;
-                    loggingOutputStream.close();
+                    loggingWriter.close(); // writes queued packets and closes loggingOutputStream
                 }
                 // if jaer viewer is logging synchronized data files, then just save the file where it was logged originally
 
                 if (confirmFilename && !jaerViewer.isSyncEnabled()) {
+                    final boolean hdf5 = isHdf5DataFile(loggingFile);
+                    final String extension = !hdf5 ? AEDataFile.DATA_FILE_EXTENSION
+                            : loggingFile.getName().toLowerCase().endsWith(AEDataFile.SHORT_HDF5_DATA_FILE_EXTENSION) ? AEDataFile.SHORT_HDF5_DATA_FILE_EXTENSION
+                            : AEDataFile.HDF5_DATA_FILE_EXTENSION;
                     JFileChooser chooser = new JFileChooser();
                     chooser.setCurrentDirectory(lastLoggingFolder);
                     chooser.setFileFilter(new DATFileFilter());
@@ -4909,7 +4937,7 @@ public class AEViewer extends javax.swing.JFrame implements PropertyChangeListen
                             = loggingFile.getName();
                     //                System.out.println("fn="+fn);
                     // strip off .aedat to make it easier to add comment to filename
-                    int extInd = fn.lastIndexOf(AEDataFile.DATA_FILE_EXTENSION);
+                    int extInd = fn.lastIndexOf(extension);
                     String base = fn;
                     if (extInd > 0) {
                         base = fn.substring(0, extInd); // maybe trying to save old .dat extension
@@ -4939,9 +4967,9 @@ public class AEViewer extends javax.swing.JFrame implements PropertyChangeListen
                         retValue = chooser.showSaveDialog(AEViewer.this);
                         if (retValue == JFileChooser.APPROVE_OPTION) {
                             File newFile = chooser.getSelectedFile();
-                            // make sure filename ends with .aedat
-                            if (!newFile.getName().endsWith(AEDataFile.DATA_FILE_EXTENSION)) {
-                                newFile = new File(newFile.getCanonicalPath() + AEDataFile.DATA_FILE_EXTENSION);
+                            // make sure filename ends with .aedat, or .hdf5 or .h5 for HDF5 files
+                            if (hdf5 ? !isHdf5DataFile(newFile) : !newFile.getName().endsWith(extension)) {
+                                newFile = new File(newFile.getCanonicalPath() + extension);
                             }
                             // we'll rename the logged data file to the selection
 
@@ -5471,6 +5499,10 @@ public class AEViewer extends javax.swing.JFrame implements PropertyChangeListen
             setLogFilteredEventsEnabled(logFilteredEventsCheckBoxMenuItem.isSelected());
 	}//GEN-LAST:event_logFilteredEventsCheckBoxMenuItemActionPerformed
 
+	private void loggingHdf5CheckBoxMenuItemActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_loggingHdf5CheckBoxMenuItemActionPerformed
+            setLoggingHdf5Enabled(loggingHdf5CheckBoxMenuItem.isSelected());
+	}//GEN-LAST:event_loggingHdf5CheckBoxMenuItemActionPerformed
+
 	private void loggingSetTimelimitMenuItemActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_loggingSetTimelimitMenuItemActionPerformed
             String ans = JOptionPane.showInputDialog(this, "Enter logging time limit in ms (0 for no limit)", loggingTimeLimit);
             try {
@@ -5682,7 +5714,8 @@ public class AEViewer extends javax.swing.JFrame implements PropertyChangeListen
                 java.util.List<File> files = (java.util.List<File>) transferable.getTransferData(DataFlavor.javaFileListFlavor);
                 for (File f : files) {
                     if (f.getName().endsWith(AEDataFile.DATA_FILE_EXTENSION) || f.getName().endsWith(AEDataFile.INDEX_FILE_EXTENSION)
-                            || f.getName().endsWith(AEDataFile.OLD_DATA_FILE_EXTENSION) || f.getName().endsWith(AEDataFile.OLD_INDEX_FILE_EXTENSION)) {
+                            || f.getName().endsWith(AEDataFile.OLD_DATA_FILE_EXTENSION) || f.getName().endsWith(AEDataFile.OLD_INDEX_FILE_EXTENSION)
+                            || isHdf5DataFile(f)) {
                         draggedFile = f;
                     } else {
                         draggedFile = null;
@@ -5883,6 +5916,33 @@ public class AEViewer extends javax.swing.JFrame implements PropertyChangeListen
         logFilteredEventsCheckBoxMenuItem.setSelected(logFilteredEventsEnabled);
     }
 
+    /**
+     * @return true if startLogging() logs to an HDF5 file instead of an AEDAT
+     * file
+     */
+    public boolean isLoggingHdf5Enabled() {
+        return loggingHdf5Enabled;
+    }
+
+    /**
+     * @param loggingHdf5Enabled true to log to HDF5 files, which are written
+     * by Hdf5FileOutputWriter
+     */
+    public void setLoggingHdf5Enabled(boolean loggingHdf5Enabled) {
+        this.loggingHdf5Enabled = loggingHdf5Enabled;
+        prefs.putBoolean("AEViewer.loggingHdf5Enabled", loggingHdf5Enabled);
+        loggingHdf5CheckBoxMenuItem.setSelected(loggingHdf5Enabled);
+    }
+
+    /**
+     * @param f a file
+     * @return true if the file has the extension of HDF5 data files
+     */
+    private static boolean isHdf5DataFile(File f) {
+        final String name = f.getName().toLowerCase();
+        return name.endsWith(AEDataFile.HDF5_DATA_FILE_EXTENSION) || name.endsWith(AEDataFile.SHORT_HDF5_DATA_FILE_EXTENSION);
+    }
+
     /**
      * Returns the enclosing JAERViewer, which is the top level object in jAER.
      *
@@ -6217,6 +6277,7 @@ public class AEViewer extends javax.swing.JFrame implements PropertyChangeListen
     private javax.swing.JSeparator jSeparator9;
     private javax.swing.JCheckBoxMenuItem logFilteredEventsCheckBoxMenuItem;
     private javax.swing.JToggleButton loggingButton;
+    private javax.swing.JCheckBoxMenuItem loggingHdf5CheckBoxMenuItem;
     private javax.swing.JMenuItem loggingMenuItem;
     private javax.swing.JCheckBoxMenuItem loggingPlaybackImmediatelyCheckBoxMenuItem;
     private javax.swing.JMenuItem loggingSetTimelimitMenuItem;
@@ -649,7 +649,7 @@ public class AePlayerAdvancedControlsPanel extends javax.swing.JPanel implements
                 //                log.info(this+" slider set time to "+time);
                 if (aeViewer.getJaerViewer().getViewers().size() > 1) {
                     if (time < oldtime) {
-                        // we need to set position in all viewers so that we catch up to present desired time
+                        // we need to set position in all viewers so that they start at the present desired time
                         AbstractAEPlayer p;
                         AEFileInputStream is;
 
@@ -659,7 +659,7 @@ public class AePlayerAdvancedControlsPanel extends javax.swing.JPanel implements
                                     p = v.aePlayer; // we want local play here!
                                     is = p.getAEInputStream();
                                     if (is != null) {
-                                        is.rewind();
+                                        is.positionAtTimestamp(time);
                                     } else {
                                         log.warning("null ae input stream on reposition");
                                     }
@@ -693,7 +693,11 @@ public class AePlayerAdvancedControlsPanel extends javax.swing.JPanel implements
         }
         try {
             int t = Integer.parseInt(timeField.getText());
-            aePlayer.setTime(t);
+            if (aePlayer.getAEInputStream() != null) {
+                aePlayer.getAEInputStream().positionAtTimestamp(t); // seeks using the file timestamp index
+            } else {
+                aePlayer.setTime(t);
+            }
         } catch (Exception e) {
             log.warning(e.toString());
             timeField.selectAll();
@@ -224,6 +224,13 @@ public class ChipCanvas implements GLEventListener, Observer {
          */
         glu = new GLU();
 
+        if (GraphicsEnvironment.isHeadless()) {
+            // no display, e.g. batch processing of recordings on a server; the chip can still be used for event processing
+            log.info("headless graphics environment, not creating GLCanvas");
+            chip.addObserver(this);
+            return;
+        }
+
         // make the canvas
         try {
             if (SystemUtils.IS_OS_WINDOWS) {
@@ -859,6 +866,9 @@ public class ChipCanvas implements GLEventListener, Observer {
      * @see #display(com.jogamp.opengl.GLAutoDrawable)
      */
     public void paintFrame() {
+        if (drawable == null) {
+            return;
+        }
 //        synchronized (drawable.getTreeLock()) {
         try {
 //                drawable.getContext().makeCurrent();
@@ -885,7 +895,9 @@ public class ChipCanvas implements GLEventListener, Observer {
      * calls repaint on the drawable
      */
     public void repaint() {
-        drawable.repaint();
+        if (drawable != null) {
+            drawable.repaint();
+        }
     }
 
     /**
@@ -894,7 +906,9 @@ public class ChipCanvas implements GLEventListener, Observer {
      * @param tm time to repaint within, in ms
      */
     public void repaint(final long tm) {
-        drawable.repaint(tm);
+        if (drawable != null) {
+            drawable.repaint(tm);
+        }
     }
 
     /**
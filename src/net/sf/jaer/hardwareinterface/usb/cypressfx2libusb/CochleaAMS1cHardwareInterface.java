@@ -247,7 +247,6 @@ public class CochleaAMS1cHardwareInterface extends CypressFX2Biasgen implements
                 // data from cochleaams is not stateful.
 
 //            if(tobiLogger.isEnabled()==false) tobiLogger.setEnabled(true); //debug
-                synchronized (aePacketRawPool) {
                     AEPacketRaw buffer = aePacketRawPool.writeBuffer();
 
                     int NumberOfWrapEvents;
@@ -334,7 +333,6 @@ public class CochleaAMS1cHardwareInterface extends CypressFX2Biasgen implements
                     //System.out.println("Number of wrap events received: "+ NumberOfWrapEvents);
                     //}
                     //System.out.println("wrapAdd : "+ wrapAdd);
-                } // sync on aePacketRawPool
             } catch (java.lang.IndexOutOfBoundsException e) {
                 log.warning(e.toString());
             }
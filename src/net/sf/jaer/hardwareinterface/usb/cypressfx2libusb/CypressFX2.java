@@ -325,8 +325,15 @@ public class CypressFX2 implements AEMonitorInterface, ReaderBufferControl, USBI
 	protected AEReader aeReader = null;
 	/** the thread that reads device status messages on EP1 */
 	protected AsyncStatusThread asyncStatusThread = null;
+	/**
+	 * Default number of raw AE packets in {@link #aePacketRawPool}. With more than two, bursts of events that fill a packet
+	 * before the consumer takes it spill over into the next packet rather than overrunning.
+	 */
+	public static final int AE_PACKET_RAW_POOL_DEPTH = 4;
+	/** the number of raw AE packets in {@link #aePacketRawPool} */
+	protected int aePacketRawPoolDepth = CypressFX2.prefs.getInt("CypressFX2.aePacketRawPoolDepth", CypressFX2.AE_PACKET_RAW_POOL_DEPTH);
 	/** The pool of raw AE packets, used for data transfer */
-	protected AEPacketRawPool aePacketRawPool = new AEPacketRawPool(this);
+	protected AEPacketRawPool aePacketRawPool = new AEPacketRawPool(this, aePacketRawPoolDepth);
 	private String stringDescription = "CypressFX2"; // default which is
 														// modified by opening
        private USBPacketStatistics usbPacketStatistics=new USBPacketStatistics();
@@ -542,7 +549,7 @@ public class CypressFX2 implements AEMonitorInterface, ReaderBufferControl, USBI
 	 * <p>
 	 * This method also starts event acquisition if it is not running already.
 	 *
-	 * Not thread safe but does use the thread-safe swap() method of AEPacketRawPool to swap data with the acquisition
+	 * Not thread safe but does use the lock-free swap() method of AEPacketRawPool to swap data with the acquisition
 	 * thread.
 	 *
 	 * @return packet of events acquired.
@@ -577,14 +584,12 @@ public class CypressFX2 implements AEMonitorInterface, ReaderBufferControl, USBI
 		// synchronized(aePacketRawPool){ // synchronize on aeReader so that we
 		// don't try to access the events at the
 		// same time
-		aePacketRawPool.swap();
+		aePacketRawPool.swap(); // the reader continues in a cleared buffer and resets its eventCounter itself
 		lastEventsAcquired = aePacketRawPool.readBuffer();
 		// log.info(this+" acquired "+lastEventsAcquired);
 		// addresses=events.getAddresses();
 		// timestamps=events.getTimestamps();
 		nEvents = lastEventsAcquired.getNumEvents();
-		eventCounter = 0;
-		realTimeEventCounterStart = 0;
 
 		computeEstimatedEventRate(lastEventsAcquired);
 		if (nEvents != 0) {
@@ -1112,6 +1117,8 @@ public class CypressFX2 implements AEMonitorInterface, ReaderBufferControl, USBI
 		}
 
 		class ProcessAEData implements RestrictedTransferCallback {
+			private AEPacketRaw lastWriteBuffer = null; // the buffer written by the last transfer
+
 			@Override
 			public void prepareTransfer(final RestrictedTransfer transfer) {
 				// Nothing to do here.
@@ -1129,7 +1136,15 @@ public class CypressFX2 implements AEMonitorInterface, ReaderBufferControl, USBI
 				cycleCounter++;
                                 usbPacketStatistics.addSample(transfer);
 
-				synchronized (aePacketRawPool) {
+				// never blocks on the consumer; the buffer stays ours until endWrite
+				final AEPacketRaw buffer = aePacketRawPool.beginWrite();
+				try {
+					if (buffer != lastWriteBuffer) {
+						// consumer took the last buffer, start over in this one
+						lastWriteBuffer = buffer;
+						realTimeEventCounterStart = 0;
+					}
+					eventCounter = buffer.getNumEvents();
 					if ((transfer.status() == LibUsb.TRANSFER_COMPLETED)
 						|| (transfer.status() == LibUsb.TRANSFER_CANCELLED)) {
 						translateEvents(transfer.buffer());
@@ -1141,13 +1156,8 @@ public class CypressFX2 implements AEMonitorInterface, ReaderBufferControl, USBI
 							// now process them apply realtime filters and
 							// realtime (packet level) mapping
 
-							// synchronize here so that rendering thread doesn't
-							// swap the buffer out from under us while
-							// we process these events
-							// aePacketRawPool.writeBuffer is also synchronized
-							// so we getString
-							// the same lock twice which is ok
-							final AEPacketRaw buffer = aePacketRawPool.writeBuffer();
+							// the rendering thread cannot swap the buffer out
+							// from under us until endWrite
 							final int[] addresses = buffer.getAddresses();
 							final int[] timestamps = buffer.getTimestamps();
 							realTimeFilter(addresses, timestamps);
@@ -1164,6 +1174,9 @@ public class CypressFX2 implements AEMonitorInterface, ReaderBufferControl, USBI
 						timestampsReset = false;
 					}
 				}
+				finally {
+					aePacketRawPool.endWrite();
+				}
 			}
 		}
 
@@ -1387,6 +1400,42 @@ public class CypressFX2 implements AEMonitorInterface, ReaderBufferControl, USBI
 		allocateAEBuffers();
 	}
 
+	/**
+	 * @return the number of raw AE packets that pass events from the reader to the consumer
+	 */
+	public int getAEPacketRawPoolDepth() {
+		return aePacketRawPoolDepth;
+	}
+
+	/**
+	 * Sets the number of raw AE packets that pass events from the reader to the consumer. Default is
+	 * AE_PACKET_RAW_POOL_DEPTH. You can set this larger if bursts of events overrun the packets before the consumer
+	 * takes them.
+	 * <p>
+	 * This call discards collected events.
+	 *
+	 * @param depth
+	 *            number of packets, between 2 and 16
+	 */
+	public void setAEPacketRawPoolDepth(final int depth) {
+		if ((depth < 2) || (depth > 16)) {
+			CypressFX2.log.warning("ignoring unreasonable aePacketRawPoolDepth of " + depth + ", choose a depth between 2 and 16");
+			return;
+		}
+		aePacketRawPoolDepth = depth;
+		CypressFX2.prefs.putInt("CypressFX2.aePacketRawPoolDepth", aePacketRawPoolDepth);
+		synchronized (aePacketRawPool) {
+			aePacketRawPool.setDepth(depth);
+		}
+	}
+
+	/**
+	 * @return the pool of raw AE packets, e.g. to read its overrun statistics
+	 */
+	public AEPacketRawPool getAEPacketRawPool() {
+		return aePacketRawPool;
+	}
+
 	/**
 	 * start or stops the event acquisition. sends appropriate vendor request to
 	 * device and starts or stops the AEReader.
@@ -213,7 +213,6 @@ public class CypressFX2DVS128HardwareInterface extends CypressFX2Biasgen impleme
 		 */
 		@Override
 		protected void translateEvents(final ByteBuffer b) {
-			synchronized (aePacketRawPool) {
 				final AEPacketRaw buffer = aePacketRawPool.writeBuffer();
 				int shortts;
 
@@ -311,7 +310,6 @@ public class CypressFX2DVS128HardwareInterface extends CypressFX2Biasgen impleme
 				// System.out.println("Number of wrap events received: "+ NumberOfWrapEvents);
 				// }
 				// System.out.println("wrapAdd : "+ wrapAdd);
-			} // sync on aePacketRawPool
 
 		}
 	}
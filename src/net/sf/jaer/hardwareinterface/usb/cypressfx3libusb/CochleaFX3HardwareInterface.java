@@ -143,7 +143,6 @@ public class CochleaFX3HardwareInterface extends CypressFX3Biasgen {
 
 		@Override
 		protected void translateEvents(final ByteBuffer b) {
-			synchronized (aePacketRawPool) {
 				final AEPacketRaw buffer = aePacketRawPool.writeBuffer();
 
 				// Truncate off any extra partial event.
@@ -300,7 +299,6 @@ public class CochleaFX3HardwareInterface extends CypressFX3Biasgen {
 				buffer.setNumEvents(eventCounter);
 				// write capture size
 				buffer.lastCaptureLength = eventCounter - buffer.lastCaptureIndex;
-			} // sync on aePacketRawPool
 		}
 
 		@Override
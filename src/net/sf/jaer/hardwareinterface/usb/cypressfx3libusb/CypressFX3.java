@@ -192,8 +192,15 @@ public class CypressFX3 implements AEMonitorInterface, ReaderBufferControl, USBI
 	protected AEReader aeReader = null;
 	/** the thread that reads device status messages on EP1 */
 	protected AsyncStatusThread asyncStatusThread = null;
+	/**
+	 * Default number of raw AE packets in {@link #aePacketRawPool}. With more than two, bursts of events that fill a packet
+	 * before the consumer takes it spill over into the next packet rather than overrunning.
+	 */
+	public static final int AE_PACKET_RAW_POOL_DEPTH = 4;
+	/** the number of raw AE packets in {@link #aePacketRawPool} */
+	protected int aePacketRawPoolDepth = CypressFX3.prefs.getInt("CypressFX3.aePacketRawPoolDepth", CypressFX3.AE_PACKET_RAW_POOL_DEPTH);
 	/** The pool of raw AE packets, used for data transfer */
-	protected AEPacketRawPool aePacketRawPool = new AEPacketRawPool(this);
+	protected AEPacketRawPool aePacketRawPool = new AEPacketRawPool(this, aePacketRawPoolDepth);
 	private String stringDescription = "CypressFX3"; // default which is
 	private USBPacketStatistics usbPacketStatistics = new USBPacketStatistics();
 
@@ -430,7 +437,7 @@ public class CypressFX3 implements AEMonitorInterface, ReaderBufferControl, USBI
 	 * <p>
 	 * This method also starts event acquisition if it is not running already.
 	 *
-	 * Not thread safe but does use the thread-safe swap() method of AEPacketRawPool to swap data with the acquisition
+	 * Not thread safe but does use the lock-free swap() method of AEPacketRawPool to swap data with the acquisition
 	 * thread.
 	 *
 	 * @return packet of events acquired.
@@ -461,16 +468,10 @@ public class CypressFX3 implements AEMonitorInterface, ReaderBufferControl, USBI
 		int nEvents;
 
 		// getString the 'active' buffer for events (the one that has just been
-		// written by the hardware thread)
-		// synchronized(aePacketRawPool){ // synchronize on aeReader so that we
-		// don't try to access the events at the
-		// same time
-		synchronized (aePacketRawPool) {
-			aePacketRawPool.swap();
-			lastEventsAcquired = aePacketRawPool.readBuffer();
-			eventCounter = 0;
-			realTimeEventCounterStart = 0;
-		}
+		// written by the hardware thread); the reader continues in a cleared
+		// buffer and resets its eventCounter itself
+		aePacketRawPool.swap();
+		lastEventsAcquired = aePacketRawPool.readBuffer();
 
 		nEvents = lastEventsAcquired.getNumEvents();
 		computeEstimatedEventRate(lastEventsAcquired);
@@ -1004,6 +1005,8 @@ public class CypressFX3 implements AEMonitorInterface, ReaderBufferControl, USBI
 		}
 
 		class ProcessAEData implements RestrictedTransferCallback {
+			private AEPacketRaw lastWriteBuffer = null; // the buffer written by the last transfer
+
 			@Override
 			public void prepareTransfer(final RestrictedTransfer transfer) {
 				// Nothing to do here.
@@ -1018,7 +1021,15 @@ public class CypressFX3 implements AEMonitorInterface, ReaderBufferControl, USBI
 			 */
 			@Override
 			public void processTransfer(final RestrictedTransfer transfer) {
-				synchronized (aePacketRawPool) {
+				// never blocks on the consumer; the buffer stays ours until endWrite
+				final AEPacketRaw buffer = aePacketRawPool.beginWrite();
+				try {
+					if (buffer != lastWriteBuffer) {
+						// consumer took the last buffer, start over in this one
+						lastWriteBuffer = buffer;
+						realTimeEventCounterStart = 0;
+					}
+					eventCounter = buffer.getNumEvents();
 					if (transfer.status() == LibUsb.TRANSFER_COMPLETED) {
 						usbPacketStatistics.addSample(transfer);
 						translateEvents(transfer.buffer());
@@ -1030,13 +1041,8 @@ public class CypressFX3 implements AEMonitorInterface, ReaderBufferControl, USBI
 							// now process them apply realtime filters and
 							// realtime (packet level) mapping
 
-							// synchronize here so that rendering thread doesn't
-							// swap the buffer out from under us while
-							// we process these events
-							// aePacketRawPool.writeBuffer is also synchronized
-							// so we getString
-							// the same lock twice which is ok
-							final AEPacketRaw buffer = aePacketRawPool.writeBuffer();
+							// the rendering thread cannot swap the buffer out
+							// from under us until endWrite
 							final int[] addresses = buffer.getAddresses();
 							final int[] timestamps = buffer.getTimestamps();
 							realTimeFilter(addresses, timestamps);
@@ -1047,6 +1053,9 @@ public class CypressFX3 implements AEMonitorInterface, ReaderBufferControl, USBI
 							+ LibUsb.errorName(transfer.status()));
 					}
 				}
+				finally {
+					aePacketRawPool.endWrite();
+				}
 			}
 		}
 
@@ -1255,6 +1264,42 @@ public class CypressFX3 implements AEMonitorInterface, ReaderBufferControl, USBI
 		allocateAEBuffers();
 	}
 
+	/**
+	 * @return the number of raw AE packets that pass events from the reader to the consumer
+	 */
+	public int getAEPacketRawPoolDepth() {
+		return aePacketRawPoolDepth;
+	}
+
+	/**
+	 * Sets the number of raw AE packets that pass events from the reader to the consumer. Default is
+	 * AE_PACKET_RAW_POOL_DEPTH. You can set this larger if bursts of events overrun the packets before the consumer
+	 * takes them.
+	 * <p>
+	 * This call discards collected events.
+	 *
+	 * @param depth
+	 *            number of packets, between 2 and 16
+	 */
+	public void setAEPacketRawPoolDepth(final int depth) {
+		if ((depth < 2) || (depth > 16)) {
+			CypressFX3.log.warning("ignoring unreasonable aePacketRawPoolDepth of " + depth + ", choose a depth between 2 and 16");
+			return;
+		}
+		aePacketRawPoolDepth = depth;
+		CypressFX3.prefs.putInt("CypressFX3.aePacketRawPoolDepth", aePacketRawPoolDepth);
+		synchronized (aePacketRawPool) {
+			aePacketRawPool.setDepth(depth);
+		}
+	}
+
+	/**
+	 * @return the pool of raw AE packets, e.g. to read its overrun statistics
+	 */
+	public AEPacketRawPool getAEPacketRawPool() {
+		return aePacketRawPool;
+	}
+
 	/**
 	 * start or stops the event acquisition. sends appropriate vendor request to
 	 * device and starts or stops the AEReader.
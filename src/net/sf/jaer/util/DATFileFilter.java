@@ -30,7 +30,7 @@ public class DATFileFilter extends javax.swing.filechooser.FileFilter {
         
         String extension = getExtension(f);
         if (extension != null) {
-            if (extension.equals(EXTENSION)  || extension.equals(OLDEXTENSION)){
+            if (extension.equals(EXTENSION)  || extension.equals(OLDEXTENSION) || extension.equals(HDF5EXTENSION) || extension.equals(SHORTHDF5EXTENSION)){
                 return true;
             } else {
                 return false;
@@ -51,7 +51,7 @@ public class DATFileFilter extends javax.swing.filechooser.FileFilter {
     }
 
     public String getDescription() {
-        return "AER raw binary data file";
+        return "AER raw binary or HDF5 data file";
     }
     
     /** The extension, including the dot, ".aedat"
@@ -64,5 +64,8 @@ public class DATFileFilter extends javax.swing.filechooser.FileFilter {
     /** The orignal extension for AE data files */
     public static final String OLDEXTENSION="dat";
 
+    /** The extensions of HDF5 data files, written by Hdf5FileOutputWriter */
+    public static final String HDF5EXTENSION="hdf5", SHORTHDF5EXTENSION="h5";
+
     
 }
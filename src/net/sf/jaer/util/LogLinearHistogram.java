@@ -0,0 +1,145 @@
+/*
+ * LogLinearHistogram.java
+ *
+ * Created on October 18, 2026
+ */
+package net.sf.jaer.util;
+
+import java.util.Arrays;
+
+/**
+ * A histogram of non-negative long values, e.g. latencies in ns, with
+ * logarithmically spaced octaves that are each divided into linear
+ * sub-buckets, in the manner of HdrHistogram. Values below 64 are counted
+ * exactly; larger values are counted with a relative resolution of 1/32,
+ * i.e. about 3%, using a fixed array of counts, so recording never
+ * allocates.
+ * <p>
+ * This class is not thread safe; callers that record and read from
+ * different threads must synchronize.
+ */
+public class LogLinearHistogram {
+
+    /**
+     * Number of bits of sub-bucket resolution below the most significant bit
+     */
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    /**
+     * Values below this limit are counted exactly
+     */
+    private static final long LINEAR_LIMIT = 2 * SUB_BUCKETS;
+    private static final int NUM_BUCKETS = ((64 - SUB_BUCKET_BITS) * SUB_BUCKETS) + SUB_BUCKETS;
+
+    private final long[] counts = new long[NUM_BUCKETS];
+    private long count = 0, sum = 0;
+    private long min = Long.MAX_VALUE, max = 0;
+
+    /**
+     * Records a value
+     *
+     * @param value the value; negative values are recorded as 0
+     */
+    public void record(long value) {
+        if (value < 0) {
+            value = 0;
+        }
+        counts[bucketIndex(value)]++;
+        count++;
+        sum += value;
+        if (value < min) {
+            min = value;
+        }
+        if (value > max) {
+            max = value;
+        }
+    }
+
+    private static int bucketIndex(long value) {
+        if (value < LINEAR_LIMIT) {
+            return (int) value;
+        }
+        final int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        return (shift * SUB_BUCKETS) + (int) (value >>> shift);
+    }
+
+    /**
+     * @return the largest value that is counted in bucket i
+     */
+    private static long highestValueInBucket(int i) {
+        if (i < LINEAR_LIMIT) {
+            return i;
+        }
+        final int shift = (i / SUB_BUCKETS) - 1;
+        final long top = (i % SUB_BUCKETS) + SUB_BUCKETS;
+        return ((top + 1) << shift) - 1;
+    }
+
+    /**
+     * Returns the value below or at which a percentage of the recorded values
+     * lie, to the resolution of the histogram
+     *
+     * @param percentile the percentile, e.g. 99 for the 99th percentile
+     * @return the value, never larger than {@link #getMax() }, or 0 if nothing
+     * was recorded
+     */
+    public long getValueAtPercentile(double percentile) {
+        if (count == 0) {
+            return 0;
+        }
+        final long rank = Math.max(1, (long) Math.ceil((Math.min(100, Math.max(0, percentile)) / 100) * count));
+        long n = 0;
+        for (int i = 0; i < NUM_BUCKETS; i++) {
+            n += counts[i];
+            if (n >= rank) {
+                return Math.min(max, highestValueInBucket(i));
+            }
+        }
+        return max;
+    }
+
+    /**
+     * @return the number of recorded values
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * @return the exact mean of the recorded values, or 0 if nothing was
+     * recorded
+     */
+    public double getMean() {
+        return count == 0 ? 0 : (double) sum / count;
+    }
+
+    /**
+     * @return the exact smallest recorded value, or 0 if nothing was recorded
+     */
+    public long getMin() {
+        return count == 0 ? 0 : min;
+    }
+
+    /**
+     * @return the exact largest recorded value
+     */
+    public long getMax() {
+        return max;
+    }
+
+    /**
+     * Clears all counts
+     */
+    public void reset() {
+        Arrays.fill(counts, 0);
+        count = 0;
+        sum = 0;
+        min = Long.MAX_VALUE;
+        max = 0;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("n=%d mean=%.1f p50=%d p99=%d max=%d", count, getMean(), getValueAtPercentile(50), getValueAtPercentile(99), max);
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * SpscRingBuffer.java
+ *
+ * Created on October 18, 2026
+ */
+package net.sf.jaer.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A bounded lock-free FIFO queue for exactly one producer thread and one
+ * consumer thread. The capacity is rounded up to a power of two.
+ * <p>
+ * {@link #offer(java.lang.Object) } and {@link #poll() } never block; callers
+ * that must wait spin, yield or park themselves.
+ *
+ * @param <T> the element type
+ */
+public class SpscRingBuffer<T> {
+
+    private final AtomicReferenceArray<T> slots;
+    private final int mask;
+    /**
+     * Index of the next element to poll, written only by the consumer
+     */
+    private final AtomicLong head = new AtomicLong();
+    /**
+     * Index of the next slot to fill, written only by the producer
+     */
+    private final AtomicLong tail = new AtomicLong();
+
+    /**
+     * Creates a new ring buffer
+     *
+     * @param capacity the minimum number of elements the buffer can hold
+     */
+    public SpscRingBuffer(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be positive, got " + capacity);
+        }
+        int n = Integer.highestOneBit(capacity);
+        if (n < capacity) {
+            n <<= 1;
+        }
+        slots = new AtomicReferenceArray<>(n);
+        mask = n - 1;
+    }
+
+    /**
+     * Adds an element at the tail. Call only from the producer thread.
+     *
+     * @param e the element, not null
+     * @return false if the buffer is full
+     */
+    public boolean offer(T e) {
+        if (e == null) {
+            throw new NullPointerException("null elements are not allowed");
+        }
+        final long t = tail.get();
+        if ((t - head.get()) > mask) {
+            return false;
+        }
+        slots.lazySet((int) t & mask, e);
+        tail.lazySet(t + 1);
+        return true;
+    }
+
+    /**
+     * Removes the element at the head. Call only from the consumer thread.
+     *
+     * @return the element, or null if the buffer is empty
+     */
+    public T poll() {
+        final long h = head.get();
+        if (h >= tail.get()) {
+            return null;
+        }
+        final int i = (int) h & mask;
+        final T e = slots.get(i);
+        slots.lazySet(i, null);
+        head.lazySet(h + 1);
+        return e;
+    }
+
+    /**
+     * Returns the element at the head without removing it. Call only from the
+     * consumer thread.
+     *
+     * @return the element, or null if the buffer is empty
+     */
+    public T peek() {
+        final long h = head.get();
+        if (h >= tail.get()) {
+            return null;
+        }
+        return slots.get((int) h & mask);
+    }
+
+    /**
+     * @return the number of elements, which may be stale when called
+     * concurrently with offer or poll
+     */
+    public int size() {
+        return (int) (tail.get() - head.get());
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /**
+     * @return the number of elements the buffer can hold
+     */
+    public int capacity() {
+        return mask + 1;
+    }
+}
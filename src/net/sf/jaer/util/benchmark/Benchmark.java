@@ -0,0 +1,76 @@
+/*
+ * Benchmark.java
+ *
+ * Created on October 18, 2026
+ */
+package net.sf.jaer.util.benchmark;
+
+/**
+ * A micro-benchmark of an event processing hot path that is run by
+ * {@link BenchmarkRunner}. Each timed invocation of {@link #run() } processes
+ * a batch of events; the runner reports the average cost in ns per event.
+ */
+public abstract class Benchmark {
+
+    private final String name;
+    private long sink = 0;
+
+    /**
+     * @param name the name, e.g. <code>ClassName.methodName</code>
+     */
+    public Benchmark(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Called once before warmup, not timed.
+     *
+     * @throws Exception if the benchmark cannot be set up; it is then skipped
+     */
+    public void setUp() throws Exception {
+    }
+
+    /**
+     * Called before each invocation of {@link #run() }, not timed, e.g. to
+     * restore state modified by the previous invocation.
+     *
+     * @throws Exception on error
+     */
+    public void prepare() throws Exception {
+    }
+
+    /**
+     * The timed invocation.
+     *
+     * @return the number of events processed
+     * @throws Exception on error
+     */
+    public abstract long run() throws Exception;
+
+    /**
+     * Called once after measurement, not timed.
+     */
+    public void tearDown() {
+    }
+
+    /**
+     * Consumes a result of the benchmarked code, so that the JIT compiler
+     * cannot eliminate its computation.
+     *
+     * @param value e.g. a sum over the output events
+     */
+    protected final void consume(long value) {
+        sink += value;
+    }
+
+    /**
+     * @return the sum of all consumed values
+     */
+    public long getSink() {
+        return sink;
+    }
+}
@@ -0,0 +1,197 @@
+/*
+ * BenchmarkRunner.java
+ *
+ * Created on October 18, 2026
+ */
+package net.sf.jaer.util.benchmark;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Runs {@link Benchmark}s with warmup and measurement iterations of fixed
+ * duration, in the manner of JMH's average time mode, and reports the cost in
+ * ns per event with its standard error over the measurement iterations.
+ */
+public class BenchmarkRunner {
+
+    private static final Logger log = Logger.getLogger("net.sf.jaer");
+
+    private int warmupIterations = 5;
+    private int measurementIterations = 10;
+    private long iterationTimeMs = 500;
+    private final List<Result> results = new ArrayList<>();
+
+    /**
+     * The measurement of one benchmark
+     */
+    public static class Result {
+
+        private final String name;
+        private final double nsPerEvent, stdErrNsPerEvent;
+        private final long events;
+        private final int iterations;
+
+        Result(String name, double nsPerEvent, double stdErrNsPerEvent, long events, int iterations) {
+            this.name = name;
+            this.nsPerEvent = nsPerEvent;
+            this.stdErrNsPerEvent = stdErrNsPerEvent;
+            this.events = events;
+            this.iterations = iterations;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * @return the mean over the measurement iterations of ns per event
+         */
+        public double getNsPerEvent() {
+            return nsPerEvent;
+        }
+
+        /**
+         * @return the standard error of {@link #getNsPerEvent() }
+         */
+        public double getStdErrNsPerEvent() {
+            return stdErrNsPerEvent;
+        }
+
+        /**
+         * @return the throughput in events per second
+         */
+        public double getEventsPerSecond() {
+            return nsPerEvent == 0 ? 0 : 1e9 / nsPerEvent;
+        }
+
+        /**
+         * @return the total number of events processed during measurement
+         */
+        public long getEvents() {
+            return events;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%-60s %5d %12.2f +/- %8.2f %12.3g", name, iterations, nsPerEvent, stdErrNsPerEvent, getEventsPerSecond());
+        }
+    }
+
+    /**
+     * Runs a benchmark. A benchmark that throws an exception is skipped with a
+     * warning.
+     *
+     * @param b the benchmark
+     * @return the result, or null if the benchmark failed
+     */
+    public Result run(Benchmark b) {
+        try {
+            b.setUp();
+            for (int i = 0; i < warmupIterations; i++) {
+                iterate(b);
+            }
+            final double[] nspe = new double[measurementIterations];
+            long events = 0;
+            for (int i = 0; i < measurementIterations; i++) {
+                final long[] r = iterate(b);
+                nspe[i] = r[1] == 0 ? 0 : (double) r[0] / r[1];
+                events += r[1];
+            }
+            double sum = 0, sum2 = 0;
+            for (double v : nspe) {
+                sum += v;
+                sum2 += v * v;
+            }
+            final int n = measurementIterations;
+            final double mean = sum / n;
+            final double stdErr = n < 2 ? 0 : Math.sqrt(Math.max(0, (sum2 - (n * mean * mean)) / (n - 1)) / n);
+            final Result result = new Result(b.getName(), mean, stdErr, events, n);
+            results.add(result);
+            return result;
+        } catch (Exception e) {
+            log.log(Level.WARNING, "benchmark " + b.getName() + " failed, skipping it", e);
+            return null;
+        } finally {
+            b.tearDown();
+        }
+    }
+
+    /**
+     * Invokes the benchmark repeatedly for iterationTimeMs, timing only
+     * {@link Benchmark#run() }
+     *
+     * @return the total ns and events
+     */
+    private long[] iterate(Benchmark b) throws Exception {
+        final long iterationTimeNs = iterationTimeMs * 1000000L;
+        long durationNs = 0, events = 0;
+        do {
+            b.prepare();
+            final long start = System.nanoTime();
+            events += b.run();
+            durationNs += System.nanoTime() - start;
+        } while (durationNs < iterationTimeNs);
+        return new long[]{durationNs, events};
+    }
+
+    /**
+     * @return the table header matching {@link Result#toString() }
+     */
+    public static String getHeader() {
+        return String.format("%-60s %5s %12s     %8s %12s", "Benchmark", "Cnt", "ns/event", "Error", "events/s");
+    }
+
+    /**
+     * Writes all results as comma separated values
+     *
+     * @param file the CSV file
+     * @throws IOException if the file cannot be written
+     */
+    public void writeCsv(File file) throws IOException {
+        try (PrintWriter w = new PrintWriter(new FileWriter(file))) {
+            w.println("benchmark,iterations,nsPerEvent,stdErrNsPerEvent,eventsPerSecond,events");
+            for (Result r : results) {
+                w.println(String.format(Locale.US, "%s,%d,%.3f,%.3f,%.1f,%d", r.name, r.iterations, r.nsPerEvent, r.stdErrNsPerEvent, r.getEventsPerSecond(), r.events));
+            }
+        }
+    }
+
+    public List<Result> getResults() {
+        return results;
+    }
+
+    public int getWarmupIterations() {
+        return warmupIterations;
+    }
+
+    public void setWarmupIterations(int warmupIterations) {
+        this.warmupIterations = warmupIterations;
+    }
+
+    public int getMeasurementIterations() {
+        return measurementIterations;
+    }
+
+    public void setMeasurementIterations(int measurementIterations) {
+        if (measurementIterations < 1) {
+            throw new IllegalArgumentException("need at least one measurement iteration, got " + measurementIterations);
+        }
+        this.measurementIterations = measurementIterations;
+    }
+
+    public long getIterationTimeMs() {
+        return iterationTimeMs;
+    }
+
+    public void setIterationTimeMs(long iterationTimeMs) {
+        this.iterationTimeMs = iterationTimeMs;
+    }
+}
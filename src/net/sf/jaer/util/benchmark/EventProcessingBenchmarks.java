@@ -0,0 +1,512 @@
+/*
+ * EventProcessingBenchmarks.java
+ *
+ * Created on October 18, 2026
+ */
+package net.sf.jaer.util.benchmark;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Constructor;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Pattern;
+
+import eu.seebetter.ini.chips.DavisChip;
+import ml.options.Options;
+import ml.options.Options.Multiplicity;
+import ml.options.Options.Separator;
+import net.sf.jaer.aemonitor.AEPacketRaw;
+import net.sf.jaer.chip.AEChip;
+import net.sf.jaer.chip.EventExtractor2D;
+import net.sf.jaer.event.ApsDvsEventPacket;
+import net.sf.jaer.event.BasicEvent;
+import net.sf.jaer.event.EventPacket;
+import net.sf.jaer.eventio.AEFileInputStream;
+import net.sf.jaer.eventio.Jaer3BufferParser;
+import net.sf.jaer.eventprocessing.EventFilter2D;
+import net.sf.jaer.eventprocessing.filter.BackgroundActivityFilter;
+import net.sf.jaer.eventprocessing.filter.SpatioTemporalCorrelationFilter;
+import net.sf.jaer.eventprocessing.tracking.RectangularClusterTracker;
+import net.sf.jaer.graphics.AEChipRenderer;
+
+/**
+ * Benchmarks of the core event processing hot paths: event extraction, AEDAT
+ * 3.x parsing, packet iteration, noise filters, cluster tracking and frame
+ * rendering. They run on a synthetic stream of a moving blob with background
+ * noise, or on the first events of a recording.
+ * <p>
+ * Run from the command line, preferably with
+ * <code>-Djava.awt.headless=true</code>:
+ * <pre>
+ * java -Djava.awt.headless=true net.sf.jaer.util.benchmark.EventProcessingBenchmarks [-include=regex] [-file=recording.aedat] [-csv=results.csv]
+ * </pre>
+ */
+public class EventProcessingBenchmarks {
+
+    /**
+     * Default chip class for the synthetic stream
+     */
+    public static final String DEFAULT_CHIP_CLASS = "eu.seebetter.ini.chips.davis.DAVIS240C";
+    /**
+     * Default number of events of the synthetic stream
+     */
+    public static final int DEFAULT_NUM_EVENTS = 1 << 20;
+    /**
+     * Number of events per packet
+     */
+    public static final int PACKET_SIZE_EVENTS = 1 << 14;
+
+    private final AEChip chip;
+    private final List<AEPacketRaw> rawPackets = new ArrayList<>();
+    private final List<EventPacket> packets = new ArrayList<>();
+    private final String streamName;
+
+    /**
+     * Creates the synthetic stream for a DAVIS chip
+     *
+     * @param chip the chip, which must be a DavisChip
+     * @param numEvents the number of events
+     */
+    public EventProcessingBenchmarks(AEChip chip, int numEvents) {
+        if (!(chip instanceof DavisChip)) {
+            throw new IllegalArgumentException("the synthetic stream needs a DavisChip, not " + chip.getClass().getName());
+        }
+        this.chip = chip;
+        streamName = "synthetic";
+        final Random r = new Random(42);
+        final int sx = chip.getSizeX(), sy = chip.getSizeY();
+        int ts = 1;
+        for (int start = 0; start < numEvents; start += PACKET_SIZE_EVENTS) {
+            final int n = Math.min(PACKET_SIZE_EVENTS, numEvents - start);
+            final AEPacketRaw raw = new AEPacketRaw(n);
+            final int[] addr = raw.getAddresses(), t = raw.getTimestamps();
+            for (int i = 0; i < n; i++) {
+                int x, y;
+                if (r.nextFloat() < .7f) { // blob circling around the center at 1 revolution per second
+                    final double phi = (2 * Math.PI * ts) / 1e6;
+                    x = (int) ((sx / 2) + ((sx / 4) * Math.cos(phi)) + (3 * r.nextGaussian()));
+                    y = (int) ((sy / 2) + ((sy / 4) * Math.sin(phi)) + (3 * r.nextGaussian()));
+                    x = Math.max(0, Math.min(sx - 1, x));
+                    y = Math.max(0, Math.min(sy - 1, y));
+                } else { // noise
+                    x = r.nextInt(sx);
+                    y = r.nextInt(sy);
+                }
+                addr[i] = (y << DavisChip.YSHIFT) | ((sx - 1 - x) << DavisChip.XSHIFT) | (r.nextBoolean() ? DavisChip.POLMASK : 0);
+                ts += 1 + r.nextInt(3); // about 500k events/s
+                t[i] = ts;
+            }
+            raw.setNumEvents(n);
+            rawPackets.add(raw);
+        }
+        extractPackets();
+    }
+
+    /**
+     * Loads the first events of a recording
+     *
+     * @param chip the chip of the recording
+     * @param file the recording
+     * @param maxEvents the maximum number of events to load
+     * @throws IOException if the file cannot be read
+     */
+    public EventProcessingBenchmarks(AEChip chip, File file, int maxEvents) throws IOException {
+        this.chip = chip;
+        streamName = file.getName();
+        final AEFileInputStream ais = new AEFileInputStream(file, chip);
+        ais.setNonMonotonicTimeExceptionsChecked(false);
+        ais.setRepeat(false);
+        try {
+            int total = 0;
+            while (total < maxEvents) {
+                final AEPacketRaw raw;
+                try {
+                    raw = ais.readPacketByNumber(Math.min(PACKET_SIZE_EVENTS, maxEvents - total));
+                } catch (EOFException e) {
+                    break;
+                }
+                final int n = raw.getNumEvents();
+                if (n == 0) {
+                    break;
+                }
+                final AEPacketRaw copy = new AEPacketRaw(n);
+                System.arraycopy(raw.getAddresses(), 0, copy.getAddresses(), 0, n);
+                System.arraycopy(raw.getTimestamps(), 0, copy.getTimestamps(), 0, n);
+                if (raw.getEventtypes() != null) {
+                    System.arraycopy(raw.getEventtypes(), 0, copy.getEventtypes(), 0, n);
+                }
+                if (raw.getPixelDataArray() != null) {
+                    System.arraycopy(raw.getPixelDataArray(), 0, copy.getPixelDataArray(), 0, n);
+                }
+                copy.setNumEvents(n);
+                rawPackets.add(copy);
+                total += n;
+            }
+        } finally {
+            ais.close();
+        }
+        extractPackets();
+    }
+
+    /**
+     * Extracts copies of the raw packets, which are the input of the filter
+     * benchmarks
+     */
+    private void extractPackets() {
+        final EventExtractor2D extractor = chip.getEventExtractor();
+        for (AEPacketRaw raw : rawPackets) {
+            final EventPacket extracted = extractor.extractPacket(raw);
+            final EventPacket copy = extracted.constructNewPacket();
+            copy.outputIterator(); // reset size
+            final Object[] events = extracted.getElementData();
+            for (int i = 0; i < extracted.getSize(); i++) {
+                copy.getOutputIterator().nextOutput().copyFrom((BasicEvent) events[i]);
+            }
+            packets.add(copy);
+        }
+    }
+
+    /**
+     * Clears the filteredOut flags set by the previous invocation
+     */
+    private void clearFilteredOut() {
+        for (EventPacket p : packets) {
+            final Object[] events = p.getElementData();
+            for (int i = 0; i < p.getSize(); i++) {
+                ((BasicEvent) events[i]).setFilteredOut(false);
+            }
+        }
+    }
+
+    private long countEvents() {
+        long n = 0;
+        for (EventPacket p : packets) {
+            n += p.getSize();
+        }
+        return n;
+    }
+
+    /**
+     * @return the benchmarks
+     */
+    public List<Benchmark> getBenchmarks() {
+        final List<Benchmark> list = new ArrayList<>();
+        final String suffix = " [" + streamName + "]";
+
+        final EventExtractor2D extractor = chip.getEventExtractor();
+        list.add(new Benchmark(extractor.getClass().getSimpleName() + ".extractPacket" + suffix) {
+            @Override
+            public long run() {
+                long n = 0;
+                for (AEPacketRaw raw : rawPackets) {
+                    final EventPacket out = extractor.extractPacket(raw);
+                    consume(out.getSize());
+                    n += raw.getNumEvents();
+                }
+                return n;
+            }
+        });
+
+        if (chip instanceof DavisChip) { // the AEDAT 3.1 buffer is encoded from DAVIS addresses
+            list.add(new Benchmark("Jaer3BufferParser.getJaer2EventBuf [synthetic AEDAT3.1]") {
+                private ByteBuffer buffer;
+                private Jaer3BufferParser parser;
+                private EventExtractor2D oldExtractor;
+                private long numEvents;
+
+                @Override
+                public void setUp() {
+                    oldExtractor = chip.getEventExtractor();
+                    buffer = makeAedat3PolarityBuffer(rawPackets, chip.getSizeX());
+                }
+
+                @Override
+                public void prepare() throws IOException {
+                    parser = new Jaer3BufferParser(buffer.duplicate(), chip); // scans the packet headers
+                    numEvents = parser.size();
+                }
+
+                @Override
+                public long run() throws IOException {
+                    for (long i = 0; i < numEvents; i++) {
+                        consume(parser.getJaer2EventBuf().getInt(8));
+                    }
+                    return numEvents;
+                }
+
+                @Override
+                public void tearDown() {
+                    chip.setEventExtractor(oldExtractor); // the parser installs its own extractor
+                }
+            });
+        }
+
+        list.add(new Benchmark("EventPacket iteration" + suffix) {
+            @Override
+            public long run() {
+                long n = 0;
+                for (EventPacket p : packets) {
+                    final Iterator<BasicEvent> itr = p.inputIterator();
+                    long sum = 0;
+                    while (itr.hasNext()) {
+                        final BasicEvent e = itr.next();
+                        sum += e.x + e.y;
+                    }
+                    consume(sum);
+                    n += p.getSize();
+                }
+                return n;
+            }
+        });
+        if (!packets.isEmpty() && (packets.get(0) instanceof ApsDvsEventPacket)) {
+            list.add(new Benchmark("ApsDvsEventPacket full iteration" + suffix) {
+                @Override
+                public long run() {
+                    long n = 0;
+                    for (EventPacket p : packets) {
+                        final Iterator<BasicEvent> itr = ((ApsDvsEventPacket) p).fullIterator();
+                        long sum = 0;
+                        while (itr.hasNext()) {
+                            sum += itr.next().timestamp;
+                        }
+                        consume(sum);
+                        n += p.getSize();
+                    }
+                    return n;
+                }
+            });
+        }
+
+        list.add(new FilterBenchmark(new BackgroundActivityFilter(chip), suffix));
+        list.add(new FilterBenchmark(new SpatioTemporalCorrelationFilter(chip), suffix));
+        list.add(new FilterBenchmark(new RectangularClusterTracker(chip), suffix));
+        for (int maxNumClusters : new int[]{10, 50, 200, 500}) {
+            list.add(new ClusterCountBenchmark(maxNumClusters, suffix));
+        }
+
+        final AEChipRenderer renderer = chip.getRenderer();
+        if (renderer != null) {
+            list.add(new Benchmark(renderer.getClass().getSimpleName() + ".render" + suffix) {
+                @Override
+                public long run() {
+                    for (EventPacket p : packets) {
+                        renderer.render(p);
+                    }
+                    return countEvents();
+                }
+            });
+        }
+        return list;
+    }
+
+    /**
+     * Runs a filter over all packets
+     */
+    private class FilterBenchmark extends Benchmark {
+
+        private final EventFilter2D filter;
+
+        FilterBenchmark(EventFilter2D filter, String suffix) {
+            super(filter.getClass().getSimpleName() + ".filterPacket" + suffix);
+            this.filter = filter;
+        }
+
+        @Override
+        public void setUp() {
+            filter.setFilterEnabled(true);
+            filter.resetFilter();
+        }
+
+        @Override
+        public void prepare() {
+            clearFilteredOut(); // filters that filter in place set these flags
+            filter.resetFilter(); // timestamps start again at the beginning of the stream
+        }
+
+        @Override
+        public long run() {
+            for (EventPacket p : packets) {
+                consume(filter.filterPacket(p).getSize());
+            }
+            return countEvents();
+        }
+    }
+
+    /**
+     * Runs the cluster tracker with small clusters and a given maximum number
+     * of them, which the noise events fill up, to show how the cost per event
+     * grows with the number of clusters
+     */
+    private class ClusterCountBenchmark extends FilterBenchmark {
+
+        private final RectangularClusterTracker tracker;
+        private final int maxNumClusters;
+        private int oldMaxNumClusters;
+        private float oldClusterSize;
+
+        ClusterCountBenchmark(int maxNumClusters, String suffix) {
+            this(new RectangularClusterTracker(chip), maxNumClusters, suffix);
+        }
+
+        private ClusterCountBenchmark(RectangularClusterTracker tracker, int maxNumClusters, String suffix) {
+            super(tracker, " maxNumClusters=" + maxNumClusters + suffix);
+            this.tracker = tracker;
+            this.maxNumClusters = maxNumClusters;
+        }
+
+        @Override
+        public void setUp() {
+            oldMaxNumClusters = tracker.getMaxNumClusters(); // the setters store preferences, restored in tearDown
+            oldClusterSize = tracker.getClusterSize();
+            tracker.setMaxNumClusters(maxNumClusters);
+            tracker.setClusterSize(.03f);
+            super.setUp();
+        }
+
+        @Override
+        public long run() {
+            final long n = super.run();
+            consume(tracker.getNumClusters());
+            return n;
+        }
+
+        @Override
+        public void tearDown() {
+            tracker.setMaxNumClusters(oldMaxNumClusters);
+            tracker.setClusterSize(oldClusterSize);
+        }
+    }
+
+    /**
+     * Encodes the DVS events of raw DAVIS packets as AEDAT 3.1 polarity event
+     * packets, one per raw packet.
+     */
+    private static ByteBuffer makeAedat3PolarityBuffer(List<AEPacketRaw> rawPackets, int sizeX) {
+        final int headerSize = 28, eventSize = 8;
+        int size = 0;
+        for (AEPacketRaw raw : rawPackets) {
+            size += headerSize + (raw.getNumEvents() * eventSize);
+        }
+        final ByteBuffer buf = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+        for (AEPacketRaw raw : rawPackets) {
+            final int n = raw.getNumEvents();
+            buf.putShort((short) 1); // polarity event
+            buf.putShort((short) 1); // source
+            buf.putInt(eventSize);
+            buf.putInt(4); // timestamp offset
+            buf.putInt(0); // timestamp overflow
+            buf.putInt(n); // capacity
+            buf.putInt(n); // number
+            buf.putInt(n); // valid
+            final int[] addr = raw.getAddresses(), ts = raw.getTimestamps();
+            for (int i = 0; i < n; i++) {
+                final int x = sizeX - 1 - ((addr[i] & DavisChip.XMASK) >>> DavisChip.XSHIFT);
+                final int y = (addr[i] & DavisChip.YMASK) >>> DavisChip.YSHIFT;
+                final int pol = (addr[i] & DavisChip.POLMASK) != 0 ? 1 : 0;
+                buf.putInt((x << 17) | (y << 2) | (pol << 1) | 1);
+                buf.putInt(ts[i]);
+            }
+        }
+        buf.flip();
+        return buf;
+    }
+
+    public static final String USAGE = "java -Djava.awt.headless=true EventProcessingBenchmarks [-aechip=" + DEFAULT_CHIP_CLASS + "] "
+            + "[-file=recording.aedat] [-numevents=" + DEFAULT_NUM_EVENTS + "] [-include=regex] "
+            + "[-warmup=5] [-iterations=10] [-iterationms=500] [-csv=results.csv]"
+            + "\n"
+            + "Note arguments values are assigned with =, not space"
+            + "\n"
+            + "Without -file a synthetic DAVIS stream is used. -include selects benchmarks whose names match the regular expression.";
+
+    public static void main(String[] args) {
+        Options opt = new Options(args, 0, 0);
+        opt.getSet().addOption("aechip", Separator.EQUALS, Multiplicity.ZERO_OR_ONE);
+        opt.getSet().addOption("file", Separator.EQUALS, Multiplicity.ZERO_OR_ONE);
+        opt.getSet().addOption("numevents", Separator.EQUALS, Multiplicity.ZERO_OR_ONE);
+        opt.getSet().addOption("include", Separator.EQUALS, Multiplicity.ZERO_OR_ONE);
+        opt.getSet().addOption("warmup", Separator.EQUALS, Multiplicity.ZERO_OR_ONE);
+        opt.getSet().addOption("iterations", Separator.EQUALS, Multiplicity.ZERO_OR_ONE);
+        opt.getSet().addOption("iterationms", Separator.EQUALS, Multiplicity.ZERO_OR_ONE);
+        opt.getSet().addOption("csv", Separator.EQUALS, Multiplicity.ZERO_OR_ONE);
+        if ((args.length > 0) && !opt.check(false, false)) { // no data arguments, so don't require them last
+            System.out.println(USAGE);
+            System.exit(1);
+        }
+
+        String chipname = DEFAULT_CHIP_CLASS;
+        if (opt.getSet().isSet("aechip")) {
+            chipname = opt.getSet().getOption("aechip").getResultValue(0);
+        }
+        AEChip chip = null;
+        try {
+            System.out.println("constructing AEChip " + chipname);
+            Class chipClass = Class.forName(chipname);
+            Constructor<AEChip> constructor = chipClass.getConstructor();
+            chip = constructor.newInstance((java.lang.Object[]) null);
+        } catch (Exception ex) {
+            System.err.println("Could not construct instance of aechip=" + chipname + ": " + ex.toString());
+            System.exit(1);
+        }
+
+        final BenchmarkRunner runner = new BenchmarkRunner();
+        EventProcessingBenchmarks benchmarks = null;
+        try {
+            int numEvents = DEFAULT_NUM_EVENTS;
+            if (opt.getSet().isSet("numevents")) {
+                numEvents = Integer.parseInt(opt.getSet().getOption("numevents").getResultValue(0));
+            }
+            if (opt.getSet().isSet("warmup")) {
+                runner.setWarmupIterations(Integer.parseInt(opt.getSet().getOption("warmup").getResultValue(0)));
+            }
+            if (opt.getSet().isSet("iterations")) {
+                runner.setMeasurementIterations(Integer.parseInt(opt.getSet().getOption("iterations").getResultValue(0)));
+            }
+            if (opt.getSet().isSet("iterationms")) {
+                runner.setIterationTimeMs(Long.parseLong(opt.getSet().getOption("iterationms").getResultValue(0)));
+            }
+            if (opt.getSet().isSet("file")) {
+                benchmarks = new EventProcessingBenchmarks(chip, new File(opt.getSet().getOption("file").getResultValue(0)), numEvents);
+            } else {
+                benchmarks = new EventProcessingBenchmarks(chip, numEvents);
+            }
+        } catch (IllegalArgumentException | IOException e) {
+            System.err.println("Bad argument or input: " + e.toString());
+            System.out.println(USAGE);
+            System.exit(1);
+        }
+
+        final Pattern include = Pattern.compile(opt.getSet().isSet("include") ? opt.getSet().getOption("include").getResultValue(0) : "");
+        final List<Benchmark> selected = new ArrayList<>();
+        for (Benchmark b : benchmarks.getBenchmarks()) {
+            if (include.matcher(b.getName()).find()) {
+                selected.add(b);
+            }
+        }
+        for (Benchmark b : selected) {
+            System.out.println("running " + b.getName());
+            runner.run(b);
+        }
+        System.out.println();
+        System.out.println(BenchmarkRunner.getHeader());
+        for (BenchmarkRunner.Result r : runner.getResults()) {
+            System.out.println(r);
+        }
+        if (opt.getSet().isSet("csv")) {
+            final File csv = new File(opt.getSet().getOption("csv").getResultValue(0));
+            try {
+                runner.writeCsv(csv);
+                System.out.println("wrote " + csv);
+            } catch (IOException e) {
+                System.err.println("Could not write " + csv + ": " + e.toString());
+            }
+        }
+        System.exit(0);
+    }
+}